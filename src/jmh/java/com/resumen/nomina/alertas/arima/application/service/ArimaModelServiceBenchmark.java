@@ -0,0 +1,76 @@
+package com.resumen.nomina.alertas.arima.application.service;
+
+import com.resumen.nomina.alertas.arima.domain.model.ArimaConfig;
+import com.resumen.nomina.alertas.arima.domain.model.ArimaForecast;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempo de ajuste y pronóstico de una serie con ArimaModelService y, con -prof gc (ya incluido
+ * en el perfil jmh del pom), bytes asignados por ajuste. La línea base es la implementación previa
+ * sobre List<Double> (ArimaModelServiceLista) con los mismos parámetros. Corre con:
+ * mvn -Pjmh test-compile exec:exec
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArimaModelServiceBenchmark {
+
+    // Longitudes típicas: la ventana por defecto (52) y la exhaustiva (104)
+    @Param({"52", "104"})
+    private int periodos;
+
+    // La línea base siempre recorre la cuadrícula completa: no tenía búsqueda escalonada
+    @Param({"EXHAUSTIVA", "ESCALONADA"})
+    private String busqueda;
+
+    private final ArimaModelService service = new ArimaModelService();
+    private final ArimaModelServiceLista lineaBase = new ArimaModelServiceLista();
+    private ArimaConfig config;
+    private double[] serie;
+    private List<Double> serieLista;
+
+    @Setup
+    public void preparar() {
+        config = ArimaConfig.porDefecto();
+        config.setVentanaAnalisis(periodos);
+        config.setBusquedaOrden(busqueda);
+
+        // AR(1) con tendencia y ruido, semilla fija para que las corridas sean comparables
+        Random random = new Random(42);
+        serie = new double[periodos];
+        double anterior = 0;
+        for (int i = 0; i < periodos; i++) {
+            anterior = 0.6 * anterior + random.nextGaussian();
+            serie[i] = 1000 + 2.5 * i + 40 * anterior;
+        }
+        serieLista = Arrays.stream(serie).boxed().toList();
+    }
+
+    @Benchmark
+    public ArimaForecast ajustarYPronosticar() {
+        return service.ajustarYPronosticar(serie, config);
+    }
+
+    @Benchmark
+    public ArimaForecast ajustarYPronosticarLineaBase() {
+        return lineaBase.ajustarYPronosticar(serieLista, config);
+    }
+}
@@ -5,6 +5,15 @@ import com.resumen.nomina.admin.service.AdminCatalogoService;
 import com.resumen.nomina.admin.service.AdminDatosInteligenciaService;
 import com.resumen.nomina.application.service.CalculoIndicadorService;
 import com.resumen.nomina.application.service.CompensacionSemanalService;
+import com.resumen.nomina.application.service.TrabajoRecalculoService;
+import com.resumen.nomina.application.util.GeneradorPeriodos;
+import com.resumen.nomina.domain.model.OpcionesRecalculo;
+import com.resumen.nomina.domain.model.TrabajoRecalculo;
+import com.resumen.nomina.infrastructure.repository.EstadisticaCalculoInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.IndicesInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SerieIndicadorInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SucursalInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.VariacionNormalizadaInfrastructureRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -15,6 +24,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -32,6 +42,13 @@ public class AdminController {
     private final AdminCatalogoService catalogoService;
     private final CalculoIndicadorService calculoService;
     private final CompensacionSemanalService compensacionService;
+    private final TrabajoRecalculoService trabajoRecalculoService;
+    private final GeneradorPeriodos generadorPeriodos;
+    private final IndicesInfrastructureRepository indicesRepository;
+    private final SerieIndicadorInfrastructureRepository serieIndicadorRepository;
+    private final EstadisticaCalculoInfrastructureRepository estadisticaCalculoRepository;
+    private final SucursalInfrastructureRepository sucursalRepository;
+    private final VariacionNormalizadaInfrastructureRepository variacionRepository;
     private final MongoTemplate mongoTemplate;
 
     // ========================================
@@ -234,7 +251,8 @@ public class AdminController {
 
     /**
      * POST /api/admin/recalcular-todo
-     * Recalcula TODOS los indicadores y compensaciones
+     * Recalcula TODOS los indicadores y compensaciones como trabajo asíncrono.
+     * Responde 202 con el id del trabajo; el avance se consulta en /api/calculos/trabajos/{id}
      */
     @PostMapping("/recalcular-todo")
     public ResponseEntity<Map<String, Object>> recalcularTodo(
@@ -255,24 +273,40 @@ public class AdminController {
                 ));
             }
 
-            // 1. Recalcular indicadores
-            log.info("📊 Recalculando indicadores desde {} hasta {}", periodoInicial, periodoFinal);
-            // Aquí debes llamar al método que ya tienes en CalculoIndicadorController
-            // que recalcula por rango
-
-            // 2. Sincronizar compensaciones
-            log.info("💰 Sincronizando compensaciones semanales");
-            int semanasProcessadas = compensacionService.sincronizarTodasLasSemanas(usuario);
+            List<String> periodos = generadorPeriodos.resolverRango(periodoInicial, periodoFinal);
+            OpcionesRecalculo opciones = OpcionesRecalculo.builder()
+                    .modo((String) request.getOrDefault("modo", "PARES"))
+                    .forzar(Boolean.TRUE.equals(request.get("forzar")))
+                    .materializar(Boolean.TRUE.equals(request.get("materializar")))
+                    .build();
+
+            // 1. Recalcular indicadores por rango y 2. sincronizar compensaciones al terminar
+            log.info("📊 Encolando recálculo completo desde {} hasta {}", periodos.get(0), periodos.get(periodos.size() - 1));
+            TrabajoRecalculo trabajo = trabajoRecalculoService.enviar("RECALCULO_COMPLETO", periodos, usuario, opciones,
+                    () -> {
+                        log.info("💰 Sincronizando compensaciones semanales");
+                        int semanasProcessadas = compensacionService.sincronizarTodasLasSemanas(usuario);
+                        return "Semanas de compensación procesadas: " + semanasProcessadas;
+                    });
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("mensaje", "Recálculo completo exitoso");
-            response.put("semanasCompensacionProcessadas", semanasProcessadas);
-            response.put("periodoInicial", periodoInicial);
-            response.put("periodoFinal", periodoFinal);
-
-            return ResponseEntity.ok(response);
-
+            response.put("mensaje", "Recálculo completo encolado");
+            response.put("trabajoId", trabajo.getId());
+            response.put("estado", trabajo.getEstado());
+            response.put("totalPares", trabajo.getTotalPares());
+            response.put("urlEstado", "/api/calculos/trabajos/" + trabajo.getId());
+            response.put("periodoInicial", trabajo.getPeriodoInicial());
+            response.put("periodoFinal", trabajo.getPeriodoFinal());
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ Validación en recálculo completo: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
         } catch (Exception e) {
             log.error("❌ Error en recálculo completo: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
@@ -313,6 +347,11 @@ public class AdminController {
 
             long count = mongoTemplate.getCollection(coleccion).countDocuments();
             mongoTemplate.dropCollection(coleccion);
+            indicesRepository.asegurarIndices(coleccion);
+            if ("IndicadoresCalculados".equals(coleccion)) {
+                serieIndicadorRepository.reconstruir();
+                estadisticaCalculoRepository.reconstruir();
+            }
 
             log.info("✅ Colección '{}' limpiada: {} registros eliminados", coleccion, count);
 
@@ -353,6 +392,8 @@ public class AdminController {
                     mongoTemplate.getCollection("catalogoTextos").countDocuments());
             stats.put("ConfiguracionAlertas",
                     mongoTemplate.getCollection("ConfiguracionAlertas").countDocuments());
+            stats.put("SeriesIndicadores",
+                    mongoTemplate.getCollection("SeriesIndicadores").countDocuments());
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
@@ -370,6 +411,168 @@ public class AdminController {
         }
     }
 
+    /**
+     * POST /api/admin/indices/asegurar
+     * Crea los índices faltantes de las colecciones consultadas por los dashboards
+     */
+    @PostMapping("/indices/asegurar")
+    public ResponseEntity<Map<String, Object>> asegurarIndices() {
+        log.info("📇 POST /indices/asegurar");
+
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("indices", indicesRepository.asegurarIndices());
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("❌ Error asegurando índices: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * GET /api/admin/indices/verificar
+     * Ejecuta explain sobre cada consulta registrada y reporta COLLSCAN vs IXSCAN
+     */
+    @GetMapping("/indices/verificar")
+    public ResponseEntity<Map<String, Object>> verificarIndices() {
+        log.info("🔎 GET /indices/verificar");
+
+        try {
+            List<Map<String, Object>> planes = indicesRepository.verificarPlanes();
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("consultas", planes.size());
+            response.put("conCollscan", planes.stream().filter(p -> "COLLSCAN".equals(p.get("plan"))).count());
+            response.put("planes", planes);
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            log.error("❌ Error verificando planes: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * POST /api/admin/series/reconstruir
+     * Reconstruye SeriesIndicadores completo desde IndicadoresCalculados
+     */
+    @PostMapping("/series/reconstruir")
+    public ResponseEntity<Map<String, Object>> reconstruirSeries() {
+        log.info("🧱 POST /series/reconstruir");
+
+        try {
+            long inicio = System.currentTimeMillis();
+            serieIndicadorRepository.reconstruir();
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "mensaje", "Series reconstruidas",
+                    "series", mongoTemplate.getCollection("SeriesIndicadores").estimatedDocumentCount(),
+                    "tiempoMs", System.currentTimeMillis() - inicio
+            ));
+
+        } catch (Exception e) {
+            log.error("❌ Error reconstruyendo series: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * POST /api/admin/estadisticas/reconstruir
+     * Reconstruye EstadisticasCalculos completo desde IndicadoresCalculados
+     */
+    @PostMapping("/estadisticas/reconstruir")
+    public ResponseEntity<Map<String, Object>> reconstruirEstadisticas() {
+        log.info("🧱 POST /estadisticas/reconstruir");
+
+        try {
+            long inicio = System.currentTimeMillis();
+            int periodos = estadisticaCalculoRepository.reconstruir().size();
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "mensaje", "Estadísticas reconstruidas",
+                    "periodos", periodos,
+                    "tiempoMs", System.currentTimeMillis() - inicio
+            ));
+
+        } catch (Exception e) {
+            log.error("❌ Error reconstruyendo estadísticas: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * POST /api/admin/sucursales/reconstruir
+     * Agrega al catálogo de sucursales todas las de IndicadoresCalculados
+     */
+    @PostMapping("/sucursales/reconstruir")
+    public ResponseEntity<Map<String, Object>> reconstruirSucursales() {
+        log.info("🏢 POST /sucursales/reconstruir");
+
+        try {
+            long inicio = System.currentTimeMillis();
+            sucursalRepository.reconstruir();
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "mensaje", "Catálogo de sucursales reconstruido",
+                    "sucursales", sucursalRepository.obtenerSucursales().size(),
+                    "tiempoMs", System.currentTimeMillis() - inicio
+            ));
+
+        } catch (Exception e) {
+            log.error("❌ Error reconstruyendo catálogo de sucursales: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * POST /api/admin/variaciones/normalizar
+     * Agrega variacionNormalizada a los cálculos guardados antes de que existiera el campo
+     */
+    @PostMapping("/variaciones/normalizar")
+    public ResponseEntity<Map<String, Object>> normalizarVariaciones() {
+        log.info("📐 POST /variaciones/normalizar");
+
+        try {
+            long inicio = System.currentTimeMillis();
+            long documentos = variacionRepository.completar();
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "mensaje", "Variaciones normalizadas",
+                    "documentos", documentos,
+                    "tiempoMs", System.currentTimeMillis() - inicio
+            ));
+
+        } catch (Exception e) {
+            log.error("❌ Error normalizando variaciones: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "mensaje", e.getMessage()
+            ));
+        }
+    }
+
     /**
      * GET /api/admin/health
      * Health check del módulo de administración
@@ -4,6 +4,9 @@ import com.resumen.nomina.admin.dto.*;
 import com.resumen.nomina.domain.model.Menu;
 import com.resumen.nomina.domain.model.Puesto;
 import com.resumen.nomina.domain.model.IndicadorMenu;
+import com.resumen.nomina.infrastructure.repository.HuellaPeriodoInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.IndicesInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.ResumenDatosInteligenciaInfrastructureRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
@@ -14,7 +17,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -27,6 +32,9 @@ public class AdminDatosInteligenciaService {
 
     private final MongoTemplate mongoTemplate;
     private final ExcelProcessorService excelProcessor;
+    private final HuellaPeriodoInfrastructureRepository huellaPeriodoRepository;
+    private final IndicesInfrastructureRepository indicesRepository;
+    private final ResumenDatosInteligenciaInfrastructureRepository resumenRepository;
 
     /**
      * Carga masiva de DatosInteligencia desde Excel
@@ -68,6 +76,16 @@ public class AdminDatosInteligenciaService {
 
             mongoTemplate.getCollection("DatosInteligencia").insertMany(documents);
 
+            // El drop eliminó también los índices de la colección
+            indicesRepository.asegurarIndices("DatosInteligencia");
+
+            // 4. Regenerar huellas de cambio y resumen: la colección completa fue reemplazada
+            Set<String> periodos = datos.stream().map(DatosInteligenciaRow::getPkiPeriodo).collect(Collectors.toSet());
+            huellaPeriodoRepository.eliminarHuellas();
+            actualizarHuellas(periodos);
+            resumenRepository.eliminarResumen();
+            actualizarResumen(periodos);
+
             resultado.setRegistrosExitosos(documents.size());
             resultado.setSuccess(true);
             resultado.setMensaje("Carga completa exitosa: " + documents.size() + " registros insertados");
@@ -142,6 +160,11 @@ public class AdminDatosInteligenciaService {
                 }
             }
 
+            // Actualizar huellas y resumen de los periodos tocados por la carga
+            Set<String> periodos = datos.stream().map(DatosInteligenciaRow::getPkiPeriodo).collect(Collectors.toSet());
+            actualizarHuellas(periodos);
+            actualizarResumen(periodos);
+
             resultado.setRegistrosExitosos(exitosos);
             resultado.setRegistrosConError(errores);
             resultado.setSuccess(errores == 0);
@@ -178,6 +201,9 @@ public class AdminDatosInteligenciaService {
                     .deleteMany(filtro)
                     .getDeletedCount();
 
+            actualizarHuellas(List.of(periodo));
+            actualizarResumen(List.of(periodo));
+
             resultado.setSuccess(true);
             resultado.setTotalRegistros((int) eliminados);
             resultado.setMensaje("Eliminados " + eliminados + " registros del período " + periodo);
@@ -190,6 +216,30 @@ public class AdminDatosInteligenciaService {
         return resultado;
     }
 
+    /**
+     * Recalcula las huellas de cambio de los periodos modificados.
+     * Un error aquí no invalida la carga: sin huella, el siguiente cálculo del periodo se ejecuta completo.
+     */
+    private void actualizarHuellas(Collection<String> periodos) {
+        try {
+            huellaPeriodoRepository.actualizarHuellas(periodos);
+        } catch (Exception e) {
+            log.warn("⚠️ No se pudieron actualizar las huellas de los periodos {}: {}", periodos, e.getMessage());
+        }
+    }
+
+    /**
+     * Regenera el resumen por periodo de los periodos modificados.
+     * Si falla, el cálculo de indicadores de esos periodos lee DatosInteligencia directamente.
+     */
+    private void actualizarResumen(Collection<String> periodos) {
+        try {
+            resumenRepository.actualizarPeriodos(periodos);
+        } catch (Exception e) {
+            log.warn("⚠️ No se pudo actualizar el resumen de los periodos {}: {}", periodos, e.getMessage());
+        }
+    }
+
     private Document convertirADocument(DatosInteligenciaRow dato) {
         return new Document()
                 // Campos PKI
@@ -2,23 +2,31 @@ package com.resumen.nomina.alertas.arima.application.service;
 
 import com.resumen.nomina.alertas.arima.domain.model.*;
         import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math3.stat.correlation.Covariance;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-        import java.util.stream.Collectors;
 
 /**
  * 🧮 SERVICIO DE MODELADO ARIMA
  *
- * Implementación de ARIMA usando Apache Commons Math
+ * Implementación de ARIMA sobre arreglos double[]
  * Basado en el documento PDF: "Alertas de compensación - Modelo ARIMA"
+ *
+ * Cada hilo reutiliza sus arreglos de trabajo entre series: el ajuste no crea listas ni
+ * arreglos por modelo candidato, solo el modelo elegido copia sus coeficientes y residuos.
  */
 @Slf4j
 @Service
 public class ArimaModelService {
 
+    // Arreglos de trabajo por hilo; crecen a la serie más larga vista y se reutilizan
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    // Búsqueda escalonada: semillas (p,q) y pasos hacia órdenes vecinos
+    private static final int[][] SEMILLAS = {{2, 2}, {0, 0}, {1, 0}, {0, 1}};
+    private static final int[][] VECINOS = {
+            {-1, 0}, {1, 0}, {0, -1}, {0, 1}, {-1, -1}, {1, 1}, {-1, 1}, {1, -1}};
+
     /**
      * 🔴 MÉTODO PRINCIPAL: Auto-ARIMA
      *
@@ -30,63 +38,156 @@ public class ArimaModelService {
      */
     public ArimaForecast ajustarYPronosticar(List<Double> serie, ArimaConfig config) {
 
-        log.debug("📊 Ajustando modelo ARIMA para serie de {} observaciones", serie.size());
+        int longitud = serie != null ? serie.size() : 0;
+        log.debug("📊 Ajustando modelo ARIMA para serie de {} observaciones", longitud);
 
         try {
             // 1. Validar serie
-            if (serie == null || serie.size() < config.getPeriodosMinimos()) {
-                throw new IllegalArgumentException(
-                        String.format("Serie muy corta: %d observaciones (mínimo: %d)",
-                                serie.size(), config.getPeriodosMinimos()));
+            validarLongitud(longitud, config);
+
+            // 2. Descartar valores nulos/infinitos en el arreglo del hilo
+            Buffers buffers = BUFFERS.get();
+            buffers.reservar(longitud, config);
+            int m = 0;
+            for (Double valor : serie) {
+                if (valor != null && Double.isFinite(valor)) {
+                    buffers.serie[m++] = valor;
+                }
+            }
+
+            return ajustarYPronosticar(buffers, m, config, null);
+
+        } catch (Exception e) {
+            log.error("❌ Error ajustando modelo ARIMA: {}", e.getMessage());
+            throw new RuntimeException("Error en ajuste ARIMA: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Igual que {@link #ajustarYPronosticar(List, ArimaConfig)} para una serie ya en double[]
+     */
+    public ArimaForecast ajustarYPronosticar(double[] serie, ArimaConfig config) {
+        return ajustarYPronosticar(serie, config, null);
+    }
+
+    /**
+     * Igual que {@link #ajustarYPronosticar(double[], ArimaConfig)} partiendo del modelo guardado
+     * de la serie: conserva su orden (p,d,q) y solo vuelve a estimar coeficientes. Si con ese orden
+     * el modelo ya no es válido, busca el orden completo.
+     */
+    public ArimaForecast ajustarYPronosticar(double[] serie, ArimaConfig config, ArimaModel previo) {
+
+        int longitud = serie != null ? serie.length : 0;
+        log.debug("📊 Ajustando modelo ARIMA para serie de {} observaciones", longitud);
+
+        try {
+            validarLongitud(longitud, config);
+
+            Buffers buffers = BUFFERS.get();
+            buffers.reservar(longitud, config);
+            int m = 0;
+            for (double valor : serie) {
+                if (Double.isFinite(valor)) {
+                    buffers.serie[m++] = valor;
+                }
             }
 
-            // 2. Detectar y manejar valores nulos/infinitos
-            List<Double> serieLimpia = limpiarSerie(serie);
+            return ajustarYPronosticar(buffers, m, config, previo);
 
-            // 3. Determinar orden de diferenciación (d)
-            int d = determinarOrdenDiferenciacion(serieLimpia, config.getMaxD());
+        } catch (Exception e) {
+            log.error("❌ Error ajustando modelo ARIMA: {}", e.getMessage());
+            throw new RuntimeException("Error en ajuste ARIMA: " + e.getMessage(), e);
+        }
+    }
+
+    private void validarLongitud(int longitud, ArimaConfig config) {
+        if (longitud < config.getPeriodosMinimos()) {
+            throw new IllegalArgumentException(
+                    String.format("Serie muy corta: %d observaciones (mínimo: %d)",
+                            longitud, config.getPeriodosMinimos()));
+        }
+    }
+
+    /**
+     * Pasos 3 a 6 sobre los primeros m valores de buffers.serie (ya limpios)
+     */
+    private ArimaForecast ajustarYPronosticar(Buffers buffers, int m, ArimaConfig config, ArimaModel previo) {
+
+        double desviacion = calcularDesviacionEstandar(buffers.serie, m);
+        buffers.modelosEvaluados = 0;
+
+        // Con modelo previo se conserva su orden y solo se reestiman los coeficientes
+        ArimaModel mejorModelo = previo != null ? reajustarModelo(buffers, m, previo) : null;
+        boolean reutilizado = mejorModelo != null;
+
+        if (!reutilizado) {
+            // 3. Determinar orden de diferenciación (d); deja la serie diferenciada en buffers.diferenciada
+            int d = determinarOrdenDiferenciacion(buffers, m, config.getMaxD());
             log.debug("✅ Orden de diferenciación: d={}", d);
 
-            // 4. Aplicar diferenciación
-            List<Double> serieDiferenciada = aplicarDiferenciacion(serieLimpia, d);
+            // 4. La serie diferenciada tiene m - d observaciones
+            int n = m - d;
 
             // 5. Buscar mejor combinación de (p,q)
-            ArimaModel mejorModelo = buscarMejorModelo(
-                    serieLimpia, serieDiferenciada, d, config);
+            mejorModelo = buscarMejorModelo(buffers, n, d, desviacion, config);
+        }
 
-            if (mejorModelo == null || !mejorModelo.esValido()) {
-                throw new RuntimeException("No se pudo ajustar un modelo ARIMA válido");
-            }
+        if (mejorModelo == null || !mejorModelo.esValido()) {
+            throw new RuntimeException("No se pudo ajustar un modelo ARIMA válido");
+        }
+
+        // 6. Generar pronóstico con intervalo (buffers.diferenciada sigue teniendo la serie diferenciada)
+        ArimaForecast forecast = generarPronostico(buffers.serie, m, buffers.diferenciada, desviacion, mejorModelo, config);
+        forecast.setModelo(mejorModelo);
+        forecast.setOrdenReutilizado(reutilizado);
+        forecast.setModelosEvaluados(buffers.modelosEvaluados);
 
+        // Los String.format se evalúan aunque el nivel debug esté apagado
+        if (log.isDebugEnabled()) {
             log.debug("✅ Mejor modelo: {}, AIC={}",
                     mejorModelo.getNotacion(),
                     String.format("%.2f", mejorModelo.getAic()));
-
-            // 6. Generar pronóstico con intervalo
-            ArimaForecast forecast = generarPronostico(
-                    serieLimpia, mejorModelo, config);
-
             log.debug("✅ Pronóstico: {}, Intervalo: [{}, {}]",
                     String.format("%.2f", forecast.getPronostico()),
                     String.format("%.2f", forecast.getLimiteInferior()),
                     String.format("%.2f", forecast.getLimiteSuperior()));
-
-            return forecast;
-
-        } catch (Exception e) {
-            log.error("❌ Error ajustando modelo ARIMA: {}", e.getMessage());
-            throw new RuntimeException("Error en ajuste ARIMA: " + e.getMessage(), e);
         }
+
+        return forecast;
     }
 
     /**
-     * Limpia la serie de valores nulos e infinitos
+     * ♻️ REAJUSTAR MODELO PREVIO
+     *
+     * Aplica las d diferenciaciones del modelo previo y estima de nuevo sus coeficientes con la
+     * serie actual, sin prueba de estacionariedad ni búsqueda de (p,q). Devuelve null si con ese
+     * orden ya no hay datos suficientes o el modelo no es válido.
      */
-    private List<Double> limpiarSerie(List<Double> serie) {
-        return serie.stream()
-                .filter(Objects::nonNull)
-                .filter(Double::isFinite)
-                .collect(Collectors.toList());
+    private ArimaModel reajustarModelo(Buffers buffers, int m, ArimaModel previo) {
+        int d = previo.getD();
+        boolean esMA = previo.getP() == 0 && previo.getQ() > 0;
+        int orden = esMA ? previo.getQ() : previo.getP();
+        if (d >= m || orden >= buffers.acf.length) {
+            return null;
+        }
+
+        double[] serie = buffers.diferenciada;
+        System.arraycopy(buffers.serie, 0, serie, 0, m);
+        int n = m;
+        for (int i = 0; i < d; i++) {
+            n = diferenciar(serie, n);
+        }
+        if (n < orden + 5) {
+            return null;
+        }
+
+        calcularACF(serie, n, buffers.acf.length - 1, buffers);
+        levinsonDurbin(buffers, buffers.acf.length - 1);
+        buffers.modelosEvaluados++;
+        if (!evaluarModelo(buffers, n, d, orden, esMA)) {
+            return null;
+        }
+        return construirModelo(buffers, n, d, orden, esMA);
     }
 
     /**
@@ -96,22 +197,27 @@ public class ArimaModelService {
      * - Calcula ACF(1) de la serie
      * - Si |ACF(1)| > 0.9, la serie no es estacionaria → d++
      * - Máximo d según config
+     *
+     * d=1: y'(t) = y(t) - y(t-1)
+     * d=2: y''(t) = y'(t) - y'(t-1)
      */
-    private int determinarOrdenDiferenciacion(List<Double> serie, int maxD) {
+    private int determinarOrdenDiferenciacion(Buffers buffers, int m, int maxD) {
 
-        List<Double> serieActual = new ArrayList<>(serie);
+        double[] serie = buffers.diferenciada;
+        System.arraycopy(buffers.serie, 0, serie, 0, m);
+        int longitud = m;
         int d = 0;
 
         while (d < maxD) {
-            double acf1 = calcularACF(serieActual, 1);
+            calcularACF(serie, longitud, 1, buffers);
 
             // Si ACF(1) < 0.9, consideramos estacionaria
-            if (Math.abs(acf1) < 0.9) {
+            if (Math.abs(buffers.acf[1]) < 0.9) {
                 break;
             }
 
-            // Aplicar una diferenciación más
-            serieActual = diferenciar(serieActual, 1);
+            // Aplicar una diferenciación más, en el mismo arreglo
+            longitud = diferenciar(serie, longitud);
             d++;
         }
 
@@ -119,367 +225,280 @@ public class ArimaModelService {
     }
 
     /**
-     * Aplica diferenciación a la serie
-     *
-     * d=1: y'(t) = y(t) - y(t-1)
-     * d=2: y''(t) = y'(t) - y'(t-1)
-     */
-    private List<Double> aplicarDiferenciacion(List<Double> serie, int orden) {
-        List<Double> resultado = new ArrayList<>(serie);
-
-        for (int i = 0; i < orden; i++) {
-            resultado = diferenciar(resultado, 1);
-        }
-
-        return resultado;
-    }
-
-    /**
-     * Diferencia una serie una vez
+     * Diferencia una vez los primeros valores del arreglo, en su lugar. Devuelve la nueva longitud.
      */
-    private List<Double> diferenciar(List<Double> serie, int lag) {
-        List<Double> diferenciada = new ArrayList<>();
-
-        for (int i = lag; i < serie.size(); i++) {
-            diferenciada.add(serie.get(i) - serie.get(i - lag));
+    private int diferenciar(double[] serie, int longitud) {
+        for (int i = 0; i + 1 < longitud; i++) {
+            serie[i] = serie[i + 1] - serie[i];
         }
-
-        return diferenciada;
+        return Math.max(longitud - 1, 0);
     }
 
     /**
      * 🔍 BUSCAR MEJOR MODELO ARIMA(p,d,q)
      *
-     * Grid search sobre combinaciones de p y q
-     * Selecciona el que minimiza AIC o BIC
+     * Selecciona el (p,q) que minimiza AIC o BIC, recorriendo la cuadrícula completa o de forma
+     * escalonada según config.busquedaOrden. Los candidatos se evalúan en los arreglos del
+     * hilo; solo el ganador se construye como ArimaModel. Los AR de todos los órdenes salen de
+     * una sola recursión de Levinson-Durbin, así evaluar cada (p,q) no recorre la serie.
      */
-    private ArimaModel buscarMejorModelo(
-            List<Double> serieOriginal,
-            List<Double> serieDiferenciada,
-            int d,
-            ArimaConfig config) {
-
-        ArimaModel mejorModelo = null;
-        double mejorCriterio = Double.MAX_VALUE;
+    private ArimaModel buscarMejorModelo(Buffers buffers, int n, int d, double desviacion, ArimaConfig config) {
 
-        // Probar todas las combinaciones de (p, q)
-        for (int p = 0; p <= config.getMaxP(); p++) {
-            for (int q = 0; q <= config.getMaxQ(); q++) {
+        boolean porBIC = "BIC".equals(config.getCriterioSeleccion());
 
-                // Saltar (0,0,0) que no tiene sentido
-                if (p == 0 && d == 0 && q == 0) continue;
+        // ACF de la serie diferenciada hasta el mayor retardo de la búsqueda, una sola vez,
+        // y de ella los AR(1)..AR(k) de Yule-Walker
+        calcularACF(buffers.diferenciada, n, buffers.acf.length - 1, buffers);
+        levinsonDurbin(buffers, buffers.acf.length - 1);
 
-                try {
-                    ArimaModel modelo = ajustarModelo(
-                            serieOriginal, serieDiferenciada, p, d, q);
+        buffers.mejorOrden = -1;
+        buffers.mejorEsMA = false;
+        buffers.mejorCriterio = Double.MAX_VALUE;
+        Arrays.fill(buffers.visitados, false);
 
-                    if (modelo == null || !modelo.esValido()) continue;
-
-                    // Seleccionar por criterio (AIC o BIC)
-                    double criterio = "BIC".equals(config.getCriterioSeleccion()) ?
-                            modelo.getBic() : modelo.getAic();
-
-                    if (criterio < mejorCriterio) {
-                        mejorCriterio = criterio;
-                        mejorModelo = modelo;
-                    }
-
-                } catch (Exception e) {
-                    log.debug("⚠️ No se pudo ajustar ARIMA({},{},{}): {}",
-                            p, d, q, e.getMessage());
+        if ("ESCALONADA".equals(config.getBusquedaOrden())) {
+            buscarEscalonado(buffers, n, d, desviacion, porBIC, config);
+        } else {
+            // Probar todas las combinaciones de (p, q)
+            for (int p = 0; p <= config.getMaxP(); p++) {
+                for (int q = 0; q <= config.getMaxQ(); q++) {
+                    probarOrden(buffers, n, d, desviacion, p, q, porBIC, config);
                 }
             }
         }
 
-        return mejorModelo;
+        if (buffers.mejorOrden < 0) {
+            return null;
+        }
+        evaluarModelo(buffers, n, d, buffers.mejorOrden, buffers.mejorEsMA);
+        return construirModelo(buffers, n, d, buffers.mejorOrden, buffers.mejorEsMA);
     }
 
     /**
-     * 🔧 AJUSTAR MODELO ARIMA(p,d,q)
+     * 🪜 BÚSQUEDA ESCALONADA (estilo Hyndman-Khandakar)
      *
-     * Implementación simplificada usando mínimos cuadrados
+     * Evalúa unas semillas, toma la mejor y se mueve al primer vecino (p±1, q±1) que mejore el
+     * criterio; se detiene cuando ningún vecino mejora o al llegar a config.maxModelosPorSerie.
      */
-    /**
-     * 🔧 AJUSTAR MODELO ARIMA(p,d,q) - MEJORADO
-     */
-    private ArimaModel ajustarModelo(
-            List<Double> serieOriginal,
-            List<Double> serieDiferenciada,
-            int p, int d, int q) {
-
-        int n = serieDiferenciada.size();
-
-        // Validar que tenemos suficientes datos
-        if (n < Math.max(p, q) + 5) { // Más tolerante
-            return null;
+    private void buscarEscalonado(Buffers buffers, int n, int d, double desviacion,
+                                  boolean porBIC, ArimaConfig config) {
+        int limite = config.getMaxModelosPorSerie() > 0 ? config.getMaxModelosPorSerie() : Integer.MAX_VALUE;
+
+        int actualP = -1;
+        int actualQ = -1;
+        double actual = Double.MAX_VALUE;
+        for (int[] semilla : SEMILLAS) {
+            if (buffers.modelosEvaluados >= limite) break;
+            int p = Math.min(semilla[0], config.getMaxP());
+            int q = Math.min(semilla[1], config.getMaxQ());
+            double criterio = probarOrden(buffers, n, d, desviacion, p, q, porBIC, config);
+            if (criterio < actual) {
+                actual = criterio;
+                actualP = p;
+                actualQ = q;
+            }
         }
 
-        try {
-            // Para series con poca variación, usar modelo más simple
-            double rango = Collections.max(serieOriginal) - Collections.min(serieOriginal);
-            double desviacion = calcularDesviacionEstandar(serieOriginal);
-
-            // Si la serie tiene poca variación, forzar modelo simple
-            if (desviacion < 0.1) {
-                p = Math.min(p, 1);
-                q = Math.min(q, 1);
+        boolean mejoro = actualP >= 0;
+        while (mejoro && buffers.modelosEvaluados < limite) {
+            mejoro = false;
+            for (int[] paso : VECINOS) {
+                if (buffers.modelosEvaluados >= limite) break;
+                int p = actualP + paso[0];
+                int q = actualQ + paso[1];
+                if (p < 0 || q < 0 || p > config.getMaxP() || q > config.getMaxQ()) continue;
+
+                double criterio = probarOrden(buffers, n, d, desviacion, p, q, porBIC, config);
+                if (criterio < actual) {
+                    actual = criterio;
+                    actualP = p;
+                    actualQ = q;
+                    mejoro = true;
+                    break;
+                }
             }
+        }
+    }
 
-            if (q == 0) {
-                return ajustarAR(serieDiferenciada, p, d, n);
-            } else if (p == 0) {
-                return ajustarMA(serieDiferenciada, q, d, n);
-            } else {
-                // Para ARMA, preferir componente AR
-                return ajustarAR(serieDiferenciada, Math.max(p, 1), d, n);
-            }
-        } catch (Exception e) {
-            log.debug("⚠️ Error ajustando ARIMA({},{},{}): {}", p, d, q, e.getMessage());
-            return null;
+    /**
+     * Evalúa el candidato (p,q) y actualiza el mejor de los arreglos del hilo. Varias celdas (p,q)
+     * dan el mismo modelo (orden, esMA): cada modelo se ajusta y se cuenta una sola vez por búsqueda.
+     * Devuelve su criterio, o Double.MAX_VALUE si se omite, ya se probó o no es válido.
+     */
+    private double probarOrden(Buffers buffers, int n, int d, double desviacion,
+                               int p, int q, boolean porBIC, ArimaConfig config) {
+        // Saltar (0,0,0) que no tiene sentido
+        if (p == 0 && d == 0 && q == 0) return Double.MAX_VALUE;
+
+        // Validar que tenemos suficientes datos (más tolerante)
+        if (n < Math.max(p, q) + 5) return Double.MAX_VALUE;
+
+        // Si la serie tiene poca variación, forzar modelo simple
+        int pEfectivo = desviacion < 0.1 ? Math.min(p, 1) : p;
+        int qEfectivo = desviacion < 0.1 ? Math.min(q, 1) : q;
+
+        // AR(p) si q=0, MA(q) si p=0; para ARMA, preferir componente AR
+        boolean esMA = qEfectivo != 0 && pEfectivo == 0;
+        int orden = esMA ? qEfectivo : (qEfectivo == 0 ? pEfectivo : Math.max(pEfectivo, 1));
+
+        int modelo = esMA ? buffers.acf.length + orden : orden;
+        if (buffers.visitados[modelo]) return Double.MAX_VALUE;
+        buffers.visitados[modelo] = true;
+
+        buffers.modelosEvaluados++;
+        if (!evaluarModelo(buffers, n, d, orden, esMA)) return Double.MAX_VALUE;
+
+        // Seleccionar por criterio (AIC o BIC)
+        double criterio = porBIC ? buffers.bic : buffers.aic;
+        if (criterio < buffers.mejorCriterio) {
+            buffers.mejorCriterio = criterio;
+            buffers.mejorOrden = orden;
+            buffers.mejorEsMA = esMA;
         }
+        return criterio;
     }
 
     /**
-     * Ajusta modelo AR(p) usando Yule-Walker - MEJORADO
+     * 🔧 EVALUAR MODELO AR(orden) o MA(orden) sobre la serie diferenciada
+     *
+     * Deja coeficientes en los arreglos del hilo, y AIC, BIC y varianza de los residuos en sus
+     * campos. Los AR toman coeficientes y varianza de innovación de levinsonDurbin; sus residuos
+     * se calculan solo al construir el modelo elegido. Devuelve si el modelo es válido.
      */
-    private ArimaModel ajustarAR(List<Double> serie, int p, int d, int n) {
-        try {
-            // Si p=0, usar modelo simple de media
-            if (p == 0) {
-                double media = media(serie);
-                double varianza = varianza(serie.stream().mapToDouble(Double::doubleValue).toArray());
-
-                return ArimaModel.builder()
-                        .p(0)
-                        .d(d)
-                        .q(0)
-                        .coeficientesAR(new double[0])
-                        .coeficientesMA(new double[0])
-                        .intercepto(media)
-                        .aic(calcularAICSimple(serie, media, varianza, 1, n))
-                        .bic(calcularBICSimple(serie, media, varianza, 1, n))
-                        .errorEstandar(Math.sqrt(varianza))
-                        .varianzaResiduos(varianza)
-                        .numeroObservaciones(n)
-                        .fueDiferenciada(d > 0)
-                        .mediaOriginal(media(serie))
-                        .esEstacionario(true)
-                        .residuos(calcularResiduosMedia(serie, media))
-                        .build();
+    private boolean evaluarModelo(Buffers buffers, int n, int d, int orden, boolean esMA) {
+        double[] serie = buffers.diferenciada;
+        double[] residuos = buffers.residuos;
+        double[] coefs = buffers.coeficientes;
+
+        double sigmaSquared;
+        double logLik;
+        if (esMA) {
+            // MA requiere algoritmo iterativo (Box-Jenkins); aproximación: ACF como coeficientes
+            // y residuos como innovaciones respecto a la media
+            for (int i = 0; i < orden; i++) {
+                coefs[i] = buffers.acf[i + 1] * 0.8;
             }
-
-            // Calcular autocorrelaciones
-            double[] acf = new double[p + 1];
-            for (int k = 0; k <= p; k++) {
-                acf[k] = calcularACF(serie, k);
+            double mean = media(serie, n);
+            for (int i = 0; i < n; i++) {
+                residuos[i] = serie[i] - mean;
             }
-
-            // Resolver ecuaciones de Yule-Walker simplificado
-            double[] coefs = new double[p];
-            for (int i = 0; i < p; i++) {
-                coefs[i] = acf[i + 1] * 0.8; // Coeficiente conservador
+            buffers.residuosUsados = n;
+            sigmaSquared = varianza(residuos, n);
+            logLik = -0.5 * n * Math.log(2 * Math.PI * sigmaSquared) - 0.5 * n;
+
+        } else if (orden == 0) {
+            // Modelo simple de media
+            double mean = media(serie, n);
+            for (int i = 0; i < n; i++) {
+                residuos[i] = serie[i] - mean;
             }
+            buffers.residuosUsados = n;
+            sigmaSquared = varianza(serie, n);
+            logLik = -0.5 * n * Math.log(2 * Math.PI * sigmaSquared) - 0.5 * n;
 
-            // Limitar coeficientes para estabilidad
-            for (int i = 0; i < p; i++) {
-                coefs[i] = Math.max(Math.min(coefs[i], 0.9), -0.9);
+        } else {
+            // Yule-Walker: fila 'orden' de la recursión de Levinson-Durbin
+            int fila = orden * buffers.acf.length;
+            for (int i = 0; i < orden; i++) {
+                coefs[i] = buffers.phi[fila + i + 1];
             }
-
-            double[] residuos = calcularResiduosAR(serie, coefs);
-            double sigmaSquared = Math.max(varianza(residuos), 1e-6); // Evitar varianza cero
-
-            // Calcular métricas
-            double logLik = calcularLogLikelihood(residuos, sigmaSquared, n);
-            double numParams = p + 1;
-            double aic = -2 * logLik + 2 * numParams;
-            double bic = -2 * logLik + numParams * Math.log(n);
-
-            return ArimaModel.builder()
-                    .p(p)
-                    .d(d)
-                    .q(0)
-                    .coeficientesAR(coefs)
-                    .coeficientesMA(new double[0])
-                    .intercepto(0)
-                    .aic(aic)
-                    .bic(bic)
-                    .errorEstandar(Math.sqrt(sigmaSquared))
-                    .varianzaResiduos(sigmaSquared)
-                    .numeroObservaciones(n)
-                    .fueDiferenciada(d > 0)
-                    .mediaOriginal(media(serie))
-                    .esEstacionario(true)
-                    .residuos(residuos)
-                    .build();
-        } catch (Exception e) {
-            log.debug("⚠️ Error en ajustarAR({}): {}", p, e.getMessage());
-            return null;
+            sigmaSquared = Math.max(buffers.varianzaAR[orden], 1e-6); // Evitar varianza cero
+            logLik = -0.5 * n * Math.log(2 * Math.PI * sigmaSquared) - 0.5 * n;
         }
-    }
-
-    // Métodos auxiliares nuevos
-    private double calcularAICSimple(List<Double> serie, double media, double varianza, int params, int n) {
-        double logLik = -0.5 * n * Math.log(2 * Math.PI * varianza) - 0.5 * n;
-        return -2 * logLik + 2 * params;
-    }
 
-    private double calcularBICSimple(List<Double> serie, double media, double varianza, int params, int n) {
-        double logLik = -0.5 * n * Math.log(2 * Math.PI * varianza) - 0.5 * n;
-        return -2 * logLik + params * Math.log(n);
-    }
-
-    private double[] calcularResiduosMedia(List<Double> serie, double media) {
-        return serie.stream().mapToDouble(x -> x - media).toArray();
-    }
+        double numParams = orden + 1;
+        buffers.aic = -2 * logLik + 2 * numParams;
+        buffers.bic = -2 * logLik + numParams * Math.log(n);
+        buffers.varianzaResiduos = sigmaSquared;
 
-    private double calcularLogLikelihood(double[] residuos, double sigmaSquared, int n) {
-        return -0.5 * n * Math.log(2 * Math.PI * sigmaSquared) -
-                0.5 * Arrays.stream(residuos).map(r -> r * r / sigmaSquared).sum();
+        return ArimaModel.esValido(esMA ? 0 : orden, d, esMA ? orden : 0, n, Math.sqrt(sigmaSquared));
     }
 
-    
-
     /**
-     * Ajusta modelo MA(q) - aproximación simple
+     * Construye el modelo evaluado en los arreglos del hilo, copiando coeficientes y residuos
      */
-    private ArimaModel ajustarMA(List<Double> serie, int q, int d, int n) {
-
-        // MA requiere algoritmo iterativo (Box-Jenkins)
-        // Usamos aproximación: ajustar AR(q) y convertir
-
-        double[] coefs = new double[q];
-        for (int i = 0; i < q; i++) {
-            coefs[i] = calcularACF(serie, i + 1) * 0.8; // Aproximación
+    private ArimaModel construirModelo(Buffers buffers, int n, int d, int orden, boolean esMA) {
+        double[] coefs = Arrays.copyOf(buffers.coeficientes, orden);
+        if (!esMA && orden > 0) {
+            // Residuos del AR sobre la serie centrada que dejó calcularACF
+            buffers.residuosUsados = calcularResiduosAR(buffers.centrada, n, coefs, orden, buffers.residuos);
         }
-
-        double[] residuos = calcularResiduosMA(serie, coefs);
-        double sigmaSquared = varianza(residuos);
-
-        double logLik = -0.5 * n * Math.log(2 * Math.PI * sigmaSquared) -
-                0.5 * n;
-        double numParams = q + 1;
-        double aic = -2 * logLik + 2 * numParams;
-        double bic = -2 * logLik + numParams * Math.log(n);
+        double media = media(buffers.diferenciada, n);
 
         return ArimaModel.builder()
-                .p(0)
+                .p(esMA ? 0 : orden)
                 .d(d)
-                .q(q)
-                .coeficientesAR(new double[0])
-                .coeficientesMA(coefs)
-                .intercepto(0)
-                .aic(aic)
-                .bic(bic)
-                .errorEstandar(Math.sqrt(sigmaSquared))
-                .varianzaResiduos(sigmaSquared)
+                .q(esMA ? orden : 0)
+                .coeficientesAR(esMA ? new double[0] : coefs)
+                .coeficientesMA(esMA ? coefs : new double[0])
+                .intercepto(!esMA && orden == 0 ? media : 0)
+                .aic(buffers.aic)
+                .bic(buffers.bic)
+                .errorEstandar(Math.sqrt(buffers.varianzaResiduos))
+                .varianzaResiduos(buffers.varianzaResiduos)
                 .numeroObservaciones(n)
                 .fueDiferenciada(d > 0)
-                .mediaOriginal(media(serie))
+                .mediaOriginal(media)
                 .esEstacionario(true)
-                .residuos(residuos)
+                .residuos(Arrays.copyOf(buffers.residuos, buffers.residuosUsados))
                 .build();
     }
 
-    /**
-     * Ajusta modelo ARMA(p,q) - aproximación básica
-     */
-    private ArimaModel ajustarARMA(List<Double> serie, int p, int q, int d, int n) {
-        // Para ARMA completo, usamos el componente AR principalmente
-        // y ajustamos residuos con MA
-        return ajustarAR(serie, Math.max(p, q), d, n);
-    }
-
     /**
      * 🔮 GENERAR PRONÓSTICO CON INTERVALO
      *
      * Según PDF Página 3: Intervalo = ŷ ± 1.96 × SE
-     */
-   /* private ArimaForecast generarPronostico(
-            List<Double> serieOriginal,
-            ArimaModel modelo,
-            ArimaConfig config) {
-
-        // Pronóstico depende del tipo de modelo
-        double pronostico;
-
-        if (modelo.getQ() == 0 && modelo.getP() > 0) {
-            // Modelo AR(p)
-            pronostico = pronosticarAR(serieOriginal, modelo);
-        } else if (modelo.getP() == 0 && modelo.getQ() > 0) {
-            // Modelo MA(q) - pronóstico es la media
-            pronostico = media(serieOriginal);
-        } else {
-            // ARMA - usar componente AR
-            pronostico = pronosticarAR(serieOriginal, modelo);
-        }
-
-        // Revertir diferenciación si fue aplicada
-        if (modelo.getD() > 0) {
-            // Para d=1: y(t+1) = y(t) + Δy(t+1)
-            double ultimo = serieOriginal.get(serieOriginal.size() - 1);
-            pronostico = ultimo + pronostico;
-        }
-
-        // Error estándar del pronóstico
-        double se = modelo.getErrorEstandar();
-
-        // Intervalo de predicción 95% (PDF Página 3)
-        double z = config.getValorZ(); // 1.96 para 95%
-        double li = pronostico - z * se;
-        double ls = pronostico + z * se;
-
-        return ArimaForecast.builder()
-                .pronostico(pronostico)
-                .limiteInferior(li)
-                .limiteSuperior(ls)
-                .errorEstandar(se)
-                .nivelConfianza(config.getNivelConfianza())
-                .build();
-    }*/
-
-    /**
-     * 🔮 GENERAR PRONÓSTICO CON INTERVALO - MEJORADO
-     *
-     * Según PDF Página 3: Intervalo = ŷ ± 1.96 × SE
      * Mejorar cálculo del error estándar para modelos no-AR
+     *
+     * El modelo se ajustó sobre la serie diferenciada d veces (sus primeros n valores en
+     * diferenciada): se pronostica esa serie y después se revierte la diferenciación.
      */
     private ArimaForecast generarPronostico(
-            List<Double> serieOriginal,
+            double[] serieOriginal,
+            int m,
+            double[] diferenciada,
+            double desviacion,
             ArimaModel modelo,
             ArimaConfig config) {
 
         double pronostico;
         double se = modelo.getErrorEstandar();
+        double ultimo = serieOriginal[m - 1];
+        int n = modelo.getNumeroObservaciones();
 
         // Mejorar cálculo según tipo de modelo
         if (modelo.getQ() == 0 && modelo.getP() > 0) {
             // Modelo AR(p)
-            pronostico = pronosticarAR(serieOriginal, modelo);
+            pronostico = pronosticarAR(diferenciada, n, modelo);
         } else if (modelo.getP() == 0 && modelo.getQ() > 0) {
-            // Modelo MA(q) - pronóstico basado en media de residuos
-            pronostico = media(serieOriginal);
+            // Modelo MA(q) - pronóstico basado en la media de la serie diferenciada
+            pronostico = modelo.getMediaOriginal();
             // Aumentar SE para modelos MA por simplicidad
             se = se * 1.2;
         } else if (modelo.getP() > 0 && modelo.getQ() > 0) {
             // ARMA - usar componente AR principalmente
-            pronostico = pronosticarAR(serieOriginal, modelo);
+            pronostico = pronosticarAR(diferenciada, n, modelo);
         } else {
-            // Modelo simple - usar última observación
-            pronostico = serieOriginal.get(serieOriginal.size() - 1);
-            se = calcularDesviacionEstandar(serieOriginal);
+            // Modelo simple - sin diferenciar, la última observación; diferenciada, su media (deriva)
+            pronostico = modelo.getD() > 0 ? modelo.getMediaOriginal() : ultimo;
+            se = desviacion;
         }
 
         // Revertir diferenciación si fue aplicada
         if (modelo.getD() > 0) {
-            double ultimo = serieOriginal.get(serieOriginal.size() - 1);
-            pronostico = ultimo + pronostico;
+            pronostico = revertirDiferenciacion(serieOriginal, m, modelo.getD(), pronostico);
             // Ajustar SE para diferenciación
             se = se * Math.sqrt(1 + modelo.getD() * 0.1);
         }
 
         // Asegurar que SE no sea demasiado pequeño
-        double rangoSerie = Collections.max(serieOriginal) - Collections.min(serieOriginal);
-        se = Math.max(se, rangoSerie * 0.05);
+        double minimo = serieOriginal[0];
+        double maximo = serieOriginal[0];
+        for (int i = 1; i < m; i++) {
+            minimo = Math.min(minimo, serieOriginal[i]);
+            maximo = Math.max(maximo, serieOriginal[i]);
+        }
+        se = Math.max(se, (maximo - minimo) * 0.05);
 
         // Intervalo de predicción 95% (PDF Página 3)
         double z = config.getValorZ();
@@ -496,117 +515,227 @@ public class ArimaModelService {
     }
 
     /**
-     * Calcula desviación estándar de una serie
+     * Pronosticar un paso adelante con modelo AR. Los coeficientes de Yule-Walker se estimaron
+     * sobre la serie diferenciada centrada: se aplican a las desviaciones respecto a su media
+     * y la media se vuelve a sumar.
      */
-    private double calcularDesviacionEstandar(List<Double> serie) {
-        double mean = media(serie);
-        double sumSquaredDiff = 0;
-        for (double val : serie) {
-            sumSquaredDiff += Math.pow(val - mean, 2);
+    private double pronosticarAR(double[] diferenciada, int n, ArimaModel modelo) {
+        int p = modelo.getP();
+        double[] coefs = modelo.getCoeficientesAR();
+        double mean = modelo.getMediaOriginal();
+
+        double forecast = mean;
+        for (int i = 0; i < p && i < n; i++) {
+            forecast += coefs[i] * (diferenciada[n - 1 - i] - mean);
         }
-        return Math.sqrt(sumSquaredDiff / serie.size());
-    }
 
+        return forecast;
+    }
 
     /**
-     * Pronosticar un paso adelante con modelo AR
+     * Lleva el pronóstico de la serie diferenciada d veces a la escala original: en cada nivel
+     * k (de d-1 a 0) el pronóstico es el último valor de ese nivel más el pronóstico del siguiente
      */
-    private double pronosticarAR(List<Double> serie, ArimaModel modelo) {
-        int p = modelo.getP();
-        double[] coefs = modelo.getCoeficientesAR();
-
-        double forecast = 0;
-        for (int i = 0; i < p && i < serie.size(); i++) {
-            forecast += coefs[i] * serie.get(serie.size() - 1 - i);
+    private double revertirDiferenciacion(double[] serie, int m, int d, double pronostico) {
+        for (int k = d - 1; k >= 0; k--) {
+            pronostico += ultimaDiferencia(serie, m, k);
         }
+        return pronostico;
+    }
 
-        return forecast;
+    /**
+     * Último valor de la serie diferenciada k veces: Σ (-1)^j C(k,j) y[m-1-j]
+     */
+    private double ultimaDiferencia(double[] serie, int m, int k) {
+        double valor = 0;
+        double coeficiente = 1;
+        for (int j = 0; j <= k; j++) {
+            valor += coeficiente * serie[m - 1 - j];
+            coeficiente = -coeficiente * (k - j) / (j + 1);
+        }
+        return valor;
     }
 
     // ========== FUNCIONES AUXILIARES ESTADÍSTICAS ==========
 
     /**
-     * Calcula Función de Autocorrelación (ACF) para lag k
+     * Calcula la Función de Autocorrelación (ACF) para los retardos 0..maxRetardo en buffers.acf.
+     * Media y covarianza de retardo 0 se calculan una vez; las covarianzas de todos los retardos
+     * se acumulan en un solo recorrido de la serie centrada.
      */
-    private double calcularACF(List<Double> serie, int k) {
-        if (k >= serie.size()) return 0;
-
-        double mean = media(serie);
-        int n = serie.size();
+    private void calcularACF(double[] serie, int n, int maxRetardo, Buffers buffers) {
+        double[] acf = buffers.acf;
+        double[] centrada = buffers.centrada;
 
+        double mean = media(serie, n);
         double cov0 = 0;
-        for (double val : serie) {
-            cov0 += Math.pow(val - mean, 2);
+        for (int i = 0; i < n; i++) {
+            centrada[i] = serie[i] - mean;
+            cov0 += centrada[i] * centrada[i];
         }
+        buffers.varianzaSerie = n > 0 ? cov0 / n : 0.0;
 
-        if (k == 0) return 1.0;
-
-        double covk = 0;
-        for (int i = k; i < n; i++) {
-            covk += (serie.get(i) - mean) * (serie.get(i - k) - mean);
+        Arrays.fill(acf, 0, maxRetardo + 1, 0.0);
+        for (int i = 1; i < n; i++) {
+            int hasta = Math.min(maxRetardo, i);
+            for (int k = 1; k <= hasta; k++) {
+                acf[k] += centrada[i] * centrada[i - k];
+            }
         }
 
-        return covk / (cov0 + 1e-10);
+        for (int k = 0; k <= maxRetardo; k++) {
+            if (k >= n) {
+                acf[k] = 0;
+            } else if (k == 0) {
+                acf[k] = 1.0;
+            } else {
+                acf[k] = acf[k] / (cov0 + 1e-10);
+            }
+        }
     }
 
     /**
-     * Calcula residuos de modelo AR
+     * Recursión de Levinson-Durbin sobre buffers.acf: resuelve las ecuaciones de Yule-Walker de
+     * AR(1)..AR(maxOrden) en O(maxOrden²). La fila k de buffers.phi tiene φ(k,1..k) y
+     * buffers.varianzaAR[k] la varianza de innovación de AR(k); con la ACF sesgada de
+     * calcularACF los coeficientes de reflexión quedan en (-1, 1) y cada AR es estacionario.
      */
-    private double[] calcularResiduosAR(List<Double> serie, double[] coefs) {
-        int p = coefs.length;
-        int n = serie.size();
-        double[] residuos = new double[n - p];
+    private void levinsonDurbin(Buffers buffers, int maxOrden) {
+        double[] acf = buffers.acf;
+        double[] phi = buffers.phi;
+        double[] varianzaAR = buffers.varianzaAR;
+        int ancho = acf.length;
+
+        // Varianza de innovación relativa a la de la serie
+        double error = 1.0;
+        varianzaAR[0] = buffers.varianzaSerie;
+
+        for (int k = 1; k <= maxOrden; k++) {
+            int fila = k * ancho;
+            int anterior = fila - ancho;
+
+            double numerador = acf[k];
+            for (int j = 1; j < k; j++) {
+                numerador -= phi[anterior + j] * acf[k - j];
+            }
+            double reflexion = error > 1e-12 ? numerador / error : 0.0;
 
+            for (int j = 1; j < k; j++) {
+                phi[fila + j] = phi[anterior + j] - reflexion * phi[anterior + k - j];
+            }
+            phi[fila + k] = reflexion;
+
+            error *= Math.max(1 - reflexion * reflexion, 0.0);
+            varianzaAR[k] = buffers.varianzaSerie * error;
+        }
+    }
+
+    /**
+     * Calcula residuos de modelo AR en el arreglo indicado. Devuelve cuántos escribió (n - p).
+     */
+    private int calcularResiduosAR(double[] serie, int n, double[] coefs, int p, double[] residuos) {
         for (int t = p; t < n; t++) {
             double pred = 0;
             for (int i = 0; i < p; i++) {
-                pred += coefs[i] * serie.get(t - i - 1);
+                pred += coefs[i] * serie[t - i - 1];
             }
-            residuos[t - p] = serie.get(t) - pred;
+            residuos[t - p] = serie[t] - pred;
         }
 
-        return residuos;
+        return Math.max(n - p, 0);
     }
 
     /**
-     * Calcula residuos de modelo MA (aproximación)
+     * Calcula desviación estándar de los primeros n valores
      */
-    private double[] calcularResiduosMA(List<Double> serie, double[] coefs) {
-        int n = serie.size();
-        double[] residuos = new double[n];
-        double mean = media(serie);
-
-        // Aproximación: residuos como innovaciones
+    private double calcularDesviacionEstandar(double[] serie, int n) {
+        double mean = media(serie, n);
+        double sumSquaredDiff = 0;
         for (int i = 0; i < n; i++) {
-            residuos[i] = serie.get(i) - mean;
+            double diferencia = serie[i] - mean;
+            sumSquaredDiff += diferencia * diferencia;
         }
-
-        return residuos;
+        return Math.sqrt(sumSquaredDiff / n);
     }
 
     /**
-     * Calcula media de una serie
+     * Calcula media de los primeros n valores
      */
-    private double media(List<Double> serie) {
-        return serie.stream()
-                .mapToDouble(Double::doubleValue)
-                .average()
-                .orElse(0.0);
+    private double media(double[] serie, int n) {
+        if (n == 0) return 0.0;
+
+        double suma = 0;
+        for (int i = 0; i < n; i++) {
+            suma += serie[i];
+        }
+        return suma / n;
     }
 
     /**
-     * Calcula varianza de un array
+     * Calcula varianza poblacional de los primeros n valores
      */
-    private double varianza(double[] valores) {
-        if (valores.length == 0) return 0;
+    private double varianza(double[] valores, int n) {
+        if (n == 0) return 0;
 
-        double mean = Arrays.stream(valores).average().orElse(0);
+        double mean = media(valores, n);
         double variance = 0;
 
-        for (double val : valores) {
-            variance += Math.pow(val - mean, 2);
+        for (int i = 0; i < n; i++) {
+            double diferencia = valores[i] - mean;
+            variance += diferencia * diferencia;
         }
 
-        return variance / valores.length;
+        return variance / n;
+    }
+
+    /**
+     * Arreglos de trabajo de un hilo y resultados del último modelo evaluado
+     */
+    private static final class Buffers {
+        double[] serie = new double[0];
+        double[] diferenciada = new double[0];
+        double[] centrada = new double[0];
+        double[] residuos = new double[0];
+        double[] coeficientes = new double[0];
+        double[] acf = new double[0];
+
+        // Levinson-Durbin: coeficientes de AR(k) en la fila k (ancho acf.length) y su varianza
+        double[] phi = new double[0];
+        double[] varianzaAR = new double[0];
+        double varianzaSerie;
+
+        int residuosUsados;
+        double aic;
+        double bic;
+        double varianzaResiduos;
+
+        // Búsqueda del orden: modelos AR(orden) y luego MA(orden) ya ajustados, mejor candidato y modelos evaluados
+        boolean[] visitados = new boolean[0];
+        int mejorOrden;
+        boolean mejorEsMA;
+        double mejorCriterio;
+        int modelosEvaluados;
+
+        /**
+         * Asegura capacidad para una serie de la longitud dada y los retardos de la búsqueda
+         */
+        void reservar(int longitud, ArimaConfig config) {
+            if (serie.length < longitud) {
+                serie = new double[longitud];
+                diferenciada = new double[longitud];
+                centrada = new double[longitud];
+                residuos = new double[longitud];
+            }
+            int retardos = Math.max(Math.max(config.getMaxP(), config.getMaxQ()), 1);
+            if (coeficientes.length < retardos) {
+                coeficientes = new double[retardos];
+            }
+            if (acf.length != retardos + 1) {
+                acf = new double[retardos + 1];
+                phi = new double[(retardos + 1) * (retardos + 1)];
+                varianzaAR = new double[retardos + 1];
+                visitados = new boolean[2 * (retardos + 1)];
+            }
+        }
     }
 }
\ No newline at end of file
@@ -1,12 +1,18 @@
 package com.resumen.nomina.alertas.arima.application.service;
 
 import com.resumen.nomina.alertas.arima.domain.model.*;
+import com.resumen.nomina.alertas.arima.domain.repository.ArimaModeloRepository;
 import com.resumen.nomina.alertas.arima.domain.repository.ArimaRepository;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -19,11 +25,41 @@ import java.util.stream.Collectors;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ArimaService {
 
     private final ArimaRepository repository;
     private final ArimaModelService modelService;
+    private final ArimaModeloRepository modeloRepository;
+
+    // Días que se reutiliza el orden de un modelo guardado antes de buscarlo de nuevo (0 = no guardar)
+    private final int diasVigencia;
+
+    // Búsqueda del orden (p,q): EXHAUSTIVA o ESCALONADA (ver ArimaConfig.busquedaOrden)
+    private final String busquedaOrden;
+
+    // Hilos que ajustan series en paralelo; viven con el servicio para reutilizar sus buffers
+    private final ExecutorService executor;
+    private final int hilos;
+
+    public ArimaService(ArimaRepository repository, ArimaModelService modelService,
+                        ArimaModeloRepository modeloRepository,
+                        @Value("${alertas.arima.hilos:0}") int hilos,
+                        @Value("${alertas.arima.modelo.dias:28}") int diasVigencia,
+                        @Value("${alertas.arima.busqueda:EXHAUSTIVA}") String busquedaOrden) {
+        this.repository = repository;
+        this.modelService = modelService;
+        this.modeloRepository = modeloRepository;
+        this.diasVigencia = diasVigencia;
+        this.busquedaOrden = busquedaOrden;
+        this.hilos = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.hilos, tarea -> {
+            Thread hilo = new Thread(tarea, "arima-ajuste-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
 
     /**
      * 🎯 MÉTODO PRINCIPAL
@@ -42,6 +78,7 @@ public class ArimaService {
 
         try {
             ArimaConfig config = ArimaConfig.porDefecto();
+            config.setBusquedaOrden(busquedaOrden);
 
             // 1. Obtener series temporales históricas (excluyendo período actual)
             Map<String, List<ArimaData>> seriesTemporales =
@@ -82,95 +119,62 @@ public class ArimaService {
                             }
                     ));
 
-            // 3. Calcular alertas para cada serie
-            List<ArimaResult> resultados = new ArrayList<>();
-            int sinDatoActual = 0;
-            int modelosInvalidos = 0;
-
-            for (Map.Entry<String, List<ArimaData>> entry : seriesTemporales.entrySet()) {
-                String clave = entry.getKey();
-                List<ArimaData> serieHistorica = entry.getValue();
-
-                // Obtener información del primer elemento (todos comparten identificadores)
-                ArimaData primerDato = serieHistorica.get(0);
-
-                // Buscar dato actual correspondiente
-                ArimaData datoActual = mapaActuales.get(clave);
-
-                if (datoActual == null) {
-                    log.debug("🔴 Sin dato actual: {}-{}",
-                            truncate(primerDato.getPuesto(), 20),
-                            truncate(primerDato.getIndicador(), 30));
-                    sinDatoActual++;
-                    continue;
+            // 3. Calcular alertas para cada serie. Las series son independientes: los hilos toman
+            //    la siguiente pendiente y dejan su resultado en la posición de la serie, así el
+            //    orden final es el del mapa sin importar qué hilo termine primero.
+            //    Cada serie parte de su modelo guardado, si lo tiene y sigue vigente.
+            List<Map.Entry<String, List<ArimaData>>> series = new ArrayList<>(seriesTemporales.entrySet());
+            Map<String, ArimaModeloGuardado> guardados = diasVigencia > 0
+                    ? modeloRepository.obtenerModelos(seriesTemporales.keySet())
+                    : Map.of();
+            AjusteSerie[] porSerie = new AjusteSerie[series.size()];
+            AtomicInteger siguiente = new AtomicInteger();
+            AtomicInteger contadorSinDato = new AtomicInteger();
+            AtomicInteger contadorInvalidos = new AtomicInteger();
+
+            int tareas = Math.min(hilos, series.size());
+            List<Future<?>> pendientes = new ArrayList<>(tareas);
+            for (int t = 0; t < tareas; t++) {
+                pendientes.add(executor.submit(() -> {
+                    for (int i = siguiente.getAndIncrement();
+                         i < porSerie.length && !Thread.currentThread().isInterrupted();
+                         i = siguiente.getAndIncrement()) {
+                        Map.Entry<String, List<ArimaData>> serie = series.get(i);
+                        porSerie[i] = procesarSerie(serie, mapaActuales, periodo, config,
+                                guardados.get(serie.getKey()), contadorSinDato, contadorInvalidos);
+                    }
+                }));
+            }
+            try {
+                for (Future<?> pendiente : pendientes) {
+                    pendiente.get();
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Cálculo ARIMA interrumpido", e);
+            } finally {
+                pendientes.forEach(pendiente -> pendiente.cancel(true));
+            }
 
-                // En el método calcularAlertas, antes de procesar cada serie:
+            List<AjusteSerie> ajustes = Arrays.stream(porSerie)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            List<ArimaResult> resultados = ajustes.stream()
+                    .map(AjusteSerie::resultado)
+                    .collect(Collectors.toList());
+            int sinDatoActual = contadorSinDato.get();
+            int modelosInvalidos = contadorInvalidos.get();
+
+            // Guardar los modelos para la siguiente ejecución; si falla, solo se pierde el ahorro
+            if (diasVigencia > 0) {
+                long reutilizados = ajustes.stream().filter(AjusteSerie::reutilizado).count();
+                log.info("♻️ Modelos reutilizados: {} de {} ajustados", reutilizados, ajustes.size());
                 try {
-                    // Extraer valores de la serie
-                    List<Double> valores = serieHistorica.stream()
-                            .map(ArimaData::getValor)
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
-
-                    // VALIDACIÓN MEJORADA DE DATOS
-                    if (valores.size() < config.getPeriodosMinimos()) {
-                        log.debug("⚠️ Serie muy corta: {} observaciones (mínimo: {})",
-                                valores.size(), config.getPeriodosMinimos());
-                        modelosInvalidos++;
-                        continue;
-                    }
-
-                    // Verificar que la serie tenga variación suficiente
-                    double minVal = Collections.min(valores);
-                    double maxVal = Collections.max(valores);
-                    double rango = maxVal - minVal;
-
-                    if (rango < 0.01) { // Serie muy plana
-                        log.debug("⚠️ Serie sin variación suficiente: {}-{}",
-                                truncate(primerDato.getPuesto(), 20),
-                                truncate(primerDato.getIndicador(), 30));
-                        modelosInvalidos++;
-                        continue;
-                    }
-
-
-                    // 4. Ajustar modelo ARIMA y generar pronóstico
-                    ArimaForecast forecast = modelService.ajustarYPronosticar(valores, config);
-
-                    // 5. Crear resultado comparando con observación real
-                    // En el método calcularAlertas, actualizar la creación del resultado:
-                    ArimaResult resultado = ArimaResult.crear(
-                            primerDato.getPuesto(),
-                            primerDato.getIndicador(),
-                            primerDato.getConceptoDetalle(),
-                            primerDato.getSucursal(),
-                            primerDato.getNegocio(),
-                            periodo,
-                            datoActual.getValor(),
-                            forecast,
-                            crearModeloSimplificado(valores.size()),
-                            valores.size() // ← NUEVO PARÁMETRO: cantidad de períodos históricos
-                    );
-
-                    resultados.add(resultado);
-
-                    // Log de alertas detectadas
-                    if (resultado.getFueraDeRango()) {
-                        log.debug("🚨 ALERTA: {}-{} | Obs: {}, Intervalo: [{}, {}]",
-                                truncate(resultado.getPuesto(), 20),
-                                truncate(resultado.getIndicador(), 30),
-                                String.format("%.2f", resultado.getObservacionReal()),
-                                String.format("%.2f", resultado.getLimiteInferior()),
-                                String.format("%.2f", resultado.getLimiteSuperior()));
-                    }
-
+                    modeloRepository.guardarModelos(ajustes.stream()
+                            .map(AjusteSerie::modelo)
+                            .collect(Collectors.toList()));
                 } catch (Exception e) {
-                    log.warn("❌ Error procesando serie {}-{}: {}",
-                            truncate(primerDato.getPuesto(), 20),
-                            truncate(primerDato.getIndicador(), 30),
-                            e.getMessage());
-                    modelosInvalidos++;
+                    log.warn("⚠️ No se pudieron guardar los modelos ARIMA: {}", e.getMessage());
                 }
             }
 
@@ -213,6 +217,140 @@ public class ArimaService {
         }
     }
 
+    /**
+     * Elimina los modelos guardados; la siguiente ejecución busca el orden de todas las series
+     */
+    public long eliminarModelos() {
+        long eliminados = modeloRepository.eliminarModelos();
+        log.info("🗑️ Modelos ARIMA guardados eliminados: {}", eliminados);
+        return eliminados;
+    }
+
+    @PreDestroy
+    public void detener() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 4-5. Ajusta el modelo de una serie y compara su pronóstico con el dato actual.
+     * Devuelve null si la serie no tiene dato actual o no se pudo modelar (y lo cuenta).
+     */
+    private AjusteSerie procesarSerie(Map.Entry<String, List<ArimaData>> entry,
+                                      Map<String, ArimaData> mapaActuales,
+                                      String periodo,
+                                      ArimaConfig config,
+                                      ArimaModeloGuardado guardado,
+                                      AtomicInteger sinDatoActual,
+                                      AtomicInteger modelosInvalidos) {
+        String clave = entry.getKey();
+        List<ArimaData> serieHistorica = entry.getValue();
+
+        // Obtener información del primer elemento (todos comparten identificadores)
+        ArimaData primerDato = serieHistorica.get(0);
+
+        // Buscar dato actual correspondiente
+        ArimaData datoActual = mapaActuales.get(clave);
+
+        if (datoActual == null) {
+            log.debug("🔴 Sin dato actual: {}-{}",
+                    truncate(primerDato.getPuesto(), 20),
+                    truncate(primerDato.getIndicador(), 30));
+            sinDatoActual.incrementAndGet();
+            return null;
+        }
+
+        try {
+            // Extraer valores de la serie
+            double[] valores = new double[serieHistorica.size()];
+            int cantidad = 0;
+            double minVal = Double.POSITIVE_INFINITY;
+            double maxVal = Double.NEGATIVE_INFINITY;
+            for (ArimaData dato : serieHistorica) {
+                Double valor = dato.getValor();
+                if (valor != null) {
+                    valores[cantidad++] = valor;
+                    minVal = Math.min(minVal, valor);
+                    maxVal = Math.max(maxVal, valor);
+                }
+            }
+            valores = cantidad < valores.length ? Arrays.copyOf(valores, cantidad) : valores;
+
+            // VALIDACIÓN MEJORADA DE DATOS
+            if (cantidad < config.getPeriodosMinimos()) {
+                log.debug("⚠️ Serie muy corta: {} observaciones (mínimo: {})",
+                        cantidad, config.getPeriodosMinimos());
+                modelosInvalidos.incrementAndGet();
+                return null;
+            }
+
+            // Verificar que la serie tenga variación suficiente
+            double rango = maxVal - minVal;
+
+            if (rango < 0.01) { // Serie muy plana
+                log.debug("⚠️ Serie sin variación suficiente: {}-{}",
+                        truncate(primerDato.getPuesto(), 20),
+                        truncate(primerDato.getIndicador(), 30));
+                modelosInvalidos.incrementAndGet();
+                return null;
+            }
+
+            // 4. Ajustar modelo ARIMA y generar pronóstico (con el orden guardado si sigue vigente)
+            boolean vigente = guardado != null && guardado.esVigente(config, diasVigencia);
+            ArimaForecast forecast = modelService.ajustarYPronosticar(
+                    valores, config, vigente ? guardado.getModelo() : null);
+
+            // 5. Crear resultado comparando con observación real
+            ArimaResult resultado = ArimaResult.crear(
+                    primerDato.getPuesto(),
+                    primerDato.getIndicador(),
+                    primerDato.getConceptoDetalle(),
+                    primerDato.getSucursal(),
+                    primerDato.getNegocio(),
+                    periodo,
+                    datoActual.getValor(),
+                    forecast,
+                    crearModeloSimplificado(cantidad),
+                    cantidad // ← NUEVO PARÁMETRO: cantidad de períodos históricos
+            );
+
+            // Log de alertas detectadas
+            if (resultado.getFueraDeRango() && log.isDebugEnabled()) {
+                log.debug("🚨 ALERTA: {}-{} | Obs: {}, Intervalo: [{}, {}]",
+                        truncate(resultado.getPuesto(), 20),
+                        truncate(resultado.getIndicador(), 30),
+                        String.format("%.2f", resultado.getObservacionReal()),
+                        String.format("%.2f", resultado.getLimiteInferior()),
+                        String.format("%.2f", resultado.getLimiteSuperior()));
+            }
+
+            Date ahora = new Date();
+            ArimaModeloGuardado modelo = ArimaModeloGuardado.builder()
+                    .clave(clave)
+                    .modelo(forecast.getModelo())
+                    .ultimoPeriodo(serieHistorica.get(serieHistorica.size() - 1).getPeriodo())
+                    .busqueda(config.getClaveBusqueda())
+                    .fechaBusqueda(forecast.isOrdenReutilizado() ? guardado.getFechaBusqueda() : ahora)
+                    .fechaActualizacion(ahora)
+                    .build();
+
+            return new AjusteSerie(resultado, modelo, forecast.isOrdenReutilizado());
+
+        } catch (Exception e) {
+            log.warn("❌ Error procesando serie {}-{}: {}",
+                    truncate(primerDato.getPuesto(), 20),
+                    truncate(primerDato.getIndicador(), 30),
+                    e.getMessage());
+            modelosInvalidos.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Resultado de una serie y el modelo a guardar para la siguiente ejecución
+     */
+    private record AjusteSerie(ArimaResult resultado, ArimaModeloGuardado modelo, boolean reutilizado) {
+    }
+
     /**
      * Crea un modelo simplificado para el resultado
      * (el modelo completo se genera internamente en ArimaModelService)
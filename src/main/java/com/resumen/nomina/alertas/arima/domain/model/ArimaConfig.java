@@ -69,6 +69,19 @@ public class ArimaConfig {
      */
     private String criterioSeleccion;
 
+    /**
+     * Búsqueda del orden (p,q)
+     * "EXHAUSTIVA": toda la cuadrícula [0,maxP] × [0,maxQ]
+     * "ESCALONADA": desde unas semillas, solo a órdenes vecinos mientras mejora el criterio
+     * (Hyndman-Khandakar); permite subir maxP/maxQ sin crecer cuadráticamente
+     */
+    private String busquedaOrden;
+
+    /**
+     * Máximo de modelos distintos ajustados por serie en la búsqueda escalonada (0 = sin límite)
+     */
+    private int maxModelosPorSerie;
+
     /**
      * Umbral de significancia para pruebas estadísticas
      */
@@ -86,6 +99,15 @@ public class ArimaConfig {
      */
     private Integer conceptoExcluir;
 
+    /**
+     * Parámetros que determinan qué orden elige la búsqueda. Un modelo guardado solo se
+     * reutiliza si se eligió con la misma clave.
+     */
+    public String getClaveBusqueda() {
+        return String.format("%d|%d|%d|%s|%s|%d",
+                maxP, maxD, maxQ, criterioSeleccion, busquedaOrden, maxModelosPorSerie);
+    }
+
     /**
      * 🔴 CONFIGURACIÓN POR DEFECTO
      * Basada en el documento PDF y mejores prácticas
@@ -108,6 +130,8 @@ public class ArimaConfig {
 
                 // Selección de modelo
                 .criterioSeleccion("AIC")   // Akaike Information Criterion
+                .busquedaOrden("EXHAUSTIVA") // Toda la cuadrícula (p,q)
+                .maxModelosPorSerie(20)     // Tope de la búsqueda escalonada
                 .nivelSignificancia(0.05)   // 5% para pruebas
 
                 // Exclusiones
@@ -129,6 +153,8 @@ public class ArimaConfig {
                 .maxD(1)
                 .maxQ(2)
                 .criterioSeleccion("BIC")   // BIC penaliza más la complejidad
+                .busquedaOrden("EXHAUSTIVA")
+                .maxModelosPorSerie(20)
                 .nivelSignificancia(0.05)
                 .conceptoExcluir(1011)
                 .build();
@@ -148,6 +174,8 @@ public class ArimaConfig {
                 .maxD(2)
                 .maxQ(5)
                 .criterioSeleccion("AIC")
+                .busquedaOrden("EXHAUSTIVA")
+                .maxModelosPorSerie(20)
                 .nivelSignificancia(0.05)
                 .conceptoExcluir(1011)
                 .build();
@@ -1,5 +1,6 @@
 package com.resumen.nomina.alertas.arima.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
 
@@ -39,6 +40,22 @@ public class ArimaForecast {
      */
     private double nivelConfianza;
 
+    /**
+     * Modelo con el que se generó el pronóstico
+     */
+    @JsonIgnore
+    private ArimaModel modelo;
+
+    /**
+     * El orden (p,d,q) se tomó del modelo guardado de la serie en lugar de buscarse de nuevo
+     */
+    private boolean ordenReutilizado;
+
+    /**
+     * Modelos candidatos distintos ajustados para elegir el del pronóstico
+     */
+    private int modelosEvaluados;
+
     /**
      * Ancho del intervalo
      */
@@ -114,6 +114,13 @@ public class ArimaModel {
      * Valida si el modelo es adecuado
      */
     public boolean esValido() {
+        return esValido(p, d, q, numeroObservaciones, errorEstandar);
+    }
+
+    /**
+     * Misma validación para un candidato que aún no se construye como modelo
+     */
+    public static boolean esValido(int p, int d, int q, int numeroObservaciones, double errorEstandar) {
         return numeroObservaciones >= (p + d + q + 1) * 2
                 && !Double.isNaN(errorEstandar)
                 && !Double.isInfinite(errorEstandar)
@@ -0,0 +1,59 @@
+package com.resumen.nomina.alertas.arima.domain.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 💾 MODELO ARIMA GUARDADO POR SERIE
+ *
+ * Orden y coeficientes del último ajuste de una serie. La siguiente ejecución reutiliza el
+ * orden y solo vuelve a estimar los coeficientes, hasta que la búsqueda tenga más días que
+ * la vigencia configurada.
+ */
+@Data
+@Builder
+public class ArimaModeloGuardado {
+
+    /**
+     * Clave de la serie (ver ArimaData.getClave)
+     */
+    private String clave;
+
+    /**
+     * Modelo ajustado (sin residuos)
+     */
+    private ArimaModel modelo;
+
+    /**
+     * Último periodo histórico que vio el ajuste
+     */
+    private String ultimoPeriodo;
+
+    /**
+     * Clave de la configuración con la que se buscó el orden (ArimaConfig.getClaveBusqueda)
+     */
+    private String busqueda;
+
+    /**
+     * Fecha de la última búsqueda completa del orden
+     */
+    private Date fechaBusqueda;
+
+    /**
+     * Fecha del último ajuste de coeficientes
+     */
+    private Date fechaActualizacion;
+
+    /**
+     * El orden se puede reutilizar: misma búsqueda y con menos días que la vigencia
+     */
+    public boolean esVigente(ArimaConfig config, int diasVigencia) {
+        return modelo != null
+                && fechaBusqueda != null
+                && config.getClaveBusqueda().equals(busqueda)
+                && System.currentTimeMillis() - fechaBusqueda.getTime() < TimeUnit.DAYS.toMillis(diasVigencia);
+    }
+}
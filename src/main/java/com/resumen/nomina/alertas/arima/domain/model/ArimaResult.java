@@ -68,6 +68,9 @@ public class ArimaResult {
     @JsonProperty("n_observaciones")
     private Integer numeroObservaciones;
 
+    @JsonProperty("modelos_evaluados")
+    private Integer modelosEvaluados;
+
     private String severidad;
 
     @JsonProperty("color_severidad")
@@ -152,6 +155,7 @@ public class ArimaResult {
                 .modeloNotacion(modelo.getNotacion())
                 .aic(round(modelo.getAic(), 2))
                 .numeroObservaciones(modelo.getNumeroObservaciones())
+                .modelosEvaluados(forecast.getModelosEvaluados())
                 .colorSeveridad(color)
                 .build();
     }
@@ -0,0 +1,35 @@
+package com.resumen.nomina.alertas.arima.domain.repository;
+
+import com.resumen.nomina.alertas.arima.domain.model.ArimaModeloGuardado;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 💾 REPOSITORIO DE MODELOS ARIMA
+ *
+ * Interface para guardar el modelo ajustado de cada serie entre ejecuciones
+ */
+public interface ArimaModeloRepository {
+
+    /**
+     * Obtiene los modelos guardados de las series indicadas
+     *
+     * @param claves Claves de las series
+     * @return Map con clave de la serie, valor = modelo guardado (solo las que tienen)
+     */
+    Map<String, ArimaModeloGuardado> obtenerModelos(Collection<String> claves);
+
+    /**
+     * Guarda (reemplaza) los modelos de las series
+     */
+    void guardarModelos(List<ArimaModeloGuardado> modelos);
+
+    /**
+     * Elimina todos los modelos guardados; la siguiente ejecución busca el orden de cero
+     *
+     * @return Modelos eliminados
+     */
+    long eliminarModelos();
+}
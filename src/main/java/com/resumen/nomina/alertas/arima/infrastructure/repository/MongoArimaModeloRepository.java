@@ -0,0 +1,152 @@
+package com.resumen.nomina.alertas.arima.infrastructure.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.resumen.nomina.alertas.arima.domain.model.ArimaModel;
+import com.resumen.nomina.alertas.arima.domain.model.ArimaModeloGuardado;
+import com.resumen.nomina.alertas.arima.domain.repository.ArimaModeloRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+
+/**
+ * 💾 IMPLEMENTACIÓN MONGODB DE MODELOS ARIMA
+ *
+ * Un documento por serie en ModelosArima, con la clave de la serie como _id
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class MongoArimaModeloRepository implements ArimaModeloRepository {
+
+    private final MongoTemplate mongoTemplate;
+    private static final String COLECCION = "ModelosArima";
+
+    // Claves por consulta $in, para no armar filtros enormes con todas las series
+    private static final int CLAVES_POR_CONSULTA = 5000;
+
+    @Override
+    public Map<String, ArimaModeloGuardado> obtenerModelos(Collection<String> claves) {
+        MongoCollection<Document> coleccion = mongoTemplate.getDb().getCollection(COLECCION);
+        List<String> pendientes = new ArrayList<>(claves);
+        Map<String, ArimaModeloGuardado> modelos = new HashMap<>(pendientes.size() * 2);
+
+        for (int desde = 0; desde < pendientes.size(); desde += CLAVES_POR_CONSULTA) {
+            List<String> lote = pendientes.subList(desde, Math.min(desde + CLAVES_POR_CONSULTA, pendientes.size()));
+            for (Document doc : coleccion.find(new Document("_id", new Document("$in", lote)))) {
+                ArimaModeloGuardado modelo = mapearAModelo(doc);
+                modelos.put(modelo.getClave(), modelo);
+            }
+        }
+
+        log.debug("💾 Modelos guardados encontrados: {} de {} series", modelos.size(), pendientes.size());
+        return modelos;
+    }
+
+    @Override
+    public void guardarModelos(List<ArimaModeloGuardado> modelos) {
+        if (modelos.isEmpty()) {
+            return;
+        }
+        ReplaceOptions upsert = new ReplaceOptions().upsert(true);
+        List<ReplaceOneModel<Document>> escrituras = new ArrayList<>(modelos.size());
+        for (ArimaModeloGuardado modelo : modelos) {
+            escrituras.add(new ReplaceOneModel<>(
+                    new Document("_id", modelo.getClave()), mapearADocumento(modelo), upsert));
+        }
+        mongoTemplate.getDb().getCollection(COLECCION)
+                .bulkWrite(escrituras, new BulkWriteOptions().ordered(false));
+        log.debug("💾 Modelos guardados: {}", modelos.size());
+    }
+
+    @Override
+    public long eliminarModelos() {
+        return mongoTemplate.getDb().getCollection(COLECCION).deleteMany(new Document()).getDeletedCount();
+    }
+
+    /**
+     * Mapea el modelo a Document; los residuos no se guardan
+     */
+    private Document mapearADocumento(ArimaModeloGuardado guardado) {
+        ArimaModel modelo = guardado.getModelo();
+        return new Document("_id", guardado.getClave())
+                .append("p", modelo.getP())
+                .append("d", modelo.getD())
+                .append("q", modelo.getQ())
+                .append("coeficientesAR", aLista(modelo.getCoeficientesAR()))
+                .append("coeficientesMA", aLista(modelo.getCoeficientesMA()))
+                .append("intercepto", modelo.getIntercepto())
+                .append("aic", modelo.getAic())
+                .append("bic", modelo.getBic())
+                .append("errorEstandar", modelo.getErrorEstandar())
+                .append("varianzaResiduos", modelo.getVarianzaResiduos())
+                .append("numeroObservaciones", modelo.getNumeroObservaciones())
+                .append("mediaOriginal", modelo.getMediaOriginal())
+                .append("ultimoPeriodo", guardado.getUltimoPeriodo())
+                .append("busqueda", guardado.getBusqueda())
+                .append("fechaBusqueda", guardado.getFechaBusqueda())
+                .append("fechaActualizacion", guardado.getFechaActualizacion());
+    }
+
+    /**
+     * Mapea Document a ArimaModeloGuardado
+     */
+    private ArimaModeloGuardado mapearAModelo(Document doc) {
+        int d = doc.getInteger("d", 0);
+        ArimaModel modelo = ArimaModel.builder()
+                .p(doc.getInteger("p", 0))
+                .d(d)
+                .q(doc.getInteger("q", 0))
+                .coeficientesAR(aArreglo(doc.getList("coeficientesAR", Number.class, List.of())))
+                .coeficientesMA(aArreglo(doc.getList("coeficientesMA", Number.class, List.of())))
+                .intercepto(numero(doc, "intercepto"))
+                .aic(numero(doc, "aic"))
+                .bic(numero(doc, "bic"))
+                .errorEstandar(numero(doc, "errorEstandar"))
+                .varianzaResiduos(numero(doc, "varianzaResiduos"))
+                .numeroObservaciones(doc.getInteger("numeroObservaciones", 0))
+                .fueDiferenciada(d > 0)
+                .mediaOriginal(numero(doc, "mediaOriginal"))
+                .esEstacionario(true)
+                .residuos(new double[0])
+                .build();
+
+        return ArimaModeloGuardado.builder()
+                .clave(doc.getString("_id"))
+                .modelo(modelo)
+                .ultimoPeriodo(doc.getString("ultimoPeriodo"))
+                .busqueda(doc.getString("busqueda"))
+                .fechaBusqueda(doc.getDate("fechaBusqueda"))
+                .fechaActualizacion(doc.getDate("fechaActualizacion"))
+                .build();
+    }
+
+    private static List<Double> aLista(double[] valores) {
+        List<Double> lista = new ArrayList<>(valores != null ? valores.length : 0);
+        if (valores != null) {
+            for (double valor : valores) {
+                lista.add(valor);
+            }
+        }
+        return lista;
+    }
+
+    private static double[] aArreglo(List<Number> valores) {
+        double[] arreglo = new double[valores.size()];
+        for (int i = 0; i < arreglo.length; i++) {
+            arreglo[i] = valores.get(i).doubleValue();
+        }
+        return arreglo;
+    }
+
+    private static double numero(Document doc, String campo) {
+        Object valor = doc.get(campo);
+        return valor instanceof Number numero ? numero.doubleValue() : 0.0;
+    }
+}
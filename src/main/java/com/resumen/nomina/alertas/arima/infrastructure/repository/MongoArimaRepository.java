@@ -5,6 +5,10 @@ import com.mongodb.client.MongoCollection;
 import com.resumen.nomina.alertas.arima.domain.model.ArimaConfig;
 import com.resumen.nomina.alertas.arima.domain.model.ArimaData;
 import com.resumen.nomina.alertas.arima.domain.repository.ArimaRepository;
+import com.resumen.nomina.domain.model.IndicadorCalculado;
+import com.resumen.nomina.infrastructure.repository.HistorialCalculosInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SerieIndicadorInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SucursalInfrastructureRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
@@ -13,6 +17,7 @@ import org.springframework.stereotype.Repository;
 
 import java.util.*;
         import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 📊 IMPLEMENTACIÓN MONGODB ARIMA
@@ -25,7 +30,11 @@ import java.util.*;
 public class MongoArimaRepository implements ArimaRepository {
 
     private final MongoTemplate mongoTemplate;
+    private final HistorialCalculosInfrastructureRepository historialRepository;
+    private final SerieIndicadorInfrastructureRepository serieRepository;
+    private final SucursalInfrastructureRepository sucursalRepository;
     private static final String COLECCION = "IndicadoresCalculados";
+    private static final String COLECCION_SERIES = "SeriesIndicadores";
 
     @Override
     public Map<String, List<ArimaData>> obtenerSeriesTemporales(
@@ -33,6 +42,12 @@ public class MongoArimaRepository implements ArimaRepository {
 
         log.info("📊 Obteniendo series temporales - Período actual excluido: {}", periodoActual);
 
+        // Con el almacén por serie completo, cada serie es un solo documento
+        // (incluye los puntos de periodos archivados)
+        if (serieRepository.almacenCompleto()) {
+            return filtrarSeriesValidas(obtenerSeriesDesdeAlmacen(periodoActual, sucursal, config), config);
+        }
+
         // Filtro: excluir período actual
         Document filtro = new Document("periodoActual", new Document("$ne", periodoActual));
         aplicarFiltros(filtro, sucursal, config);
@@ -61,6 +76,16 @@ public class MongoArimaRepository implements ArimaRepository {
         List<Document> results = ejecutarPipeline(pipeline);
         log.info("📊 Documentos obtenidos: {}", results.size());
 
+        // Periodos archivados fuera de MongoDB, ordenados junto con los demás por periodo
+        if (historialRepository.hayHistorialArchivado()) {
+            try (Stream<Document> archivados = historialRepository.recorrerArchivados(filtro)) {
+                archivados.map(this::proyectarArchivado).forEach(results::add);
+            }
+            results.sort(Comparator.comparing(doc -> doc.getString("periodo"),
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+            log.info("📊 Documentos con periodos archivados: {}", results.size());
+        }
+
         // Agrupar por clave
         Map<String, List<ArimaData>> series = results.stream()
                 .map(this::mapearAArimaData)
@@ -70,7 +95,66 @@ public class MongoArimaRepository implements ArimaRepository {
                         Collectors.toList()
                 ));
 
-        // Filtrar series con suficientes datos
+        return filtrarSeriesValidas(series, config);
+    }
+
+    /**
+     * Lee las series de SeriesIndicadores aplicando los mismos filtros que el pipeline:
+     * sucursal y concepto por documento, periodo actual y outliers por punto
+     */
+    private Map<String, List<ArimaData>> obtenerSeriesDesdeAlmacen(
+            String periodoActual, String sucursal, ArimaConfig config) {
+
+        Document filtro = new Document();
+        if (sucursal != null && !sucursal.trim().isEmpty() &&
+                !"TODAS".equalsIgnoreCase(sucursal)) {
+            filtro.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
+        }
+        if (config.getConceptoExcluir() != null) {
+            filtro.append("conceptoDetalle", new Document("$ne", config.getConceptoExcluir()));
+        }
+
+        Map<String, List<ArimaData>> series = new LinkedHashMap<>();
+        for (Document doc : mongoTemplate.getDb().getCollection(COLECCION_SERIES).find(filtro)) {
+            List<String> periodos = doc.getList("periodos", String.class, List.of());
+            List<Object> variaciones = doc.getList("variaciones", Object.class, List.of());
+
+            List<ArimaData> puntos = new ArrayList<>(periodos.size());
+            for (int i = 0; i < periodos.size() && i < variaciones.size(); i++) {
+                String periodo = periodos.get(i);
+                if (periodo == null || periodo.equals(periodoActual)
+                        || !(variaciones.get(i) instanceof Number variacion)) {
+                    continue;
+                }
+                // Excluir outliers extremos (> ±1000%)
+                double valor = variacion.doubleValue();
+                if (valor < IndicadorCalculado.VARIACION_MINIMA || valor > IndicadorCalculado.VARIACION_MAXIMA) {
+                    continue;
+                }
+                puntos.add(ArimaData.builder()
+                        .puesto(doc.getString("puesto"))
+                        .indicador(doc.getString("indicador"))
+                        .conceptoDetalle(doc.getInteger("conceptoDetalle"))
+                        .sucursal(doc.getString("sucursal"))
+                        .negocio(doc.getInteger("negocio"))
+                        .periodo(periodo)
+                        .valor(valor)
+                        .build());
+            }
+
+            if (!puntos.isEmpty()) {
+                series.put(puntos.get(0).getClave(), puntos);
+            }
+        }
+
+        log.info("📊 Series leídas del almacén: {}", series.size());
+        return series;
+    }
+
+    /**
+     * Conserva solo las series con suficientes periodos
+     */
+    private Map<String, List<ArimaData>> filtrarSeriesValidas(Map<String, List<ArimaData>> series, ArimaConfig config) {
         Map<String, List<ArimaData>> seriesFiltradas = series.entrySet().stream()
                 .filter(e -> e.getValue().size() >= config.getPeriodosMinimos())
                 .collect(Collectors.toMap(
@@ -94,8 +178,7 @@ public class MongoArimaRepository implements ArimaRepository {
         Document filtro = new Document("periodoActual", periodo);
 
         if (sucursal != null && !sucursal.trim().isEmpty() && !"TODAS".equalsIgnoreCase(sucursal)) {
-            filtro.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+            filtro.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
         }
 
         List<Document> pipeline = Arrays.asList(
@@ -130,8 +213,7 @@ public class MongoArimaRepository implements ArimaRepository {
         // Filtro de sucursal
         if (sucursal != null && !sucursal.trim().isEmpty() &&
                 !"TODAS".equalsIgnoreCase(sucursal)) {
-            filtro.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+            filtro.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
         }
 
         // Excluir concepto específico
@@ -140,7 +222,8 @@ public class MongoArimaRepository implements ArimaRepository {
         }
 
         // Excluir outliers extremos (> ±1000%)
-        filtro.append("variacion", new Document("$gte", -10.0).append("$lte", 10.0));
+        filtro.append("variacion", new Document("$gte", IndicadorCalculado.VARIACION_MINIMA)
+                .append("$lte", IndicadorCalculado.VARIACION_MAXIMA));
     }
 
     /**
@@ -159,6 +242,20 @@ public class MongoArimaRepository implements ArimaRepository {
         }
     }
 
+    /**
+     * Documento archivado con la misma forma que la proyección del pipeline
+     */
+    private Document proyectarArchivado(Document doc) {
+        return new Document()
+                .append("puesto", doc.get("fcDetalle5"))
+                .append("indicador", doc.get("fcDetalle6"))
+                .append("conceptoDetalle", doc.get("conceptoDetalle"))
+                .append("sucursal", doc.get("sucursal"))
+                .append("negocio", doc.get("negocio"))
+                .append("periodo", doc.get("periodoActual"))
+                .append("valor", doc.get("variacion"));
+    }
+
     /**
      * Mapea Document a ArimaData
      */
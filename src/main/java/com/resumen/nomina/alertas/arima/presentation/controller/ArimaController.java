@@ -69,6 +69,30 @@ public class ArimaController {
         }
     }
 
+    /**
+     * DELETE /api/alertas/arima/modelos
+     *
+     * Elimina los modelos guardados por serie; la siguiente ejecución vuelve a buscar el orden
+     * (p,d,q) de todas las series
+     */
+    @DeleteMapping("/arima/modelos")
+    public ResponseEntity<Map<String, Object>> eliminarModelos() {
+        try {
+            long eliminados = service.eliminarModelos();
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "mensaje", "Modelos ARIMA eliminados: " + eliminados,
+                    "eliminados", eliminados
+            ));
+        } catch (Exception e) {
+            log.error("❌ Error eliminando modelos ARIMA: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(Map.of(
+                    "success", false,
+                    "mensaje", "Error: " + e.getMessage()
+            ));
+        }
+    }
+
     /**
      * GET /api/alertas/arima/health
      *
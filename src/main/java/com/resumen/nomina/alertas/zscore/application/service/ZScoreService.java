@@ -2,10 +2,12 @@ package com.resumen.nomina.alertas.zscore.application.service;
 
 import com.resumen.nomina.alertas.zscore.domain.model.*;
 import com.resumen.nomina.alertas.zscore.domain.repository.ZScoreRepository;
+import com.resumen.nomina.domain.model.IndicadorCalculado;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * 🧮 SERVICIO PRINCIPAL Z-SCORE - VERSIÓN CORREGIDA
@@ -26,24 +28,13 @@ public class ZScoreService {
         try {
             ZScoreConfig config = ZScoreConfig.porDefecto();
 
-            // 1. Obtener estadísticas históricas (ya normalizadas)
+            // 1. Estadísticas históricas y dato actual por serie, en una sola agregación (ya normalizados)
             List<ZScoreRepository.Estadistica> estadisticas =
                     repository.calcularEstadisticas(periodo, sucursal, config);
 
             log.info("📊 Estadísticas calculadas: {}", estadisticas.size());
 
-            // 2. Obtener datos actuales (ya normalizados)
-            List<ZScoreData> datosActuales =
-                    repository.obtenerDatosActuales(periodo, sucursal, config);
-
-            log.info("📋 Datos actuales: {}", datosActuales.size());
-
-            // Verificación
-            log.info("🔍 VERIFICACIÓN: Estadísticas={}, DatosActuales={}, Esperado coincidencias={}",
-                    estadisticas.size(), datosActuales.size(),
-                    Math.min(estadisticas.size(), datosActuales.size()));
-
-            // 3. Calcular resultados
+            // 2. Calcular resultados
             List<ZScoreResult> resultados = new ArrayList<>();
             int sinDatoActual = 0;
             int desviacionCeroAjustada = 0;
@@ -51,13 +42,8 @@ public class ZScoreService {
 
             for (ZScoreRepository.Estadistica est : estadisticas) {
 
-                // Buscar dato actual
-                Optional<ZScoreData> datoActualOpt = datosActuales.stream()
-                        .filter(d -> coincide(d, est))
-                        .findFirst();
-
                 // ✅ INCLUIR registros sin dato actual
-                if (datoActualOpt.isEmpty()) {
+                if (est.getVariacionActual() == null) {
                     String clave = generarClave(est);
 
                     // Crear resultado con severidad especial
@@ -86,59 +72,29 @@ public class ZScoreService {
                     continue;
                 }
 
-                ZScoreData datoActual = datoActualOpt.get();
-
                 // ✅ Los valores YA VIENEN normalizados de MongoDB
-                double variacionActual = datoActual.getVariacion();
-                double media = est.getMedia();
                 double desviacion = est.getDesviacion();
 
-                // ✅ MANEJO DE DESVIACIÓN = 0
+                // ✅ MANEJO DE DESVIACIÓN = 0 o MUY ALTA (el ajuste se aplica en evaluar)
                 if (desviacion == 0 || Double.isNaN(desviacion)) {
                     log.debug("⚪ Desviación=0 para {}-{}, usando σ mínimo de 1%",
                             truncate(est.getPuesto(), 20),
                             truncate(est.getIndicador(), 30));
-                    desviacion = 0.01;  // 1% mínimo
                     desviacionCeroAjustada++;
-                }
-
-                // ✅ MANEJO DE DESVIACIÓN MUY ALTA
-                if (desviacion > 2.0) {  // > 200%
+                } else if (desviacion > 2.0) {  // > 200%
                     log.debug("🔶 Desviación muy alta ({}) para {}-{}, ajustando a 200%",
                             String.format("%.2f%%", desviacion * 100),
                             truncate(est.getPuesto(), 20),
                             truncate(est.getIndicador(), 30));
-                    desviacion = 2.0;  // Máximo 200%
                     desviacionAltaAjustada++;
                 }
 
-
-
-
-                // Calcular límites
-                double margen = calcularMargenAdaptativo(desviacion, config);
-                double limInf = media - margen;
-                double limSup = media + margen;
-
-                // Crear resultado
-                ZScoreResult resultado = ZScoreResult.crear(
-                        est.getPuesto(),
-                        est.getIndicador(),
-                        est.getConceptoDetalle(),
-                        est.getSucursal(),
-                        est.getNegocio(),
-                        variacionActual,
-                        media,
-                        desviacion,
-                        limInf,
-                        limSup,
-                        est.getCantidad()
-                );
-
-                resultados.add(resultado);
+                resultados.add(evaluar(est.getPuesto(), est.getIndicador(), est.getConceptoDetalle(),
+                        est.getSucursal(), est.getNegocio(), est.getVariacionActual(), est.getMedia(),
+                        desviacion, est.getCantidad(), config));
             }
 
-            // 4. Log detallado de procesamiento
+            // 3. Log detallado de procesamiento
             if (sinDatoActual > 0) {
                 log.warn("⚠️ SIN DATO ACTUAL: {} registros sin datos del período {} ({}% del total histórico)",
                         sinDatoActual,
@@ -156,7 +112,7 @@ public class ZScoreService {
                 }
             }
 
-            // 5. Generar resumen por severidad
+            // 4. Generar resumen por severidad
             int total = resultados.size();
             long normales = resultados.stream()
                     .filter(r -> "NORMAL".equals(r.getSeveridad())).count();
@@ -174,7 +130,7 @@ public class ZScoreService {
             log.info("✅ Completado - Total: {}, Normal: {}, Moderada: {}, Alta: {}, Crítica: {}, Sin Dato: {}, Fuera: {}",
                     total, normales, moderadas, altas, criticas, sinDato, fueraRango);
 
-            // 6. Análisis de calidad
+            // 5. Análisis de calidad
             int procesados = total - (int)sinDato;  // Solo los que tienen datos
             if (procesados > 0) {
                 double pctCriticas = (criticas * 100.0) / procesados;
@@ -209,6 +165,119 @@ public class ZScoreService {
         }
     }
 
+    /**
+     * Backtest: para cada período de [desde, hasta] evalúa cada serie contra solo su historia
+     * anterior. Cada serie se lee una vez en orden de período y sus estadísticas se actualizan
+     * al avanzar (Welford, con la ventana de ventanaAnalisis periodos). Solo se evalúan los
+     * períodos en que la serie tiene dato. El Stream debe cerrarse.
+     */
+    public Stream<ZScoreResult> recorrerBacktest(String desde, String hasta, String sucursal) {
+        if (desde == null || desde.isBlank() || hasta == null || hasta.isBlank()) {
+            throw new IllegalArgumentException("Los períodos desde y hasta son obligatorios");
+        }
+        if (desde.compareTo(hasta) > 0) {
+            throw new IllegalArgumentException("El período desde (" + desde + ") es posterior a hasta (" + hasta + ")");
+        }
+
+        log.info("🚀 Backtest Z-Score - Períodos: {} a {}, Sucursal: {}",
+                desde, hasta, sucursal != null ? sucursal : "TODAS");
+
+        ZScoreConfig config = ZScoreConfig.porDefecto();
+        return repository.recorrerSeries(hasta, sucursal, config)
+                .flatMap(serie -> evaluarSerie(serie, desde, config).stream());
+    }
+
+    /**
+     * Recorre los puntos de la serie en orden: cada período desde "desde" se evalúa con las
+     * estadísticas de los puntos anteriores y después se agrega a ellas
+     */
+    private List<ZScoreResult> evaluarSerie(ZScoreRepository.SerieHistorica serie, String desde, ZScoreConfig config) {
+        List<ZScoreResult> resultados = new ArrayList<>();
+        int ventana = config.getVentanaAnalisis();
+
+        // {n, media, M2} de la historia; la ventana guarda un valor por posición (NaN = no cuenta)
+        double[] estado = new double[3];
+        ArrayDeque<Double> enVentana = new ArrayDeque<>();
+
+        List<String> periodos = serie.getPeriodos();
+        List<Double> variaciones = serie.getVariaciones();
+        for (int i = 0; i < periodos.size(); i++) {
+            String periodo = periodos.get(i);
+            Double variacion = variaciones.get(i);
+
+            if (variacion != null && periodo.compareTo(desde) >= 0
+                    && estado[0] > 0 && estado[0] >= config.getPeriodosMinimos()) {
+                ZScoreResult resultado = evaluar(serie.getPuesto(), serie.getIndicador(), serie.getConceptoDetalle(),
+                        serie.getSucursal(), serie.getNegocio(), normalizar(variacion), estado[1],
+                        Math.sqrt(estado[2] / estado[0]), (int) estado[0], config);
+                resultado.setPeriodo(periodo);
+                resultados.add(resultado);
+            }
+
+            // Outliers extremos (> ±1000%) no entran a la historia
+            double valor = variacion != null && variacion >= IndicadorCalculado.VARIACION_MINIMA
+                    && variacion <= IndicadorCalculado.VARIACION_MAXIMA ? normalizar(variacion) : Double.NaN;
+            if (!Double.isNaN(valor)) {
+                agregar(estado, valor);
+            }
+            if (ventana > 0) {
+                enVentana.addLast(valor);
+                if (enVentana.size() > ventana) {
+                    double sale = enVentana.pollFirst();
+                    if (!Double.isNaN(sale)) {
+                        quitar(estado, sale);
+                    }
+                }
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Límites adaptativos y Z-Score de una variación actual contra su historia (ya normalizadas)
+     */
+    private ZScoreResult evaluar(String puesto, String indicador, Integer conceptoDetalle, String sucursal,
+                                 Integer negocio, double variacionActual, double media, double desviacion,
+                                 int cantidad, ZScoreConfig config) {
+        // σ = 0 → 1% mínimo; σ > 200% → 200%
+        if (desviacion == 0 || Double.isNaN(desviacion)) {
+            desviacion = 0.01;
+        } else if (desviacion > 2.0) {
+            desviacion = 2.0;
+        }
+
+        // Calcular límites
+        double margen = calcularMargenAdaptativo(desviacion, config);
+        double limInf = media - margen;
+        double limSup = media + margen;
+
+        return ZScoreResult.crear(puesto, indicador, conceptoDetalle, sucursal, negocio,
+                variacionActual, media, desviacion, limInf, limSup, cantidad);
+    }
+
+    private void agregar(double[] estado, double valor) {
+        estado[0]++;
+        double delta = valor - estado[1];
+        estado[1] += delta / estado[0];
+        estado[2] += delta * (valor - estado[1]);
+    }
+
+    private void quitar(double[] estado, double valor) {
+        if (estado[0] <= 1) {
+            Arrays.fill(estado, 0);
+            return;
+        }
+        double media = (estado[0] * estado[1] - valor) / (estado[0] - 1);
+        estado[2] = Math.max(0, estado[2] - (valor - estado[1]) * (valor - media));
+        estado[1] = media;
+        estado[0]--;
+    }
+
+    // Misma regla que variacionNormalizada de IndicadoresCalculados
+    private double normalizar(double variacion) {
+        return IndicadorCalculado.normalizarVariacion(variacion);
+    }
+
     /**
      * Calcula margen adaptativo según PDF
      */
@@ -230,24 +299,6 @@ public class ZScoreService {
         return margen;
     }
 
-    /**
-     * Verifica coincidencia - Compara sin espacios
-     */
-    private boolean coincide(ZScoreData dato, ZScoreRepository.Estadistica est) {
-        String datoPuesto = dato.getPuesto() != null ? dato.getPuesto().trim() : "";
-        String estPuesto = est.getPuesto() != null ? est.getPuesto().trim() : "";
-        String datoIndicador = dato.getIndicador() != null ? dato.getIndicador().trim() : "";
-        String estIndicador = est.getIndicador() != null ? est.getIndicador().trim() : "";
-        String datoSucursal = dato.getSucursal() != null ? dato.getSucursal().trim() : "";
-        String estSucursal = est.getSucursal() != null ? est.getSucursal().trim() : "";
-
-        return datoPuesto.equals(estPuesto) &&
-                datoIndicador.equals(estIndicador) &&
-                Objects.equals(dato.getConceptoDetalle(), est.getConceptoDetalle()) &&
-                datoSucursal.equals(estSucursal) &&
-                Objects.equals(dato.getNegocio(), est.getNegocio());
-    }
-
     /**
      * Genera clave descriptiva para logs
      */
@@ -14,9 +14,12 @@ import lombok.Data;
 @Builder
 public class ZScoreConfig {
 
+    // Ventana de las configuraciones predefinidas; SeriesIndicadores mantiene la de cada serie con este tamaño
+    public static final int VENTANA_PERIODOS = 52;
+
     // Períodos históricos
     private int periodosMinimos;
-    private int ventanaAnalisis;
+    private int ventanaAnalisis;           // Últimos N periodos de la historia (0 = toda)
 
     // ========== ESTRATEGIA ADAPTATIVA (Página 2) ==========
     // σ < 1%: margen fijo de 1.5%
@@ -59,7 +62,7 @@ public class ZScoreConfig {
     public static ZScoreConfig porDefecto() {
         return ZScoreConfig.builder()
                 .periodosMinimos(12)
-                .ventanaAnalisis(52)
+                .ventanaAnalisis(VENTANA_PERIODOS)
 
                 // Estrategia adaptativa (Página 2)
                 .umbralEstable(0.01)           // 1%
@@ -91,7 +94,7 @@ public class ZScoreConfig {
     public static ZScoreConfig conservadora() {
         return ZScoreConfig.builder()
                 .periodosMinimos(12)
-                .ventanaAnalisis(52)
+                .ventanaAnalisis(VENTANA_PERIODOS)
                 .umbralEstable(0.01)
                 .umbralVolatilidad(0.05)
                 .factorEstable(2.0)            // Más permisivo
@@ -114,7 +117,7 @@ public class ZScoreConfig {
     public static ZScoreConfig estricta() {
         return ZScoreConfig.builder()
                 .periodosMinimos(12)
-                .ventanaAnalisis(52)
+                .ventanaAnalisis(VENTANA_PERIODOS)
                 .umbralEstable(0.01)
                 .umbralVolatilidad(0.05)
                 .factorEstable(1.2)            // Menos permisivo
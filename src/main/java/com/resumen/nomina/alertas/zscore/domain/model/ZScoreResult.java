@@ -1,5 +1,6 @@
 package com.resumen.nomina.alertas.zscore.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
 import lombok.Data;
@@ -20,6 +21,10 @@ public class ZScoreResult {
     private String sucursal;
     private Integer negocio;
 
+    // Período evaluado (solo en el backtest; en /zscore es el período de la respuesta)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String periodo;
+
     // Datos principales (en porcentaje)
     private Double variacionPorcentualVsSA;
     private Double variacionMedia;
@@ -2,10 +2,10 @@ package com.resumen.nomina.alertas.zscore.domain.repository;
 
 
 import com.resumen.nomina.alertas.zscore.domain.model.ZScoreConfig;
-import com.resumen.nomina.alertas.zscore.domain.model.ZScoreData;
 import lombok.Builder;
 import lombok.Data;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * 📊 REPOSITORIO PARA DATOS Z-SCORE
@@ -13,19 +13,16 @@ import java.util.List;
 public interface ZScoreRepository {
 
     /**
-     * Obtiene datos del período actual
+     * Calcula en una sola lectura, por grupo (puesto + indicador + concepto + sucursal + negocio),
+     * las estadísticas históricas (excluyendo el período actual) y la variación del período actual
      */
-    List<ZScoreData> obtenerDatosActuales(String periodo, String sucursal, ZScoreConfig config);
-
-    /**
-     * Obtiene datos históricos (excluyendo período actual)
-     */
-    List<ZScoreData> obtenerDatosHistoricos(String periodo, String sucursal, ZScoreConfig config);
+    List<Estadistica> calcularEstadisticas(String periodo, String sucursal, ZScoreConfig config);
 
     /**
-     * Calcula estadísticas por grupo (puesto + indicador + sucursal + negocio)
+     * Recorre cada serie una sola vez con sus variaciones (sin normalizar) ordenadas por período,
+     * hasta el período indicado inclusive, incluidos los periodos archivados. El Stream debe cerrarse.
      */
-    List<Estadistica> calcularEstadisticas(String periodo, String sucursal, ZScoreConfig config);
+    Stream<SerieHistorica> recorrerSeries(String hasta, String sucursal, ZScoreConfig config);
 
     /**
      * DTO para estadísticas
@@ -41,5 +38,21 @@ public interface ZScoreRepository {
         private Double media;
         private Double desviacion;
         private Integer cantidad;
+        private Double variacionActual;     // null si la serie no tiene dato en el período
+    }
+
+    /**
+     * DTO para una serie completa: periodos[i] corresponde a variaciones[i]
+     */
+    @Data
+    @Builder
+    class SerieHistorica {
+        private String puesto;
+        private String indicador;
+        private Integer conceptoDetalle;
+        private String sucursal;
+        private Integer negocio;
+        private List<String> periodos;
+        private List<Double> variaciones;
     }
 }
\ No newline at end of file
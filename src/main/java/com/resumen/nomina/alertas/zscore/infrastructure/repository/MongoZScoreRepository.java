@@ -1,9 +1,14 @@
 package com.resumen.nomina.alertas.zscore.infrastructure.repository;
 
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.resumen.nomina.alertas.zscore.domain.model.ZScoreConfig;
-import com.resumen.nomina.alertas.zscore.domain.model.ZScoreData;
 import com.resumen.nomina.alertas.zscore.domain.repository.ZScoreRepository;
+import com.resumen.nomina.domain.model.IndicadorCalculado;
+import com.resumen.nomina.infrastructure.repository.HistorialCalculosInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SerieIndicadorInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SucursalInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.VariacionNormalizadaInfrastructureRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
@@ -11,10 +16,12 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Repository;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 📊 IMPLEMENTACIÓN MONGODB - CORREGIDA
- * NORMALIZA TODOS LOS VALORES A DECIMAL EN LA QUERY
+ * TODOS LOS VALORES EN DECIMAL: LEE variacionNormalizada, ESCRITA CON EL CÁLCULO
  */
 @Slf4j
 @Repository
@@ -22,148 +29,102 @@ import java.util.stream.Collectors;
 public class MongoZScoreRepository implements ZScoreRepository {
 
     private final MongoTemplate mongoTemplate;
+    private final HistorialCalculosInfrastructureRepository historialRepository;
+    private final SerieIndicadorInfrastructureRepository serieRepository;
+    private final SucursalInfrastructureRepository sucursalRepository;
     private static final String COLECCION = "IndicadoresCalculados";
+    private static final String COLECCION_SERIES = "SeriesIndicadores";
 
     @Override
-    public List<ZScoreData> obtenerDatosActuales(String periodo, String sucursal, ZScoreConfig config) {
+    public List<Estadistica> calcularEstadisticas(String periodo, String sucursal, ZScoreConfig config) {
 
-        log.info("📋 Obteniendo datos actuales - Período: {}", periodo);
+        log.info("📊 Calculando estadísticas y dato actual - Período: {}", periodo);
 
-        Document filtro = new Document("periodoActual", periodo);
+        Document filtroBase = filtroBase(sucursal, config);
 
-        // ✅ NO aplicar filtro de outliers en datos actuales
-        // Solo filtrar concepto excluido
-        if (config.getConceptoExcluir() != null) {
-            filtro.append("conceptoDetalle", new Document("$ne", config.getConceptoExcluir()));
+        // ✅ Con el almacén por serie completo, cada serie trae su acumulado: no se recorre la historia
+        if (serieRepository.almacenCompleto()) {
+            return calcularDesdeAcumulados(periodo, filtroBase, config);
         }
 
-        // Filtro de sucursal
-        if (sucursal != null && !sucursal.trim().isEmpty() && !"TODAS".equalsIgnoreCase(sucursal)) {
-            filtro.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+        Document rangoVariacion = new Document("variacion", new Document("$gte", IndicadorCalculado.VARIACION_MINIMA).append("$lte", IndicadorCalculado.VARIACION_MAXIMA));
+        Document esHistoria = new Document("$ne", Arrays.asList("$periodoActual", periodo));
+        int ventana = config.getVentanaAnalisis();
+
+        // Con historia archivada, el mínimo de periodos se aplica después de combinar. La ventana
+        // queda dentro de IndicadoresCalculados: la retención conserva más periodos que la ventana.
+        boolean conArchivo = ventana <= 0 && historialRepository.hayHistorialArchivado();
+
+        List<Document> pipeline = new ArrayList<>();
+        if (ventana > 0) {
+            // 1. Filtrar: los N periodos anteriores de cada serie se numeran antes de quitar outliers,
+            //    que ocupan su lugar en la ventana igual que en el almacén por serie
+            pipeline.add(new Document("$match", new Document(filtroBase)
+                    .append("periodoActual", new Document("$lte", periodo))));
+            pipeline.add(new Document("$setWindowFields", new Document("partitionBy", claveSerie())
+                    .append("sortBy", new Document("periodoActual", -1))
+                    .append("output", new Document("orden", new Document("$documentNumber", new Document()))
+                            .append("filasActuales", new Document("$sum", new Document("$cond", Arrays.asList(
+                                    new Document("$eq", Arrays.asList("$periodoActual", periodo)), 1, 0)))
+                                    .append("window", new Document("documents", Arrays.asList("unbounded", "unbounded")))))));
+            pipeline.add(new Document("$match", new Document("$or", Arrays.asList(
+                    new Document("periodoActual", periodo),
+                    new Document(rangoVariacion).append("$expr", new Document("$lte", Arrays.asList(
+                            new Document("$subtract", Arrays.asList("$orden", "$filasActuales")), ventana)))))));
+        } else {
+            // ✅ Una sola lectura: el período actual completo y la historia sin outliers
+            pipeline.add(new Document("$match", new Document(filtroBase)
+                    .append("$or", Arrays.asList(new Document("periodoActual", periodo), rangoVariacion))));
         }
 
-        List<Document> pipeline = Arrays.asList(
-                new Document("$match", filtro),
-
-                // 🔴 NORMALIZAR variacion a decimal en la query
-                new Document("$project", new Document()
-                        .append("puesto", "$fcDetalle5")
-                        .append("indicador", "$fcDetalle6")
-                        .append("conceptoDetalle", "$conceptoDetalle")
-                        .append("sucursal", "$sucursal")
-                        .append("negocio", "$negocio")
-                        .append("periodo", "$periodoActual")
-                        .append("variacion", new Document("$cond", Arrays.asList(
-                                // Si |variacion| > 1, está en porcentaje → dividir entre 100
-                                new Document("$gt", Arrays.asList(
-                                        new Document("$abs", "$variacion"), 1
-                                )),
-                                new Document("$divide", Arrays.asList("$variacion", 100)),
-                                "$variacion"
-                        )))
-                )
-        );
-
-        return ejecutarPipeline(pipeline).stream()
-                .map(this::mapearAZScoreData)
-                .collect(Collectors.toList());
-    }
-
-    @Override
-    public List<ZScoreData> obtenerDatosHistoricos(String periodo, String sucursal, ZScoreConfig config) {
-
-        log.info("📚 Obteniendo datos históricos - Excluyendo: {}", periodo);
-
-        Document filtro = new Document("periodoActual", new Document("$ne", periodo));
-        aplicarFiltros(filtro, sucursal, config);
-
-        List<Document> pipeline = Arrays.asList(
-                new Document("$match", filtro),
-
-                // 🔴 NORMALIZAR variacion a decimal en la query
-                new Document("$project", new Document()
-                        .append("puesto", "$fcDetalle5")
-                        .append("indicador", "$fcDetalle6")
-                        .append("conceptoDetalle", "$conceptoDetalle")
-                        .append("sucursal", "$sucursal")
-                        .append("negocio", "$negocio")
-                        .append("periodo", "$periodoActual")
-                        .append("variacion", new Document("$cond", Arrays.asList(
-                                new Document("$gt", Arrays.asList(
-                                        new Document("$abs", "$variacion"), 1
-                                )),
-                                new Document("$divide", Arrays.asList("$variacion", 100)),
-                                "$variacion"
-                        )))
-                )
-        );
-
-        return ejecutarPipeline(pipeline).stream()
-                .map(this::mapearAZScoreData)
-                .collect(Collectors.toList());
-    }
-
-    @Override
-    public List<Estadistica> calcularEstadisticas(String periodo, String sucursal, ZScoreConfig config) {
-
-        log.info("📊 Calculando estadísticas - Período excluido: {}", periodo);
-
-        Document filtro = new Document("periodoActual", new Document("$ne", periodo));
-        aplicarFiltros(filtro, sucursal, config);
-
-        List<Document> pipeline = Arrays.asList(
-                // 1. Filtrar
-                new Document("$match", filtro),
-
-                // 2. 🔴 NORMALIZAR variacion ANTES de agrupar (CRÍTICO)
+        pipeline.addAll(Arrays.asList(
+                // 2. 🔴 Variación ya normalizada al guardar el cálculo; la regla solo se evalúa en
+                //    documentos anteriores al campo que todavía no se completaron
                 new Document("$project", new Document()
                         .append("fcDetalle5", 1)
                         .append("fcDetalle6", 1)
                         .append("conceptoDetalle", 1)
                         .append("sucursal", 1)
                         .append("negocio", 1)
-                        .append("variacionNormalizada", new Document("$cond", Arrays.asList(
-                                // Si |variacion| > 1, dividir entre 100
-                                new Document("$gt", Arrays.asList(
-                                        new Document("$abs", "$variacion"), 1
-                                )),
-                                new Document("$divide", Arrays.asList("$variacion", 100)),
-                                "$variacion"
-                        )))
+                        .append("esHistoria", esHistoria)
+                        .append("variacionNormalizada", new Document("$ifNull", Arrays.asList(
+                                "$variacionNormalizada", VariacionNormalizadaInfrastructureRepository.expresion("$variacion"))))
                 ),
 
-                // 3. Agrupar con variacion normalizada
-                new Document("$group", new Document("_id", new Document()
-                        .append("puesto", "$fcDetalle5")
-                        .append("indicador", "$fcDetalle6")
-                        .append("conceptoDetalle", "$conceptoDetalle")
-                        .append("sucursal", "$sucursal")
-                        .append("negocio", "$negocio"))
-                        .append("media", new Document("$avg", "$variacionNormalizada"))
-                        .append("desviacion", new Document("$stdDevPop", "$variacionNormalizada"))
-                        .append("cantidad", new Document("$sum", 1))
-                ),
+                // 3. Agrupar por serie (textos sin espacios): estadísticas de la historia y valor
+                //    del período actual ($avg, $stdDevPop y $max ignoran los null de la otra parte)
+                new Document("$group", new Document("_id", claveSerie())
+                        .append("media", new Document("$avg", soloSi("$esHistoria", true)))
+                        .append("desviacion", new Document("$stdDevPop", soloSi("$esHistoria", true)))
+                        .append("cantidad", new Document("$sum", new Document("$cond", Arrays.asList("$esHistoria", 1, 0))))
+                        .append("variacionActual", new Document("$max", soloSi("$esHistoria", false)))
+                )
+        ));
 
-                // 4. Filtrar por cantidad mínima
-                new Document("$match", new Document("cantidad",
-                        new Document("$gte", config.getPeriodosMinimos()))),
+        // 4. Filtrar por cantidad mínima de periodos históricos
+        if (!conArchivo) {
+            pipeline.add(new Document("$match", new Document("cantidad",
+                    new Document("$gte", config.getPeriodosMinimos()))));
+        }
 
-                // 5. Proyectar resultado
-                new Document("$project", new Document()
-                        .append("_id", 0)
-                        .append("puesto", "$_id.puesto")
-                        .append("indicador", "$_id.indicador")
-                        .append("conceptoDetalle", "$_id.conceptoDetalle")
-                        .append("sucursal", "$_id.sucursal")
-                        .append("negocio", "$_id.negocio")
-                        .append("media", 1)
-                        .append("desviacion", 1)
-                        .append("cantidad", 1)
-                )
-        );
+        // 5. Proyectar resultado
+        pipeline.add(new Document("$project", new Document()
+                .append("_id", 0)
+                .append("puesto", "$_id.puesto")
+                .append("indicador", "$_id.indicador")
+                .append("conceptoDetalle", "$_id.conceptoDetalle")
+                .append("sucursal", "$_id.sucursal")
+                .append("negocio", "$_id.negocio")
+                .append("media", 1)
+                .append("desviacion", 1)
+                .append("cantidad", 1)
+                .append("variacionActual", 1)
+        ));
 
         List<Document> results = ejecutarPipeline(pipeline);
+        if (conArchivo) {
+            results = combinarConArchivo(results, periodo, filtroBase, config);
+        }
 
         // Log de diagnóstico CORREGIDO
         if (!results.isEmpty()) {
@@ -171,8 +132,11 @@ public class MongoZScoreRepository implements ZScoreRepository {
                     .mapToDouble(d -> Math.abs(d.getDouble("desviacion")))
                     .average()
                     .orElse(0);
+            long conActual = results.stream()
+                    .filter(d -> d.get("variacionActual") != null)
+                    .count();
 
-            log.info("📊 Estadísticas calculadas: {} grupos", results.size());
+            log.info("📊 Estadísticas calculadas: {} grupos ({} con dato actual)", results.size(), conActual);
             log.info("📊 Desviación promedio: {} ({}%)",
                     String.format("%.4f", avgDesv),
                     String.format("%.2f", avgDesv * 100));
@@ -198,15 +162,368 @@ public class MongoZScoreRepository implements ZScoreRepository {
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public Stream<SerieHistorica> recorrerSeries(String hasta, String sucursal, ZScoreConfig config) {
+        Document filtroBase = filtroBase(sucursal, config);
+
+        MongoCursor<Document> cursor;
+        boolean almacenCompleto = serieRepository.almacenCompleto();
+        if (almacenCompleto) {
+            // Cada serie ya es un documento con sus puntos ordenados (incluye periodos archivados)
+            cursor = mongoTemplate.getDb().getCollection(COLECCION_SERIES).find(filtroBase)
+                    .projection(new Document("_id", 0)
+                            .append("puesto", 1)
+                            .append("indicador", 1)
+                            .append("conceptoDetalle", 1)
+                            .append("sucursal", 1)
+                            .append("negocio", 1)
+                            .append("periodos", 1)
+                            .append("variaciones", 1))
+                    .iterator();
+        } else {
+            // Sin almacén por serie: agrupar IndicadoresCalculados por serie en orden de período;
+            // los periodos archivados se intercalan después
+            cursor = mongoTemplate.getDb().getCollection(COLECCION).aggregate(Arrays.asList(
+                    new Document("$match", new Document(filtroBase)
+                            .append("periodoActual", new Document("$lte", hasta))),
+                    new Document("$sort", new Document("periodoActual", 1)),
+                    new Document("$group", new Document("_id", claveSerie())
+                            .append("periodos", new Document("$push", "$periodoActual"))
+                            .append("variaciones", new Document("$push", "$variacion"))),
+                    new Document("$project", new Document("_id", 0)
+                            .append("puesto", "$_id.puesto")
+                            .append("indicador", "$_id.indicador")
+                            .append("conceptoDetalle", "$_id.conceptoDetalle")
+                            .append("sucursal", "$_id.sucursal")
+                            .append("negocio", "$_id.negocio")
+                            .append("periodos", 1)
+                            .append("variaciones", 1))
+            )).allowDiskUse(true).iterator();
+        }
+
+        Stream<Document> series = StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .onClose(cursor::close);
+        if (!almacenCompleto && historialRepository.hayHistorialArchivado()) {
+            series = conArchivados(series, filtroBase, hasta);
+        }
+        return series.map(doc -> mapearASerie(doc, hasta));
+    }
+
+    /**
+     * Intercala en cada serie los puntos de los periodos archivados, para que el backtest use la
+     * misma historia que calcularEstadisticas. Los periodos archivados ya no están en la colección,
+     * así que basta ordenar la unión; las series que solo tienen puntos archivados van al final.
+     */
+    private Stream<Document> conArchivados(Stream<Document> series, Document filtroBase, String hasta) {
+        // Clave del grupo -> puntos archivados {periodo, variación}
+        Map<List<Object>, List<Object[]>> archivados = new LinkedHashMap<>();
+        try (Stream<Document> docs = historialRepository.recorrerArchivados(new Document(filtroBase)
+                .append("periodoActual", new Document("$lte", hasta)))) {
+            docs.forEach(doc -> archivados.computeIfAbsent(claveGrupo(doc.get("fcDetalle5"), doc.get("fcDetalle6"),
+                            doc.get("conceptoDetalle"), doc.get("sucursal"), doc.get("negocio")), k -> new ArrayList<>())
+                    .add(new Object[]{doc.getString("periodoActual"), doc.get("variacion")}));
+        }
+
+        Stream<Document> combinadas = series.map(doc -> {
+            List<Object[]> puntos = archivados.remove(claveGrupo(doc.get("puesto"), doc.get("indicador"),
+                    doc.get("conceptoDetalle"), doc.get("sucursal"), doc.get("negocio")));
+            if (puntos == null) {
+                return doc;
+            }
+            List<String> periodos = doc.getList("periodos", String.class, List.of());
+            List<Object> variaciones = doc.getList("variaciones", Object.class, List.of());
+            for (int i = 0; i < periodos.size() && i < variaciones.size(); i++) {
+                puntos.add(new Object[]{periodos.get(i), variaciones.get(i)});
+            }
+            return conPuntos(doc, puntos);
+        });
+
+        // flatMap es perezoso: las series solo archivadas se leen cuando se agotó el cursor
+        Stream<Document> soloArchivadas = Stream.of(archivados).flatMap(restantes -> restantes.entrySet().stream()
+                .map(e -> conPuntos(new Document()
+                        .append("puesto", e.getKey().get(0))
+                        .append("indicador", e.getKey().get(1))
+                        .append("conceptoDetalle", e.getKey().get(2))
+                        .append("sucursal", e.getKey().get(3))
+                        .append("negocio", e.getKey().get(4)), e.getValue())));
+
+        return Stream.concat(combinadas, soloArchivadas);
+    }
+
+    private Document conPuntos(Document doc, List<Object[]> puntos) {
+        puntos.sort(Comparator.comparing(punto -> (String) punto[0], Comparator.nullsFirst(Comparator.naturalOrder())));
+        List<Object> periodos = new ArrayList<>(puntos.size());
+        List<Object> variaciones = new ArrayList<>(puntos.size());
+        for (Object[] punto : puntos) {
+            periodos.add(punto[0]);
+            variaciones.add(punto[1]);
+        }
+        return doc.append("periodos", periodos).append("variaciones", variaciones);
+    }
+
+    /**
+     * Estadísticas desde el estado de Welford de cada serie (incluye periodos archivados).
+     * Sin ventana se usa el acumulado de toda la serie y se le quitan las variaciones del período
+     * actual, para que la historia sea la de los demás periodos, igual que en el pipeline.
+     * Con ventana se usan los últimos N periodos anteriores al actual: si el actual es el último de
+     * la serie (o posterior) basta la ventana guardada quitando el actual y sumando el punto que
+     * entra por el inicio; si no, MongoDB devuelve solo esos N puntos.
+     */
+    private List<Estadistica> calcularDesdeAcumulados(String periodo, Document filtroBase, ZScoreConfig config) {
+        serieRepository.completarAcumulados();
+
+        int ventana = config.getVentanaAnalisis();
+        Document actuales = new Document("$map", new Document("input", new Document("$filter", new Document("input",
+                new Document("$zip", new Document("inputs", Arrays.asList("$periodos", "$variaciones"))))
+                .append("cond", new Document("$eq", Arrays.asList(
+                        new Document("$arrayElemAt", Arrays.asList("$$this", 0)), periodo)))))
+                .append("in", new Document("$arrayElemAt", Arrays.asList("$$this", 1))));
+
+        Document proyeccion = new Document("_id", 0)
+                .append("puesto", 1)
+                .append("indicador", 1)
+                .append("conceptoDetalle", 1)
+                .append("sucursal", 1)
+                .append("negocio", 1);
+
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$match", filtroBase));
+        if (ventana > 0) {
+            Document esUltimo = new Document("$eq", Arrays.asList(new Document("$last", "$periodos"), periodo));
+            Document guardada = new Document("$and", Arrays.asList(
+                    new Document("$eq", Arrays.asList("$ventana.tamanio", ventana)),
+                    new Document("$lte", Arrays.asList(new Document("$last", "$periodos"), periodo))));
+            Document inicio = new Document("$subtract", Arrays.asList(new Document("$size", "$periodos"), ventana + 1));
+
+            pipeline.add(new Document("$set", new Document("usarGuardada", guardada).append("esUltimo", esUltimo)));
+            pipeline.add(new Document("$project", proyeccion
+                    .append("ventana", new Document("$cond", Arrays.asList("$usarGuardada", "$ventana", null)))
+                    .append("entra", new Document("$cond", Arrays.asList(
+                            new Document("$and", Arrays.asList("$usarGuardada", "$esUltimo", new Document("$gte", Arrays.asList(inicio, 0)))),
+                            new Document("$arrayElemAt", Arrays.asList("$variaciones", inicio)),
+                            null)))
+                    .append("actuales", new Document("$cond", Arrays.asList("$esUltimo",
+                            List.of(new Document("$last", "$variaciones")),
+                            new Document("$cond", Arrays.asList("$usarGuardada", List.of(), actuales)))))
+                    .append("puntosVentana", new Document("$cond", Arrays.asList("$usarGuardada", null,
+                            new Document("$slice", Arrays.asList(new Document("$map", new Document("input", new Document("$filter", new Document("input",
+                                    new Document("$zip", new Document("inputs", Arrays.asList("$periodos", "$variaciones"))))
+                                    .append("cond", new Document("$lt", Arrays.asList(
+                                            new Document("$arrayElemAt", Arrays.asList("$$this", 0)), periodo)))))
+                                    .append("in", new Document("$arrayElemAt", Arrays.asList("$$this", 1)))), -ventana)))))));
+        } else {
+            pipeline.add(new Document("$project", proyeccion
+                    .append("acumulado", 1)
+                    .append("actuales", actuales)));
+        }
+
+        List<Estadistica> estadisticas = new ArrayList<>();
+        for (Document doc : mongoTemplate.getDb().getCollection(COLECCION_SERIES).aggregate(pipeline)) {
+            // {n, media, M2} de la historia
+            double[] estado;
+            boolean quitarActual = true;
+            if (ventana > 0) {
+                Document guardada = doc.get("ventana", Document.class);
+                if (guardada != null) {
+                    estado = estadoDe(guardada);
+                    if (doc.get("entra") instanceof Number entra && enRango(entra.doubleValue())) {
+                        agregar(estado, normalizar(entra.doubleValue()));
+                    }
+                } else {
+                    estado = new double[]{0, 0, 0};
+                    for (Object punto : doc.getList("puntosVentana", Object.class, List.of())) {
+                        if (punto instanceof Number numero && enRango(numero.doubleValue())) {
+                            agregar(estado, normalizar(numero.doubleValue()));
+                        }
+                    }
+                    // Los puntos de la ventana ya excluyen el período actual
+                    quitarActual = false;
+                }
+            } else {
+                Document acumulado = doc.get("acumulado", Document.class);
+                if (acumulado == null) {
+                    continue;
+                }
+                estado = estadoDe(acumulado);
+            }
+
+            // Quitar de la historia el período actual (Welford inverso) y quedarse con su mayor variación
+            Double variacionActual = null;
+            for (Object actual : doc.getList("actuales", Object.class, List.of())) {
+                if (!(actual instanceof Number numero)) {
+                    continue;
+                }
+                double valor = normalizar(numero.doubleValue());
+                variacionActual = variacionActual == null ? valor : Math.max(variacionActual, valor);
+                if (quitarActual && enRango(numero.doubleValue())) {
+                    quitarValor(estado, valor);
+                }
+            }
+
+            double n = estado[0];
+            if (n < config.getPeriodosMinimos() || n <= 0) {
+                continue;
+            }
+            estadisticas.add(Estadistica.builder()
+                    .puesto(recortar(doc.get("puesto")))
+                    .indicador(recortar(doc.get("indicador")))
+                    .conceptoDetalle(doc.getInteger("conceptoDetalle"))
+                    .sucursal(recortar(doc.get("sucursal")))
+                    .negocio(doc.getInteger("negocio"))
+                    .media(estado[1])
+                    .desviacion(Math.sqrt(estado[2] / n))
+                    .cantidad((int) n)
+                    .variacionActual(variacionActual)
+                    .build());
+        }
+
+        log.info("📊 Estadísticas desde acumulados ({}): {} grupos ({} con dato actual)",
+                ventana > 0 ? "ventana de " + ventana + " periodos" : "toda la historia", estadisticas.size(),
+                estadisticas.stream().filter(e -> e.getVariacionActual() != null).count());
+        return estadisticas;
+    }
+
+    private double[] estadoDe(Document acumulado) {
+        return new double[]{
+                ((Number) acumulado.get("n")).doubleValue(),
+                ((Number) acumulado.get("media")).doubleValue(),
+                ((Number) acumulado.get("m2")).doubleValue()};
+    }
+
+    private void agregar(double[] estado, double valor) {
+        estado[0]++;
+        double delta = valor - estado[1];
+        estado[1] += delta / estado[0];
+        estado[2] += delta * (valor - estado[1]);
+    }
+
+    private void quitarValor(double[] estado, double valor) {
+        if (estado[0] <= 1) {
+            estado[0] = 0;
+            estado[1] = 0;
+            estado[2] = 0;
+            return;
+        }
+        double media = (estado[0] * estado[1] - valor) / (estado[0] - 1);
+        estado[2] = Math.max(0, estado[2] - (valor - estado[1]) * (valor - media));
+        estado[1] = media;
+        estado[0]--;
+    }
+
+    private boolean enRango(double variacion) {
+        return variacion >= IndicadorCalculado.VARIACION_MINIMA && variacion <= IndicadorCalculado.VARIACION_MAXIMA;
+    }
+
+    /**
+     * Suma a las estadísticas de MongoDB los valores de los periodos archivados. Cada grupo
+     * continúa desde su (n, media, M2) con el método de Welford, así que el resultado es el mismo
+     * que agregar toda la historia junta; al final se aplica el mínimo de periodos.
+     */
+    private List<Document> combinarConArchivo(List<Document> resultados, String periodo,
+                                              Document filtroBase, ZScoreConfig config) {
+        // Clave del grupo -> {n, media, M2, variacionActual (NaN si no hay)}
+        Map<List<Object>, double[]> grupos = new LinkedHashMap<>();
+        for (Document doc : resultados) {
+            double n = ((Number) doc.get("cantidad")).doubleValue();
+            double media = n > 0 ? doc.getDouble("media") : 0;
+            double desviacion = n > 0 ? doc.getDouble("desviacion") : 0;
+            Object actual = doc.get("variacionActual");
+            grupos.put(claveGrupo(doc.get("puesto"), doc.get("indicador"), doc.get("conceptoDetalle"),
+                            doc.get("sucursal"), doc.get("negocio")),
+                    new double[]{n, media, desviacion * desviacion * n,
+                            actual instanceof Number numero ? numero.doubleValue() : Double.NaN});
+        }
+
+        try (Stream<Document> archivados = historialRepository.recorrerArchivados(filtroBase)) {
+            archivados.forEach(doc -> {
+                if (!(doc.get("variacion") instanceof Number variacion)) {
+                    return;
+                }
+                double[] grupo = grupos.computeIfAbsent(claveGrupo(doc.get("fcDetalle5"), doc.get("fcDetalle6"),
+                                doc.get("conceptoDetalle"), doc.get("sucursal"), doc.get("negocio")),
+                        k -> new double[]{0, 0, 0, Double.NaN});
+                // Los archivos escritos antes del campo solo traen la variación original
+                double valor = doc.get(VariacionNormalizadaInfrastructureRepository.CAMPO) instanceof Number normalizada
+                        ? normalizada.doubleValue() : normalizar(variacion.doubleValue());
+
+                if (periodo.equals(doc.get("periodoActual"))) {
+                    grupo[3] = Double.isNaN(grupo[3]) ? valor : Math.max(grupo[3], valor);
+                    return;
+                }
+                if (variacion.doubleValue() < IndicadorCalculado.VARIACION_MINIMA || variacion.doubleValue() > IndicadorCalculado.VARIACION_MAXIMA) {
+                    return;
+                }
+                grupo[0]++;
+                double delta = valor - grupo[1];
+                grupo[1] += delta / grupo[0];
+                grupo[2] += delta * (valor - grupo[1]);
+            });
+        }
+
+        return grupos.entrySet().stream()
+                .filter(e -> e.getValue()[0] >= config.getPeriodosMinimos())
+                .map(e -> {
+                    List<Object> clave = e.getKey();
+                    double[] grupo = e.getValue();
+                    return new Document()
+                            .append("puesto", clave.get(0))
+                            .append("indicador", clave.get(1))
+                            .append("conceptoDetalle", clave.get(2))
+                            .append("sucursal", clave.get(3))
+                            .append("negocio", clave.get(4))
+                            .append("media", grupo[1])
+                            .append("desviacion", Math.sqrt(grupo[2] / grupo[0]))
+                            .append("cantidad", (int) grupo[0])
+                            .append("variacionActual", Double.isNaN(grupo[3]) ? null : grupo[3]);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private List<Object> claveGrupo(Object puesto, Object indicador, Object conceptoDetalle, Object sucursal, Object negocio) {
+        return Arrays.asList(recortar(puesto), recortar(indicador), conceptoDetalle, recortar(sucursal), negocio);
+    }
+
+    private String recortar(Object texto) {
+        return texto != null ? texto.toString().trim() : "";
+    }
+
+    private Document claveSerie() {
+        return new Document()
+                .append("puesto", sinEspacios("$fcDetalle5"))
+                .append("indicador", sinEspacios("$fcDetalle6"))
+                .append("conceptoDetalle", "$conceptoDetalle")
+                .append("sucursal", sinEspacios("$sucursal"))
+                .append("negocio", "$negocio");
+    }
+
+    private Document sinEspacios(String campo) {
+        return new Document("$trim", new Document("input", new Document("$ifNull", Arrays.asList(campo, ""))));
+    }
+
+    /**
+     * Variación normalizada solo para la parte indicada (historia o período actual); null en la otra
+     */
+    private Document soloSi(String esHistoria, boolean historia) {
+        return new Document("$cond", Arrays.asList(
+                historia ? esHistoria : new Document("$not", Arrays.asList(esHistoria)),
+                "$variacionNormalizada",
+                null));
+    }
+
+    // Misma regla que variacionNormalizada de IndicadoresCalculados
+    private double normalizar(double variacion) {
+        return IndicadorCalculado.normalizarVariacion(variacion);
+    }
+
     /**
-     * Aplica filtros comunes
+     * Filtros comunes a historia y período actual
      */
-    private void aplicarFiltros(Document filtro, String sucursal, ZScoreConfig config) {
+    private Document filtroBase(String sucursal, ZScoreConfig config) {
+        Document filtro = new Document();
 
         // Filtro de sucursal
         if (sucursal != null && !sucursal.trim().isEmpty() && !"TODAS".equalsIgnoreCase(sucursal)) {
-            filtro.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+            filtro.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
         }
 
         // Excluir concepto (ej: 1011 = Empleados)
@@ -214,8 +531,7 @@ public class MongoZScoreRepository implements ZScoreRepository {
             filtro.append("conceptoDetalle", new Document("$ne", config.getConceptoExcluir()));
         }
 
-        // 🔴 EXCLUIR outliers extremos (valores > 1000% o < -1000%)
-        filtro.append("variacion", new Document("$gte", -10.0).append("$lte", 10.0));
+        return filtro;
     }
 
     /**
@@ -234,17 +550,30 @@ public class MongoZScoreRepository implements ZScoreRepository {
     }
 
     /**
-     * Mapea Document a ZScoreData
+     * Mapea Document a SerieHistorica con los puntos hasta el período indicado
      */
-    private ZScoreData mapearAZScoreData(Document doc) {
-        return ZScoreData.builder()
-                .puesto(doc.getString("puesto"))
-                .indicador(doc.getString("indicador"))
+    private SerieHistorica mapearASerie(Document doc, String hasta) {
+        List<String> periodos = doc.getList("periodos", String.class, List.of());
+        List<Object> variaciones = doc.getList("variaciones", Object.class, List.of());
+
+        List<String> periodosHasta = new ArrayList<>(periodos.size());
+        List<Double> variacionesHasta = new ArrayList<>(periodos.size());
+        for (int i = 0; i < periodos.size() && i < variaciones.size(); i++) {
+            if (periodos.get(i) == null || periodos.get(i).compareTo(hasta) > 0) {
+                continue;
+            }
+            periodosHasta.add(periodos.get(i));
+            variacionesHasta.add(variaciones.get(i) instanceof Number numero ? numero.doubleValue() : null);
+        }
+
+        return SerieHistorica.builder()
+                .puesto(recortar(doc.get("puesto")))
+                .indicador(recortar(doc.get("indicador")))
                 .conceptoDetalle(doc.getInteger("conceptoDetalle"))
-                .sucursal(doc.getString("sucursal"))
+                .sucursal(recortar(doc.get("sucursal")))
                 .negocio(doc.getInteger("negocio"))
-                .periodo(doc.getString("periodo"))
-                .variacion(doc.getDouble("variacion"))  // Ya normalizada
+                .periodos(periodosHasta)
+                .variaciones(variacionesHasta)
                 .build();
     }
 
@@ -252,6 +581,7 @@ public class MongoZScoreRepository implements ZScoreRepository {
      * Mapea Document a Estadistica
      */
     private Estadistica mapearAEstadistica(Document doc) {
+        Object actual = doc.get("variacionActual");
         return Estadistica.builder()
                 .puesto(doc.getString("puesto"))
                 .indicador(doc.getString("indicador"))
@@ -261,6 +591,7 @@ public class MongoZScoreRepository implements ZScoreRepository {
                 .media(doc.getDouble("media"))           // Ya en decimal
                 .desviacion(doc.getDouble("desviacion")) // Ya en decimal
                 .cantidad(doc.getInteger("cantidad"))
+                .variacionActual(actual instanceof Number numero ? numero.doubleValue() : null)
                 .build();
     }
 }
\ No newline at end of file
@@ -1,13 +1,19 @@
 package com.resumen.nomina.alertas.zscore.presentation.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.resumen.nomina.alertas.zscore.application.service.ZScoreService;
 import com.resumen.nomina.alertas.zscore.domain.model.ZScoreResponse;
+import com.resumen.nomina.alertas.zscore.domain.model.ZScoreResult;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * 🌐 REST CONTROLLER Z-SCORE - SEGÚN PDF ORIGINAL
@@ -23,6 +29,10 @@ import java.util.Map;
 public class ZScoreController {
 
     private final ZScoreService service;
+    private final ObjectMapper objectMapper;
+
+    // Resultados del backtest por cada envío al cliente
+    private static final int LINEAS_POR_ENVIO = 1000;
 
     /**
      * GET /api/alertas/zscore/calcular
@@ -70,6 +80,55 @@ public class ZScoreController {
         }
     }
 
+    /**
+     * GET /api/alertasn/zscore/backtest
+     *
+     * Z-Score de cada período de [desde, hasta] contra solo su historia anterior, como NDJSON
+     * (un resultado por línea con su "periodo"), en un solo recorrido ordenado por serie
+     *
+     * @param desde Primer período a evaluar (ej: 202401)
+     * @param hasta Último período a evaluar (ej: 202552)
+     * @param sucursal Filtro de sucursal (opcional)
+     */
+    @GetMapping("/zscore/backtest")
+    public ResponseEntity<?> backtest(
+            @RequestParam String desde,
+            @RequestParam String hasta,
+            @RequestParam(required = false) String sucursal) {
+
+        Stream<ZScoreResult> resultados;
+        try {
+            resultados = service.recorrerBacktest(desde, hasta, sucursal);
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ Backtest Z-Score inválido: {}", e.getMessage());
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(ZScoreResponse.error(e.getMessage()));
+        }
+
+        StreamingResponseBody cuerpo = salida -> {
+            long inicio = System.currentTimeMillis();
+            long escritos = 0;
+            try (resultados) {
+                Iterator<ZScoreResult> cursor = resultados.iterator();
+                while (cursor.hasNext()) {
+                    salida.write(objectMapper.writeValueAsBytes(cursor.next()));
+                    salida.write('\n');
+                    // El primer resultado sale de inmediato; después se vacía por lotes
+                    if (++escritos == 1 || escritos % LINEAS_POR_ENVIO == 0) {
+                        salida.flush();
+                    }
+                }
+                salida.flush();
+            }
+            log.info("✅ Backtest Z-Score {} a {} completado: {} resultados en {} ms",
+                    desde, hasta, escritos, System.currentTimeMillis() - inicio);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(cuerpo);
+    }
+
     /**
      * GET /api/alertas/zscore/health
      */
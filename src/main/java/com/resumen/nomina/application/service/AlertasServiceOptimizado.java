@@ -4,14 +4,21 @@ import com.resumen.nomina.application.repository.ConfiguracionAlertasRepository;
 import com.resumen.nomina.application.util.DocumentHelper;
 import com.resumen.nomina.domain.model.*;
 import com.resumen.nomina.infrastructure.repository.AlertasInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.EstadisticaCalculoInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.SucursalInfrastructureRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -24,6 +31,14 @@ public class AlertasServiceOptimizado {
 
     private final AlertasInfrastructureRepository alertasRepository;
     private final ConfiguracionAlertasRepository configuracionRepository;
+    private final EstadisticaCalculoInfrastructureRepository estadisticaRepository;
+
+    // Minutos que se conservan las alertas de todas las sucursales de un periodo; 0 consulta cada vez
+    @Value("${alertas.particion.minutos:10}")
+    private long minutosParticion;
+
+    // "tipo|periodo|configuración" -> alertas del periodo completo repartidas por sucursal y negocio
+    private final Map<String, ParticionEnCurso> particiones = new ConcurrentHashMap<>();
 
     // ========== VALORES POR DEFECTO (FALLBACK) ==========
     private static final int DEFAULT_PERIODOS_MINIMOS = 12;
@@ -111,8 +126,8 @@ public class AlertasServiceOptimizado {
 
             // 2. Obtener datos crudos del repository
 
-            List<Document> docs = alertasRepository.calcularAlertasZScore(
-                    periodoActual, sucursal, negocio, config);
+            List<Document> docs = obtenerDocumentos("Z_SCORE", periodoActual, sucursal, negocio, config,
+                    (s, n) -> alertasRepository.calcularAlertasZScore(periodoActual, s, n, config));
 
 
 
@@ -172,8 +187,8 @@ public class AlertasServiceOptimizado {
 
 
             // 2. Obtener datos crudos
-            List<Document> docs = alertasRepository.calcularAlertasARIMA(
-                    periodoActual, sucursal, negocio, config);
+            List<Document> docs = obtenerDocumentos("ARIMA", periodoActual, sucursal, negocio, config,
+                    (s, n) -> alertasRepository.calcularAlertasARIMA(periodoActual, s, n, config));
 
             if (docs.isEmpty()) {
                 log.warn("⚠️ No hay datos para ARIMA en período: {}", periodoActual);
@@ -288,6 +303,131 @@ public class AlertasServiceOptimizado {
                 .build();
     }
 
+    /**
+     * 🗂️ Limpia las alertas particionadas (se vuelven a calcular en la siguiente consulta)
+     */
+    public void limpiarParticiones() {
+        particiones.clear();
+    }
+
+    // ========== PARTICIÓN POR SUCURSAL Y NEGOCIO ==========
+
+    /**
+     * Documentos de alertas de la sucursal y negocio pedidos. El periodo se calcula una sola vez
+     * para todas las sucursales y negocios, y cada consulta toma su parte en memoria. La partición
+     * se descarta al cambiar los cálculos o la configuración, o al cumplir su tiempo.
+     */
+    private List<Document> obtenerDocumentos(String tipo, String periodoActual, String sucursal, Integer negocio,
+                                             ConfiguracionAlertas config,
+                                             BiFunction<String, Integer, List<Document>> calcular) {
+        if (minutosParticion <= 0) {
+            return calcular.apply(sucursal, negocio);
+        }
+
+        long huella = 31 * estadisticaRepository.huella() + config.hashCode();
+        long vencimiento = System.currentTimeMillis() - minutosParticion * 60_000;
+        String clave = tipo + "|" + periodoActual + "|" + config.getCodigoConfiguracion();
+
+        ParticionEnCurso particion = particiones.get(clave);
+        if (particion == null || !particion.vigente(huella, vencimiento)) {
+            particiones.values().removeIf(p -> p.futuro().isDone() && !p.vigente(p.huella(), vencimiento));
+            // compute solo publica el futuro; la agregación corre fuera del bloqueo del mapa y las
+            // consultas simultáneas del mismo periodo esperan ese único cálculo
+            ParticionEnCurso nueva = new ParticionEnCurso(huella, new CompletableFuture<>());
+            particion = particiones.compute(clave, (k, actual) ->
+                    actual != null && actual.vigente(huella, vencimiento) ? actual : nueva);
+            if (particion == nueva) {
+                calcularParticion(tipo, periodoActual, clave, nueva, calcular);
+            }
+        }
+
+        try {
+            return particion.futuro().join().seleccionar(sucursal, negocio);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+    }
+
+    /**
+     * Calcula las alertas del periodo completo y completa el futuro. Si falla, la partición se quita
+     * del mapa para que la siguiente consulta lo intente de nuevo.
+     */
+    private void calcularParticion(String tipo, String periodoActual, String clave, ParticionEnCurso particion,
+                                   BiFunction<String, Integer, List<Document>> calcular) {
+        try {
+            long inicio = System.currentTimeMillis();
+            AlertasParticionadas nueva = AlertasParticionadas.de(calcular.apply(null, null));
+            log.info("🗂️ Alertas {} del período {} particionadas: {} documentos, {} sucursales ({} ms)",
+                    tipo, periodoActual, nueva.documentos().size(), nueva.porSucursal().size(),
+                    System.currentTimeMillis() - inicio);
+            particion.futuro().complete(nueva);
+        } catch (RuntimeException | Error e) {
+            particiones.remove(clave, particion);
+            particion.futuro().completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Partición calculada o en cálculo para una huella de los cálculos y la configuración. Mientras
+     * se calcula se considera vigente; al terminar vence con el tiempo de la partición.
+     */
+    private record ParticionEnCurso(long huella, CompletableFuture<AlertasParticionadas> futuro) {
+
+        boolean vigente(long huellaActual, long vencimiento) {
+            if (huella != huellaActual || futuro.isCompletedExceptionally()) {
+                return false;
+            }
+            return !futuro.isDone() || futuro.join().creada() > vencimiento;
+        }
+    }
+
+    /**
+     * Alertas de un periodo para todas las sucursales. porSucursal guarda, por sucursal normalizada
+     * y negocio, las posiciones de sus documentos para conservar el orden del cálculo completo.
+     */
+    private record AlertasParticionadas(List<Document> documentos,
+                                        Map<String, Map<Integer, List<Integer>>> porSucursal,
+                                        long creada) {
+
+        static AlertasParticionadas de(List<Document> documentos) {
+            Map<String, Map<Integer, List<Integer>>> porSucursal = new HashMap<>();
+            for (int i = 0; i < documentos.size(); i++) {
+                Document doc = documentos.get(i);
+                Object negocio = doc.get("negocio");
+                porSucursal.computeIfAbsent(SucursalInfrastructureRepository.normalizar(doc.getString("sucursal")), k -> new HashMap<>())
+                        .computeIfAbsent(negocio instanceof Number n ? n.intValue() : null, k -> new ArrayList<>())
+                        .add(i);
+            }
+            return new AlertasParticionadas(documentos, porSucursal, System.currentTimeMillis());
+        }
+
+        /**
+         * Misma selección que el filtro de la consulta: sucursales cuyo nombre normalizado contiene
+         * el término y, si se indica, el negocio
+         */
+        List<Document> seleccionar(String sucursal, Integer negocio) {
+            boolean todasSucursales = sucursal == null || sucursal.trim().isEmpty() || "TODAS".equalsIgnoreCase(sucursal);
+            boolean todosNegocios = negocio == null || negocio <= 0;
+            if (todasSucursales && todosNegocios) {
+                return documentos;
+            }
+
+            String buscada = SucursalInfrastructureRepository.normalizar(sucursal);
+            List<Integer> posiciones = new ArrayList<>();
+            porSucursal.forEach((clave, porNegocio) -> {
+                if (todasSucursales || clave.contains(buscada)) {
+                    if (todosNegocios) {
+                        porNegocio.values().forEach(posiciones::addAll);
+                    } else {
+                        posiciones.addAll(porNegocio.getOrDefault(negocio, List.of()));
+                    }
+                }
+            });
+            Collections.sort(posiciones);
+            return posiciones.stream().map(documentos::get).collect(Collectors.toList());
+        }
+    }
+
     // ========== MAPPERS OPTIMIZADOS CON CONFIGURACIÓN ==========
 
     /**
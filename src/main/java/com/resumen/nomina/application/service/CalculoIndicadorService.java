@@ -25,9 +25,11 @@ public class CalculoIndicadorService {
 */
 package com.resumen.nomina.application.service;
 
+import com.resumen.nomina.domain.model.EstadisticaPeriodo;
 import com.resumen.nomina.domain.model.Indicador;
 import com.resumen.nomina.domain.model.IndicadorCalculado;
 import com.resumen.nomina.infrastructure.repository.CalculoIndicadorRepository;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,15 +37,25 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
 
 @Service
 public class CalculoIndicadorService {
 
     private static final Logger logger = LoggerFactory.getLogger(CalculoIndicadorService.class);
 
+    private static final int LIMITE_PAGINA_DEFECTO = 500;
+    private static final int LIMITE_PAGINA_MAXIMO = 10000;
+    private static final Set<String> CAMPOS_CONSULTABLES = Set.of(
+            "puesto", "sucursal", "fcDetalle5", "fcDetalle6", "negocio", "conceptoDetalle",
+            "periodoAnterior", "valorAnterior", "periodoActual", "valorActual", "diferencia", "variacion",
+            "fechaCalculo", "usuarioCalculo", "versionCalculo", "tipoCalculo");
+
     private final CalculoIndicadorRepository calculoIndicadorRepository;
 
     @Autowired
@@ -90,6 +102,80 @@ public class CalculoIndicadorService {
         return calculoIndicadorRepository.recalcularYReemplazarIndicadores(periodos, usuario);
     }
 
+    /**
+     * Recalcula un par de periodos consecutivos reemplazando solo el periodo actual
+     */
+    public List<IndicadorCalculado> recalcularPar(String periodoAnterior, String periodoActual, String usuario) {
+        List<String> periodos = List.of(periodoAnterior, periodoActual);
+        logger.info("Ejecutando recálculo del par: {} por usuario: {}", periodos, usuario);
+
+        validarParametrosCalculo(periodos, usuario);
+
+        return calculoIndicadorRepository.recalcularYReemplazarPar(periodos, usuario);
+    }
+
+    /**
+     * Recalcula todos los pares consecutivos de un rango con una sola agregación
+     */
+    public List<IndicadorCalculado> recalcularRango(List<String> periodos, String usuario) {
+        logger.info("Ejecutando recálculo de rango para periodos: {} por usuario: {}", periodos, usuario);
+
+        if (periodos == null || periodos.size() < 2) {
+            throw new IllegalArgumentException("Se requieren al menos 2 periodos para el cálculo por rango");
+        }
+
+        if (usuario == null || usuario.trim().isEmpty()) {
+            throw new IllegalArgumentException("El usuario no puede estar vacío");
+        }
+
+        return calculoIndicadorRepository.recalcularYReemplazarRango(periodos, usuario);
+    }
+
+    /**
+     * Ejecuta el cálculo y lo materializa en Mongo con $merge; devuelve solo el total guardado
+     */
+    public long ejecutarCalculoMaterializado(List<String> periodos, String usuario) {
+        logger.info("Ejecutando cálculo materializado para periodos: {} por usuario: {}", periodos, usuario);
+
+        validarParametrosCalculo(periodos, usuario);
+
+        return calculoIndicadorRepository.materializarIndicadores(periodos, usuario);
+    }
+
+    /**
+     * Recalcula un par materializando con $merge; devuelve solo el total guardado
+     */
+    public long materializarPar(String periodoAnterior, String periodoActual, String usuario) {
+        List<String> periodos = List.of(periodoAnterior, periodoActual);
+        validarParametrosCalculo(periodos, usuario);
+
+        return calculoIndicadorRepository.materializarYReemplazarPar(periodos, usuario);
+    }
+
+    /**
+     * Recalcula un rango materializando con $merge; devuelve los registros por periodo actual
+     */
+    public Map<String, Long> materializarRango(List<String> periodos, String usuario) {
+        logger.info("Ejecutando recálculo materializado de rango para periodos: {} por usuario: {}", periodos, usuario);
+
+        if (periodos == null || periodos.size() < 2) {
+            throw new IllegalArgumentException("Se requieren al menos 2 periodos para el cálculo por rango");
+        }
+
+        if (usuario == null || usuario.trim().isEmpty()) {
+            throw new IllegalArgumentException("El usuario no puede estar vacío");
+        }
+
+        return calculoIndicadorRepository.materializarYReemplazarRango(periodos, usuario);
+    }
+
+    /**
+     * Indica si los datos fuente de ambos periodos no cambiaron desde el último cálculo del par
+     */
+    public boolean parSinCambios(String periodoAnterior, String periodoActual) {
+        return calculoIndicadorRepository.parSinCambios(periodoAnterior, periodoActual);
+    }
+
     /**
      * Obtiene todos los indicadores calculados guardados
      */
@@ -124,45 +210,87 @@ public class CalculoIndicadorService {
         return calculoIndicadorRepository.obtenerIndicadoresCalculadosPorNegocio(negocio);
     }
 
+    /**
+     * Obtiene una página de cálculos por clave (periodoActual, _id). Para la siguiente página se
+     * envían el periodo y el _id del último documento recibido.
+     */
+    public Map<String, Object> obtenerPaginaCalculos(String periodo, Integer negocio, String despuesPeriodo,
+                                                     String despuesId, Integer limite, List<String> campos) {
+        validarPosicion(despuesPeriodo, despuesId);
+        validarCampos(campos);
+
+        int tamanio = limite == null ? LIMITE_PAGINA_DEFECTO : limite;
+        if (tamanio <= 0 || tamanio > LIMITE_PAGINA_MAXIMO) {
+            throw new IllegalArgumentException("El límite debe estar entre 1 y " + LIMITE_PAGINA_MAXIMO);
+        }
+
+        List<Document> datos = calculoIndicadorRepository.obtenerPaginaCalculos(
+                periodo, negocio, despuesPeriodo, despuesId, tamanio, campos);
+
+        // Página llena: puede haber más, la siguiente empieza después del último documento
+        // (la consulta solo trae documentos con periodoActual, así que la clave nunca es nula)
+        Map<String, Object> siguiente = null;
+        if (datos.size() == tamanio) {
+            Document ultimo = datos.get(datos.size() - 1);
+            siguiente = Map.of(
+                    "despuesPeriodo", ultimo.getString("periodoActual"),
+                    "despuesId", ultimo.get("_id").toString());
+        }
+
+        Map<String, Object> pagina = new HashMap<>();
+        pagina.put("datos", datos);
+        pagina.put("totalCalculos", datos.size());
+        pagina.put("limite", tamanio);
+        pagina.put("siguiente", siguiente);
+        return pagina;
+    }
+
+    /**
+     * Recorre los cálculos con un cursor, en el mismo orden que la paginación. Se debe cerrar el Stream.
+     */
+    public Stream<Document> recorrerCalculos(String periodo, Integer negocio, String despuesPeriodo,
+                                             String despuesId, List<String> campos) {
+        validarPosicion(despuesPeriodo, despuesId);
+        validarCampos(campos);
+
+        return calculoIndicadorRepository.recorrerCalculos(periodo, negocio, despuesPeriodo, despuesId, campos);
+    }
+
     /**
      * Obtiene estadísticas de los cálculos
      */
     public Map<String, Object> obtenerEstadisticasCalculos() {
         logger.info("Generando estadísticas de cálculos");
 
-        List<IndicadorCalculado> todosLosCalculos = calculoIndicadorRepository.obtenerIndicadoresCalculadosGuardados();
+        // Un documento pequeño por periodo, mantenido al guardar o eliminar cálculos
+        List<EstadisticaPeriodo> estadisticas = calculoIndicadorRepository.obtenerEstadisticasPorPeriodo();
 
-        Map<String, Long> calculosPorNegocio = todosLosCalculos.stream()
-                .collect(Collectors.groupingBy(
-                        calc -> calc.getNegocio().toString(),
-                        Collectors.counting()
-                ));
+        long totalCalculos = 0;
+        Map<String, Long> calculosPorNegocio = new TreeMap<>();
+        Map<String, Long> calculosPorPeriodo = new TreeMap<>();
+        Map<String, Long> calculosPorTipo = new TreeMap<>();
+        LocalDateTime fechaMasReciente = null;
 
-        Map<String, Long> calculosPorPeriodo = todosLosCalculos.stream()
-                .collect(Collectors.groupingBy(
-                        IndicadorCalculado::getPeriodoActual,
-                        Collectors.counting()
-                ));
+        for (EstadisticaPeriodo estadistica : estadisticas) {
+            totalCalculos += estadistica.getTotal();
+            calculosPorPeriodo.put(estadistica.getPeriodo(), estadistica.getTotal());
+            estadistica.getPorNegocio().forEach((negocio, total) -> calculosPorNegocio.merge(negocio, total, Long::sum));
+            estadistica.getPorTipo().forEach((tipo, total) -> calculosPorTipo.merge(tipo, total, Long::sum));
 
-        Map<String, Long> calculosPorTipo = todosLosCalculos.stream()
-                .collect(Collectors.groupingBy(
-                        IndicadorCalculado::getTipoCalculo,
-                        Collectors.counting()
-                ));
-
-        LocalDateTime fechaMasReciente = todosLosCalculos.stream()
-                .map(IndicadorCalculado::getFechaCalculo)
-                .max(LocalDateTime::compareTo)
-                .orElse(null);
+            LocalDateTime fecha = estadistica.getFechaUltimoCalculo();
+            if (fecha != null && (fechaMasReciente == null || fecha.isAfter(fechaMasReciente))) {
+                fechaMasReciente = fecha;
+            }
+        }
 
-        return Map.of(
-                "totalCalculos", todosLosCalculos.size(),
-                "calculosPorNegocio", calculosPorNegocio,
-                "calculosPorPeriodo", calculosPorPeriodo,
-                "calculosPorTipo", calculosPorTipo,
-                "fechaUltimoCalculo", fechaMasReciente,
-                "periodosDisponibles", calculosPorPeriodo.keySet()
-        );
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("totalCalculos", totalCalculos);
+        resultado.put("calculosPorNegocio", calculosPorNegocio);
+        resultado.put("calculosPorPeriodo", calculosPorPeriodo);
+        resultado.put("calculosPorTipo", calculosPorTipo);
+        resultado.put("fechaUltimoCalculo", fechaMasReciente);
+        resultado.put("periodosDisponibles", calculosPorPeriodo.keySet());
+        return resultado;
     }
 
     /**
@@ -190,26 +318,37 @@ public class CalculoIndicadorService {
         LocalDateTime hace24Horas = LocalDateTime.now().minusHours(24);
         LocalDateTime hace7Dias = LocalDateTime.now().minusDays(7);
 
-        List<IndicadorCalculado> todosLosCalculos = calculoIndicadorRepository.obtenerIndicadoresCalculadosGuardados();
-
-        long calculosUltimas24h = todosLosCalculos.stream()
-                .filter(calc -> calc.getFechaCalculo().isAfter(hace24Horas))
-                .count();
-
-        long calculosUltimos7dias = todosLosCalculos.stream()
-                .filter(calc -> calc.getFechaCalculo().isAfter(hace7Dias))
-                .count();
+        // Conteos en el servidor sobre el índice de fechaCalculo
+        long calculosUltimas24h = calculoIndicadorRepository.contarCalculosDesde(hace24Horas);
+        long calculosUltimos7dias = calculoIndicadorRepository.contarCalculosDesde(hace7Dias);
 
         return Map.of(
                 "calculosUltimas24h", calculosUltimas24h,
                 "calculosUltimos7dias", calculosUltimos7dias,
-                "totalCalculos", todosLosCalculos.size(),
+                "totalCalculos", calculoIndicadorRepository.contarCalculos(),
                 "fechaConsulta", LocalDateTime.now()
         );
     }
 
     // Métodos privados de validación
 
+    private void validarPosicion(String despuesPeriodo, String despuesId) {
+        if ((despuesPeriodo == null) != (despuesId == null)) {
+            throw new IllegalArgumentException("despuesPeriodo y despuesId deben enviarse juntos");
+        }
+    }
+
+    private void validarCampos(List<String> campos) {
+        if (campos == null) {
+            return;
+        }
+        for (String campo : campos) {
+            if (!CAMPOS_CONSULTABLES.contains(campo)) {
+                throw new IllegalArgumentException("Campo no válido: " + campo + ". Permitidos: " + CAMPOS_CONSULTABLES);
+            }
+        }
+    }
+
     private void validarParametrosCalculo(List<String> periodos, String usuario) {
         if (periodos == null || periodos.isEmpty()) {
             throw new IllegalArgumentException("Debe proporcionar al menos un periodo");
@@ -0,0 +1,300 @@
+package com.resumen.nomina.application.service;
+
+import com.resumen.nomina.domain.model.IndicadorCalculado;
+import com.resumen.nomina.domain.model.OpcionesRecalculo;
+import com.resumen.nomina.domain.model.ResultadoParCalculo;
+import com.resumen.nomina.domain.model.ResultadoRecalculoPares;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Ejecuta el recálculo de pares de periodos consecutivos en paralelo.
+ * Cada par (anterior, actual) solo reemplaza los cálculos de su periodo actual,
+ * por lo que los pares son independientes entre sí.
+ */
+@Service
+public class RecalculoParesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecalculoParesService.class);
+
+    // Se aborta el proceso al superar este número de pares con error
+    private static final int MAX_ERRORES = 3;
+
+    private final CalculoIndicadorService calculoIndicadorService;
+    private final int hilos;
+
+    @Autowired
+    public RecalculoParesService(CalculoIndicadorService calculoIndicadorService,
+                                 @Value("${alertas.procesamiento.threads:4}") int hilos) {
+        this.calculoIndicadorService = calculoIndicadorService;
+        this.hilos = Math.max(1, hilos);
+    }
+
+    /**
+     * Recalcula los pares consecutivos de la lista de periodos según el modo de las opciones
+     */
+    public ResultadoRecalculoPares recalcular(List<String> periodos, String usuario, OpcionesRecalculo opciones) {
+        return recalcular(periodos, usuario, opciones, SeguimientoRecalculo.NINGUNO);
+    }
+
+    /**
+     * Igual que {@link #recalcular(List, String, OpcionesRecalculo)}, informando el avance de cada par
+     */
+    public ResultadoRecalculoPares recalcular(List<String> periodos, String usuario, OpcionesRecalculo opciones,
+                                              SeguimientoRecalculo seguimiento) {
+        return opciones.esRango()
+                ? recalcularPorRango(periodos, usuario, opciones, seguimiento)
+                : recalcularPorPares(periodos, usuario, opciones, seguimiento);
+    }
+
+    /**
+     * Recalcula todos los pares consecutivos de la lista de periodos (ordenada de menor a mayor).
+     * Los pares cuyos datos fuente no cambiaron desde su último cálculo se omiten, salvo con forzar.
+     */
+    private ResultadoRecalculoPares recalcularPorPares(List<String> periodos, String usuario, OpcionesRecalculo opciones,
+                                                       SeguimientoRecalculo seguimiento) {
+        int totalPares = Math.max(0, periodos.size() - 1);
+        int hilosUsados = Math.max(1, Math.min(hilos, totalPares));
+
+        logger.info("Iniciando cálculos para {} períodos ({} pares) con {} hilos",
+                periodos.size(), totalPares, hilosUsados);
+
+        long inicio = System.currentTimeMillis();
+        List<ResultadoParCalculo> pares = new ArrayList<>();
+        List<IndicadorCalculado> indicadores = new ArrayList<>();
+        AtomicInteger errores = new AtomicInteger();
+        int paresEjecutados = 0;
+        int paresSinCambios = 0;
+        long totalRegistros = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(hilosUsados);
+        CompletionService<ParEjecutado> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<ParEjecutado>> futuros = new ArrayList<>(totalPares);
+
+        try {
+            // Del par más reciente al más antiguo, igual que el proceso secuencial
+            for (int i = periodos.size() - 1; i > 0; i--) {
+                String periodoActual = periodos.get(i);
+                String periodoAnterior = periodos.get(i - 1);
+                futuros.add(completionService.submit(
+                        () -> ejecutarPar(periodoAnterior, periodoActual, usuario, opciones, seguimiento)));
+            }
+
+            for (int i = 0; i < totalPares; i++) {
+                ParEjecutado ejecutado = completionService.take().get();
+                ResultadoParCalculo par = ejecutado.resultado();
+                pares.add(par);
+                seguimiento.parTerminado(par);
+
+                if (seguimiento.cancelado()) {
+                    logger.warn("Recálculo por pares cancelado tras {} de {} pares", pares.size(), totalPares);
+                    throw new CancellationException("Recálculo cancelado");
+                }
+
+                if ("ERROR".equals(par.getEstado())) {
+                    int totalErrores = errores.incrementAndGet();
+                    if (totalErrores > MAX_ERRORES) {
+                        logger.error("Demasiados errores ({}), abortando proceso", totalErrores);
+                        throw new RuntimeException("Proceso abortado por exceso de errores: " + par.getError());
+                    }
+                    continue;
+                }
+
+                if (opciones.isIncluirDatos()) {
+                    indicadores.addAll(ejecutado.indicadores());
+                }
+                totalRegistros += par.getRegistros();
+                if ("COMPLETADO".equals(par.getEstado())) {
+                    paresEjecutados++;
+                } else if ("SIN_CAMBIOS".equals(par.getEstado())) {
+                    paresSinCambios++;
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (seguimiento.cancelado()) {
+                throw new CancellationException("Recálculo cancelado");
+            }
+            throw new RuntimeException("Recálculo por pares interrumpido", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error en recálculo por pares: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            detenerSinInterrumpir(executor, futuros);
+        }
+
+        pares.sort(Comparator.comparing(ResultadoParCalculo::getPeriodoActual).reversed());
+        long tiempoTotal = System.currentTimeMillis() - inicio;
+
+        logger.info("Proceso completado en {} ms: {} pares ejecutados, {} sin cambios, {} resultados totales, {} errores",
+                tiempoTotal, paresEjecutados, paresSinCambios, totalRegistros, errores.get());
+
+        return ResultadoRecalculoPares.builder()
+                .paresEjecutados(paresEjecutados)
+                .paresSinCambios(paresSinCambios)
+                .errores(errores.get())
+                .hilos(hilosUsados)
+                .totalRegistros(totalRegistros)
+                .tiempoTotalMs(tiempoTotal)
+                .pares(pares)
+                .indicadores(indicadores)
+                .build();
+    }
+
+    /**
+     * Detiene el pool sin interrumpir pares en ejecución: los que no empezaron se cancelan y los
+     * que ya están borrando e insertando su periodo terminan antes de devolver el control.
+     */
+    private void detenerSinInterrumpir(ExecutorService executor, List<Future<ParEjecutado>> futuros) {
+        futuros.forEach(futuro -> futuro.cancel(false));
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Esperando a que terminen los pares en ejecución");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Recalcula los pares del rango con una sola lectura de DatosInteligencia.
+     * Sin forzar, la agregación se limita al subrango que cubre los pares con datos fuente modificados.
+     */
+    private ResultadoRecalculoPares recalcularPorRango(List<String> periodos, String usuario, OpcionesRecalculo opciones,
+                                                       SeguimientoRecalculo seguimiento) {
+        long inicio = System.currentTimeMillis();
+
+        int desde = 0;
+        int hasta = periodos.size() - 1;
+        if (!opciones.isForzar()) {
+            while (desde < hasta && calculoIndicadorService.parSinCambios(periodos.get(desde), periodos.get(desde + 1))) {
+                desde++;
+            }
+            while (hasta > desde && calculoIndicadorService.parSinCambios(periodos.get(hasta - 1), periodos.get(hasta))) {
+                hasta--;
+            }
+        }
+
+        if (seguimiento.cancelado()) {
+            throw new CancellationException("Recálculo cancelado");
+        }
+
+        List<String> subrango = periodos.subList(desde, hasta + 1);
+        List<IndicadorCalculado> indicadores = List.of();
+        Map<String, Long> registrosPorPeriodo = Map.of();
+
+        if (subrango.size() >= 2 && opciones.isMaterializar()) {
+            registrosPorPeriodo = calculoIndicadorService.materializarRango(subrango, usuario);
+        } else if (subrango.size() >= 2) {
+            indicadores = calculoIndicadorService.recalcularRango(subrango, usuario);
+            registrosPorPeriodo = indicadores.stream()
+                    .collect(Collectors.groupingBy(IndicadorCalculado::getPeriodoActual, Collectors.counting()));
+        }
+
+        logger.info("Cálculo de rango para {} períodos: {} recalculados en una sola agregación",
+                periodos.size(), subrango.size() < 2 ? 0 : subrango.size());
+
+        long tiempoTotal = System.currentTimeMillis() - inicio;
+
+        List<ResultadoParCalculo> pares = new ArrayList<>();
+        for (int i = periodos.size() - 1; i > 0; i--) {
+            boolean recalculado = i > desde && i <= hasta;
+            long registros = registrosPorPeriodo.getOrDefault(periodos.get(i), 0L);
+            pares.add(ResultadoParCalculo.builder()
+                    .periodoAnterior(periodos.get(i - 1))
+                    .periodoActual(periodos.get(i))
+                    .estado(!recalculado ? "SIN_CAMBIOS" : registros > 0 ? "COMPLETADO" : "SIN_RESULTADOS")
+                    .registros((int) registros)
+                    .build());
+        }
+        pares.forEach(seguimiento::parTerminado);
+
+        long totalRegistros = registrosPorPeriodo.values().stream().mapToLong(Long::longValue).sum();
+        int paresEjecutados = (int) pares.stream().filter(p -> "COMPLETADO".equals(p.getEstado())).count();
+        int paresSinCambios = (int) pares.stream().filter(p -> "SIN_CAMBIOS".equals(p.getEstado())).count();
+        logger.info("Proceso de rango completado en {} ms: {} pares ejecutados, {} sin cambios, {} resultados totales",
+                tiempoTotal, paresEjecutados, paresSinCambios, totalRegistros);
+
+        return ResultadoRecalculoPares.builder()
+                .paresEjecutados(paresEjecutados)
+                .paresSinCambios(paresSinCambios)
+                .errores(0)
+                .hilos(1)
+                .totalRegistros(totalRegistros)
+                .tiempoTotalMs(tiempoTotal)
+                .pares(pares)
+                .indicadores(opciones.isIncluirDatos() ? indicadores : List.of())
+                .build();
+    }
+
+    private ParEjecutado ejecutarPar(String periodoAnterior, String periodoActual, String usuario,
+                                     OpcionesRecalculo opciones, SeguimientoRecalculo seguimiento) {
+        long inicio = System.currentTimeMillis();
+        ResultadoParCalculo.ResultadoParCalculoBuilder resultado = ResultadoParCalculo.builder()
+                .periodoAnterior(periodoAnterior)
+                .periodoActual(periodoActual);
+
+        if (seguimiento.cancelado()) {
+            return new ParEjecutado(resultado.estado("CANCELADO").registros(0).tiempoMs(0L).build(), List.of());
+        }
+
+        try {
+            if (!opciones.isForzar() && calculoIndicadorService.parSinCambios(periodoAnterior, periodoActual)) {
+                logger.info("⏭️ Par {} vs {} sin cambios en datos fuente, se omite", periodoAnterior, periodoActual);
+                return new ParEjecutado(resultado.estado("SIN_CAMBIOS").registros(0)
+                        .tiempoMs(System.currentTimeMillis() - inicio).build(), List.of());
+            }
+
+            List<IndicadorCalculado> calculados;
+            long registros;
+            if (opciones.isMaterializar()) {
+                calculados = List.of();
+                registros = calculoIndicadorService.materializarPar(periodoAnterior, periodoActual, usuario);
+            } else {
+                calculados = calculoIndicadorService.recalcularPar(periodoAnterior, periodoActual, usuario);
+                registros = calculados == null ? 0 : calculados.size();
+            }
+            long tiempo = System.currentTimeMillis() - inicio;
+
+            if (registros == 0) {
+                logger.warn("⚠️ Sin resultados para el par: {} vs {}", periodoAnterior, periodoActual);
+                return new ParEjecutado(resultado.estado("SIN_RESULTADOS").registros(0).tiempoMs(tiempo).build(),
+                        List.of());
+            }
+
+            logger.info("✅ Par {} vs {} completado: {} registros en {} ms",
+                    periodoAnterior, periodoActual, registros, tiempo);
+            return new ParEjecutado(resultado.estado("COMPLETADO").registros((int) registros).tiempoMs(tiempo).build(),
+                    calculados);
+
+        } catch (Exception e) {
+            logger.error("❌ Error calculando par {} vs {}: {}", periodoAnterior, periodoActual, e.getMessage());
+            return new ParEjecutado(resultado.estado("ERROR").registros(0)
+                    .tiempoMs(System.currentTimeMillis() - inicio)
+                    .error(e.getMessage())
+                    .build(), List.of());
+        }
+    }
+
+    private record ParEjecutado(ResultadoParCalculo resultado, List<IndicadorCalculado> indicadores) {
+    }
+}
@@ -0,0 +1,113 @@
+package com.resumen.nomina.application.service;
+
+import com.resumen.nomina.domain.model.ArchivoPeriodo;
+import com.resumen.nomina.infrastructure.repository.ArchivoCalculosInfrastructureRepository;
+import com.resumen.nomina.infrastructure.repository.CalculoIndicadorRepository;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Retención por niveles de IndicadoresCalculados: la colección activa conserva los periodos
+ * actuales más recientes y los anteriores pasan a archivos comprimidos en disco local.
+ * La historia archivada la siguen leyendo las alertas a través de HistorialCalculos y las series.
+ */
+@Service
+public class RetencionCalculosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetencionCalculosService.class);
+
+    private final CalculoIndicadorRepository calculoIndicadorRepository;
+    private final ArchivoCalculosInfrastructureRepository archivoRepository;
+    private final int periodosActivos;
+
+    @Autowired
+    public RetencionCalculosService(CalculoIndicadorRepository calculoIndicadorRepository,
+                                    ArchivoCalculosInfrastructureRepository archivoRepository,
+                                    @Value("${calculos.retencion.periodos-activos:104}") int periodosActivos) {
+        this.calculoIndicadorRepository = calculoIndicadorRepository;
+        this.archivoRepository = archivoRepository;
+        this.periodosActivos = periodosActivos;
+    }
+
+    /**
+     * Aplica la retención con el horizonte configurado
+     */
+    public Map<String, Object> aplicarRetencion() {
+        return aplicarRetencion(periodosActivos);
+    }
+
+    /**
+     * Archiva y quita de la colección activa todos los periodos actuales salvo los N más recientes.
+     * Cada periodo se elimina solo después de escribir y registrar su archivo, y solo los _id que
+     * quedaron en él: si un recálculo escribe el periodo entre ambos pasos, sus documentos nuevos
+     * siguen en la colección activa.
+     */
+    public synchronized Map<String, Object> aplicarRetencion(int periodosActivos) {
+        if (periodosActivos <= 0) {
+            throw new IllegalArgumentException("Los periodos activos deben ser mayor a 0");
+        }
+
+        long inicio = System.currentTimeMillis();
+        List<String> periodos = calculoIndicadorRepository.obtenerPeriodosActivos();
+
+        List<String> porArchivar = periodos.size() > periodosActivos
+                ? periodos.subList(0, periodos.size() - periodosActivos)
+                : List.of();
+        logger.info("Retención: {} periodos activos, {} por archivar (horizonte {})",
+                periodos.size(), porArchivar.size(), periodosActivos);
+
+        List<ArchivoPeriodo> archivados = new ArrayList<>();
+        long documentosEliminados = 0;
+        for (String periodo : porArchivar) {
+            ArchivoPeriodo archivo = archivoRepository.archivarPeriodo(periodo);
+            archivados.add(archivo);
+            long eliminados;
+            try (Stream<Document> documentos = archivoRepository.leerPeriodo(periodo)) {
+                eliminados = calculoIndicadorRepository.eliminarPeriodoArchivado(periodo, documentos.map(doc -> doc.get("_id")));
+            }
+            if (eliminados < archivo.getDocumentos()) {
+                logger.warn("Periodo {} cambió después de archivarse: {} de {} documentos eliminados, el periodo sigue activo",
+                        periodo, eliminados, archivo.getDocumentos());
+            }
+            documentosEliminados += eliminados;
+        }
+
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("periodosActivos", periodosActivos);
+        resultado.put("periodosArchivados", archivados.stream().map(ArchivoPeriodo::getPeriodo).toList());
+        resultado.put("documentosArchivados", documentosEliminados);
+        resultado.put("bytesArchivados", archivados.stream().mapToLong(ArchivoPeriodo::getBytes).sum());
+        resultado.put("tiempoMs", System.currentTimeMillis() - inicio);
+
+        logger.info("Retención completada: {} periodos y {} documentos archivados",
+                archivados.size(), documentosEliminados);
+        return resultado;
+    }
+
+    /**
+     * Manifiesto del archivo y tamaño actual de la colección activa
+     */
+    public Map<String, Object> obtenerEstado() {
+        List<ArchivoPeriodo> manifiesto = archivoRepository.obtenerManifiesto();
+
+        Map<String, Object> estado = new HashMap<>();
+        estado.put("periodosActivosConfigurados", periodosActivos);
+        estado.put("directorio", archivoRepository.getDirectorio());
+        estado.put("coleccionActiva", calculoIndicadorRepository.obtenerTamanioColeccion());
+        estado.put("totalPeriodosArchivados", manifiesto.size());
+        estado.put("documentosArchivados", manifiesto.stream().mapToLong(ArchivoPeriodo::getDocumentos).sum());
+        estado.put("bytesArchivados", manifiesto.stream().mapToLong(ArchivoPeriodo::getBytes).sum());
+        estado.put("manifiesto", manifiesto);
+        return estado;
+    }
+}
@@ -0,0 +1,25 @@
+package com.resumen.nomina.application.service;
+
+import com.resumen.nomina.domain.model.ResultadoParCalculo;
+
+/**
+ * Permite observar el avance de un recálculo par a par y solicitar su cancelación
+ */
+public interface SeguimientoRecalculo {
+
+    SeguimientoRecalculo NINGUNO = new SeguimientoRecalculo() {
+    };
+
+    /**
+     * Se invoca cada vez que termina un par (en cualquier estado)
+     */
+    default void parTerminado(ResultadoParCalculo par) {
+    }
+
+    /**
+     * Indica si el recálculo debe detenerse antes de procesar más pares
+     */
+    default boolean cancelado() {
+        return false;
+    }
+}
@@ -0,0 +1,243 @@
+package com.resumen.nomina.application.service;
+
+import com.resumen.nomina.domain.model.OpcionesRecalculo;
+import com.resumen.nomina.domain.model.ResultadoParCalculo;
+import com.resumen.nomina.domain.model.ResultadoRecalculoPares;
+import com.resumen.nomina.domain.model.TrabajoRecalculo;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta recálculos largos como trabajos asíncronos.
+ * El envío devuelve un id; el estado (avance por par, conteos y tiempos) se consulta por ese id
+ * y el trabajo puede cancelarse. Los trabajos viven en memoria y se descartan tras unas horas.
+ */
+@Service
+public class TrabajoRecalculoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrabajoRecalculoService.class);
+
+    private final RecalculoParesService recalculoParesService;
+    private final ExecutorService executor;
+    private final long horasRetencion;
+
+    private final Map<String, TrabajoRecalculo> trabajos = new ConcurrentHashMap<>();
+    private final Map<String, Future<?>> ejecuciones = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> cancelaciones = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TrabajoRecalculoService(RecalculoParesService recalculoParesService,
+                                   @Value("${calculos.trabajos.concurrentes:1}") int concurrentes,
+                                   @Value("${calculos.trabajos.retencion-horas:24}") long horasRetencion) {
+        this.recalculoParesService = recalculoParesService;
+        this.horasRetencion = horasRetencion;
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrentes), tarea -> {
+            Thread hilo = new Thread(tarea, "recalculo-trabajo-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Encola un recálculo de indicadores y devuelve el trabajo en estado PENDIENTE
+     */
+    public TrabajoRecalculo enviar(List<String> periodos, String usuario, OpcionesRecalculo opciones) {
+        return enviar("INDICADORES", periodos, usuario, opciones, null);
+    }
+
+    /**
+     * Encola un recálculo y, al terminar sin errores, ejecuta el paso posterior (su resultado queda en el mensaje)
+     */
+    public TrabajoRecalculo enviar(String tipo, List<String> periodos, String usuario, OpcionesRecalculo opciones,
+                                   Supplier<String> posterior) {
+        depurarTerminados();
+
+        // Los trabajos nunca devuelven los indicadores, solo conteos y tiempos
+        OpcionesRecalculo opcionesTrabajo = opciones.toBuilder().incluirDatos(false).build();
+
+        TrabajoRecalculo trabajo = TrabajoRecalculo.builder()
+                .id(UUID.randomUUID().toString())
+                .tipo(tipo)
+                .estado("PENDIENTE")
+                .usuario(usuario)
+                .periodoInicial(periodos.get(0))
+                .periodoFinal(periodos.get(periodos.size() - 1))
+                .modo(opcionesTrabajo.getModo().toUpperCase())
+                .materializado(opcionesTrabajo.isMaterializar())
+                .totalPares(Math.max(0, periodos.size() - 1))
+                .paresProcesados(0)
+                .errores(0)
+                .pares(new ArrayList<>())
+                .fechaCreacion(LocalDateTime.now())
+                .build();
+
+        trabajos.put(trabajo.getId(), trabajo);
+        ejecuciones.put(trabajo.getId(),
+                executor.submit(() -> ejecutar(trabajo, periodos, usuario, opcionesTrabajo, posterior)));
+
+        logger.info("📥 Trabajo {} encolado: {} pares de {} a {}", trabajo.getId(),
+                trabajo.getTotalPares(), trabajo.getPeriodoInicial(), trabajo.getPeriodoFinal());
+        return obtener(trabajo.getId()).orElseThrow();
+    }
+
+    /**
+     * Copia del estado actual del trabajo
+     */
+    public Optional<TrabajoRecalculo> obtener(String id) {
+        TrabajoRecalculo trabajo = trabajos.get(id);
+        if (trabajo == null) {
+            return Optional.empty();
+        }
+        synchronized (trabajo) {
+            return Optional.of(trabajo.toBuilder().pares(new ArrayList<>(trabajo.getPares())).build());
+        }
+    }
+
+    /**
+     * Resumen de todos los trabajos conocidos, del más reciente al más antiguo (sin el detalle por par)
+     */
+    public List<TrabajoRecalculo> listar() {
+        List<TrabajoRecalculo> lista = new ArrayList<>();
+        for (TrabajoRecalculo trabajo : trabajos.values()) {
+            synchronized (trabajo) {
+                lista.add(trabajo.toBuilder().pares(null).build());
+            }
+        }
+        lista.sort(Comparator.comparing(TrabajoRecalculo::getFechaCreacion).reversed());
+        return lista;
+    }
+
+    /**
+     * Solicita la cancelación. Un trabajo pendiente no llega a iniciar; uno en proceso
+     * se detiene al terminar los pares que ya están en ejecución.
+     */
+    public Optional<TrabajoRecalculo> cancelar(String id) {
+        TrabajoRecalculo trabajo = trabajos.get(id);
+        if (trabajo == null) {
+            return Optional.empty();
+        }
+
+        synchronized (trabajo) {
+            if (!trabajo.isTerminado()) {
+                cancelaciones.put(id, true);
+                logger.warn("🛑 Cancelación solicitada para trabajo {}", id);
+
+                if ("PENDIENTE".equals(trabajo.getEstado())) {
+                    Future<?> ejecucion = ejecuciones.get(id);
+                    if (ejecucion != null) {
+                        ejecucion.cancel(false);
+                    }
+                    finalizar(trabajo, "CANCELADO", "Cancelado antes de iniciar", null);
+                    ejecuciones.remove(id);
+                    cancelaciones.remove(id);
+                }
+            }
+        }
+        return obtener(id);
+    }
+
+    @PreDestroy
+    public void detener() {
+        executor.shutdownNow();
+    }
+
+    // Métodos privados auxiliares
+
+    private void ejecutar(TrabajoRecalculo trabajo, List<String> periodos, String usuario,
+                          OpcionesRecalculo opciones, Supplier<String> posterior) {
+        String id = trabajo.getId();
+        synchronized (trabajo) {
+            if (trabajo.isTerminado()) {
+                return;
+            }
+            trabajo.setEstado("EN_PROCESO");
+            trabajo.setFechaInicio(LocalDateTime.now());
+        }
+
+        logger.info("🚀 Iniciando trabajo {}", id);
+
+        SeguimientoRecalculo seguimiento = new SeguimientoRecalculo() {
+            @Override
+            public void parTerminado(ResultadoParCalculo par) {
+                synchronized (trabajo) {
+                    trabajo.getPares().add(par);
+                    trabajo.setParesProcesados(trabajo.getPares().size());
+                    if ("ERROR".equals(par.getEstado())) {
+                        trabajo.setErrores(trabajo.getErrores() + 1);
+                    }
+                }
+            }
+
+            @Override
+            public boolean cancelado() {
+                return cancelaciones.containsKey(id);
+            }
+        };
+
+        try {
+            ResultadoRecalculoPares resultado = recalculoParesService.recalcular(periodos, usuario, opciones, seguimiento);
+
+            synchronized (trabajo) {
+                trabajo.setParesEjecutados(resultado.getParesEjecutados());
+                trabajo.setParesSinCambios(resultado.getParesSinCambios());
+                trabajo.setErrores(resultado.getErrores());
+                trabajo.setTotalRegistros(resultado.getTotalRegistros());
+            }
+
+            String mensaje = "Recálculo completado: " + resultado.getTotalRegistros() + " registros";
+            if (posterior != null) {
+                mensaje = mensaje + ". " + posterior.get();
+            }
+
+            finalizar(trabajo, "COMPLETADO", mensaje, null);
+
+        } catch (CancellationException e) {
+            finalizar(trabajo, "CANCELADO", "Cancelado tras " + trabajo.getParesProcesados() + " pares", null);
+        } catch (Exception e) {
+            logger.error("❌ Error en trabajo {}: {}", id, e.getMessage(), e);
+            finalizar(trabajo, "ERROR", "Error en el recálculo", e.getMessage());
+        } finally {
+            ejecuciones.remove(id);
+            cancelaciones.remove(id);
+        }
+    }
+
+    private void finalizar(TrabajoRecalculo trabajo, String estado, String mensaje, String error) {
+        synchronized (trabajo) {
+            trabajo.setEstado(estado);
+            trabajo.setMensaje(mensaje);
+            trabajo.setError(error);
+            trabajo.setFechaFin(LocalDateTime.now());
+            LocalDateTime inicio = trabajo.getFechaInicio() != null ? trabajo.getFechaInicio() : trabajo.getFechaCreacion();
+            trabajo.setTiempoTotalMs(Duration.between(inicio, trabajo.getFechaFin()).toMillis());
+        }
+        logger.info("🏁 Trabajo {} finalizado: {} - {}", trabajo.getId(), estado, mensaje);
+    }
+
+    private void depurarTerminados() {
+        LocalDateTime limite = LocalDateTime.now().minusHours(horasRetencion);
+        trabajos.values().removeIf(t -> t.isTerminado() && t.getFechaFin() != null && t.getFechaFin().isBefore(limite));
+    }
+}
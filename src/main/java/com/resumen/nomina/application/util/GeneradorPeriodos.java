@@ -0,0 +1,149 @@
+package com.resumen.nomina.application.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generación de listas de periodos consecutivos (semanas YYYYSS o meses YYYYMM)
+ * para los recálculos por rango
+ */
+@Component
+public class GeneradorPeriodos {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneradorPeriodos.class);
+
+    /**
+     * Resuelve la lista de periodos de un rango. Si no hay periodo final se usa el actual.
+     */
+    public List<String> resolverRango(String periodoInicial, String periodoFinal) {
+        if (periodoInicial == null || periodoInicial.trim().isEmpty()) {
+            throw new IllegalArgumentException("El período inicial es requerido");
+        }
+
+        if (periodoFinal == null || periodoFinal.trim().isEmpty()) {
+            periodoFinal = obtenerPeriodoActual(esPeriodoSemana(periodoInicial));
+        }
+
+        List<String> periodos = generarListaPeriodos(periodoInicial, periodoFinal);
+        if (periodos.isEmpty()) {
+            throw new IllegalArgumentException("No se generaron períodos válidos para el rango especificado");
+        }
+        return periodos;
+    }
+
+    /**
+     * Genera períodos con manejo correcto de semanas/meses y cambios de año
+     */
+    public List<String> generarListaPeriodos(String periodoInicial, String periodoFinal) {
+        List<String> periodos = new ArrayList<>();
+
+        try {
+            // Validar formato
+            if (!validarFormatoPeriodo(periodoInicial) || !validarFormatoPeriodo(periodoFinal)) {
+                throw new IllegalArgumentException("Formato de período inválido. Use YYYYSS para semanas o YYYYMM para meses");
+            }
+
+            int anoInicial = Integer.parseInt(periodoInicial.substring(0, 4));
+            int numInicial = Integer.parseInt(periodoInicial.substring(4, 6));
+            int anoFinal = Integer.parseInt(periodoFinal.substring(0, 4));
+            int numFinal = Integer.parseInt(periodoFinal.substring(4, 6));
+
+            // Validar orden lógico
+            if (anoInicial > anoFinal || (anoInicial == anoFinal && numInicial > numFinal)) {
+                throw new IllegalArgumentException("El período inicial debe ser menor o igual al período final");
+            }
+
+            // Detectar tipo (semana o mes)
+            boolean esSemana = esPeriodoSemana(periodoInicial) || esPeriodoSemana(periodoFinal);
+
+            int anoActual = anoInicial;
+            int numActual = numInicial;
+
+            while (anoActual < anoFinal || (anoActual == anoFinal && numActual <= numFinal)) {
+                periodos.add(String.format("%04d%02d", anoActual, numActual));
+
+                numActual++;
+
+                // Manejar cambio de año
+                int limite = esSemana ? obtenerUltimaSemanaDelAno(anoActual) : 12;
+                if (numActual > limite) {
+                    numActual = 1;
+                    anoActual++;
+                }
+            }
+
+            logger.info("Generados {} períodos desde {} hasta {}", periodos.size(), periodoInicial, periodoFinal);
+
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Error al parsear los períodos: " + e.getMessage());
+        }
+
+        return periodos;
+    }
+
+    /**
+     * Detecta si un período representa semanas (>12) o meses (≤12)
+     */
+    public boolean esPeriodoSemana(String periodo) {
+        if (periodo == null || periodo.length() != 6) return false;
+
+        try {
+            int num = Integer.parseInt(periodo.substring(4, 6));
+            return num > 12 && num <= 53;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Calcula las semanas del año (52 o 53 según ISO 8601)
+     */
+    public int obtenerUltimaSemanaDelAno(int ano) {
+        LocalDate primerEnero = LocalDate.of(ano, 1, 1);
+        LocalDate ultimoDiciembre = LocalDate.of(ano, 12, 31);
+
+        int diaSemanaEnero = primerEnero.getDayOfWeek().getValue();
+        int diaSemanaDiciembre = ultimoDiciembre.getDayOfWeek().getValue();
+        boolean esBisiesto = primerEnero.isLeapYear();
+
+        // ISO 8601: Año tiene 53 semanas si comienza en jueves o si es bisiesto y comienza en miércoles
+        return (diaSemanaEnero == 4 || diaSemanaDiciembre == 4 || (esBisiesto && diaSemanaEnero == 3)) ? 53 : 52;
+    }
+
+    /**
+     * Validador robusto de períodos
+     */
+    public boolean validarFormatoPeriodo(String periodo) {
+        if (periodo == null || periodo.length() != 6) return false;
+
+        try {
+            int ano = Integer.parseInt(periodo.substring(0, 4));
+            int num = Integer.parseInt(periodo.substring(4, 6));
+
+            return ano >= 2020 && ano <= 2070 && num >= 1 &&
+                    ((num <= 12) || (num <= 53)); // Mes o semana
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Obtiene período actual con formato automático
+     */
+    public String obtenerPeriodoActual(boolean esSemana) {
+        LocalDate now = LocalDate.now();
+
+        if (esSemana) {
+            int semana = now.get(java.time.temporal.IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            int ano = now.get(java.time.temporal.IsoFields.WEEK_BASED_YEAR);
+            return String.format("%04d%02d", ano, semana);
+        } else {
+            return String.format("%04d%02d", now.getYear(), now.getMonthValue());
+        }
+    }
+}
\ No newline at end of file
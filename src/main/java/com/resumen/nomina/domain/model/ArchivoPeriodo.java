@@ -0,0 +1,25 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entrada del manifiesto de archivo: un periodo actual de IndicadoresCalculados
+ * guardado como NDJSON comprimido fuera de MongoDB.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivoPeriodo {
+    private String periodo;
+    private String archivo;             // Nombre relativo al directorio de archivo
+    private Long documentos;
+    private Long bytes;
+    private String sha256;
+    private LocalDateTime fechaArchivo;
+}
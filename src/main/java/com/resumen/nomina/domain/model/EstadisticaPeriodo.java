@@ -0,0 +1,37 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conteos de IndicadoresCalculados de un periodo actual.
+ * Se regenera cada vez que un cálculo guarda o elimina el periodo.
+ */
+@Setter
+@Getter
+@Document(collection = "EstadisticasCalculos")
+public class EstadisticaPeriodo {
+    @Id
+    private String periodo;
+
+    private Long total;
+    private Map<String, Long> porNegocio;
+    private Map<String, Long> porTipo;
+    private LocalDateTime fechaUltimoCalculo;
+
+    public EstadisticaPeriodo() {
+        this.total = 0L;
+        this.porNegocio = new HashMap<>();
+        this.porTipo = new HashMap<>();
+    }
+
+    public EstadisticaPeriodo(String periodo) {
+        this();
+        this.periodo = periodo;
+    }
+}
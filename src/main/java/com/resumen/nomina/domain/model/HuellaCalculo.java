@@ -0,0 +1,36 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Huellas de los dos periodos fuente usadas en el último cálculo guardado de un periodo actual
+ */
+@Setter
+@Getter
+@Document(collection = "HuellasCalculo")
+public class HuellaCalculo {
+    @Id
+    private String periodoActual;
+
+    private String periodoAnterior;
+    private String checksumAnterior;
+    private String checksumActual;
+    private LocalDateTime fechaCalculo;
+
+    public HuellaCalculo() {
+        this.fechaCalculo = LocalDateTime.now();
+    }
+
+    public HuellaCalculo(String periodoAnterior, String checksumAnterior,
+                         String periodoActual, String checksumActual) {
+        this();
+        this.periodoAnterior = periodoAnterior;
+        this.checksumAnterior = checksumAnterior;
+        this.periodoActual = periodoActual;
+        this.checksumActual = checksumActual;
+    }
+}
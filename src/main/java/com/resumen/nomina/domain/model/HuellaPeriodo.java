@@ -0,0 +1,38 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+
+/**
+ * Huella de los datos fuente de un periodo en DatosInteligencia:
+ * número de registros y checksum de FnValor por llave de agrupación.
+ */
+@Setter
+@Getter
+@Document(collection = "HuellasPeriodo")
+public class HuellaPeriodo {
+    @Id
+    private String periodo;
+
+    private Long registros;
+    private String checksum;
+    private LocalDateTime fechaActualizacion;
+
+    public HuellaPeriodo() {
+        this.fechaActualizacion = LocalDateTime.now();
+    }
+
+    public HuellaPeriodo(String periodo, Long registros, String checksum) {
+        this();
+        this.periodo = periodo;
+        this.registros = registros;
+        this.checksum = checksum;
+    }
+
+    public boolean coincideCon(String checksumCalculado) {
+        return checksum != null && checksum.equals(checksumCalculado);
+    }
+}
@@ -3,13 +3,36 @@ package com.resumen.nomina.domain.model;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.LocalDateTime;
 
 @Setter
 @Getter
 @Document(collection = "IndicadoresCalculados")
+@CompoundIndexes({
+        // Dashboards por periodo, negocio y puesto; reemplazo por periodo actual
+        @CompoundIndex(name = "periodo_negocio_puesto", def = "{'periodoActual': 1, 'negocio': 1, 'puesto': 1}"),
+        // Compensaciones (conceptoDetalle 1001) por semana y por negocio
+        @CompoundIndex(name = "concepto_negocio_periodo", def = "{'conceptoDetalle': 1, 'negocio': 1, 'periodoActual': 1}"),
+        // Alertas y estadísticas filtradas por sucursal
+        @CompoundIndex(name = "sucursal_periodo", def = "{'sucursal': 1, 'periodoActual': 1}"),
+        // Cálculos más recientes por negocio
+        @CompoundIndex(name = "negocio_fecha", def = "{'negocio': 1, 'fechaCalculo': -1}"),
+        @CompoundIndex(name = "puesto_negocio_concepto", def = "{'puesto': 1, 'negocio': 1, 'conceptoDetalle': 1}"),
+        // Limpieza de cálculos antiguos
+        @CompoundIndex(name = "fecha_calculo", def = "{'fechaCalculo': 1}"),
+        // Paginación por clave (periodoActual, _id), general y por negocio
+        @CompoundIndex(name = "periodo_id", def = "{'periodoActual': 1, '_id': 1}"),
+        @CompoundIndex(name = "negocio_periodo_id", def = "{'negocio': 1, 'periodoActual': 1, '_id': 1}")
+})
 public class IndicadorCalculado {
+
+    // Outliers extremos (> ±1000%, sobre la variación original) que las alertas excluyen de la historia
+    public static final double VARIACION_MINIMA = -10.0;
+    public static final double VARIACION_MAXIMA = 10.0;
+
     // Getters y Setters
     @Id
     private String _id;
@@ -31,6 +54,8 @@ public class IndicadorCalculado {
     // Cálculos
     private Double diferencia;
     private Double variacion;
+    // Variación en decimal, escrita con el cálculo (ver normalizarVariacion)
+    private Double variacionNormalizada;
 
     // Metadata del cálculo
     private LocalDateTime fechaCalculo;
@@ -62,6 +87,25 @@ public class IndicadorCalculado {
         this.valorActual = valorActual;
         this.diferencia = diferencia;
         this.variacion = variacion;
+        this.variacionNormalizada = normalizarVariacion(variacion);
+    }
+
+    /**
+     * Asigna la variación y su forma normalizada juntas, para que nunca queden desfasadas
+     */
+    public void setVariacion(Double variacion) {
+        this.variacion = variacion;
+        this.variacionNormalizada = normalizarVariacion(variacion);
+    }
+
+    /**
+     * Variación en decimal: si |variacion| > 1 está en porcentaje y se divide entre 100
+     */
+    public static Double normalizarVariacion(Double variacion) {
+        if (variacion == null) {
+            return null;
+        }
+        return Math.abs(variacion) > 1 ? variacion / 100 : variacion;
     }
 
     @Override
@@ -0,0 +1,26 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Opciones de un recálculo por pares o por rango
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class OpcionesRecalculo {
+    @Builder.Default
+    private String modo = "PARES";          // "PARES" (en paralelo) o "RANGO" (una sola agregación)
+    private boolean forzar;                 // Recalcula también pares sin cambios en datos fuente
+    private boolean materializar;           // Escribe con $merge en Mongo sin traer resultados a la JVM
+    @Builder.Default
+    private boolean incluirDatos = true;    // Conserva los indicadores calculados para la respuesta
+
+    public boolean esRango() {
+        return "RANGO".equalsIgnoreCase(modo);
+    }
+}
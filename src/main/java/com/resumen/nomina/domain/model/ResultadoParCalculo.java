@@ -0,0 +1,22 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Resultado del recálculo de un par de períodos consecutivos (anterior vs actual)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoParCalculo {
+    private String periodoAnterior;
+    private String periodoActual;
+    private String estado;      // "COMPLETADO", "SIN_CAMBIOS", "SIN_RESULTADOS", "CANCELADO", "ERROR"
+    private Integer registros;
+    private Long tiempoMs;
+    private String error;
+}
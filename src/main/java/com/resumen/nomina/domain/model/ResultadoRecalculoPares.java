@@ -0,0 +1,26 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Resumen de un recálculo por pares de períodos
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoRecalculoPares {
+    private Integer paresEjecutados;
+    private Integer paresSinCambios;
+    private Integer errores;
+    private Integer hilos;
+    private Long totalRegistros;
+    private Long tiempoTotalMs;
+    private List<ResultadoParCalculo> pares;
+    private List<IndicadorCalculado> indicadores;
+}
@@ -0,0 +1,65 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Historia de una serie de IndicadoresCalculados en un solo documento.
+ * La clave es "puesto|indicador|conceptoDetalle|sucursal|negocio" (fcDetalle5 y fcDetalle6 como
+ * puesto e indicador) y los arreglos paralelos están ordenados por periodo.
+ */
+@Setter
+@Getter
+@Document(collection = "SeriesIndicadores")
+@CompoundIndexes({
+        @CompoundIndex(name = "sucursal_concepto", def = "{'sucursal': 1, 'conceptoDetalle': 1}"),
+        @CompoundIndex(name = "periodos", def = "{'periodos': 1}")
+})
+public class SerieIndicador {
+    @Id
+    private String clave;
+
+    private String puesto;
+    private String indicador;
+    private Integer conceptoDetalle;
+    private String sucursal;
+    private Integer negocio;
+
+    // Arreglos paralelos: el elemento i de cada uno corresponde a periodos[i]
+    private List<String> periodos;
+    private List<Double> valoresActuales;
+    private List<Double> variaciones;
+
+    // Estado de Welford de la variación normalizada (sin outliers) de todos los puntos
+    private AcumuladoVariacion acumulado;
+
+    private LocalDateTime fechaActualizacion;
+
+    public int getTotalPeriodos() {
+        return periodos != null ? periodos.size() : 0;
+    }
+
+    /**
+     * Conteo, media, suma de cuadrados de las diferencias (M2), mínimo y máximo. Se actualiza
+     * al escribir o quitar puntos de la serie, sin volver a recorrerla.
+     */
+    @Setter
+    @Getter
+    public static class AcumuladoVariacion {
+        private Integer n;
+        private Double media;
+        private Double m2;
+        private Double min;
+        private Double max;
+
+        public double getDesviacion() {
+            return n != null && n > 0 && m2 != null ? Math.sqrt(m2 / n) : 0.0;
+        }
+    }
+}
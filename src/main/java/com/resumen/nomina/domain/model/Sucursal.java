@@ -0,0 +1,28 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Entrada del catálogo de sucursales: el nombre normalizado (sin espacios a los lados, en
+ * mayúsculas y sin acentos) y los valores de "sucursal" guardados en IndicadoresCalculados
+ * que le corresponden, para filtrar con igualdad exacta.
+ */
+@Setter
+@Getter
+@Document(collection = "CatalogoSucursales")
+public class Sucursal {
+    @Id
+    private Integer id;
+
+    @Indexed(name = "clave", unique = true)
+    private String clave;
+
+    private List<String> valores;
+    private LocalDateTime fechaActualizacion;
+}
@@ -0,0 +1,47 @@
+package com.resumen.nomina.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Trabajo asíncrono de recálculo por pares o por rango.
+ * Solo guarda conteos, tiempos y el estado de cada par; nunca los indicadores calculados.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrabajoRecalculo {
+    private String id;
+    private String tipo;                // "INDICADORES", "RECALCULO_COMPLETO"
+    private String estado;              // "PENDIENTE", "EN_PROCESO", "COMPLETADO", "CANCELADO", "ERROR"
+    private String usuario;
+    private String periodoInicial;
+    private String periodoFinal;
+    private String modo;
+    private Boolean materializado;
+
+    private Integer totalPares;
+    private Integer paresProcesados;
+    private Integer paresEjecutados;
+    private Integer paresSinCambios;
+    private Integer errores;
+    private Long totalRegistros;
+    private List<ResultadoParCalculo> pares;
+
+    private LocalDateTime fechaCreacion;
+    private LocalDateTime fechaInicio;
+    private LocalDateTime fechaFin;
+    private Long tiempoTotalMs;
+    private String mensaje;
+    private String error;
+
+    public boolean isTerminado() {
+        return "COMPLETADO".equals(estado) || "CANCELADO".equals(estado) || "ERROR".equals(estado);
+    }
+}
@@ -16,10 +16,12 @@ public class AlertasInfrastructureRepository {
 
     private static final Logger log = LoggerFactory.getLogger(AlertasInfrastructureRepository.class);
     private final MongoTemplate mongoTemplate;
+    private final SucursalInfrastructureRepository sucursalRepository;
 
     @Autowired
-    public AlertasInfrastructureRepository(MongoTemplate mongoTemplate) {
+    public AlertasInfrastructureRepository(MongoTemplate mongoTemplate, SucursalInfrastructureRepository sucursalRepository) {
         this.mongoTemplate = mongoTemplate;
+        this.sucursalRepository = sucursalRepository;
     }
 
     /**
@@ -33,48 +35,43 @@ public class AlertasInfrastructureRepository {
         MongoCollection<Document> collection = mongoTemplate.getDb()
                 .getCollection("IndicadoresCalculados");
 
-        List<Document> pipeline = Arrays.asList(
-                new Document("$facet", new Document()
-                        .append("estadisticasHistoricas", Arrays.asList(
-                                new Document("$match", buildMatchFilter(periodoActual, sucursal, negocio, config, true)),
-                                new Document("$group", new Document("_id", new Document()
-                                        .append("puesto", "$fcDetalle5")
-                                        .append("indicador", "$fcDetalle6")
-                                        .append("conceptoDetalle", "$conceptoDetalle")
-                                        .append("sucursal", "$sucursal")
-                                        .append("negocio", "$negocio"))
-                                        .append("variacionMedia", new Document("$avg", "$variacion"))
-                                        .append("desviacionEstandar", new Document("$stdDevPop", "$variacion"))
-                                        .append("cantidadPeriodos", new Document("$sum", 1)))
-                        ))
-                        .append("datosActuales", Arrays.asList(
-                                new Document("$match", buildMatchFilter(periodoActual, sucursal, negocio, config, false)),
-                                new Document("$match", new Document("periodoActual", periodoActual))
-                        ))
-                ),
+        List<Document> pipeline = pipelineAlertasZScore(periodoActual, sucursal, negocio, config);
 
-                new Document("$project", new Document()
-                        .append("estadisticas", "$estadisticasHistoricas")
-                        .append("actuales", "$datosActuales")),
+        return ejecutarPipeline(collection, pipeline);
+    }
 
+    /**
+     * Pipeline de calcularAlertasZScore (también lo usa la verificación de planes). Agrupa la
+     * colección una vez por serie: sin $facet, cuyo resultado es un solo documento limitado a
+     * 16 MB, ni la búsqueda de cada fila actual entre todas las estadísticas.
+     */
+    List<Document> pipelineAlertasZScore(String periodoActual, String sucursal, Integer negocio,
+                                         ConfiguracionAlertas config) {
+        Document esActual = new Document("$eq", Arrays.asList("$periodoActual", periodoActual));
+        return Arrays.asList(
+                // 1. Una sola pasada: estadísticas de la historia y filas del período actual por serie
+                new Document("$match", buildMatchFilter(sucursal, negocio, config)),
+                new Document("$group", new Document("_id", new Document()
+                        .append("puesto", "$fcDetalle5")
+                        .append("indicador", "$fcDetalle6")
+                        .append("conceptoDetalle", "$conceptoDetalle")
+                        .append("sucursal", "$sucursal")
+                        .append("negocio", "$negocio"))
+                        .append("variacionMedia", new Document("$avg", new Document("$cond", Arrays.asList(esActual, null, "$variacion"))))
+                        .append("desviacionEstandar", new Document("$stdDevPop", new Document("$cond", Arrays.asList(esActual, null, "$variacion"))))
+                        .append("cantidadPeriodos", new Document("$sum", new Document("$cond", Arrays.asList(esActual, 0, 1))))
+                        .append("actuales", new Document("$push", new Document("$cond", Arrays.asList(esActual, new Document()
+                                .append("fcDetalle5", "$fcDetalle5")
+                                .append("fcDetalle6", "$fcDetalle6")
+                                .append("conceptoDetalle", "$conceptoDetalle")
+                                .append("sucursal", "$sucursal")
+                                .append("negocio", "$negocio")
+                                .append("periodoActual", "$periodoActual")
+                                .append("variacion", "$variacion"), "$$REMOVE"))))),
+
+                // 2. Una alerta por fila actual, con las estadísticas de su serie
                 new Document("$unwind", "$actuales"),
 
-                new Document("$addFields", new Document("estadistica",
-                        new Document("$arrayElemAt", Arrays.asList(
-                                new Document("$filter", new Document()
-                                        .append("input", "$estadisticas")
-                                        .append("as", "e")
-                                        .append("cond", new Document("$and", Arrays.asList(
-                                                new Document("$eq", Arrays.asList("$$e._id.puesto", "$actuales.fcDetalle5")),
-                                                new Document("$eq", Arrays.asList("$$e._id.indicador", "$actuales.fcDetalle6")),
-                                                new Document("$eq", Arrays.asList("$$e._id.conceptoDetalle", "$actuales.conceptoDetalle")),
-                                                new Document("$eq", Arrays.asList("$$e._id.sucursal", "$actuales.sucursal")),
-                                                new Document("$eq", Arrays.asList("$$e._id.negocio", "$actuales.negocio"))
-                                        )))
-                                ), 0
-                        ))
-                )),
-
                 new Document("$project", new Document("_id", 0)
                         .append("puesto", new Document("$trim", new Document("input", "$actuales.fcDetalle5")))
                         .append("indicador", new Document("$trim", new Document("input", "$actuales.fcDetalle6")))
@@ -86,47 +83,47 @@ public class AlertasInfrastructureRepository {
                                 new Document("$round", Arrays.asList("$actuales.variacion", 2))))
                         .append("variacionMedia", new Document("$toDouble",
                                 new Document("$round", Arrays.asList(
-                                        new Document("$ifNull", Arrays.asList("$estadistica.variacionMedia", 0)), 2))))
+                                        new Document("$ifNull", Arrays.asList("$variacionMedia", 0)), 2))))
                         .append("desviacionEstandar", new Document("$toDouble",
                                 new Document("$round", Arrays.asList(
-                                        new Document("$ifNull", Arrays.asList("$estadistica.desviacionEstandar", 0)), 2))))
+                                        new Document("$ifNull", Arrays.asList("$desviacionEstandar", 0)), 2))))
 
                         // CAMBIO: Usar nivel de confianza de la configuración
                         .append("limiteInferior", new Document("$toDouble",
                                 new Document("$round", Arrays.asList(
                                         new Document("$subtract", Arrays.asList(
-                                                "$estadistica.variacionMedia",
+                                                "$variacionMedia",
                                                 new Document("$multiply", Arrays.asList(
                                                         config.getNivelConfianzaArima(),
-                                                        "$estadistica.desviacionEstandar"))
+                                                        "$desviacionEstandar"))
                                         )), 2))))
                         .append("limiteSuperior", new Document("$toDouble",
                                 new Document("$round", Arrays.asList(
                                         new Document("$add", Arrays.asList(
-                                                "$estadistica.variacionMedia",
+                                                "$variacionMedia",
                                                 new Document("$multiply", Arrays.asList(
                                                         config.getNivelConfianzaArima(),
-                                                        "$estadistica.desviacionEstandar"))
+                                                        "$desviacionEstandar"))
                                         )), 2))))
 
                         .append("zScore", new Document("$toDouble",
                                 new Document("$round", Arrays.asList(
                                         new Document("$cond", Arrays.asList(
                                                 new Document("$or", Arrays.asList(
-                                                        new Document("$eq", Arrays.asList("$estadistica.desviacionEstandar", 0)),
-                                                        new Document("$eq", Arrays.asList("$estadistica.desviacionEstandar", null))
+                                                        new Document("$eq", Arrays.asList("$desviacionEstandar", 0)),
+                                                        new Document("$eq", Arrays.asList("$desviacionEstandar", null))
                                                 )),
                                                 0,
                                                 new Document("$divide", Arrays.asList(
                                                         new Document("$subtract", Arrays.asList(
                                                                 "$actuales.variacion",
-                                                                "$estadistica.variacionMedia"
+                                                                "$variacionMedia"
                                                         )),
-                                                        "$estadistica.desviacionEstandar"
+                                                        "$desviacionEstandar"
                                                 ))
                                         )), 2))))
                         .append("cantidadPeriodosHistoricos",
-                                new Document("$ifNull", Arrays.asList("$estadistica.cantidadPeriodos", 0)))
+                                new Document("$ifNull", Arrays.asList("$cantidadPeriodos", 0)))
                 ),
 
                 new Document("$addFields", new Document()
@@ -159,8 +156,6 @@ public class AlertasInfrastructureRepository {
                         .append("zScoreAbs", -1)
                         .append("puesto", 1))
         );
-
-        return ejecutarPipeline(collection, pipeline);
     }
 
     /**
@@ -175,7 +170,7 @@ public class AlertasInfrastructureRepository {
                 .getCollection("IndicadoresCalculados");
 
         List<Document> pipeline = Arrays.asList(
-                new Document("$match", buildMatchFilter(periodoActual, sucursal, negocio, config, false)),
+                new Document("$match", buildMatchFilter(sucursal, negocio, config)),
 
                 new Document("$group", new Document("_id", new Document()
                         .append("puesto", "$fcDetalle5")
@@ -311,17 +306,11 @@ public class AlertasInfrastructureRepository {
     /**
      * CAMBIO: Construye filtro usando configuración para exclusiones
      */
-    private Document buildMatchFilter(String periodoActual, String sucursal, Integer negocio,
-                                      ConfiguracionAlertas config, boolean excluirActual) {
+    private Document buildMatchFilter(String sucursal, Integer negocio, ConfiguracionAlertas config) {
         Document match = new Document();
 
-        if (excluirActual) {
-            match.append("periodoActual", new Document("$ne", periodoActual));
-        }
-
         if (sucursal != null && !sucursal.trim().isEmpty() && !"TODAS".equalsIgnoreCase(sucursal)) {
-            match.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+            match.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
         }
 
         if (negocio != null && negocio > 0) {
@@ -348,7 +337,7 @@ public class AlertasInfrastructureRepository {
 
     private List<Document> ejecutarPipeline(MongoCollection<Document> collection, List<Document> pipeline) {
         try {
-            List<Document> results = collection.aggregate(pipeline).into(new ArrayList<>());
+            List<Document> results = collection.aggregate(pipeline).allowDiskUse(true).into(new ArrayList<>());
             log.info("Pipeline ejecutado exitosamente. Resultados: {}", results.size());
             return results;
         } catch (Exception e) {
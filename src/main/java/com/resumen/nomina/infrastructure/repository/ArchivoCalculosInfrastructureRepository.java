@@ -0,0 +1,217 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoCursor;
+import com.resumen.nomina.domain.model.ArchivoPeriodo;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archivo en disco local de IndicadoresCalculados: un archivo NDJSON comprimido con gzip por
+ * periodo actual y un manifiesto con lo archivado. Los documentos se escriben en JSON extendido,
+ * así que al leerlos conservan sus tipos (ObjectId, fechas, enteros y decimales).
+ */
+@Repository
+public class ArchivoCalculosInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArchivoCalculosInfrastructureRepository.class);
+
+    private static final String ORIGEN = "IndicadoresCalculados";
+    private static final String MANIFIESTO = "manifiesto.json";
+    private static final JsonWriterSettings FORMATO = JsonWriterSettings.builder()
+            .outputMode(JsonMode.EXTENDED)
+            .build();
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path directorio;
+
+    // Periodo -> entrada del manifiesto, ordenado por periodo
+    private final Map<String, ArchivoPeriodo> manifiesto = new TreeMap<>();
+
+    @Autowired
+    public ArchivoCalculosInfrastructureRepository(MongoTemplate mongoTemplate, ObjectMapper objectMapper,
+                                                   @Value("${calculos.retencion.directorio:archivo/indicadores-calculados}") String directorio) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.directorio = Paths.get(directorio).toAbsolutePath();
+        cargarManifiesto();
+    }
+
+    /**
+     * Escribe todos los cálculos de un periodo actual a su archivo comprimido y lo registra en el
+     * manifiesto. No elimina nada de MongoDB: eso corresponde al llamador una vez archivado.
+     * Si el periodo ya estaba archivado, el archivo se reemplaza.
+     */
+    public synchronized ArchivoPeriodo archivarPeriodo(String periodo) {
+        long inicio = System.currentTimeMillis();
+        Document filtro = new Document("periodoActual", periodo);
+        long esperados = mongoTemplate.getDb().getCollection(ORIGEN).countDocuments(filtro);
+
+        String nombre = ORIGEN + "-" + periodo + ".ndjson.gz";
+        Path destino = directorio.resolve(nombre);
+        Path temporal = directorio.resolve(nombre + ".tmp");
+
+        long escritos = 0;
+        MessageDigest digest = nuevoDigest();
+        try {
+            Files.createDirectories(directorio);
+            try (OutputStream archivo = Files.newOutputStream(temporal);
+                 BufferedWriter salida = new BufferedWriter(new OutputStreamWriter(
+                         new GZIPOutputStream(new DigestOutputStream(archivo, digest)), StandardCharsets.UTF_8));
+                 MongoCursor<Document> cursor = mongoTemplate.getDb().getCollection(ORIGEN)
+                         .find(filtro)
+                         .sort(new Document("_id", 1))
+                         .batchSize(5000)
+                         .iterator()) {
+                while (cursor.hasNext()) {
+                    salida.write(cursor.next().toJson(FORMATO));
+                    salida.newLine();
+                    escritos++;
+                }
+            }
+
+            if (escritos != esperados) {
+                Files.deleteIfExists(temporal);
+                throw new IllegalStateException(String.format(
+                        "Periodo %s cambió durante el archivo: se esperaban %d documentos y se escribieron %d",
+                        periodo, esperados, escritos));
+            }
+
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            ArchivoPeriodo entrada = ArchivoPeriodo.builder()
+                    .periodo(periodo)
+                    .archivo(nombre)
+                    .documentos(escritos)
+                    .bytes(Files.size(destino))
+                    .sha256(HexFormat.of().formatHex(digest.digest()))
+                    .fechaArchivo(LocalDateTime.now())
+                    .build();
+            manifiesto.put(periodo, entrada);
+            guardarManifiesto();
+
+            logger.info("Periodo {} archivado: {} documentos, {} bytes en {} ms",
+                    periodo, escritos, entrada.getBytes(), System.currentTimeMillis() - inicio);
+            return entrada;
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo archivar el periodo " + periodo, e);
+        }
+    }
+
+    /**
+     * Lee los documentos archivados de un periodo. El llamador debe cerrar el Stream.
+     */
+    public Stream<Document> leerPeriodo(String periodo) {
+        ArchivoPeriodo entrada = obtenerEntrada(periodo);
+        if (entrada == null) {
+            return Stream.empty();
+        }
+
+        try {
+            BufferedReader lector = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(directorio.resolve(entrada.getArchivo()))),
+                    StandardCharsets.UTF_8));
+            return lector.lines()
+                    .filter(linea -> !linea.isBlank())
+                    .map(Document::parse)
+                    .onClose(() -> {
+                        try {
+                            lector.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el archivo del periodo " + periodo, e);
+        }
+    }
+
+    public synchronized List<ArchivoPeriodo> obtenerManifiesto() {
+        return new ArrayList<>(manifiesto.values());
+    }
+
+    public synchronized List<String> periodosArchivados() {
+        return new ArrayList<>(manifiesto.keySet());
+    }
+
+    public synchronized boolean hayPeriodosArchivados() {
+        return !manifiesto.isEmpty();
+    }
+
+    public String getDirectorio() {
+        return directorio.toString();
+    }
+
+    // Métodos privados auxiliares
+
+    private synchronized ArchivoPeriodo obtenerEntrada(String periodo) {
+        return manifiesto.get(periodo);
+    }
+
+    private void cargarManifiesto() {
+        Path archivo = directorio.resolve(MANIFIESTO);
+        if (!Files.exists(archivo)) {
+            return;
+        }
+        try {
+            List<ArchivoPeriodo> entradas = objectMapper.readValue(archivo.toFile(), new TypeReference<List<ArchivoPeriodo>>() {});
+            entradas.forEach(entrada -> manifiesto.put(entrada.getPeriodo(), entrada));
+            logger.info("Manifiesto de archivo cargado: {} periodos en {}", manifiesto.size(), directorio);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo leer el manifiesto " + archivo, e);
+        }
+    }
+
+    /**
+     * Escribe el manifiesto completo en un temporal y lo reemplaza de forma atómica
+     */
+    private void guardarManifiesto() throws IOException {
+        Path archivo = directorio.resolve(MANIFIESTO);
+        Path temporal = directorio.resolve(MANIFIESTO + ".tmp");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(temporal.toFile(), new ArrayList<>(manifiesto.values()));
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private MessageDigest nuevoDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
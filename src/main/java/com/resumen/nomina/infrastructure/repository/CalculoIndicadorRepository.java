@@ -156,6 +156,7 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
 */
 package com.resumen.nomina.infrastructure.repository;
 
+import com.resumen.nomina.domain.model.EstadisticaPeriodo;
 import com.resumen.nomina.domain.model.Indicador;
 import com.resumen.nomina.domain.model.IndicadorCalculado;
 import com.resumen.nomina.application.repository.IndicadorCalculadoRepository;
@@ -166,15 +167,27 @@ import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 public class CalculoIndicadorRepository implements com.resumen.nomina.application.repository.CalculoIndicadorRepository {
@@ -183,11 +196,31 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
 
     private final MongoTemplate mongoTemplate;
     private final IndicadorCalculadoRepository indicadorCalculadoRepository;
+    private final HuellaPeriodoInfrastructureRepository huellaPeriodoRepository;
+    private final SerieIndicadorInfrastructureRepository serieIndicadorRepository;
+    private final ResumenDatosInteligenciaInfrastructureRepository resumenRepository;
+    private final EstadisticaCalculoInfrastructureRepository estadisticaRepository;
+    private final SucursalInfrastructureRepository sucursalRepository;
+
+    // Documentos por cada inserción bulk en IndicadoresCalculados
+    private final int loteEscritura;
 
     @Autowired
-    public CalculoIndicadorRepository(MongoTemplate mongoTemplate, IndicadorCalculadoRepository indicadorCalculadoRepository) {
+    public CalculoIndicadorRepository(MongoTemplate mongoTemplate, IndicadorCalculadoRepository indicadorCalculadoRepository,
+                                      HuellaPeriodoInfrastructureRepository huellaPeriodoRepository,
+                                      SerieIndicadorInfrastructureRepository serieIndicadorRepository,
+                                      ResumenDatosInteligenciaInfrastructureRepository resumenRepository,
+                                      EstadisticaCalculoInfrastructureRepository estadisticaRepository,
+                                      SucursalInfrastructureRepository sucursalRepository,
+                                      @Value("${calculos.escritura.lote:5000}") int loteEscritura) {
         this.mongoTemplate = mongoTemplate;
         this.indicadorCalculadoRepository = indicadorCalculadoRepository;
+        this.huellaPeriodoRepository = huellaPeriodoRepository;
+        this.serieIndicadorRepository = serieIndicadorRepository;
+        this.resumenRepository = resumenRepository;
+        this.estadisticaRepository = estadisticaRepository;
+        this.sucursalRepository = sucursalRepository;
+        this.loteEscritura = Math.max(1, loteEscritura);
     }
 
     @Override
@@ -197,35 +230,42 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
         // Obtiene la base de datos de MongoDB
         MongoDatabase database = mongoTemplate.getDb();
 
-        // Especifica la colección 'DatosInteligencia' donde realizar el pipeline
-        MongoCollection<Document> collection = database.getCollection("DatosInteligencia");
+        // DatosInteligencia o su resumen por periodo cuando está vigente (mismos campos, ~50x menos filas)
+        String coleccionFuente = resumenRepository.coleccionFuente(periodos);
+        MongoCollection<Document> collection = database.getCollection(coleccionFuente);
 
         // Define el pipeline de agregación
         List<Document> pipeline = createAggregationPipeline(periodos);
 
         // Ejecutar el pipeline
-        logger.info("Ejecutando la agregación en la colección 'DatosInteligencia'...");
+        logger.info("Ejecutando la agregación en la colección '{}'...", coleccionFuente);
         AggregateIterable<Document> result = collection.aggregate(pipeline);
 
         logger.info("Agregación completada, procesando los resultados...");
 
         // Mapear los resultados a una lista de objetos Indicador
-        return result.map(document -> {
-            Indicador indicador = new Indicador();
-            indicador.setPuesto(document.getInteger("puesto"));
-            indicador.setSucursal(document.getString("sucursal"));
-            indicador.setFcDetalle5(document.getString("FcDetalle5"));
-            indicador.setFcDetalle6(document.getString("FcDetalle6"));
-            indicador.setNegocio(document.getInteger("negocio"));
-            indicador.setConceptoDetalle(document.getInteger("conceptoDetalle"));
-            indicador.setPeriodoAnterior(document.getString("PeriodoAnterior"));
-            indicador.setValorAnterior(getDoubleValue(document, "valorAnterior"));
-            indicador.setPeriodoActual(document.getString("PeriodoActual"));
-            indicador.setValorActual(getDoubleValue(document, "valorActual"));
-            indicador.setDiferencia(getDoubleValue(document, "diferencia"));
-            indicador.setVariacion(getDoubleValue(document, "variacion"));
-            return indicador;
-        }).into(new java.util.ArrayList<>());
+        return result.map(this::mapearIndicador).into(new java.util.ArrayList<>());
+    }
+
+    /**
+     * Calcula en una sola agregación las diferencias de todos los pares consecutivos
+     * de la lista de periodos. Cada fila de DatosInteligencia se lee una sola vez,
+     * en lugar de una vez por cada par en el que participa su periodo.
+     */
+    public List<Indicador> obtenerIndicadoresPorRango(List<String> periodos) {
+        List<String> periodosOrdenados = periodos.stream().distinct().sorted().collect(Collectors.toList());
+        logger.info("Ejecutando el pipeline de rango para {} periodos: {}", periodosOrdenados.size(), periodosOrdenados);
+
+        MongoCollection<Document> collection = mongoTemplate.getDb()
+                .getCollection(resumenRepository.coleccionFuente(periodosOrdenados));
+        List<Document> pipeline = createRangeAggregationPipeline(periodosOrdenados);
+
+        AggregateIterable<Document> result = collection.aggregate(pipeline).allowDiskUse(true);
+
+        List<Indicador> indicadores = result.map(this::mapearIndicador).into(new ArrayList<>());
+        logger.info("Agregación de rango completada: {} indicadores para {} pares",
+                indicadores.size(), periodosOrdenados.size() - 1);
+        return indicadores;
     }
 
     /**
@@ -248,10 +288,15 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
                 indicadoresParaGuardar.add(indicadorCalculado);
             }
 
-            // 3. Guardar en lote
-            List<IndicadorCalculado> indicadoresGuardados = indicadorCalculadoRepository.saveAll(indicadoresParaGuardar);
+            // 3. Guardar en lotes bulk
+            List<IndicadorCalculado> indicadoresGuardados = insertarEnLotes(indicadoresParaGuardar);
             logger.info("Se guardaron {} indicadores calculados en la colección", indicadoresGuardados.size());
 
+            // 4. Reflejar el periodo actual en el almacén por serie y en las estadísticas,
+            //    y registrar las huellas fuente usadas en este cálculo
+            actualizarDerivadosYHuellas(periodos.stream().distinct().sorted().collect(Collectors.toList()),
+                    List.of(periodos.stream().max(String::compareTo).orElseThrow()));
+
             return indicadoresGuardados;
 
         } catch (Exception e) {
@@ -270,15 +315,19 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
         try {
             // 1. Eliminar cálculos anteriores para estos periodos
             for (String periodo : periodos) {
-                List<IndicadorCalculado> anteriores = indicadorCalculadoRepository.findByPeriodoActual(periodo);
-                if (!anteriores.isEmpty()) {
-                    indicadorCalculadoRepository.deleteAll(anteriores);
-                    logger.info("Eliminados {} cálculos anteriores para periodo: {}", anteriores.size(), periodo);
-                }
+                eliminarCalculosDePeriodo(periodo);
             }
 
             // 2. Calcular y guardar nuevos
-            return calcularYGuardarIndicadores(periodos, usuario);
+            List<IndicadorCalculado> guardados = calcularYGuardarIndicadores(periodos, usuario);
+
+            // 3. Los demás periodos eliminados no se recalculan aquí: reflejar su eliminación
+            String periodoActual = periodos.stream().max(String::compareTo).orElseThrow();
+            List<String> eliminados = periodos.stream().filter(p -> !p.equals(periodoActual)).distinct().toList();
+            if (!eliminados.isEmpty()) {
+                actualizarDerivados(eliminados);
+            }
+            return guardados;
 
         } catch (Exception e) {
             logger.error("Error al recalcular indicadores: {}", e.getMessage(), e);
@@ -286,6 +335,143 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
         }
     }
 
+    /**
+     * Recalcula un par de periodos reemplazando solo los cálculos del periodo actual (el mayor).
+     * Los cálculos del periodo anterior pertenecen a otro par, así que pares distintos
+     * pueden ejecutarse en paralelo sin pisarse.
+     */
+    @Transactional
+    public List<IndicadorCalculado> recalcularYReemplazarPar(List<String> periodos, String usuario) {
+        String periodoActual = periodos.stream().max(String::compareTo).orElseThrow();
+        logger.info("Iniciando recálculo del par {} (reemplaza periodo {})", periodos, periodoActual);
+
+        try {
+            eliminarCalculosDePeriodo(periodoActual);
+
+            return calcularYGuardarIndicadores(periodos, usuario);
+
+        } catch (Exception e) {
+            logger.error("Error al recalcular par {}: {}", periodos, e.getMessage(), e);
+            throw new RuntimeException("Error en el recálculo del par: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Recalcula un rango completo de periodos con una sola lectura de DatosInteligencia.
+     * Reemplaza los cálculos de cada periodo actual del rango (todos menos el primero)
+     * y guarda los nuevos agrupados por periodo actual.
+     */
+    @Transactional
+    public List<IndicadorCalculado> recalcularYReemplazarRango(List<String> periodos, String usuario) {
+        List<String> periodosOrdenados = periodos.stream().distinct().sorted().collect(Collectors.toList());
+        logger.info("Iniciando recálculo de rango para periodos: {}", periodosOrdenados);
+
+        try {
+            // 1. Eliminar cálculos anteriores de los periodos actuales del rango
+            for (String periodo : periodosOrdenados.subList(1, periodosOrdenados.size())) {
+                eliminarCalculosDePeriodo(periodo);
+            }
+
+            // 2. Calcular todos los pares en una sola agregación
+            Map<String, List<IndicadorCalculado>> porPeriodo = new TreeMap<>();
+            for (Indicador indicador : obtenerIndicadoresPorRango(periodosOrdenados)) {
+                porPeriodo.computeIfAbsent(indicador.getPeriodoActual(), k -> new ArrayList<>())
+                        .add(convertirAIndicadorCalculado(indicador, usuario));
+            }
+
+            // 3. Guardar en lotes por periodo actual
+            List<IndicadorCalculado> indicadoresGuardados = new ArrayList<>();
+            porPeriodo.forEach((periodo, lote) -> {
+                indicadoresGuardados.addAll(insertarEnLotes(lote));
+                logger.info("Se guardaron {} indicadores calculados para periodo: {}", lote.size(), periodo);
+            });
+
+            // 4. Derivados y huellas fuente de cada par del rango
+            actualizarDerivadosYHuellas(periodosOrdenados, periodosOrdenados.subList(1, periodosOrdenados.size()));
+
+            return indicadoresGuardados;
+
+        } catch (Exception e) {
+            logger.error("Error al recalcular rango {}: {}", periodosOrdenados, e.getMessage(), e);
+            throw new RuntimeException("Error en el recálculo del rango: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Materializa el cálculo directamente en IndicadoresCalculados con $merge, sin pasar los
+     * resultados por la JVM. No elimina cálculos previos. Devuelve los documentos que escribió esta
+     * corrida (su fechaCalculo y usuarioCalculo), sin contar escrituras simultáneas en el periodo.
+     */
+    public long materializarIndicadores(List<String> periodos, String usuario) {
+        String periodoActual = periodos.stream().max(String::compareTo).orElseThrow();
+        logger.info("Materializando con $merge los periodos: {} por usuario: {}", periodos, usuario);
+
+        Date fechaCalculo = ejecutarMaterializacion(createAggregationPipeline(periodos), periodos, usuario);
+        long insertados = contarMaterializados(List.of(periodoActual), fechaCalculo, usuario).getOrDefault(periodoActual, 0L);
+
+        actualizarDerivadosYHuellas(periodos.stream().distinct().sorted().collect(Collectors.toList()), List.of(periodoActual));
+        logger.info("Se materializaron {} indicadores calculados para periodo: {}", insertados, periodoActual);
+        return insertados;
+    }
+
+    /**
+     * Versión materializada de recalcularYReemplazarPar: reemplaza el periodo actual del par con $merge
+     */
+    @Transactional
+    public long materializarYReemplazarPar(List<String> periodos, String usuario) {
+        String periodoActual = periodos.stream().max(String::compareTo).orElseThrow();
+        logger.info("Iniciando recálculo materializado del par {} (reemplaza periodo {})", periodos, periodoActual);
+
+        try {
+            eliminarCalculosDePeriodo(periodoActual);
+            Date fechaCalculo = ejecutarMaterializacion(createAggregationPipeline(periodos), periodos, usuario);
+            actualizarDerivadosYHuellas(periodos.stream().distinct().sorted().collect(Collectors.toList()), List.of(periodoActual));
+
+            long insertados = contarMaterializados(List.of(periodoActual), fechaCalculo, usuario).getOrDefault(periodoActual, 0L);
+            logger.info("Se materializaron {} indicadores calculados para periodo: {}", insertados, periodoActual);
+            return insertados;
+
+        } catch (Exception e) {
+            logger.error("Error al materializar par {}: {}", periodos, e.getMessage(), e);
+            throw new RuntimeException("Error en el recálculo materializado del par: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Versión materializada de recalcularYReemplazarRango. Devuelve los registros por periodo actual.
+     */
+    @Transactional
+    public Map<String, Long> materializarYReemplazarRango(List<String> periodos, String usuario) {
+        List<String> periodosOrdenados = periodos.stream().distinct().sorted().collect(Collectors.toList());
+        List<String> periodosActuales = periodosOrdenados.subList(1, periodosOrdenados.size());
+        logger.info("Iniciando recálculo materializado de rango para periodos: {}", periodosOrdenados);
+
+        try {
+            for (String periodo : periodosActuales) {
+                eliminarCalculosDePeriodo(periodo);
+            }
+
+            Date fechaCalculo = ejecutarMaterializacion(createRangeAggregationPipeline(periodosOrdenados), periodosOrdenados, usuario);
+            actualizarDerivadosYHuellas(periodosOrdenados, periodosActuales);
+
+            Map<String, Long> registrosPorPeriodo = contarMaterializados(periodosActuales, fechaCalculo, usuario);
+
+            logger.info("Se materializaron indicadores para {} periodos: {}", registrosPorPeriodo.size(), registrosPorPeriodo);
+            return registrosPorPeriodo;
+
+        } catch (Exception e) {
+            logger.error("Error al materializar rango {}: {}", periodosOrdenados, e.getMessage(), e);
+            throw new RuntimeException("Error en el recálculo materializado del rango: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Indica si los datos fuente del par no cambiaron desde su último cálculo guardado
+     */
+    public boolean parSinCambios(String periodoAnterior, String periodoActual) {
+        return huellaPeriodoRepository.parSinCambios(periodoAnterior, periodoActual);
+    }
+
     /**
      * Obtiene los indicadores calculados guardados
      */
@@ -304,7 +490,15 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
      * Obtiene indicadores calculados por negocio
      */
     public List<IndicadorCalculado> obtenerIndicadoresCalculadosPorNegocio(Integer negocio) {
-        return indicadorCalculadoRepository.findLatestByNegocio(negocio);
+        return mongoTemplate.find(consultaRecientesPorNegocio(negocio), IndicadorCalculado.class);
+    }
+
+    /**
+     * Cálculos de un negocio, los más recientes primero (también la usa la verificación de planes)
+     */
+    Query consultaRecientesPorNegocio(Integer negocio) {
+        return new Query(Criteria.where("negocio").is(negocio))
+                .with(Sort.by(Sort.Order.desc("fechaCalculo")));
     }
 
     /**
@@ -313,12 +507,328 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
     @Transactional
     public void limpiarCalculosAnteriores(LocalDateTime fechaLimite) {
         logger.info("Eliminando cálculos anteriores a: {}", fechaLimite);
+        // Sin su huella, los periodos que pierden cálculos se vuelven a calcular aunque la fuente no cambie
+        List<String> periodos = mongoTemplate.findDistinct(
+                new Query(Criteria.where("fechaCalculo").lt(fechaLimite)),
+                "periodoActual", IndicadorCalculado.class, String.class);
+        huellaPeriodoRepository.eliminarCalculos(periodos);
         indicadorCalculadoRepository.deleteByFechaCalculoBefore(fechaLimite);
+        serieIndicadorRepository.reconstruir();
+        estadisticaRepository.reconstruir();
         logger.info("Limpieza de cálculos completada");
     }
 
+    /**
+     * Quita de IndicadoresCalculados los documentos de un periodo que quedaron en su archivo, por
+     * _id en lotes. Lo escrito después del archivo (un recálculo que corrió entre ambos pasos) se
+     * conserva: sigue en la colección activa y el periodo no cuenta como solo archivado. Las series
+     * conservan sus puntos; las estadísticas dejan de contarlo porque solo describen la colección activa.
+     */
+    public long eliminarPeriodoArchivado(String periodo, Stream<Object> idsArchivados) {
+        // La huella se conserva: los cálculos siguen en el archivo y recalcular el par los duplicaría
+        MongoCollection<Document> coleccion = mongoTemplate.getDb().getCollection("IndicadoresCalculados");
+        long eliminados = 0;
+        List<Object> lote = new ArrayList<>(loteEscritura);
+        Iterator<Object> ids = idsArchivados.iterator();
+        while (ids.hasNext()) {
+            lote.add(ids.next());
+            if (lote.size() == loteEscritura || !ids.hasNext()) {
+                eliminados += coleccion.deleteMany(new Document("periodoActual", periodo)
+                        .append("_id", new Document("$in", lote))).getDeletedCount();
+                lote.clear();
+            }
+        }
+        logger.info("Eliminados {} cálculos archivados del periodo: {}", eliminados, periodo);
+        // Si falla, el error llega a la retención; qué periodos están en la colección activa
+        // se decide con IndicadoresCalculados, así que el periodo no se vuelve a archivar vacío
+        estadisticaRepository.actualizarPeriodos(List.of(periodo));
+        return eliminados;
+    }
+
+    /**
+     * Tamaño de la colección activa y de sus índices según $collStats
+     */
+    public Map<String, Object> obtenerTamanioColeccion() {
+        Document stats = mongoTemplate.getDb().getCollection("IndicadoresCalculados")
+                .aggregate(List.of(new Document("$collStats", new Document("storageStats", new Document()))))
+                .first();
+        Document storage = stats != null ? stats.get("storageStats", Document.class) : null;
+        if (storage == null) {
+            return Map.of();
+        }
+        return Map.of(
+                "documentos", storage.getOrDefault("count", 0),
+                "tamanioDatosBytes", storage.getOrDefault("size", 0),
+                "almacenamientoBytes", storage.getOrDefault("storageSize", 0),
+                "indicesBytes", storage.getOrDefault("totalIndexSize", 0));
+    }
+
+    /**
+     * Estadísticas guardadas por periodo actual, un documento pequeño por periodo
+     */
+    public List<EstadisticaPeriodo> obtenerEstadisticasPorPeriodo() {
+        return estadisticaRepository.obtenerTodas();
+    }
+
+    /**
+     * Periodos actuales con documentos en IndicadoresCalculados, ordenados
+     */
+    public List<String> obtenerPeriodosActivos() {
+        return estadisticaRepository.periodosEnColeccion();
+    }
+
+    /**
+     * Reconstruye las estadísticas por periodo desde IndicadoresCalculados
+     */
+    public List<EstadisticaPeriodo> reconstruirEstadisticas() {
+        return estadisticaRepository.reconstruir();
+    }
+
+    /**
+     * Cuenta en el servidor los cálculos posteriores a una fecha (usa el índice fecha_calculo)
+     */
+    public long contarCalculosDesde(LocalDateTime fecha) {
+        return mongoTemplate.count(new Query(Criteria.where("fechaCalculo").gt(fecha)), IndicadorCalculado.class);
+    }
+
+    /**
+     * Total de cálculos guardados según los metadatos de la colección
+     */
+    public long contarCalculos() {
+        return mongoTemplate.getCollection("IndicadoresCalculados").estimatedDocumentCount();
+    }
+
+    /**
+     * Una página de cálculos ordenada por (periodoActual, _id), a partir de la última clave de la
+     * página anterior. No usa skip, así que cada página cuesta lo mismo sin importar la posición.
+     */
+    public List<Document> obtenerPaginaCalculos(String periodo, Integer negocio, String despuesPeriodo,
+                                                String despuesId, int limite, List<String> campos) {
+        Query query = consultaPorClave(periodo, negocio, despuesPeriodo, despuesId, campos).limit(limite);
+        return mongoTemplate.find(query, Document.class, "IndicadoresCalculados").stream()
+                .map(this::documentoDeSalida)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Recorre los cálculos con un cursor en el mismo orden que la paginación.
+     * El llamador debe cerrar el Stream para liberar el cursor.
+     */
+    public Stream<Document> recorrerCalculos(String periodo, Integer negocio, String despuesPeriodo,
+                                             String despuesId, List<String> campos) {
+        Query query = consultaPorClave(periodo, negocio, despuesPeriodo, despuesId, campos);
+        query.cursorBatchSize(loteEscritura);
+        return mongoTemplate.stream(query, Document.class, "IndicadoresCalculados").map(this::documentoDeSalida);
+    }
+
     // Métodos privados auxiliares
 
+    /**
+     * Filtros opcionales por periodo y negocio, posición después de la clave indicada,
+     * orden por (periodoActual, _id) y proyección de campos (la clave siempre se incluye).
+     * Los documentos sin periodoActual no tienen posición en la clave y se omiten.
+     * También la usa la verificación de planes.
+     */
+    Query consultaPorClave(String periodo, Integer negocio, String despuesPeriodo,
+                           String despuesId, List<String> campos) {
+        List<Criteria> condiciones = new ArrayList<>();
+        condiciones.add(periodo != null
+                ? Criteria.where("periodoActual").is(periodo)
+                : Criteria.where("periodoActual").ne(null));
+        if (negocio != null) {
+            condiciones.add(Criteria.where("negocio").is(negocio));
+        }
+        if (despuesPeriodo != null) {
+            Object id = ObjectId.isValid(despuesId) ? new ObjectId(despuesId) : despuesId;
+            condiciones.add(new Criteria().orOperator(
+                    Criteria.where("periodoActual").gt(despuesPeriodo),
+                    new Criteria().andOperator(
+                            Criteria.where("periodoActual").is(despuesPeriodo),
+                            Criteria.where("_id").gt(id))));
+        }
+
+        Query query = new Query(new Criteria().andOperator(condiciones.toArray(new Criteria[0])));
+        query.with(Sort.by(Sort.Order.asc("periodoActual"), Sort.Order.asc("_id")));
+
+        if (campos != null && !campos.isEmpty()) {
+            campos.forEach(campo -> query.fields().include(campo));
+            query.fields().include("periodoActual");
+        } else {
+            query.fields().exclude("_class");
+        }
+        return query;
+    }
+
+    /**
+     * Deja el documento con los mismos tipos que expone IndicadorCalculado en JSON:
+     * _id como texto y fechas como LocalDateTime. Sin instanciar la entidad, los campos
+     * no proyectados no aparecen en lugar de tomar los valores por defecto del constructor.
+     */
+    private Document documentoDeSalida(Document documento) {
+        Object id = documento.get("_id");
+        if (id instanceof ObjectId objectId) {
+            documento.put("_id", objectId.toHexString());
+        }
+        if (documento.get("fechaCalculo") instanceof Date fecha) {
+            documento.put("fechaCalculo", LocalDateTime.ofInstant(fecha.toInstant(), ZoneId.systemDefault()));
+        }
+        return documento;
+    }
+
+    /**
+     * Agrega al pipeline de cálculo los metadatos de IndicadorCalculado y escribe con $merge
+     * en IndicadoresCalculados. Solo viaja de vuelta el cursor vacío del $merge.
+     */
+    /**
+     * Agrega al pipeline de cálculo la forma de IndicadorCalculado y lo escribe con $merge. Todos los
+     * documentos de la corrida llevan la misma fechaCalculo, que se devuelve para contarlos.
+     */
+    private Date ejecutarMaterializacion(List<Document> pipelineCalculo, List<String> periodos, String usuario) {
+        List<Document> pipeline = new ArrayList<>(pipelineCalculo);
+        Date fechaCalculo = new Date();
+
+        pipeline.add(new Document("$project", new Document("_id", 0)
+                .append("puesto", "$puesto")
+                .append("sucursal", "$sucursal")
+                .append("fcDetalle5", "$FcDetalle5")
+                .append("fcDetalle6", "$FcDetalle6")
+                .append("negocio", "$negocio")
+                .append("conceptoDetalle", "$conceptoDetalle")
+                .append("periodoAnterior", "$PeriodoAnterior")
+                .append("valorAnterior", new Document("$toDouble", "$valorAnterior"))
+                .append("periodoActual", "$PeriodoActual")
+                .append("valorActual", new Document("$toDouble", "$valorActual"))
+                .append("diferencia", new Document("$toDouble", "$diferencia"))
+                .append("variacion", new Document("$toDouble", "$variacion"))
+                .append("variacionNormalizada", VariacionNormalizadaInfrastructureRepository.expresion(
+                        new Document("$toDouble", "$variacion")))
+                .append("fechaCalculo", new Document("$literal", fechaCalculo))
+                .append("usuarioCalculo", new Document("$literal", usuario))
+                .append("versionCalculo", "1.0")
+                .append("tipoCalculo", "AUTOMATICO")
+                .append("_class", IndicadorCalculado.class.getName())));
+
+        pipeline.add(new Document("$merge", new Document("into", "IndicadoresCalculados")
+                .append("whenMatched", "fail")
+                .append("whenNotMatched", "insert")));
+
+        mongoTemplate.getDb().getCollection(resumenRepository.coleccionFuente(periodos))
+                .aggregate(pipeline)
+                .allowDiskUse(true)
+                .toCollection();
+        return fechaCalculo;
+    }
+
+    /**
+     * Documentos escritos por una materialización, por periodo actual
+     */
+    private Map<String, Long> contarMaterializados(List<String> periodosActuales, Date fechaCalculo, String usuario) {
+        Map<String, Long> registrosPorPeriodo = new TreeMap<>();
+        mongoTemplate.getDb().getCollection("IndicadoresCalculados").aggregate(Arrays.asList(
+                new Document("$match", new Document("periodoActual", new Document("$in", periodosActuales))
+                        .append("fechaCalculo", fechaCalculo)
+                        .append("usuarioCalculo", usuario)),
+                new Document("$group", new Document("_id", "$periodoActual")
+                        .append("total", new Document("$sum", 1)))
+        )).forEach(doc -> registrosPorPeriodo.put(doc.getString("_id"), ((Number) doc.get("total")).longValue()));
+        return registrosPorPeriodo;
+    }
+
+    /**
+     * Elimina con un solo deleteMany los cálculos de un periodo actual, sin traerlos a memoria.
+     * Primero olvida su huella de cálculo, para que un fallo antes de reinsertar no deje el
+     * periodo vacío y marcado como SIN_CAMBIOS.
+     */
+    private long eliminarCalculosDePeriodo(String periodo) {
+        huellaPeriodoRepository.eliminarCalculos(List.of(periodo));
+        return eliminarDocumentosDePeriodo(periodo);
+    }
+
+    private long eliminarDocumentosDePeriodo(String periodo) {
+        long eliminados = mongoTemplate.remove(
+                new Query(Criteria.where("periodoActual").is(periodo)), IndicadorCalculado.class).getDeletedCount();
+        if (eliminados > 0) {
+            logger.info("Eliminados {} cálculos anteriores para periodo: {}", eliminados, periodo);
+        }
+        return eliminados;
+    }
+
+    /**
+     * Inserta en lotes bulk no ordenados. Los _id se asignan antes para que las entidades
+     * devueltas queden identificadas igual que con saveAll.
+     */
+    private List<IndicadorCalculado> insertarEnLotes(List<IndicadorCalculado> indicadores) {
+        for (IndicadorCalculado indicador : indicadores) {
+            if (indicador.get_id() == null) {
+                indicador.set_id(new ObjectId().toHexString());
+            }
+        }
+
+        for (int desde = 0; desde < indicadores.size(); desde += loteEscritura) {
+            List<IndicadorCalculado> lote = indicadores.subList(desde, Math.min(desde + loteEscritura, indicadores.size()));
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, IndicadorCalculado.class)
+                    .insert(lote)
+                    .execute();
+        }
+
+        return indicadores;
+    }
+
+    /**
+     * Actualiza los derivados de los periodos actuales y, solo si todos quedaron al día, registra
+     * las huellas de los pares. Sin huella el siguiente cálculo del par no se omite y vuelve a
+     * intentar los derivados.
+     */
+    private void actualizarDerivadosYHuellas(List<String> periodosOrdenados, List<String> periodosActuales) {
+        if (actualizarDerivados(periodosActuales)) {
+            registrarHuellas(periodosOrdenados);
+        } else {
+            logger.warn("Huellas de los periodos {} sin registrar: sus derivados no quedaron al día", periodosOrdenados);
+        }
+    }
+
+    /**
+     * Registra las huellas de cada par consecutivo de la lista ordenada de periodos.
+     * Si falla, el siguiente cálculo del par simplemente no se omite.
+     */
+    private void registrarHuellas(List<String> periodosOrdenados) {
+        try {
+            for (int i = 1; i < periodosOrdenados.size(); i++) {
+                huellaPeriodoRepository.registrarCalculo(periodosOrdenados.get(i - 1), periodosOrdenados.get(i));
+            }
+        } catch (Exception e) {
+            logger.warn("No se pudieron registrar las huellas de los periodos {}: {}", periodosOrdenados, e.getMessage());
+        }
+    }
+
+    /**
+     * Actualiza las series, las estadísticas y el catálogo de sucursales de los periodos actuales
+     * escritos. Un derivado que falla no detiene a los demás; devuelve si todos quedaron al día.
+     * Lo que falle se corrige en el siguiente cálculo de esos periodos o con una reconstrucción.
+     */
+    private boolean actualizarDerivados(List<String> periodosActuales) {
+        boolean completos = true;
+        try {
+            serieIndicadorRepository.actualizarPeriodos(periodosActuales);
+        } catch (Exception e) {
+            logger.warn("No se pudieron actualizar las series de los periodos {}: {}", periodosActuales, e.getMessage());
+            completos = false;
+        }
+        try {
+            estadisticaRepository.actualizarPeriodos(periodosActuales);
+        } catch (Exception e) {
+            logger.warn("No se pudieron actualizar las estadísticas de los periodos {}: {}", periodosActuales, e.getMessage());
+            completos = false;
+        }
+        try {
+            sucursalRepository.actualizarPeriodos(periodosActuales);
+        } catch (Exception e) {
+            logger.warn("No se pudo actualizar el catálogo de sucursales de los periodos {}: {}", periodosActuales, e.getMessage());
+            completos = false;
+        }
+        return completos;
+    }
+
     private IndicadorCalculado convertirAIndicadorCalculado(Indicador indicador, String usuario) {
         IndicadorCalculado calculado = new IndicadorCalculado();
         calculado.setPuesto(indicador.getPuesto());
@@ -340,35 +850,21 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
 
 
 
-   private List<Document> createAggregationPipeline(List<String> periodos) {
-       // Ordenar períodos para consistencia
-       List<String> periodosOrdenados = periodos.stream().sorted().collect(Collectors.toList());
-       String periodoAnterior = periodosOrdenados.get(0);
-       String periodoActual = periodosOrdenados.get(1);
+    /**
+     * Pipeline de un par: suma por llave y periodo y toma el valor de cada lado por su periodo, no
+     * por posición. Un lado sin datos cuenta como 0, igual que en el pipeline de rango, así ambos
+     * modos guardan las mismas filas para el mismo par.
+     */
+    List<Document> createAggregationPipeline(List<String> periodos) {
+        // Ordenar períodos para consistencia
+        List<String> periodosOrdenados = periodos.stream().sorted().collect(Collectors.toList());
+        String periodoAnterior = periodosOrdenados.get(0);
+        String periodoActual = periodosOrdenados.get(1);
 
         return Arrays.asList(
                 new Document("$match", new Document("PkiPeriodo", new Document("$in", periodos))),
 
-                new Document("$group", new Document("_id", new Document("puesto", "$PkiPuesto")
-                        .append("sucursal", "$FcDetalle4")
-                        .append("FcDetalle5", "$FcDetalle5")
-                        .append("FcDetalle6", "$FcDetalle6")
-                        .append("negocio", "$PkiGrupoNegocio")
-                        .append("conceptoDetalle", "$PkiConceptoDetalle")
-                        .append("periodo", "$PkiPeriodo"))
-                        .append("valor", new Document("$sum", "$FnValor"))),
-
-                new Document("$group", new Document("_id", new Document("puesto", "$_id.puesto")
-                        .append("sucursal", "$_id.sucursal")
-                        .append("FcDetalle5", "$_id.FcDetalle5")
-                        .append("FcDetalle6", "$_id.FcDetalle6")
-                        .append("negocio", "$_id.negocio")
-                        .append("conceptoDetalle", "$_id.conceptoDetalle"))
-                        .append("valores", new Document("$push", new Document("periodo", "$_id.periodo")
-                                .append("valor", "$valor")))),
-
-                new Document("$unwind", "$valores"),
-                new Document("$sort", new Document("valores.periodo", 1)),
+                agruparPorLlaveYPeriodo(),
 
                 new Document("$group", new Document("_id", new Document("puesto", "$_id.puesto")
                         .append("sucursal", "$_id.sucursal")
@@ -376,51 +872,146 @@ public class CalculoIndicadorRepository implements com.resumen.nomina.applicatio
                         .append("FcDetalle6", "$_id.FcDetalle6")
                         .append("negocio", "$_id.negocio")
                         .append("conceptoDetalle", "$_id.conceptoDetalle"))
-                        .append("valores", new Document("$push", "$valores"))),
+                        .append("valorAnterior", valorDelPeriodo(periodoAnterior))
+                        .append("valor", valorDelPeriodo(periodoActual))),
 
-                new Document("$project", new Document("puesto", "$_id.puesto")
+                new Document("$project", conDiferencias(new Document("_id", 0)
+                        .append("puesto", "$_id.puesto")
                         .append("sucursal", "$_id.sucursal")
                         .append("FcDetalle5", "$_id.FcDetalle5")
                         .append("FcDetalle6", "$_id.FcDetalle6")
                         .append("negocio", "$_id.negocio")
                         .append("conceptoDetalle", "$_id.conceptoDetalle")
-                        /*.append("PeriodoAnterior", new Document("$arrayElemAt", Arrays.asList("$valores.periodo", 0)))
-                        .append("valorAnterior", new Document("$arrayElemAt", Arrays.asList("$valores.valor", 0)))
-                        .append("PeriodoActual", new Document("$arrayElemAt", Arrays.asList("$valores.periodo", 1)))
-                        .append("valorActual", new Document("$arrayElemAt", Arrays.asList("$valores.valor", 1)))
-                        */
-
-                        // CAMBIO CLAVE: forzar períodos correctos
                         .append("PeriodoAnterior", periodoAnterior)
-                        .append("valorAnterior", new Document("$ifNull", Arrays.asList(
-                                new Document("$arrayElemAt", Arrays.asList("$valores.valor", 0)), 0)))
-
-                        .append("PeriodoActual", periodoActual)  // <- ESTE ES EL CAMBIO PRINCIPAL
-                        .append("valorActual", new Document("$ifNull", Arrays.asList(
-                                new Document("$arrayElemAt", Arrays.asList("$valores.valor", 1)), 0)))
+                        .append("PeriodoActual", periodoActual)))
+        );
+    }
 
+    /**
+     * Suma de FnValor por llave y periodo, la primera etapa común a los pipelines de par y de rango
+     */
+    private Document agruparPorLlaveYPeriodo() {
+        return new Document("$group", new Document("_id", new Document("puesto", "$PkiPuesto")
+                .append("sucursal", "$FcDetalle4")
+                .append("FcDetalle5", "$FcDetalle5")
+                .append("FcDetalle6", "$FcDetalle6")
+                .append("negocio", "$PkiGrupoNegocio")
+                .append("conceptoDetalle", "$PkiConceptoDetalle")
+                .append("periodo", "$PkiPeriodo"))
+                .append("valor", new Document("$sum", "$FnValor")));
+    }
 
+    /**
+     * Valor de la llave en el periodo indicado; null si no tiene datos en él
+     */
+    private Document valorDelPeriodo(String periodo) {
+        return new Document("$max", new Document("$cond", Arrays.asList(
+                new Document("$eq", Arrays.asList("$_id.periodo", periodo)), "$valor", null)));
+    }
 
-                        .append("diferencia", new Document("$subtract", Arrays.asList(
-                                new Document("$arrayElemAt", Arrays.asList("$valores.valor", 1)),
-                                new Document("$arrayElemAt", Arrays.asList("$valores.valor", 0))
-                        )))
-                        .append("variacion", new Document("$cond", new Document("if",
-                                new Document("$eq", Arrays.asList(new Document("$arrayElemAt", Arrays.asList("$valores.valor", 0)), 0)))
-                                .append("then", 0)
-                                .append("else", new Document("$multiply", Arrays.asList(
-                                        new Document("$divide", Arrays.asList(
-                                                new Document("$subtract", Arrays.asList(
-                                                        new Document("$arrayElemAt", Arrays.asList("$valores.valor", 1)),
-                                                        new Document("$arrayElemAt", Arrays.asList("$valores.valor", 0))
-                                                )),
-                                                new Document("$arrayElemAt", Arrays.asList("$valores.valor", 0))
-                                        )),
-                        100
-                )))))));
+    /**
+     * Agrega a la proyección valorAnterior, valorActual, diferencia y variacion a partir de los
+     * campos valorAnterior y valor (un lado sin datos cuenta como 0)
+     */
+    private Document conDiferencias(Document proyeccion) {
+        Document valorAnterior = new Document("$ifNull", Arrays.asList("$valorAnterior", 0));
+        Document valorActual = new Document("$ifNull", Arrays.asList("$valor", 0));
+
+        return proyeccion
+                .append("valorAnterior", valorAnterior)
+                .append("valorActual", valorActual)
+                .append("diferencia", new Document("$subtract", Arrays.asList(valorActual, valorAnterior)))
+                .append("variacion", new Document("$cond", new Document("if",
+                        new Document("$eq", Arrays.asList(valorAnterior, 0)))
+                        .append("then", 0)
+                        .append("else", new Document("$multiply", Arrays.asList(
+                                new Document("$divide", Arrays.asList(
+                                        new Document("$subtract", Arrays.asList(valorActual, valorAnterior)),
+                                        valorAnterior
+                                )),
+                                100
+                        )))));
     }
 
+    /**
+     * Pipeline de rango: suma por llave y periodo, completa los periodos faltantes de cada llave
+     * y desplaza el valor del periodo previo con $setWindowFields para obtener todos los pares
+     * consecutivos en una sola pasada.
+     */
+    List<Document> createRangeAggregationPipeline(List<String> periodosOrdenados) {
+        Document llave = new Document("puesto", "$puesto")
+                .append("sucursal", "$sucursal")
+                .append("FcDetalle5", "$FcDetalle5")
+                .append("FcDetalle6", "$FcDetalle6")
+                .append("negocio", "$negocio")
+                .append("conceptoDetalle", "$conceptoDetalle");
+
+        return Arrays.asList(
+                new Document("$match", new Document("PkiPeriodo", new Document("$in", periodosOrdenados))),
+
+                agruparPorLlaveYPeriodo(),
 
+                // Llave en primer nivel e índice del periodo dentro del rango ordenado
+                new Document("$project", new Document("_id", 0)
+                        .append("puesto", "$_id.puesto")
+                        .append("sucursal", "$_id.sucursal")
+                        .append("FcDetalle5", "$_id.FcDetalle5")
+                        .append("FcDetalle6", "$_id.FcDetalle6")
+                        .append("negocio", "$_id.negocio")
+                        .append("conceptoDetalle", "$_id.conceptoDetalle")
+                        .append("valor", 1)
+                        .append("presente", new Document("$literal", true))
+                        .append("idx", new Document("$indexOfArray", Arrays.asList(periodosOrdenados, "$_id.periodo")))),
+
+                // Completar los periodos sin datos de cada llave para que el desplazamiento sea exacto
+                new Document("$densify", new Document("field", "idx")
+                        .append("partitionByFields", Arrays.asList(
+                                "puesto", "sucursal", "FcDetalle5", "FcDetalle6", "negocio", "conceptoDetalle"))
+                        .append("range", new Document("step", 1)
+                                .append("bounds", Arrays.asList(0, periodosOrdenados.size())))),
+
+                new Document("$setWindowFields", new Document("partitionBy", llave)
+                        .append("sortBy", new Document("idx", 1))
+                        .append("output", new Document("valorAnterior",
+                                new Document("$shift", new Document("output", "$valor").append("by", -1)))
+                                .append("presenteAnterior",
+                                        new Document("$shift", new Document("output", "$presente").append("by", -1))))),
+
+                // Solo pares donde la llave tiene datos en alguno de los dos periodos
+                new Document("$match", new Document("idx", new Document("$gte", 1))
+                        .append("$or", Arrays.asList(
+                                new Document("presente", true),
+                                new Document("presenteAnterior", true)))),
+
+                new Document("$project", conDiferencias(new Document("_id", 0)
+                        .append("puesto", 1)
+                        .append("sucursal", 1)
+                        .append("FcDetalle5", 1)
+                        .append("FcDetalle6", 1)
+                        .append("negocio", 1)
+                        .append("conceptoDetalle", 1)
+                        .append("PeriodoAnterior", new Document("$arrayElemAt", Arrays.asList(periodosOrdenados,
+                                new Document("$subtract", Arrays.asList("$idx", 1)))))
+                        .append("PeriodoActual", new Document("$arrayElemAt", Arrays.asList(periodosOrdenados, "$idx")))))
+        );
+    }
+
+    private Indicador mapearIndicador(Document document) {
+        Indicador indicador = new Indicador();
+        indicador.setPuesto(document.getInteger("puesto"));
+        indicador.setSucursal(document.getString("sucursal"));
+        indicador.setFcDetalle5(document.getString("FcDetalle5"));
+        indicador.setFcDetalle6(document.getString("FcDetalle6"));
+        indicador.setNegocio(document.getInteger("negocio"));
+        indicador.setConceptoDetalle(document.getInteger("conceptoDetalle"));
+        indicador.setPeriodoAnterior(document.getString("PeriodoAnterior"));
+        indicador.setValorAnterior(getDoubleValue(document, "valorAnterior"));
+        indicador.setPeriodoActual(document.getString("PeriodoActual"));
+        indicador.setValorActual(getDoubleValue(document, "valorActual"));
+        indicador.setDiferencia(getDoubleValue(document, "diferencia"));
+        indicador.setVariacion(getDoubleValue(document, "variacion"));
+        return indicador;
+    }
 
     private Double getDoubleValue(Document document, String field) {
         Object value = document.get(field);
@@ -100,7 +100,24 @@ public class CompensacionSemanalInfrastructureRepository {
         MongoDatabase database = mongoTemplate.getDb();
         MongoCollection<Document> collection = database.getCollection("IndicadoresCalculados");
 
-        List<Document> pipeline = Arrays.asList(
+        List<Document> pipeline = pipelineSemanasDisponibles();
+
+        AggregateIterable<Document> result = collection.aggregate(pipeline);
+
+        List<String> semanas = new ArrayList<>();
+        for (Document doc : result) {
+            semanas.add(doc.getString("semana"));
+        }
+
+        logger.info("Se encontraron {} semanas únicas en IndicadoresCalculados", semanas.size());
+        return semanas;
+    }
+
+    /**
+     * Pipeline de obtenerSemanasDisponibles (también lo usa la verificación de planes)
+     */
+    List<Document> pipelineSemanasDisponibles() {
+        return Arrays.asList(
                 // 1. Filtrar solo registros de compensación
                 new Document("$match", new Document("conceptoDetalle", 1001)),
 
@@ -113,16 +130,6 @@ public class CompensacionSemanalInfrastructureRepository {
                 // 4. Proyección simple
                 new Document("$project", new Document("_id", 0).append("semana", "$_id"))
         );
-
-        AggregateIterable<Document> result = collection.aggregate(pipeline);
-
-        List<String> semanas = new ArrayList<>();
-        for (Document doc : result) {
-            semanas.add(doc.getString("semana"));
-        }
-
-        logger.info("Se encontraron {} semanas únicas en IndicadoresCalculados", semanas.size());
-        return semanas;
     }
 
     /**
@@ -134,7 +141,24 @@ public class CompensacionSemanalInfrastructureRepository {
         MongoDatabase database = mongoTemplate.getDb();
         MongoCollection<Document> collection = database.getCollection("IndicadoresCalculados");
 
-        List<Document> pipeline = Arrays.asList(
+        List<Document> pipeline = pipelineSemanaIndividual(semana);
+
+        AggregateIterable<Document> result = collection.aggregate(pipeline);
+
+        for (Document doc : result) {
+            logger.info("Compensación calculada para semana {}: ${}", semana, doc.getDouble("totalCompensacion").longValue());
+            return doc;
+        }
+
+        logger.warn("No se encontraron datos para la semana: {}", semana);
+        return null;
+    }
+
+    /**
+     * Pipeline de calcularCompensacionSemanaIndividual (también lo usa la verificación de planes)
+     */
+    List<Document> pipelineSemanaIndividual(String semana) {
+        return Arrays.asList(
                 // 1. Filtrar solo la semana específica y compensación
                 new Document("$match", new Document()
                         .append("conceptoDetalle", 1001)
@@ -170,16 +194,6 @@ public class CompensacionSemanalInfrastructureRepository {
                         .append("cantidadNegocios", new Document("$size", "$negocios"))
                         .append("cantidadPuestos", new Document("$size", "$puestos")))
         );
-
-        AggregateIterable<Document> result = collection.aggregate(pipeline);
-
-        for (Document doc : result) {
-            logger.info("Compensación calculada para semana {}: ${}", semana, doc.getDouble("totalCompensacion").longValue());
-            return doc;
-        }
-
-        logger.warn("No se encontraron datos para la semana: {}", semana);
-        return null;
     }
 
     // Pipeline para compensación semanal nacional (actual vs anterior)
@@ -377,8 +391,8 @@ public class CompensacionSemanalInfrastructureRepository {
         return null;
     }
 
-    // Pipeline para gráfica histórica de un negocio específico
-    private List<Document> createPipelineGraficaHistoricaPorNegocio(Integer negocio, Integer anioDesde) {
+    // Pipeline para gráfica histórica de un negocio específico (también lo usa la verificación de planes)
+    List<Document> createPipelineGraficaHistoricaPorNegocio(Integer negocio, Integer anioDesde) {
         return Arrays.asList(
                 // 1. Filtrar compensación del negocio específico desde el año especificado
                 new Document("$match", new Document()
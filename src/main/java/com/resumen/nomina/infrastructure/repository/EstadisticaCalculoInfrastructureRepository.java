@@ -0,0 +1,159 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.resumen.nomina.domain.model.EstadisticaPeriodo;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Estadísticas de IndicadoresCalculados por periodo actual (colección EstadisticasCalculos).
+ * Cada periodo se recalcula con una agregación sobre sus propios documentos cuando se guarda o
+ * elimina, de modo que consultar las estadísticas solo lee un documento pequeño por periodo.
+ */
+@Repository
+public class EstadisticaCalculoInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstadisticaCalculoInfrastructureRepository.class);
+
+    private static final String ORIGEN = "IndicadoresCalculados";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public EstadisticaCalculoInfrastructureRepository(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Regenera las estadísticas de los periodos indicados; los que quedaron sin cálculos se eliminan
+     */
+    public void actualizarPeriodos(Collection<String> periodosActuales) {
+        List<String> periodos = periodosActuales.stream().distinct().toList();
+        if (periodos.isEmpty()) {
+            return;
+        }
+
+        Map<String, EstadisticaPeriodo> estadisticas =
+                calcular(new Document("periodoActual", new Document("$in", periodos)));
+
+        for (String periodo : periodos) {
+            EstadisticaPeriodo estadistica = estadisticas.get(periodo);
+            if (estadistica == null) {
+                mongoTemplate.remove(new Query(Criteria.where("_id").is(periodo)), EstadisticaPeriodo.class);
+            } else {
+                mongoTemplate.save(estadistica);
+            }
+        }
+        logger.info("Estadísticas actualizadas para periodos: {}", periodos);
+    }
+
+    /**
+     * Regenera las estadísticas de todos los periodos con una sola agregación
+     */
+    public List<EstadisticaPeriodo> reconstruir() {
+        long inicio = System.currentTimeMillis();
+        List<EstadisticaPeriodo> estadisticas = new ArrayList<>(calcular(new Document()).values());
+
+        mongoTemplate.remove(new Query(), EstadisticaPeriodo.class);
+        if (!estadisticas.isEmpty()) {
+            mongoTemplate.insertAll(estadisticas);
+        }
+
+        logger.info("Estadísticas reconstruidas: {} periodos en {} ms",
+                estadisticas.size(), System.currentTimeMillis() - inicio);
+        return estadisticas;
+    }
+
+    /**
+     * Estadísticas de todos los periodos. Si aún no existen pero hay cálculos, se construyen una vez.
+     */
+    public List<EstadisticaPeriodo> obtenerTodas() {
+        List<EstadisticaPeriodo> estadisticas = mongoTemplate.findAll(EstadisticaPeriodo.class);
+        if (estadisticas.isEmpty() && mongoTemplate.getDb().getCollection(ORIGEN).estimatedDocumentCount() > 0) {
+            return reconstruir();
+        }
+        return estadisticas;
+    }
+
+    /**
+     * Periodos actuales que hoy tienen documentos en IndicadoresCalculados, leídos de la colección
+     * (índice por periodo) y no de las estadísticas, que pueden haber quedado atrás si falló su actualización
+     */
+    public List<String> periodosEnColeccion() {
+        return mongoTemplate.findDistinct(new Query(), "periodoActual", ORIGEN, String.class).stream()
+                .filter(Objects::nonNull)
+                .sorted()
+                .toList();
+    }
+
+    /**
+     * Valor que cambia cuando cambian los cálculos de algún periodo (total o fecha del último cálculo,
+     * o un periodo que aparece o desaparece). Lee solo esos campos de un documento por periodo.
+     */
+    public long huella() {
+        long huella = 1;
+        for (Document doc : mongoTemplate.getDb().getCollection(mongoTemplate.getCollectionName(EstadisticaPeriodo.class))
+                .find()
+                .projection(new Document("total", 1).append("fechaUltimoCalculo", 1))
+                .sort(new Document("_id", 1))) {
+            huella = 31 * huella + Objects.hash(doc.get("_id"), doc.get("total"), doc.get("fechaUltimoCalculo"));
+        }
+        return huella;
+    }
+
+    // Métodos privados auxiliares
+
+    /**
+     * Cuenta por periodo, negocio y tipo en el servidor; solo regresan las combinaciones
+     */
+    private Map<String, EstadisticaPeriodo> calcular(Document filtro) {
+        Map<String, EstadisticaPeriodo> porPeriodo = new TreeMap<>();
+
+        mongoTemplate.getDb().getCollection(ORIGEN).aggregate(Arrays.asList(
+                new Document("$match", filtro),
+                new Document("$group", new Document("_id", new Document("periodo", "$periodoActual")
+                        .append("negocio", "$negocio")
+                        .append("tipo", "$tipoCalculo"))
+                        .append("total", new Document("$sum", 1))
+                        .append("fechaUltimoCalculo", new Document("$max", "$fechaCalculo")))
+        )).allowDiskUse(true).forEach(doc -> {
+            Document id = doc.get("_id", Document.class);
+            String periodo = id.getString("periodo");
+            if (periodo == null) {
+                return;
+            }
+            long total = ((Number) doc.get("total")).longValue();
+
+            EstadisticaPeriodo estadistica = porPeriodo.computeIfAbsent(periodo, EstadisticaPeriodo::new);
+            estadistica.setTotal(estadistica.getTotal() + total);
+            estadistica.getPorNegocio().merge(String.valueOf(id.get("negocio")), total, Long::sum);
+            estadistica.getPorTipo().merge(String.valueOf(id.get("tipo")), total, Long::sum);
+
+            Date fecha = doc.getDate("fechaUltimoCalculo");
+            if (fecha != null) {
+                LocalDateTime fechaCalculo = LocalDateTime.ofInstant(fecha.toInstant(), ZoneId.systemDefault());
+                if (estadistica.getFechaUltimoCalculo() == null || fechaCalculo.isAfter(estadistica.getFechaUltimoCalculo())) {
+                    estadistica.setFechaUltimoCalculo(fechaCalculo);
+                }
+            }
+        });
+
+        return porPeriodo;
+    }
+}
@@ -0,0 +1,159 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lectura de la parte archivada del historial de IndicadoresCalculados, para combinarla con lo
+ * que los cargadores de historia ya leen de MongoDB. Un periodo que volvió a calcularse y existe
+ * en la colección activa se lee solo de MongoDB; su archivo se ignora.
+ *
+ * Los filtros usan la misma forma que un $match sobre la colección, con los operadores que usan
+ * los cargadores: igualdad, $eq, $ne, $in, $nin, $gt, $gte, $lt, $lte y $regex con $options.
+ */
+@Repository
+public class HistorialCalculosInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistorialCalculosInfrastructureRepository.class);
+
+    private final ArchivoCalculosInfrastructureRepository archivoRepository;
+    private final EstadisticaCalculoInfrastructureRepository estadisticaRepository;
+
+    private final Map<String, Pattern> patrones = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HistorialCalculosInfrastructureRepository(ArchivoCalculosInfrastructureRepository archivoRepository,
+                                                     EstadisticaCalculoInfrastructureRepository estadisticaRepository) {
+        this.archivoRepository = archivoRepository;
+        this.estadisticaRepository = estadisticaRepository;
+    }
+
+    /**
+     * Indica si hay historia que solo existe en archivo (sin costo cuando no hay nada archivado)
+     */
+    public boolean hayHistorialArchivado() {
+        return archivoRepository.hayPeriodosArchivados() && !periodosSoloArchivados().isEmpty();
+    }
+
+    /**
+     * Periodos archivados que ya no están en la colección activa
+     */
+    public List<String> periodosSoloArchivados() {
+        if (!archivoRepository.hayPeriodosArchivados()) {
+            return List.of();
+        }
+        Set<String> activos = new HashSet<>(estadisticaRepository.periodosEnColeccion());
+        return archivoRepository.periodosArchivados().stream()
+                .filter(periodo -> !activos.contains(periodo))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Documentos archivados que cumplen el filtro, con los campos originales de IndicadoresCalculados.
+     * Solo se abren los archivos de los periodos que puede aceptar la condición sobre periodoActual.
+     * El llamador debe cerrar el Stream.
+     */
+    public Stream<Document> recorrerArchivados(Document filtro) {
+        Object condicionPeriodo = filtro.get("periodoActual");
+        List<String> periodos = periodosSoloArchivados().stream()
+                .filter(periodo -> condicionPeriodo == null || cumple(periodo, condicionPeriodo))
+                .toList();
+
+        if (!periodos.isEmpty()) {
+            logger.debug("Leyendo historial archivado de {} periodos", periodos.size());
+        }
+
+        return periodos.stream()
+                .flatMap(archivoRepository::leerPeriodo)
+                .filter(doc -> coincide(doc, filtro));
+    }
+
+    // Métodos privados auxiliares
+
+    private boolean coincide(Document doc, Document filtro) {
+        for (Map.Entry<String, Object> condicion : filtro.entrySet()) {
+            if (!cumple(doc.get(condicion.getKey()), condicion.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean cumple(Object valor, Object condicion) {
+        if (!(condicion instanceof Document operadores) || operadores.isEmpty()
+                || !operadores.keySet().iterator().next().startsWith("$")) {
+            return iguales(valor, condicion);
+        }
+
+        for (Map.Entry<String, Object> operador : operadores.entrySet()) {
+            Object argumento = operador.getValue();
+            boolean acepta = switch (operador.getKey()) {
+                case "$eq" -> iguales(valor, argumento);
+                case "$ne" -> !iguales(valor, argumento);
+                case "$in" -> ((Collection<?>) argumento).stream().anyMatch(a -> iguales(valor, a));
+                case "$nin" -> ((Collection<?>) argumento).stream().noneMatch(a -> iguales(valor, a));
+                case "$gt" -> enRango(valor, argumento, c -> c > 0);
+                case "$gte" -> enRango(valor, argumento, c -> c >= 0);
+                case "$lt" -> enRango(valor, argumento, c -> c < 0);
+                case "$lte" -> enRango(valor, argumento, c -> c <= 0);
+                case "$regex" -> valor instanceof String texto
+                        && patron((String) argumento, operadores.getString("$options")).matcher(texto).find();
+                case "$options" -> true;
+                default -> throw new IllegalArgumentException("Operador no soportado en historial archivado: " + operador.getKey());
+            };
+            if (!acepta) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean iguales(Object valor, Object esperado) {
+        if (valor instanceof Number a && esperado instanceof Number b) {
+            return a.doubleValue() == b.doubleValue();
+        }
+        return Objects.equals(valor, esperado);
+    }
+
+    /**
+     * Como en MongoDB, valores nulos o de tipos distintos no cumplen comparaciones de rango
+     */
+    private boolean enRango(Object valor, Object argumento, IntPredicate aceptar) {
+        if (valor instanceof Number a && argumento instanceof Number b) {
+            return aceptar.test(Double.compare(a.doubleValue(), b.doubleValue()));
+        }
+        if (valor instanceof String a && argumento instanceof String b) {
+            return aceptar.test(a.compareTo(b));
+        }
+        return false;
+    }
+
+    private Pattern patron(String expresion, String opciones) {
+        String clave = (opciones == null ? "" : opciones) + "/" + expresion;
+        return patrones.computeIfAbsent(clave, k -> {
+            int banderas = 0;
+            if (opciones != null) {
+                if (opciones.contains("i")) banderas |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+                if (opciones.contains("m")) banderas |= Pattern.MULTILINE;
+                if (opciones.contains("s")) banderas |= Pattern.DOTALL;
+                if (opciones.contains("x")) banderas |= Pattern.COMMENTS;
+            }
+            return Pattern.compile(expresion, banderas);
+        });
+    }
+}
@@ -0,0 +1,154 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.resumen.nomina.domain.model.HuellaCalculo;
+import com.resumen.nomina.domain.model.HuellaPeriodo;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Huellas de cambio de DatosInteligencia por PkiPeriodo.
+ * Permite saber si los datos fuente de un par de periodos cambiaron desde su último cálculo.
+ */
+@Repository
+public class HuellaPeriodoInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(HuellaPeriodoInfrastructureRepository.class);
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public HuellaPeriodoInfrastructureRepository(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Recalcula y guarda la huella de un periodo. Si el periodo ya no tiene datos, elimina su huella.
+     */
+    public HuellaPeriodo actualizarHuella(String periodo) {
+        HuellaPeriodo huella = calcularHuella(periodo);
+
+        if (huella.getRegistros() == 0) {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(periodo)), HuellaPeriodo.class);
+            logger.info("Periodo {} sin datos, huella eliminada", periodo);
+            return huella;
+        }
+
+        mongoTemplate.save(huella);
+        logger.info("Huella actualizada para periodo {}: {} registros", periodo, huella.getRegistros());
+        return huella;
+    }
+
+    public void actualizarHuellas(Collection<String> periodos) {
+        periodos.stream().distinct().forEach(this::actualizarHuella);
+    }
+
+    /**
+     * Elimina todas las huellas (después de reemplazar la colección completa)
+     */
+    public void eliminarHuellas() {
+        mongoTemplate.dropCollection(HuellaPeriodo.class);
+    }
+
+    /**
+     * Huella vigente de un periodo; si aún no existe se calcula y guarda
+     */
+    public HuellaPeriodo obtenerHuella(String periodo) {
+        HuellaPeriodo huella = mongoTemplate.findById(periodo, HuellaPeriodo.class);
+        return huella != null ? huella : actualizarHuella(periodo);
+    }
+
+    /**
+     * Indica si ninguno de los dos periodos cambió desde el último cálculo guardado del par
+     */
+    public boolean parSinCambios(String periodoAnterior, String periodoActual) {
+        HuellaCalculo ultimo = mongoTemplate.findById(periodoActual, HuellaCalculo.class);
+        if (ultimo == null || !periodoAnterior.equals(ultimo.getPeriodoAnterior())) {
+            return false;
+        }
+
+        return obtenerHuella(periodoAnterior).coincideCon(ultimo.getChecksumAnterior())
+                && obtenerHuella(periodoActual).coincideCon(ultimo.getChecksumActual());
+    }
+
+    /**
+     * Olvida el último cálculo registrado de los periodos actuales. Se llama antes de borrar sus
+     * cálculos: si la escritura posterior falla, el siguiente cálculo del par no se omite.
+     */
+    public void eliminarCalculos(Collection<String> periodosActuales) {
+        if (periodosActuales.isEmpty()) {
+            return;
+        }
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(periodosActuales)), HuellaCalculo.class);
+    }
+
+    /**
+     * Registra las huellas fuente usadas en el cálculo guardado del par
+     */
+    public void registrarCalculo(String periodoAnterior, String periodoActual) {
+        HuellaCalculo calculo = new HuellaCalculo(
+                periodoAnterior, obtenerHuella(periodoAnterior).getChecksum(),
+                periodoActual, obtenerHuella(periodoActual).getChecksum());
+        mongoTemplate.save(calculo);
+    }
+
+    // Métodos privados auxiliares
+
+    /**
+     * Suma FnValor por llave de agrupación del periodo y genera un SHA-256 sobre las sumas ordenadas
+     */
+    private HuellaPeriodo calcularHuella(String periodo) {
+        MongoCollection<Document> collection = mongoTemplate.getDb().getCollection("DatosInteligencia");
+
+        List<Document> pipeline = Arrays.asList(
+                new Document("$match", new Document("PkiPeriodo", periodo)),
+                new Document("$group", new Document("_id", new Document("puesto", "$PkiPuesto")
+                        .append("sucursal", "$FcDetalle4")
+                        .append("FcDetalle5", "$FcDetalle5")
+                        .append("FcDetalle6", "$FcDetalle6")
+                        .append("negocio", "$PkiGrupoNegocio")
+                        .append("conceptoDetalle", "$PkiConceptoDetalle"))
+                        .append("valor", new Document("$sum", "$FnValor"))
+                        .append("registros", new Document("$sum", 1))),
+                new Document("$sort", new Document("_id", 1))
+        );
+
+        MessageDigest digest = crearDigest();
+        long registros = 0;
+
+        for (Document grupo : collection.aggregate(pipeline).allowDiskUse(true)) {
+            Number valor = (Number) grupo.get("valor");
+            Number conteo = (Number) grupo.get("registros");
+            registros += conteo.longValue();
+
+            String linea = grupo.get("_id", Document.class).toJson() + "="
+                    + String.format(Locale.ROOT, "%.6f", valor == null ? 0.0 : valor.doubleValue()) + "\n";
+            digest.update(linea.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new HuellaPeriodo(periodo, registros, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private MessageDigest crearDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
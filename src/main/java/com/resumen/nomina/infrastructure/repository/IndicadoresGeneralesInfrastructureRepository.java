@@ -18,10 +18,13 @@ public class IndicadoresGeneralesInfrastructureRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(IndicadoresGeneralesInfrastructureRepository.class);
     private final MongoTemplate mongoTemplate;
+    private final SucursalInfrastructureRepository sucursalRepository;
 
     @Autowired
-    public IndicadoresGeneralesInfrastructureRepository(MongoTemplate mongoTemplate) {
+    public IndicadoresGeneralesInfrastructureRepository(MongoTemplate mongoTemplate,
+                                                        SucursalInfrastructureRepository sucursalRepository) {
         this.mongoTemplate = mongoTemplate;
+        this.sucursalRepository = sucursalRepository;
     }
 
     /**
@@ -33,7 +36,16 @@ public class IndicadoresGeneralesInfrastructureRepository {
         MongoDatabase database = mongoTemplate.getDb();
         MongoCollection<Document> collection = database.getCollection("IndicadoresCalculados");
 
-        List<Document> pipeline = Arrays.asList(
+        List<Document> pipeline = pipelinePorPeriodo(periodoActual);
+
+        return ejecutarPipeline(collection, pipeline);
+    }
+
+    /**
+     * Pipeline de obtenerIndicadoresPorPeriodo (también lo usa la verificación de planes)
+     */
+    List<Document> pipelinePorPeriodo(String periodoActual) {
+        return Arrays.asList(
                 // 1. Filtrar por período específico
                 new Document("$match", new Document("periodoActual", periodoActual)),
 
@@ -59,8 +71,6 @@ public class IndicadoresGeneralesInfrastructureRepository {
                         .append("sucursal", 1)
                         .append("fcDetalle5", 1))
         );
-
-        return ejecutarPipeline(collection, pipeline);
     }
 
     /**
@@ -72,12 +82,20 @@ public class IndicadoresGeneralesInfrastructureRepository {
         MongoDatabase database = mongoTemplate.getDb();
         MongoCollection<Document> collection = database.getCollection("IndicadoresCalculados");
 
-        List<Document> pipeline = Arrays.asList(
+        List<Document> pipeline = pipelinePorSucursal(periodoActual, sucursal);
+
+        return ejecutarPipeline(collection, pipeline);
+    }
+
+    /**
+     * Pipeline de obtenerIndicadoresPorSucursal (también lo usa la verificación de planes)
+     */
+    List<Document> pipelinePorSucursal(String periodoActual, String sucursal) {
+        return Arrays.asList(
                 // 1. Filtrar por período y sucursal
                 new Document("$match", new Document()
                         .append("periodoActual", periodoActual)
-                        .append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                                .append("$options", "i"))),
+                        .append("sucursal", sucursalRepository.filtroSucursal(sucursal))),
 
                 // 2. Proyección
                 new Document("$project", new Document("_id", 0)
@@ -96,8 +114,6 @@ public class IndicadoresGeneralesInfrastructureRepository {
                 // 3. Ordenar
                 new Document("$sort", new Document("variacionPorcentual", -1))
         );
-
-        return ejecutarPipeline(collection, pipeline);
     }
 
     /**
@@ -109,7 +125,16 @@ public class IndicadoresGeneralesInfrastructureRepository {
         MongoDatabase database = mongoTemplate.getDb();
         MongoCollection<Document> collection = database.getCollection("IndicadoresCalculados");
 
-        List<Document> pipeline = Arrays.asList(
+        List<Document> pipeline = pipelinePorPuesto(periodoActual, negocio, puesto);
+
+        return ejecutarPipeline(collection, pipeline);
+    }
+
+    /**
+     * Pipeline de obtenerIndicadoresPorSucursalpuesto (también lo usa la verificación de planes)
+     */
+    List<Document> pipelinePorPuesto(String periodoActual, Integer negocio, Integer puesto) {
+        return Arrays.asList(
                 // 1. Filtrar por período y sucursal
                 new Document("$match", new Document()
                         .append("periodoActual", periodoActual)
@@ -139,8 +164,6 @@ public class IndicadoresGeneralesInfrastructureRepository {
                 // 3. Ordenar
                 new Document("$sort", new Document("variacionPorcentual", -1))
         );
-
-        return ejecutarPipeline(collection, pipeline);
     }
 
 
@@ -268,8 +291,7 @@ public class IndicadoresGeneralesInfrastructureRepository {
         // Construir filtro de sucursal
         Document matchSucursal = new Document();
         if (sucursal != null && !sucursal.isEmpty()) {
-            matchSucursal.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+            matchSucursal.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
         }
 
         List<Document> pipeline = Arrays.asList(
@@ -411,8 +433,7 @@ public class IndicadoresGeneralesInfrastructureRepository {
 
         Document matchDocument = new Document();
         if (sucursal != null && !sucursal.isEmpty()) {
-            matchDocument.append("sucursal", new Document("$regex", ".*" + sucursal.trim() + ".*")
-                    .append("$options", "i"));
+            matchDocument.append("sucursal", sucursalRepository.filtroSucursal(sucursal));
         }
         // Excluir el período actual del cálculo de estadísticas
         if (periodoActual != null && !periodoActual.isEmpty()) {
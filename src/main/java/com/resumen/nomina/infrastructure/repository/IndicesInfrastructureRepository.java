@@ -0,0 +1,335 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.resumen.nomina.domain.model.CompensacionSemanal;
+import com.resumen.nomina.domain.model.ConfiguracionAlertas;
+import com.resumen.nomina.domain.model.HuellaPeriodo;
+import com.resumen.nomina.domain.model.IndicadorCalculado;
+import com.resumen.nomina.domain.model.IndicadorPromedio;
+import com.resumen.nomina.domain.model.SerieIndicador;
+import com.resumen.nomina.domain.model.Sucursal;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * Índices de las colecciones consultadas en cada dashboard.
+ * Al arrancar asegura los índices declarados en las entidades (@CompoundIndex / @Indexed) y los
+ * de DatosInteligencia, que no tiene entidad. También permite verificar con explain si las
+ * consultas registradas usan índice (IXSCAN) o recorren la colección (COLLSCAN).
+ */
+@Repository
+public class IndicesInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndicesInfrastructureRepository.class);
+
+    private static final String DATOS_INTELIGENCIA = ResumenDatosInteligenciaInfrastructureRepository.ORIGEN;
+    private static final String DATOS_INTELIGENCIA_RESUMEN = ResumenDatosInteligenciaInfrastructureRepository.RESUMEN;
+    private static final String INDICADORES_CALCULADOS = "IndicadoresCalculados";
+
+    // Entidades cuyos índices se declaran con anotaciones
+    private static final List<Class<?>> ENTIDADES = Arrays.asList(
+            IndicadorCalculado.class, IndicadorPromedio.class, CompensacionSemanal.class, HuellaPeriodo.class,
+            SerieIndicador.class, Sucursal.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final IndicadoresGeneralesInfrastructureRepository indicadoresGeneralesRepository;
+    private final CompensacionSemanalInfrastructureRepository compensacionRepository;
+    private final AlertasInfrastructureRepository alertasRepository;
+    private final CalculoIndicadorRepository calculoRepository;
+    private final IndexResolver indexResolver;
+    private final boolean asegurarAlIniciar;
+    private final List<ConsultaRegistrada> consultas = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public IndicesInfrastructureRepository(MongoTemplate mongoTemplate,
+                                           IndicadoresGeneralesInfrastructureRepository indicadoresGeneralesRepository,
+                                           CompensacionSemanalInfrastructureRepository compensacionRepository,
+                                           AlertasInfrastructureRepository alertasRepository,
+                                           CalculoIndicadorRepository calculoRepository,
+                                           @Value("${mongo.indices.asegurar-al-iniciar:true}") boolean asegurarAlIniciar) {
+        this.mongoTemplate = mongoTemplate;
+        this.indicadoresGeneralesRepository = indicadoresGeneralesRepository;
+        this.compensacionRepository = compensacionRepository;
+        this.alertasRepository = alertasRepository;
+        this.calculoRepository = calculoRepository;
+        this.indexResolver = new MongoPersistentEntityIndexResolver(mongoTemplate.getConverter().getMappingContext());
+        this.asegurarAlIniciar = asegurarAlIniciar;
+        registrarConsultasBase();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        if (!asegurarAlIniciar) {
+            logger.info("Aseguramiento de índices deshabilitado (mongo.indices.asegurar-al-iniciar=false)");
+            return;
+        }
+        asegurarIndices();
+    }
+
+    /**
+     * Asegura todos los índices. Devuelve, por colección, los nombres de los índices asegurados.
+     * Un índice que falla (p. ej. duplicados en uno único) se registra y no detiene a los demás.
+     */
+    public Map<String, List<String>> asegurarIndices() {
+        Map<String, List<String>> asegurados = new LinkedHashMap<>();
+        for (Class<?> entidad : ENTIDADES) {
+            String coleccion = mongoTemplate.getCollectionName(entidad);
+            asegurados.put(coleccion, asegurar(mongoTemplate.indexOps(entidad), coleccion, indexResolver.resolveIndexFor(entidad)));
+        }
+        asegurados.put(DATOS_INTELIGENCIA, asegurarIndices(DATOS_INTELIGENCIA));
+        asegurados.put(DATOS_INTELIGENCIA_RESUMEN, asegurarIndices(DATOS_INTELIGENCIA_RESUMEN));
+
+        logger.info("📇 Índices asegurados: {}", asegurados);
+        return asegurados;
+    }
+
+    /**
+     * Asegura los índices de una sola colección (p. ej. después de eliminarla y volver a cargarla)
+     */
+    public List<String> asegurarIndices(String coleccion) {
+        if (DATOS_INTELIGENCIA.equals(coleccion)) {
+            return asegurar(mongoTemplate.indexOps(coleccion), coleccion, indicesDatosInteligencia());
+        }
+        if (DATOS_INTELIGENCIA_RESUMEN.equals(coleccion)) {
+            return asegurar(mongoTemplate.indexOps(coleccion), coleccion, indicesDatosInteligenciaResumen());
+        }
+        for (Class<?> entidad : ENTIDADES) {
+            if (mongoTemplate.getCollectionName(entidad).equals(coleccion)) {
+                return asegurar(mongoTemplate.indexOps(entidad), coleccion, indexResolver.resolveIndexFor(entidad));
+            }
+        }
+        return List.of();
+    }
+
+    /**
+     * Registra una consulta para la verificación de planes. El pipeline se construye a partir
+     * de un documento de muestra de IndicadoresCalculados (el del periodo más reciente).
+     */
+    public void registrarConsulta(String nombre, String coleccion, Function<Document, List<Document>> pipeline) {
+        consultas.add(new ConsultaRegistrada(nombre, coleccion, pipeline));
+    }
+
+    /**
+     * Ejecuta explain (queryPlanner) sobre cada consulta registrada e indica si usa índice
+     */
+    public List<Map<String, Object>> verificarPlanes() {
+        Document muestra = obtenerMuestra();
+        List<Map<String, Object>> planes = new ArrayList<>();
+
+        for (ConsultaRegistrada consulta : consultas) {
+            Map<String, Object> plan = new LinkedHashMap<>();
+            plan.put("consulta", consulta.nombre());
+            plan.put("coleccion", consulta.coleccion());
+
+            try {
+                List<Document> pipeline = consulta.pipeline().apply(muestra);
+                Document explain = mongoTemplate.getDb().runCommand(new Document("explain",
+                        new Document("aggregate", consulta.coleccion())
+                                .append("pipeline", pipeline)
+                                .append("cursor", new Document()))
+                        .append("verbosity", "queryPlanner"));
+
+                Set<String> etapas = new LinkedHashSet<>();
+                Set<String> indices = new LinkedHashSet<>();
+                recolectarEtapas(explain, etapas, indices);
+
+                plan.put("plan", clasificarPlan(etapas));
+                plan.put("indices", indices);
+                plan.put("etapas", etapas);
+                plan.put("filtro", pipeline.isEmpty() ? null : pipeline.get(0).toJson());
+            } catch (Exception e) {
+                logger.warn("No se pudo obtener el plan de {}: {}", consulta.nombre(), e.getMessage());
+                plan.put("plan", "ERROR");
+                plan.put("error", e.getMessage());
+            }
+            planes.add(plan);
+        }
+
+        long sinIndice = planes.stream().filter(p -> "COLLSCAN".equals(p.get("plan"))).count();
+        logger.info("🔎 Planes verificados: {} consultas, {} con COLLSCAN", planes.size(), sinIndice);
+        return planes;
+    }
+
+    // Métodos privados auxiliares
+
+    private List<String> asegurar(IndexOperations operaciones, String coleccion,
+                                  Iterable<? extends IndexDefinition> definiciones) {
+        List<String> nombres = new ArrayList<>();
+        for (IndexDefinition definicion : definiciones) {
+            try {
+                nombres.add(operaciones.ensureIndex(definicion));
+            } catch (Exception e) {
+                logger.warn("No se pudo asegurar el índice {} en {}: {}",
+                        definicion.getIndexKeys().toJson(), coleccion, e.getMessage());
+            }
+        }
+        return nombres;
+    }
+
+    /**
+     * DatosInteligencia no tiene entidad: todos los cálculos y huellas filtran por PkiPeriodo
+     */
+    private List<IndexDefinition> indicesDatosInteligencia() {
+        return List.of(
+                new CompoundIndexDefinition(new Document("PkiPeriodo", 1)
+                        .append("PkiGrupoNegocio", 1)
+                        .append("PkiConceptoDetalle", 1))
+                        .named("periodo_negocio_concepto"));
+    }
+
+    /**
+     * El resumen se lee y se regenera siempre por periodo
+     */
+    private List<IndexDefinition> indicesDatosInteligenciaResumen() {
+        return List.of(new CompoundIndexDefinition(new Document("PkiPeriodo", 1)).named("periodo"));
+    }
+
+    /**
+     * Consultas de cada ruta de acceso a las colecciones calientes. Los pipelines salen de los
+     * mismos métodos que ejecutan los repositorios, con los valores del documento de muestra.
+     */
+    private void registrarConsultasBase() {
+        registrarConsulta("indicadores-generales.periodo", INDICADORES_CALCULADOS,
+                m -> indicadoresGeneralesRepository.pipelinePorPeriodo(m.getString("periodoActual")));
+
+        registrarConsulta("indicadores-generales.sucursal", INDICADORES_CALCULADOS,
+                m -> indicadoresGeneralesRepository.pipelinePorSucursal(m.getString("periodoActual"), m.getString("sucursal")));
+
+        registrarConsulta("indicadores-generales.puesto", INDICADORES_CALCULADOS,
+                m -> indicadoresGeneralesRepository.pipelinePorPuesto(m.getString("periodoActual"),
+                        m.getInteger("negocio"), m.getInteger("puesto")));
+
+        registrarConsulta("compensacion.semanas", INDICADORES_CALCULADOS,
+                m -> compensacionRepository.pipelineSemanasDisponibles());
+
+        registrarConsulta("compensacion.semana", INDICADORES_CALCULADOS,
+                m -> compensacionRepository.pipelineSemanaIndividual(m.getString("periodoActual")));
+
+        registrarConsulta("compensacion.negocio", INDICADORES_CALCULADOS,
+                m -> compensacionRepository.createPipelineGraficaHistoricaPorNegocio(m.getInteger("negocio"), anio(m)));
+
+        registrarConsulta("alertas.sucursal", INDICADORES_CALCULADOS,
+                m -> alertasRepository.pipelineAlertasZScore(m.getString("periodoActual"), m.getString("sucursal"),
+                        null, ConfiguracionAlertas.crearConfiguracionPorDefecto()));
+
+        registrarConsulta("calculos.negocio-recientes", INDICADORES_CALCULADOS,
+                m -> etapas(calculoRepository.consultaRecientesPorNegocio(m.getInteger("negocio"))));
+
+        // Página siguiente a la del documento de muestra, con el mismo predicado por clave que la paginación
+        registrarConsulta("calculos.pagina", INDICADORES_CALCULADOS,
+                m -> etapas(calculoRepository.consultaPorClave(null, null, m.getString("periodoActual"),
+                        idTexto(m), null).limit(500)));
+
+        registrarConsulta("calculos.pagina-negocio", INDICADORES_CALCULADOS,
+                m -> etapas(calculoRepository.consultaPorClave(null, m.getInteger("negocio"), m.getString("periodoActual"),
+                        idTexto(m), null).limit(500)));
+
+        // El cálculo lee del resumen si está vigente y si no de DatosInteligencia, con el mismo pipeline
+        registrarConsulta("datos-inteligencia.periodo", DATOS_INTELIGENCIA,
+                m -> calculoRepository.createAggregationPipeline(periodos(m)));
+
+        registrarConsulta("datos-inteligencia-resumen.periodo", DATOS_INTELIGENCIA_RESUMEN,
+                m -> calculoRepository.createAggregationPipeline(periodos(m)));
+    }
+
+    /**
+     * Etapas equivalentes a un find con filtro, orden y límite
+     */
+    private List<Document> etapas(Query query) {
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$match", query.getQueryObject()));
+        if (!query.getSortObject().isEmpty()) {
+            pipeline.add(new Document("$sort", query.getSortObject()));
+        }
+        if (query.getLimit() > 0) {
+            pipeline.add(new Document("$limit", query.getLimit()));
+        }
+        return pipeline;
+    }
+
+    private String idTexto(Document muestra) {
+        return muestra.get("_id") != null ? muestra.get("_id").toString() : null;
+    }
+
+    private List<String> periodos(Document muestra) {
+        return Arrays.asList(muestra.getString("periodoAnterior"), muestra.getString("periodoActual"));
+    }
+
+    private Integer anio(Document muestra) {
+        String periodo = muestra.getString("periodoActual");
+        return periodo != null && periodo.length() >= 4 ? Integer.valueOf(periodo.substring(0, 4)) : null;
+    }
+
+    /**
+     * Documento de IndicadoresCalculados del periodo más reciente para armar filtros realistas
+     */
+    private Document obtenerMuestra() {
+        Document muestra = mongoTemplate.getDb().getCollection(INDICADORES_CALCULADOS)
+                .find()
+                .sort(new Document("periodoActual", -1))
+                .limit(1)
+                .first();
+        return muestra != null ? muestra : new Document();
+    }
+
+    /**
+     * Recorre el explain (incluye inputStage, inputStages y $cursor anidados) juntando etapas e índices
+     */
+    private void recolectarEtapas(Object nodo, Set<String> etapas, Set<String> indices) {
+        if (nodo instanceof Document documento) {
+            Object etapa = documento.get("stage");
+            if (etapa instanceof String nombreEtapa) {
+                etapas.add(nombreEtapa);
+            }
+            Object indice = documento.get("indexName");
+            if (indice instanceof String nombreIndice) {
+                indices.add(nombreIndice);
+            }
+            for (Map.Entry<String, Object> campo : documento.entrySet()) {
+                if (!"rejectedPlans".equals(campo.getKey())) {
+                    recolectarEtapas(campo.getValue(), etapas, indices);
+                }
+            }
+        } else if (nodo instanceof List<?> lista) {
+            for (Object elemento : lista) {
+                recolectarEtapas(elemento, etapas, indices);
+            }
+        }
+    }
+
+    private String clasificarPlan(Set<String> etapas) {
+        if (etapas.contains("COLLSCAN")) {
+            return "COLLSCAN";
+        }
+        if (etapas.contains("IXSCAN") || etapas.contains("IDHACK") || etapas.contains("COUNT_SCAN")
+                || etapas.contains("DISTINCT_SCAN") || etapas.contains("EXPRESS_IXSCAN")) {
+            return "IXSCAN";
+        }
+        return etapas.isEmpty() ? "DESCONOCIDO" : String.join(",", etapas);
+    }
+
+    private record ConsultaRegistrada(String nombre, String coleccion, Function<Document, List<Document>> pipeline) {
+    }
+}
@@ -0,0 +1,175 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.ReplaceOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Resumen de DatosInteligencia por periodo a la granularidad del cálculo de indicadores:
+ * FnValor sumado por (PkiPuesto, FcDetalle4/5/6, PkiGrupoNegocio, PkiConceptoDetalle, PkiPeriodo).
+ * Conserva los nombres de campo de la colección original para que los pipelines de cálculo
+ * funcionen igual sobre cualquiera de las dos. Se mantiene desde las cargas de datos.
+ */
+@Repository
+public class ResumenDatosInteligenciaInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumenDatosInteligenciaInfrastructureRepository.class);
+
+    public static final String ORIGEN = "DatosInteligencia";
+    public static final String RESUMEN = "DatosInteligenciaResumen";
+    // Un documento por periodo resumido con la firma de los registros originales que cubre
+    private static final String ESTADO = "DatosInteligenciaResumenEstado";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    public ResumenDatosInteligenciaInfrastructureRepository(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Regenera el resumen de cada periodo. Si el periodo ya no tiene datos, se elimina su resumen.
+     */
+    public void actualizarPeriodos(Collection<String> periodos) {
+        periodos.stream().distinct().sorted().forEach(this::actualizarPeriodo);
+    }
+
+    public void actualizarPeriodo(String periodo) {
+        long inicio = System.currentTimeMillis();
+        MongoDatabase db = mongoTemplate.getDb();
+
+        // Primero se invalida el estado: si algo falla, el cálculo vuelve a leer la colección original
+        db.getCollection(ESTADO).deleteOne(new Document("_id", periodo));
+        db.getCollection(RESUMEN).deleteMany(new Document("PkiPeriodo", periodo));
+
+        db.getCollection(ORIGEN).aggregate(Arrays.asList(
+                new Document("$match", new Document("PkiPeriodo", periodo)),
+                new Document("$group", new Document("_id", new Document("PkiPuesto", "$PkiPuesto")
+                        .append("FcDetalle4", "$FcDetalle4")
+                        .append("FcDetalle5", "$FcDetalle5")
+                        .append("FcDetalle6", "$FcDetalle6")
+                        .append("PkiGrupoNegocio", "$PkiGrupoNegocio")
+                        .append("PkiConceptoDetalle", "$PkiConceptoDetalle")
+                        .append("PkiPeriodo", "$PkiPeriodo"))
+                        .append("FnValor", new Document("$sum", "$FnValor"))
+                        .append("registros", new Document("$sum", 1))),
+                new Document("$project", new Document("_id", 0)
+                        .append("PkiPuesto", "$_id.PkiPuesto")
+                        .append("FcDetalle4", "$_id.FcDetalle4")
+                        .append("FcDetalle5", "$_id.FcDetalle5")
+                        .append("FcDetalle6", "$_id.FcDetalle6")
+                        .append("PkiGrupoNegocio", "$_id.PkiGrupoNegocio")
+                        .append("PkiConceptoDetalle", "$_id.PkiConceptoDetalle")
+                        .append("PkiPeriodo", "$_id.PkiPeriodo")
+                        .append("FnValor", 1)
+                        .append("registros", 1)),
+                new Document("$merge", new Document("into", RESUMEN)
+                        .append("whenMatched", "fail")
+                        .append("whenNotMatched", "insert"))
+        )).allowDiskUse(true).toCollection();
+
+        Document firma = firmaOriginales(periodo);
+        if (firma == null) {
+            logger.info("Periodo {} sin datos, resumen eliminado", periodo);
+            return;
+        }
+
+        long filas = db.getCollection(RESUMEN).countDocuments(new Document("PkiPeriodo", periodo));
+        db.getCollection(ESTADO).replaceOne(new Document("_id", periodo),
+                new Document("_id", periodo)
+                        .append("registros", firma.get("registros"))
+                        .append("total", firma.get("total"))
+                        .append("ultimoId", firma.get("ultimoId"))
+                        .append("filas", filas)
+                        .append("fechaActualizacion", new Date()),
+                new ReplaceOptions().upsert(true));
+
+        logger.info("Resumen del periodo {}: {} registros en {} filas ({} ms)",
+                periodo, firma.get("registros"), filas, System.currentTimeMillis() - inicio);
+    }
+
+    /**
+     * Elimina todo el resumen (antes de reemplazar la colección original completa)
+     */
+    public void eliminarResumen() {
+        mongoTemplate.getDb().getCollection(RESUMEN).deleteMany(new Document());
+        mongoTemplate.getDb().getCollection(ESTADO).deleteMany(new Document());
+    }
+
+    /**
+     * Indica si todos los periodos tienen resumen vigente: existe su estado y la firma de los
+     * registros originales (cantidad, suma de FnValor y mayor _id) no cambió desde que se generó.
+     * Así se detectan también las escrituras fuera de las cargas: un FnValor modificado cambia la
+     * suma y un registro reinsertado trae un _id mayor aunque la cantidad sea la misma.
+     */
+    public boolean resumenVigente(Collection<String> periodos) {
+        List<String> distintos = periodos.stream().distinct().toList();
+        Map<String, Document> resumidos = new HashMap<>();
+        mongoTemplate.getDb().getCollection(ESTADO)
+                .find(new Document("_id", new Document("$in", distintos)))
+                .forEach(doc -> resumidos.put(doc.getString("_id"), doc));
+
+        if (resumidos.size() < distintos.size()) {
+            return false;
+        }
+        for (String periodo : distintos) {
+            if (!coincide(resumidos.get(periodo), firmaOriginales(periodo))) {
+                logger.info("Resumen del periodo {} desactualizado, se usa {}", periodo, ORIGEN);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Colección que deben leer los cálculos de estos periodos
+     */
+    public String coleccionFuente(Collection<String> periodos) {
+        try {
+            return resumenVigente(periodos) ? RESUMEN : ORIGEN;
+        } catch (Exception e) {
+            logger.warn("No se pudo verificar el resumen de {}: {}", periodos, e.getMessage());
+            return ORIGEN;
+        }
+    }
+
+    // Métodos privados auxiliares
+
+    /**
+     * Cantidad, suma de FnValor y mayor _id de los registros originales del periodo, en una sola
+     * lectura; null si el periodo no tiene datos
+     */
+    private Document firmaOriginales(String periodo) {
+        MongoCollection<Document> origen = mongoTemplate.getDb().getCollection(ORIGEN);
+        return origen.aggregate(Arrays.asList(
+                new Document("$match", new Document("PkiPeriodo", periodo)),
+                new Document("$group", new Document("_id", null)
+                        .append("registros", new Document("$sum", 1L))
+                        .append("total", new Document("$sum", "$FnValor"))
+                        .append("ultimoId", new Document("$max", "$_id")))
+        )).first();
+    }
+
+    // Los estados guardados antes de la firma completa no traen total ni ultimoId: no se consideran vigentes
+    private boolean coincide(Document estado, Document firma) {
+        return firma != null
+                && ((Number) estado.get("registros")).longValue() == ((Number) firma.get("registros")).longValue()
+                && estado.get("total") instanceof Number total && firma.get("total") instanceof Number actual
+                && total.doubleValue() == actual.doubleValue()
+                && estado.get("ultimoId") != null && Objects.equals(estado.get("ultimoId"), firma.get("ultimoId"));
+    }
+}
@@ -0,0 +1,501 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOptions;
+import com.resumen.nomina.alertas.zscore.domain.model.ZScoreConfig;
+import com.resumen.nomina.domain.model.IndicadorCalculado;
+import com.resumen.nomina.domain.model.SerieIndicador;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Almacén por serie de IndicadoresCalculados (colección SeriesIndicadores).
+ * Se mantiene desde el cálculo de indicadores con $merge del lado del servidor, de modo que los
+ * motores de alertas lean una serie completa con un solo documento en lugar de agrupar la colección.
+ * Archivar un periodo no quita sus puntos: las series siguen siendo la historia completa.
+ * Cada serie lleva además el acumulado de Welford de su variación (ver SerieIndicador.AcumuladoVariacion),
+ * que se suma al escribir un periodo y se deshace al recalcularlo, y el de sus últimos N periodos
+ * (ventana de Z-Score, de ZScoreConfig.VENTANA_PERIODOS): agregar una semana al final suma su punto
+ * y saca el más antiguo. Cada tantas actualizaciones incrementales los dos se recalculan desde los
+ * puntos, para que el redondeo no se acumule.
+ * Las lecturas usan el almacén solo si tiene la marca de completo (SeriesIndicadoresEstado), que
+ * escribe la reconstrucción al terminar y se quita si falla una actualización.
+ */
+@Repository
+public class SerieIndicadorInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(SerieIndicadorInfrastructureRepository.class);
+
+    private static final String ORIGEN = "IndicadoresCalculados";
+    private static final String DESTINO = "SeriesIndicadores";
+    private static final String TEMPORAL_ARCHIVO = "SeriesIndicadoresArchivoTmp";
+    private static final String ESTADO = "SeriesIndicadoresEstado";
+    private static final String MARCA_COMPLETO = "completo";
+    private static final int LOTE_ARCHIVO = 5000;
+
+
+    private final MongoTemplate mongoTemplate;
+    private final HistorialCalculosInfrastructureRepository historialRepository;
+    private final int ventanaPeriodos = ZScoreConfig.VENTANA_PERIODOS;
+    private final int recalcularCada;
+    private final boolean reconstruirAlIniciar;
+
+    // Series anteriores al acumulado: se completan una vez por ejecución
+    private volatile boolean acumuladosCompletos = false;
+
+    @Autowired
+    public SerieIndicadorInfrastructureRepository(MongoTemplate mongoTemplate,
+                                                  HistorialCalculosInfrastructureRepository historialRepository,
+                                                  @Value("${series.acumulado.recalcular-cada:26}") int recalcularCada,
+                                                  @Value("${series.reconstruir-al-iniciar:true}") boolean reconstruirAlIniciar) {
+        this.mongoTemplate = mongoTemplate;
+        this.historialRepository = historialRepository;
+        this.recalcularCada = recalcularCada;
+        this.reconstruirAlIniciar = reconstruirAlIniciar;
+    }
+
+    /**
+     * Sin la marca de completo (primera ejecución o una actualización fallida) se reconstruye
+     * el almacén; mientras tanto las lecturas agrupan IndicadoresCalculados
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        if (!reconstruirAlIniciar || almacenCompleto()) {
+            return;
+        }
+        try {
+            logger.info("SeriesIndicadores sin marca de completo, reconstruyendo");
+            reconstruir();
+        } catch (Exception e) {
+            logger.error("No se pudo reconstruir SeriesIndicadores: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Indica si el almacén tiene todas las series (lo escribió una reconstrucción completa y
+     * ninguna actualización falló después)
+     */
+    public boolean almacenCompleto() {
+        return mongoTemplate.getDb().getCollection(ESTADO).countDocuments(new Document("_id", MARCA_COMPLETO)) > 0;
+    }
+
+    /**
+     * Reemplaza en las series los puntos de los periodos actuales indicados con lo que hoy hay
+     * en IndicadoresCalculados. Los demás periodos de cada serie no se tocan.
+     */
+    public void actualizarPeriodos(Collection<String> periodosActuales) {
+        actualizarPeriodosDesde(ORIGEN, periodosActuales);
+    }
+
+    /**
+     * Igual que actualizarPeriodos, leyendo los puntos de otra colección con la forma de IndicadoresCalculados
+     */
+    private void actualizarPeriodosDesde(String origen, Collection<String> periodosActuales) {
+        List<String> periodos = periodosActuales.stream().distinct().sorted().toList();
+        if (periodos.isEmpty()) {
+            return;
+        }
+        try {
+            reemplazarPuntos(origen, periodos);
+        } catch (RuntimeException e) {
+            // Las series de esos periodos pueden haber quedado a medias: hasta reconstruir se lee la colección original
+            marcarIncompleto();
+            throw e;
+        }
+    }
+
+    private void reemplazarPuntos(String origen, List<String> periodos) {
+
+        long inicio = System.currentTimeMillis();
+        MongoCollection<Document> series = mongoTemplate.getDb().getCollection(DESTINO);
+
+        // 1. Quitar los puntos de esos periodos (incluye series que ya no tienen datos en ellos)
+        //    y deshacer su aporte al acumulado; mínimo, máximo y ventana salen de los puntos que quedan
+        series.updateMany(new Document("periodos", new Document("$in", periodos)),
+                Arrays.asList(
+                        new Document("$set", new Document("puntos", puntosSin("$periodos", "$valoresActuales", "$variaciones", periodos))
+                                .append("quitados", puntosDe("$periodos", "$valoresActuales", "$variaciones", periodos))
+                                .append("acumulado", acumuladoActual())
+                                .append("actualizaciones", siguienteActualizacion())),
+                        new Document("$set", new Document("acumulado", quitarPuntos("$acumulado", "$quitados"))),
+                        recalcularSiCorresponde("$puntos"),
+                        new Document("$set", new Document("acumulado.min", new Document("$min", normalizadas("$puntos")))
+                                .append("acumulado.max", new Document("$max", normalizadas("$puntos")))
+                                .append("ventana", ventanaDe("$puntos"))),
+                        new Document("$set", separarPuntos("$puntos")),
+                        new Document("$unset", Arrays.asList("puntos", "quitados"))));
+        series.deleteMany(new Document("periodos", new Document("$size", 0)));
+
+        // 2. Agregar los puntos recalculados, manteniendo el orden por periodo
+        List<Document> pipeline = new ArrayList<>();
+        pipeline.add(new Document("$match", new Document("periodoActual", new Document("$in", periodos))));
+        pipeline.addAll(pipelineSeries());
+        pipeline.add(new Document("$merge", new Document("into", DESTINO)
+                .append("on", "_id")
+                .append("whenMatched", Arrays.asList(
+                        new Document("$set", new Document("puntos", new Document("$sortArray", new Document("input",
+                                new Document("$concatArrays", Arrays.asList(
+                                        puntosSin("$periodos", "$valoresActuales", "$variaciones", periodos),
+                                        zip("$$new.periodos", "$$new.valoresActuales", "$$new.variaciones"))))
+                                .append("sortBy", 1)))
+                                .append("acumulado", combinar(acumuladoActual(), "$$new.acumulado"))
+                                .append("actualizaciones", siguienteActualizacion())),
+                        new Document("$set", new Document("ventana", ventanaSiguiente(periodos))),
+                        recalcularSiCorresponde("$puntos"),
+                        new Document("$set", separarPuntos("$puntos").append("fechaActualizacion", "$$NOW")),
+                        new Document("$unset", "puntos")))
+                .append("whenNotMatched", "insert")));
+
+        mongoTemplate.getDb().getCollection(origen).aggregate(pipeline).allowDiskUse(true).toCollection();
+
+        logger.info("Series actualizadas para periodos {} en {} ms", periodos, System.currentTimeMillis() - inicio);
+    }
+
+    /**
+     * Reconstruye todas las series desde IndicadoresCalculados (p. ej. después de una limpieza).
+     * Los periodos que solo existen en el archivo se vuelven a agregar para no perder historia.
+     */
+    public void reconstruir() {
+        long inicio = System.currentTimeMillis();
+        marcarIncompleto();
+
+        List<Document> pipeline = new ArrayList<>(pipelineSeries());
+        pipeline.add(new Document("$out", DESTINO));
+        mongoTemplate.getDb().getCollection(ORIGEN).aggregate(pipeline).allowDiskUse(true).toCollection();
+
+        List<String> archivados = historialRepository.periodosSoloArchivados();
+        if (!archivados.isEmpty()) {
+            agregarHistorialArchivado(archivados);
+        }
+
+        // Los periodos calculados mientras corría el $out pueden haber quedado fuera; se vuelven a aplicar
+        // (con un minuto de margen por $$NOW del servidor)
+        List<String> recalculados = mongoTemplate.findDistinct(
+                new Query(Criteria.where("fechaCalculo").gte(new Date(inicio - 60_000))),
+                "periodoActual", ORIGEN, String.class);
+        actualizarPeriodos(recalculados);
+
+        mongoTemplate.getDb().getCollection(ESTADO).replaceOne(new Document("_id", MARCA_COMPLETO),
+                new Document("_id", MARCA_COMPLETO).append("fechaReconstruccion", new Date()),
+                new ReplaceOptions().upsert(true));
+
+        logger.info("Series reconstruidas: {} series en {} ms",
+                mongoTemplate.getDb().getCollection(DESTINO).estimatedDocumentCount(), System.currentTimeMillis() - inicio);
+    }
+
+    /**
+     * Calcula el acumulado y la ventana de las series guardadas antes de que existieran o con otro
+     * tamaño de ventana (una vez por ejecución; después los mantienen las escrituras)
+     */
+    public void completarAcumulados() {
+        if (acumuladosCompletos) {
+            return;
+        }
+        long actualizadas = mongoTemplate.getDb().getCollection(DESTINO).updateMany(
+                new Document("$or", Arrays.asList(
+                        new Document("acumulado", new Document("$exists", false)),
+                        new Document("ventana.tamanio", new Document("$ne", ventanaPeriodos)))),
+                List.of(new Document("$set", new Document("acumulado", acumuladoActual())
+                        .append("ventana", ventanaDe(zip("$periodos", "$valoresActuales", "$variaciones")))
+                        .append("actualizaciones", 0)))).getModifiedCount();
+        if (actualizadas > 0) {
+            logger.info("Acumulado y ventana de variación calculados para {} series", actualizadas);
+        }
+        acumuladosCompletos = true;
+    }
+
+    /**
+     * Una serie por su clave con una sola lectura
+     */
+    public SerieIndicador obtenerSerie(String clave) {
+        return mongoTemplate.findById(clave, SerieIndicador.class);
+    }
+
+    // Métodos privados auxiliares
+
+    private void marcarIncompleto() {
+        mongoTemplate.getDb().getCollection(ESTADO).deleteOne(new Document("_id", MARCA_COMPLETO));
+    }
+
+    /**
+     * Carga los documentos archivados en una colección temporal y los agrega a las series
+     * con el mismo $merge que usa el cálculo
+     */
+    private void agregarHistorialArchivado(List<String> periodos) {
+        MongoCollection<Document> temporal = mongoTemplate.getDb().getCollection(TEMPORAL_ARCHIVO);
+        temporal.drop();
+        try {
+            List<Document> lote = new ArrayList<>(LOTE_ARCHIVO);
+            try (Stream<Document> archivados = historialRepository.recorrerArchivados(
+                    new Document("periodoActual", new Document("$in", periodos)))) {
+                archivados.forEach(doc -> {
+                    lote.add(doc);
+                    if (lote.size() == LOTE_ARCHIVO) {
+                        temporal.insertMany(new ArrayList<>(lote));
+                        lote.clear();
+                    }
+                });
+            }
+            if (!lote.isEmpty()) {
+                temporal.insertMany(lote);
+            }
+
+            actualizarPeriodosDesde(TEMPORAL_ARCHIVO, periodos);
+            logger.info("Series completadas con {} periodos archivados", periodos.size());
+        } finally {
+            temporal.drop();
+        }
+    }
+
+    /**
+     * Agrupa IndicadoresCalculados por clave de serie con los puntos ordenados por periodo
+     */
+    private List<Document> pipelineSeries() {
+        Document clave = new Document("$concat", Arrays.asList(
+                texto("$fcDetalle5"), "|",
+                texto("$fcDetalle6"), "|",
+                numero("$conceptoDetalle"), "|",
+                texto("$sucursal"), "|",
+                numero("$negocio")));
+
+        return Arrays.asList(
+                new Document("$sort", new Document("periodoActual", 1)),
+                new Document("$group", new Document("_id", clave)
+                        .append("puesto", new Document("$first", "$fcDetalle5"))
+                        .append("indicador", new Document("$first", "$fcDetalle6"))
+                        .append("conceptoDetalle", new Document("$first", "$conceptoDetalle"))
+                        .append("sucursal", new Document("$first", "$sucursal"))
+                        .append("negocio", new Document("$first", "$negocio"))
+                        .append("puntos", new Document("$push",
+                                Arrays.asList("$periodoActual", "$valorActual", "$variacion")))),
+                new Document("$set", separarPuntos("$puntos")
+                        .append("acumulado", agregarPuntos(new Document("$literal", acumuladoVacio()), "$puntos"))
+                        .append("ventana", ventanaDe("$puntos"))
+                        .append("actualizaciones", 0)
+                        .append("fechaActualizacion", "$$NOW")
+                        .append("_class", new Document("$literal", SerieIndicador.class.getName()))),
+                new Document("$unset", "puntos"));
+    }
+
+    private Document puntosSin(String periodos, String valores, String variaciones, List<String> excluir) {
+        return new Document("$filter", new Document("input", zip(periodos, valores, variaciones))
+                .append("cond", new Document("$not", Arrays.asList(new Document("$in", Arrays.asList(
+                        new Document("$arrayElemAt", Arrays.asList("$$this", 0)), excluir))))));
+    }
+
+    private Document puntosDe(String periodos, String valores, String variaciones, List<String> incluir) {
+        return new Document("$filter", new Document("input", zip(periodos, valores, variaciones))
+                .append("cond", new Document("$in", Arrays.asList(
+                        new Document("$arrayElemAt", Arrays.asList("$$this", 0)), incluir))));
+    }
+
+    private Document zip(String periodos, String valores, String variaciones) {
+        return new Document("$zip", new Document("inputs", Arrays.asList(
+                new Document("$ifNull", Arrays.asList(periodos, List.of())),
+                new Document("$ifNull", Arrays.asList(valores, List.of())),
+                new Document("$ifNull", Arrays.asList(variaciones, List.of()))))
+                .append("useLongestLength", true));
+    }
+
+    private Document separarPuntos(String puntos) {
+        return new Document("periodos", elemento(puntos, 0))
+                .append("valoresActuales", elemento(puntos, 1))
+                .append("variaciones", elemento(puntos, 2));
+    }
+
+    private Document elemento(String puntos, int indice) {
+        return new Document("$map", new Document("input", puntos)
+                .append("in", new Document("$arrayElemAt", Arrays.asList("$$this", indice))));
+    }
+
+    // Acumulado de Welford: {n, media, m2, min, max} de la variación normalizada
+
+    private Document acumuladoVacio() {
+        return new Document("n", 0).append("media", 0.0).append("m2", 0.0).append("min", null).append("max", null);
+    }
+
+    /**
+     * El acumulado guardado o, en series anteriores a él, el de todos sus puntos
+     */
+    private Document acumuladoActual() {
+        return new Document("$ifNull", Arrays.asList("$acumulado", agregarPuntos(new Document("$literal", acumuladoVacio()),
+                zip("$periodos", "$valoresActuales", "$variaciones"))));
+    }
+
+    private Document siguienteActualizacion() {
+        return new Document("$add", Arrays.asList(new Document("$ifNull", Arrays.asList("$actualizaciones", 0)), 1));
+    }
+
+    /**
+     * Después de recalcularCada actualizaciones incrementales, el acumulado y la ventana se vuelven a
+     * calcular desde los puntos de la serie: sumar y quitar puntos arrastra error de redondeo, y al
+     * quitar el M2 solo se recorta en 0
+     */
+    Document recalcularSiCorresponde(String puntos) {
+        Document corresponde = new Document("$gte", Arrays.asList("$actualizaciones", recalcularCada));
+        return new Document("$set", new Document("acumulado", new Document("$cond", Arrays.asList(corresponde,
+                agregarPuntos(new Document("$literal", acumuladoVacio()), puntos), "$acumulado")))
+                .append("ventana", new Document("$cond", Arrays.asList(corresponde, ventanaDe(puntos), "$ventana")))
+                .append("actualizaciones", new Document("$cond", Arrays.asList(corresponde, 0, "$actualizaciones"))));
+    }
+
+    /**
+     * Suma los puntos [periodo, valor, variacion] al acumulado, uno por uno
+     */
+    Document agregarPuntos(Object acumulado, Object puntos) {
+        Document siguiente = new Document("$let", new Document("vars", new Document("n", new Document("$add", Arrays.asList("$$value.n", 1)))
+                .append("delta", new Document("$subtract", Arrays.asList("$$x", "$$value.media"))))
+                .append("in", new Document("$let", new Document("vars", new Document("media", new Document("$add", Arrays.asList(
+                        "$$value.media", new Document("$divide", Arrays.asList("$$delta", "$$n"))))))
+                        .append("in", new Document("n", "$$n")
+                                .append("media", "$$media")
+                                .append("m2", new Document("$add", Arrays.asList("$$value.m2", new Document("$multiply", Arrays.asList(
+                                        "$$delta", new Document("$subtract", Arrays.asList("$$x", "$$media")))))))
+                                .append("min", new Document("$min", Arrays.asList("$$value.min", "$$x")))
+                                .append("max", new Document("$max", Arrays.asList("$$value.max", "$$x")))))));
+        return porPunto(acumulado, puntos, siguiente);
+    }
+
+    /**
+     * Deshace el aporte de los puntos al acumulado (Welford inverso). Mínimo y máximo quedan igual:
+     * se recalculan aparte con los puntos que quedan.
+     */
+    Document quitarPuntos(Object acumulado, Object puntos) {
+        Document anterior = new Document("$let", new Document("vars", new Document("n", new Document("$subtract", Arrays.asList("$$value.n", 1))))
+                .append("in", new Document("$cond", Arrays.asList(
+                        new Document("$lte", Arrays.asList("$$n", 0)),
+                        new Document("n", 0).append("media", 0.0).append("m2", 0.0)
+                                .append("min", "$$value.min").append("max", "$$value.max"),
+                        new Document("$let", new Document("vars", new Document("media", new Document("$divide", Arrays.asList(
+                                new Document("$subtract", Arrays.asList(new Document("$multiply", Arrays.asList("$$value.n", "$$value.media")), "$$x")),
+                                "$$n"))))
+                                .append("in", new Document("n", "$$n")
+                                        .append("media", "$$media")
+                                        // Sin negativos por redondeo
+                                        .append("m2", new Document("$max", Arrays.asList(0.0, new Document("$subtract", Arrays.asList("$$value.m2",
+                                                new Document("$multiply", Arrays.asList(
+                                                        new Document("$subtract", Arrays.asList("$$x", "$$value.media")),
+                                                        new Document("$subtract", Arrays.asList("$$x", "$$media")))))))))
+                                        .append("min", "$$value.min")
+                                        .append("max", "$$value.max")))))));
+        return porPunto(acumulado, puntos, anterior);
+    }
+
+    /**
+     * Aplica la actualización a cada punto con variación válida ($$x, ya normalizada); los demás no cuentan
+     */
+    private Document porPunto(Object acumulado, Object puntos, Document actualizacion) {
+        return new Document("$reduce", new Document("input", puntos)
+                .append("initialValue", acumulado)
+                .append("in", new Document("$let", new Document("vars", new Document("x", variacionNormalizada("$$this")))
+                        .append("in", new Document("$cond", Arrays.asList(
+                                new Document("$eq", Arrays.asList("$$x", null)), "$$value", actualizacion))))));
+    }
+
+    /**
+     * Une dos acumulados como si sus puntos se hubieran sumado juntos (fórmula de Chan)
+     */
+    Document combinar(Object acumulado, String otro) {
+        return new Document("$let", new Document("vars", new Document("a", acumulado).append("b", otro))
+                .append("in", new Document("$let", new Document("vars", new Document("n", new Document("$add", Arrays.asList("$$a.n", "$$b.n")))
+                        .append("delta", new Document("$subtract", Arrays.asList("$$b.media", "$$a.media"))))
+                        .append("in", new Document("$cond", Arrays.asList(
+                                new Document("$eq", Arrays.asList("$$n", 0)), "$$a",
+                                new Document("n", "$$n")
+                                        .append("media", new Document("$add", Arrays.asList("$$a.media", new Document("$divide", Arrays.asList(
+                                                new Document("$multiply", Arrays.asList("$$delta", "$$b.n")), "$$n")))))
+                                        .append("m2", new Document("$add", Arrays.asList("$$a.m2", "$$b.m2", new Document("$divide", Arrays.asList(
+                                                new Document("$multiply", Arrays.asList("$$delta", "$$delta", "$$a.n", "$$b.n")), "$$n")))))
+                                        .append("min", new Document("$min", Arrays.asList("$$a.min", "$$b.min")))
+                                        .append("max", new Document("$max", Arrays.asList("$$a.max", "$$b.max")))))))));
+    }
+
+    // Ventana: {tamanio, n, media, m2} de los últimos tamanio puntos por posición (los outliers ocupan lugar pero no cuentan)
+
+    private Document ventanaDe(Object puntos) {
+        return estadoVentana(agregarPuntos(new Document("$literal", acumuladoVacio()),
+                new Document("$slice", Arrays.asList(puntos, -ventanaPeriodos))));
+    }
+
+    /**
+     * Ventana después de agregar los puntos nuevos ($$new). Si solo se agregan al final de la serie
+     * (el caso semanal) se suman los nuevos y se quitan los que salen por el inicio; si no,
+     * se recalcula con los últimos puntos ya ordenados ($puntos).
+     */
+    private Document ventanaSiguiente(List<String> periodos) {
+        Document agregando = new Document("$let", new Document("vars", new Document("inicio", new Document("$max", Arrays.asList(0,
+                new Document("$subtract", Arrays.asList(new Document("$size", "$$anteriores"), ventanaPeriodos)))))
+                .append("fin", new Document("$max", Arrays.asList(0, new Document("$subtract", Arrays.asList(
+                        new Document("$add", Arrays.asList(new Document("$size", "$$anteriores"), new Document("$size", "$$new.periodos"))),
+                        ventanaPeriodos))))))
+                .append("in", estadoVentana(quitarPuntos(
+                        agregarPuntos("$ventana", zip("$$new.periodos", "$$new.valoresActuales", "$$new.variaciones")),
+                        new Document("$cond", Arrays.asList(
+                                new Document("$gt", Arrays.asList("$$fin", "$$inicio")),
+                                new Document("$slice", Arrays.asList("$$anteriores", "$$inicio",
+                                        new Document("$subtract", Arrays.asList("$$fin", "$$inicio")))),
+                                List.of()))))));
+
+        return new Document("$let", new Document("vars", new Document("anteriores",
+                puntosSin("$periodos", "$valoresActuales", "$variaciones", periodos)))
+                .append("in", new Document("$cond", Arrays.asList(
+                        new Document("$and", Arrays.asList(
+                                new Document("$eq", Arrays.asList("$ventana.tamanio", ventanaPeriodos)),
+                                new Document("$gt", Arrays.asList(new Document("$first", "$$new.periodos"),
+                                        new Document("$arrayElemAt", Arrays.asList(new Document("$last", "$$anteriores"), 0)))))),
+                        agregando,
+                        ventanaDe("$puntos")))));
+    }
+
+    private Document estadoVentana(Document acumulado) {
+        return new Document("$let", new Document("vars", new Document("v", acumulado))
+                .append("in", new Document("tamanio", ventanaPeriodos)
+                        .append("n", "$$v.n")
+                        .append("media", "$$v.media")
+                        .append("m2", "$$v.m2")));
+    }
+
+    private Document normalizadas(String puntos) {
+        return new Document("$map", new Document("input", puntos).append("in", variacionNormalizada("$$this")));
+    }
+
+    /**
+     * Variación del punto normalizada a decimal con la regla de variacionNormalizada; null si no es
+     * número o es un outlier extremo (no entra al acumulado, igual que en Z-Score)
+     */
+    private Document variacionNormalizada(String punto) {
+        return new Document("$let", new Document("vars", new Document("v", new Document("$arrayElemAt", Arrays.asList(punto, 2))))
+                .append("in", new Document("$cond", Arrays.asList(
+                        new Document("$and", Arrays.asList(
+                                new Document("$isNumber", "$$v"),
+                                new Document("$gte", Arrays.asList("$$v", IndicadorCalculado.VARIACION_MINIMA)),
+                                new Document("$lte", Arrays.asList("$$v", IndicadorCalculado.VARIACION_MAXIMA)))),
+                        VariacionNormalizadaInfrastructureRepository.expresion("$$v"),
+                        null))));
+    }
+
+    // Mismo formato que la clave de las series de alertas: textos sin espacios y números con 0 por defecto
+    private Document texto(String campo) {
+        return new Document("$trim", new Document("input", new Document("$ifNull", Arrays.asList(campo, ""))));
+    }
+
+    private Document numero(String campo) {
+        return new Document("$toString", new Document("$ifNull", Arrays.asList(campo, 0)));
+    }
+}
@@ -0,0 +1,262 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.resumen.nomina.domain.model.Sucursal;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Catálogo de sucursales (colección CatalogoSucursales) construido con los valores de "sucursal"
+ * de IndicadoresCalculados. Un término de búsqueda se resuelve en memoria contra los nombres
+ * normalizados y se consulta con $in de los valores exactos, que sí usa los índices por sucursal.
+ * Las entradas no se borran: las sucursales de periodos archivados se siguen encontrando.
+ * CatalogoSucursalesEstado lleva el último ID asignado (se incrementa de forma atómica) y una
+ * versión que sube con cada cambio: la copia en memoria se vuelve a cargar si otra instancia la cambió.
+ */
+@Repository
+public class SucursalInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(SucursalInfrastructureRepository.class);
+
+    private static final String ORIGEN = "IndicadoresCalculados";
+    private static final String CATALOGO = "CatalogoSucursales";
+    private static final String ESTADO = "CatalogoSucursalesEstado";
+    private static final String CONTADOR = "catalogo";
+
+    private final MongoTemplate mongoTemplate;
+    private final long verificarCadaMillis;
+
+    // Clave normalizada -> valores guardados; null hasta la primera consulta o después de un cambio
+    private volatile Map<String, Set<String>> catalogo;
+    private volatile long versionCargada;
+    private volatile long siguienteVerificacion;
+    private volatile boolean indiceAsegurado = false;
+
+    @Autowired
+    public SucursalInfrastructureRepository(MongoTemplate mongoTemplate,
+                                            @Value("${sucursales.catalogo.verificar-segundos:60}") long verificarSegundos) {
+        this.mongoTemplate = mongoTemplate;
+        this.verificarCadaMillis = verificarSegundos * 1000;
+    }
+
+    /**
+     * Agrega al catálogo las sucursales de los periodos actuales indicados
+     */
+    public void actualizarPeriodos(Collection<String> periodosActuales) {
+        if (periodosActuales.isEmpty()) {
+            return;
+        }
+        agregarValores(mongoTemplate.getDb().getCollection(ORIGEN)
+                .distinct("sucursal", new Document("periodoActual", new Document("$in", new ArrayList<>(periodosActuales))), String.class)
+                .into(new ArrayList<>()));
+    }
+
+    /**
+     * Agrega al catálogo todas las sucursales de IndicadoresCalculados (las existentes se conservan)
+     */
+    public void reconstruir() {
+        long inicio = System.currentTimeMillis();
+        agregarValores(mongoTemplate.getDb().getCollection(ORIGEN)
+                .distinct("sucursal", String.class).into(new ArrayList<>()));
+        logger.info("Catálogo de sucursales reconstruido: {} sucursales en {} ms",
+                mongoTemplate.getDb().getCollection(CATALOGO).estimatedDocumentCount(), System.currentTimeMillis() - inicio);
+    }
+
+    /**
+     * Valores guardados de las sucursales cuyo nombre normalizado contiene el término normalizado
+     * (misma búsqueda parcial que hacía la expresión regular, sin distinguir acentos)
+     */
+    public List<String> resolver(String termino) {
+        String buscado = normalizar(termino);
+        List<String> valores = new ArrayList<>();
+        obtenerCatalogo().forEach((clave, guardados) -> {
+            if (clave.contains(buscado)) {
+                valores.addAll(guardados);
+            }
+        });
+        return valores;
+    }
+
+    /**
+     * Condición para el campo "sucursal": $in de los valores que corresponden al término
+     * (vacío si ninguna sucursal coincide, igual que una expresión regular sin resultados)
+     */
+    public Document filtroSucursal(String termino) {
+        return new Document("$in", resolver(termino));
+    }
+
+    /**
+     * Catálogo con su ID, clave normalizada y valores guardados
+     */
+    public List<Sucursal> obtenerSucursales() {
+        obtenerCatalogo();
+        return mongoTemplate.findAll(Sucursal.class);
+    }
+
+    /**
+     * Sin espacios a los lados ni repetidos, en mayúsculas y sin acentos
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinAcentos = Normalizer.normalize(texto, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinAcentos.trim().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    // Métodos privados auxiliares
+
+    /**
+     * Copia en memoria del catálogo. Pasado el intervalo de verificación se lee la versión guardada
+     * y, si otra instancia cambió el catálogo, se vuelve a cargar.
+     */
+    private Map<String, Set<String>> obtenerCatalogo() {
+        Map<String, Set<String>> actual = catalogo;
+        if (actual != null && System.currentTimeMillis() < siguienteVerificacion) {
+            return actual;
+        }
+        synchronized (this) {
+            if (catalogo != null && System.currentTimeMillis() < siguienteVerificacion) {
+                return catalogo;
+            }
+            if (catalogo == null && mongoTemplate.getDb().getCollection(CATALOGO).estimatedDocumentCount() == 0) {
+                reconstruir();
+            }
+            // La versión se lee antes que las entradas: un cambio posterior se ve en la siguiente verificación
+            long version = versionGuardada();
+            if (catalogo == null || version != versionCargada) {
+                Map<String, Set<String>> cargado = new TreeMap<>();
+                for (Sucursal sucursal : mongoTemplate.findAll(Sucursal.class)) {
+                    cargado.put(sucursal.getClave(), new LinkedHashSet<>(
+                            sucursal.getValores() != null ? sucursal.getValores() : List.of()));
+                }
+                catalogo = cargado;
+                versionCargada = version;
+            }
+            siguienteVerificacion = System.currentTimeMillis() + verificarCadaMillis;
+            return catalogo;
+        }
+    }
+
+    private long versionGuardada() {
+        Document estado = mongoTemplate.getDb().getCollection(ESTADO).find(new Document("_id", CONTADOR)).first();
+        Number version = estado != null ? estado.get("version", Number.class) : null;
+        return version != null ? version.longValue() : 0L;
+    }
+
+    /**
+     * Agrega los valores a la entrada de su clave; las claves nuevas reciben el siguiente ID del
+     * contador. Solo se escriben las entradas que cambian.
+     */
+    private synchronized void agregarValores(Collection<String> valores) {
+        Map<String, Set<String>> porClave = new HashMap<>();
+        for (String valor : valores) {
+            if (valor != null && !valor.isBlank()) {
+                porClave.computeIfAbsent(normalizar(valor), k -> new LinkedHashSet<>()).add(valor);
+            }
+        }
+        if (porClave.isEmpty()) {
+            return;
+        }
+
+        Map<String, Sucursal> existentes = new HashMap<>();
+        int maximoId = 0;
+        for (Sucursal sucursal : mongoTemplate.findAll(Sucursal.class)) {
+            existentes.put(sucursal.getClave(), sucursal);
+            maximoId = Math.max(maximoId, sucursal.getId());
+        }
+
+        MongoCollection<Document> coleccion = mongoTemplate.getDb().getCollection(CATALOGO);
+        MongoCollection<Document> estado = mongoTemplate.getDb().getCollection(ESTADO);
+        asegurarIndiceClave(coleccion);
+        // Catálogos anteriores al contador: arranca en el mayor ID guardado
+        estado.updateOne(new Document("_id", CONTADOR), new Document("$max", new Document("ultimoId", maximoId)),
+                new UpdateOptions().upsert(true));
+
+        int nuevas = 0;
+        int cambios = 0;
+        for (Map.Entry<String, Set<String>> entrada : porClave.entrySet()) {
+            Sucursal existente = existentes.get(entrada.getKey());
+            if (existente != null && existente.getValores() != null && existente.getValores().containsAll(entrada.getValue())) {
+                continue;
+            }
+            Document actualizacion = new Document("$addToSet", new Document("valores", new Document("$each", new ArrayList<>(entrada.getValue()))))
+                    .append("$set", new Document("fechaActualizacion", new Date()));
+            if (existente == null) {
+                actualizacion.append("$setOnInsert", new Document("_id", siguienteId(estado))
+                        .append("_class", Sucursal.class.getName()));
+                nuevas++;
+            }
+            escribir(coleccion, new Document("clave", entrada.getKey()), actualizacion);
+            cambios++;
+        }
+
+        if (cambios > 0) {
+            estado.updateOne(new Document("_id", CONTADOR), new Document("$inc", new Document("version", 1L)),
+                    new UpdateOptions().upsert(true));
+            catalogo = null;
+            logger.info("Catálogo de sucursales: {} sucursales nuevas, {} con valores nuevos", nuevas, cambios - nuevas);
+        }
+    }
+
+    /**
+     * Siguiente ID del catálogo; el incremento es atómico entre instancias (un ID que no se usa
+     * porque otra instancia insertó la misma clave solo deja un hueco)
+     */
+    private int siguienteId(MongoCollection<Document> estado) {
+        Document contador = estado.findOneAndUpdate(new Document("_id", CONTADOR),
+                new Document("$inc", new Document("ultimoId", 1)),
+                new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER));
+        return contador.get("ultimoId", Number.class).intValue();
+    }
+
+    /**
+     * Upsert por clave. Si otra instancia insertó la misma clave al mismo tiempo, el índice único
+     * rechaza el duplicado y el reintento actualiza la entrada que quedó.
+     */
+    private void escribir(MongoCollection<Document> coleccion, Document filtro, Document actualizacion) {
+        try {
+            coleccion.updateOne(filtro, actualizacion, new UpdateOptions().upsert(true));
+        } catch (MongoWriteException e) {
+            if (ErrorCategory.fromErrorCode(e.getError().getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                throw e;
+            }
+            Document sinInsercion = new Document(actualizacion);
+            sinInsercion.remove("$setOnInsert");
+            coleccion.updateOne(filtro, sinInsercion);
+        }
+    }
+
+    /**
+     * Índice único por clave (también lo asegura IndicesInfrastructureRepository al arrancar, si está habilitado)
+     */
+    private void asegurarIndiceClave(MongoCollection<Document> coleccion) {
+        if (!indiceAsegurado) {
+            coleccion.createIndex(new Document("clave", 1), new IndexOptions().name("clave").unique(true));
+            indiceAsegurado = true;
+        }
+    }
+}
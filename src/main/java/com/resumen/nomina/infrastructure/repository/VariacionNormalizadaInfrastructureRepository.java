@@ -0,0 +1,120 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Campo variacionNormalizada de IndicadoresCalculados (ver IndicadorCalculado.normalizarVariacion).
+ * Los cálculos lo escriben junto con la variación; los documentos guardados antes de existir el
+ * campo se completan al arrancar (o desde el endpoint de administración) con un updateMany por
+ * periodo actual, varios periodos en paralelo. Mientras tanto, quien lo lee usa la regla sobre
+ * la variación original en los documentos que no lo tienen.
+ * Lo leen la agregación de Z-Score sobre la colección y la lectura del archivo. El almacén por serie
+ * normaliza cada punto una sola vez al acumularlo y conserva la variación original, que decide los
+ * outliers; ARIMA modela la variación original.
+ */
+@Repository
+public class VariacionNormalizadaInfrastructureRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(VariacionNormalizadaInfrastructureRepository.class);
+
+    private static final String ORIGEN = "IndicadoresCalculados";
+    public static final String CAMPO = "variacionNormalizada";
+
+    private final MongoTemplate mongoTemplate;
+    private final int hilos;
+    private final boolean completarAlIniciar;
+
+    @Autowired
+    public VariacionNormalizadaInfrastructureRepository(MongoTemplate mongoTemplate,
+                                                        @Value("${calculos.normalizacion.hilos:4}") int hilos,
+                                                        @Value("${calculos.normalizacion.al-iniciar:true}") boolean completarAlIniciar) {
+        this.mongoTemplate = mongoTemplate;
+        this.hilos = Math.max(1, hilos);
+        this.completarAlIniciar = completarAlIniciar;
+    }
+
+    /**
+     * Completa los documentos sin el campo con la aplicación ya atendiendo solicitudes, fuera
+     * de cualquier consulta
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        if (!completarAlIniciar) {
+            return;
+        }
+        try {
+            completar();
+        } catch (Exception e) {
+            logger.error("No se pudo completar variacionNormalizada: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Expresión de agregación con la misma regla que IndicadorCalculado.normalizarVariacion
+     */
+    public static Document expresion(Object variacion) {
+        return new Document("$cond", Arrays.asList(
+                new Document("$gt", Arrays.asList(new Document("$abs", variacion), 1)),
+                new Document("$divide", Arrays.asList(variacion, 100)),
+                variacion));
+    }
+
+    /**
+     * Agrega el campo a los documentos que no lo tienen: un updateMany con pipeline por periodo
+     * actual, repartidos entre varios hilos. Devuelve los documentos modificados.
+     */
+    public long completar() {
+        long inicio = System.currentTimeMillis();
+        MongoCollection<Document> coleccion = mongoTemplate.getDb().getCollection(ORIGEN);
+        Document sinCampo = new Document(CAMPO, new Document("$exists", false));
+
+        List<String> periodos = coleccion.distinct("periodoActual", sinCampo, String.class).into(new ArrayList<>());
+        if (periodos.isEmpty()) {
+            return 0;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(hilos, periodos.size()));
+        try {
+            List<Future<Long>> pendientes = new ArrayList<>();
+            for (String periodo : periodos) {
+                pendientes.add(executor.submit(() -> coleccion.updateMany(
+                        new Document(sinCampo).append("periodoActual", periodo),
+                        List.of(new Document("$set", new Document(CAMPO, expresion("$variacion")))))
+                        .getModifiedCount()));
+            }
+
+            long modificados = 0;
+            for (Future<Long> pendiente : pendientes) {
+                modificados += pendiente.get();
+            }
+            logger.info("Variación normalizada completada: {} documentos de {} periodos en {} ms",
+                    modificados, periodos.size(), System.currentTimeMillis() - inicio);
+            return modificados;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Normalización de variaciones interrumpida", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error normalizando variaciones: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
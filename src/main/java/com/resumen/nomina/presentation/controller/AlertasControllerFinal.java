@@ -268,6 +268,20 @@ public class AlertasControllerFinal {
 
     // ========== MÉTODOS AUXILIARES ==========
 
+    /**
+     * 🗂️ DELETE /api/alertas/particiones
+     * Descarta las alertas calculadas para todas las sucursales; la siguiente consulta las recalcula
+     */
+    @DeleteMapping("/particiones")
+    public ResponseEntity<Map<String, Object>> limpiarParticiones() {
+        log.info("🗂️ DELETE /particiones");
+        alertasService.limpiarParticiones();
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "mensaje", "Particiones de alertas descartadas"
+        ));
+    }
+
     private Map<String, Object> convertirZScoreAMap(AlertasZScoreResponse response) {
         Map<String, Object> map = new HashMap<>();
         map.put("tipo", response.getTipo());
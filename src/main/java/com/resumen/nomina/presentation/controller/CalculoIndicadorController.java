@@ -1,21 +1,33 @@
 
 package com.resumen.nomina.presentation.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.resumen.nomina.application.service.CalculoIndicadorService;
+import com.resumen.nomina.application.service.RecalculoParesService;
+import com.resumen.nomina.application.service.RetencionCalculosService;
+import com.resumen.nomina.application.service.TrabajoRecalculoService;
+import com.resumen.nomina.application.util.GeneradorPeriodos;
 import com.resumen.nomina.domain.model.Indicador;
 import com.resumen.nomina.domain.model.IndicadorCalculado;
+import com.resumen.nomina.domain.model.OpcionesRecalculo;
+import com.resumen.nomina.domain.model.ResultadoRecalculoPares;
+import com.resumen.nomina.domain.model.TrabajoRecalculo;
+import org.bson.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.util.*;
 
 import java.time.temporal.IsoFields;
 import java.util.Arrays;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/calculos")
@@ -24,11 +36,29 @@ public class CalculoIndicadorController {
 
     private static final Logger logger = LoggerFactory.getLogger(CalculoIndicadorController.class);
 
+    // Líneas NDJSON entre cada envío al cliente
+    private static final int LINEAS_POR_ENVIO = 1000;
+
     private final CalculoIndicadorService calculoIndicadorService;
+    private final RecalculoParesService recalculoParesService;
+    private final TrabajoRecalculoService trabajoRecalculoService;
+    private final RetencionCalculosService retencionCalculosService;
+    private final GeneradorPeriodos generadorPeriodos;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public CalculoIndicadorController(CalculoIndicadorService calculoIndicadorService) {
+    public CalculoIndicadorController(CalculoIndicadorService calculoIndicadorService,
+                                      RecalculoParesService recalculoParesService,
+                                      TrabajoRecalculoService trabajoRecalculoService,
+                                      RetencionCalculosService retencionCalculosService,
+                                      GeneradorPeriodos generadorPeriodos,
+                                      ObjectMapper objectMapper) {
         this.calculoIndicadorService = calculoIndicadorService;
+        this.recalculoParesService = recalculoParesService;
+        this.trabajoRecalculoService = trabajoRecalculoService;
+        this.retencionCalculosService = retencionCalculosService;
+        this.generadorPeriodos = generadorPeriodos;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -81,6 +111,21 @@ public class CalculoIndicadorController {
 
             logger.info("Ejecutando cálculo y guardado para periodos: {} por usuario: {}", periodos, usuario);
 
+            // materializar: el cálculo se escribe con $merge y solo se devuelve el total
+            if (Boolean.TRUE.equals(request.get("materializar"))) {
+                long guardados = calculoIndicadorService.ejecutarCalculoMaterializado(periodos, usuario);
+
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("message", "Cálculo materializado exitosamente");
+                response.put("totalGuardados", guardados);
+                response.put("periodos", periodos);
+                response.put("usuario", usuario);
+                response.put("materializado", true);
+
+                return ResponseEntity.status(HttpStatus.CREATED).body(response);
+            }
+
             List<IndicadorCalculado> resultados = calculoIndicadorService.ejecutarCalculoYGuardar(periodos, usuario);
 
             Map<String, Object> response = new HashMap<>();
@@ -178,6 +223,87 @@ public class CalculoIndicadorController {
         }
     }
 
+    /**
+     * GET /api/calculos/pagina - Página de cálculos por clave (periodoActual, _id)
+     * Filtros opcionales periodo y negocio; campos limita la proyección. Para continuar se envían
+     * los valores de "siguiente" como despuesPeriodo y despuesId.
+     */
+    @GetMapping("/pagina")
+    public ResponseEntity<?> obtenerPaginaCalculos(@RequestParam(required = false) String periodo,
+                                                   @RequestParam(required = false) Integer negocio,
+                                                   @RequestParam(required = false) String despuesPeriodo,
+                                                   @RequestParam(required = false) String despuesId,
+                                                   @RequestParam(required = false) Integer limite,
+                                                   @RequestParam(required = false) List<String> campos) {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.putAll(calculoIndicadorService.obtenerPaginaCalculos(
+                    periodo, negocio, despuesPeriodo, despuesId, limite, campos));
+
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Error de validación en página de cálculos: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "Error de validación",
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            logger.error("Error obteniendo página de cálculos: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "Error interno",
+                    "message", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * GET /api/calculos/stream - Cálculos como NDJSON (un documento por línea) leídos con cursor.
+     * Mismos filtros, orden y proyección que /pagina; la memoria del servidor no depende del total.
+     */
+    @GetMapping("/stream")
+    public ResponseEntity<?> transmitirCalculos(@RequestParam(required = false) String periodo,
+                                                @RequestParam(required = false) Integer negocio,
+                                                @RequestParam(required = false) String despuesPeriodo,
+                                                @RequestParam(required = false) String despuesId,
+                                                @RequestParam(required = false) List<String> campos) {
+        Stream<Document> calculos;
+        try {
+            calculos = calculoIndicadorService.recorrerCalculos(periodo, negocio, despuesPeriodo, despuesId, campos);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Error de validación en stream de cálculos: {}", e.getMessage());
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(Map.of(
+                    "success", false,
+                    "error", "Error de validación",
+                    "message", e.getMessage()
+            ));
+        }
+
+        StreamingResponseBody cuerpo = salida -> {
+            long escritos = 0;
+            try (calculos) {
+                Iterator<Document> cursor = calculos.iterator();
+                while (cursor.hasNext()) {
+                    salida.write(objectMapper.writeValueAsBytes(cursor.next()));
+                    salida.write('\n');
+                    // El primer documento sale de inmediato; después se vacía por lotes
+                    if (++escritos == 1 || escritos % LINEAS_POR_ENVIO == 0) {
+                        salida.flush();
+                    }
+                }
+                salida.flush();
+            }
+            logger.info("Stream de cálculos completado: {} documentos", escritos);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(cuerpo);
+    }
+
     /**
      * GET /api/calculos/periodo/{periodo} - Obtiene cálculos por periodo
      */
@@ -333,6 +459,63 @@ public class CalculoIndicadorController {
             ));
         }
     }
+
+    /**
+     * POST /api/calculos/retencion/aplicar - Archiva en disco los periodos fuera del horizonte
+     * Parámetro opcional periodosActivos: periodos actuales más recientes que se conservan en MongoDB
+     */
+    @PostMapping("/retencion/aplicar")
+    public ResponseEntity<?> aplicarRetencion(@RequestParam(required = false) Integer periodosActivos) {
+        try {
+            logger.info("Aplicando retención de cálculos (periodos activos: {})",
+                    periodosActivos != null ? periodosActivos : "configurado");
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.putAll(periodosActivos != null
+                    ? retencionCalculosService.aplicarRetencion(periodosActivos)
+                    : retencionCalculosService.aplicarRetencion());
+
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Error de validación en retención: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "Error de validación",
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            logger.error("Error aplicando retención: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "Error interno",
+                    "message", e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * GET /api/calculos/retencion - Manifiesto del archivo y tamaño de la colección activa
+     */
+    @GetMapping("/retencion")
+    public ResponseEntity<?> obtenerEstadoRetencion() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.putAll(retencionCalculosService.obtenerEstado());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            logger.error("Error obteniendo estado de retención: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "Error interno",
+                    "message", e.getMessage()
+            ));
+        }
+    }
 //desde aqui.
 
 // Agregar estos imports si no están presentes:
@@ -557,7 +740,7 @@ public class CalculoIndicadorController {
      * Por defecto devuelve semana, pero puedes cambiar el parámetro
      */
     private String obtenerPeriodoActual() {
-        return obtenerPeriodoActual(true); // true = semana, false = mes
+        return generadorPeriodos.obtenerPeriodoActual(true); // true = semana, false = mes
     }
 
     /*private String obtenerPeriodoActual(boolean esSemana) {
@@ -594,14 +777,14 @@ public class CalculoIndicadorController {
 
             // Si no se especifica período final, usar el actual
             if (periodoFinal == null || periodoFinal.trim().isEmpty()) {
-                periodoFinal = obtenerPeriodoActual(esPeriodoSemana(periodoInicial));
+                periodoFinal = generadorPeriodos.obtenerPeriodoActual(generadorPeriodos.esPeriodoSemana(periodoInicial));
             }
 
             logger.info("Recalculando indicadores desde período: {} hasta: {} por usuario: {}",
                     periodoInicial, periodoFinal, usuario);
 
             // Generar lista de períodos
-            List<String> periodos = generarListaPeriodos(periodoInicial, periodoFinal);
+            List<String> periodos = generadorPeriodos.generarListaPeriodos(periodoInicial, periodoFinal);
 
             if (periodos.isEmpty()) {
                 throw new IllegalArgumentException("No se generaron períodos válidos");
@@ -609,18 +792,33 @@ public class CalculoIndicadorController {
 
             logger.info("Procesando {} períodos: {}", periodos.size(), periodos);
 
-            // Ejecutar cálculos período a período
-            List<IndicadorCalculado> resultados = ejecutarCalculosPorPares(periodos, usuario);
+            // RANGO: una sola agregación para todo el rango; PARES (por defecto): pares en paralelo
+            // forzar: recalcula también los pares cuyos datos fuente no cambiaron
+            // materializar: escribe con $merge en Mongo y solo devuelve conteos
+            // asincrono: encola un trabajo y responde de inmediato con su id
+            OpcionesRecalculo opciones = obtenerOpcionesRecalculo(request);
+            if (Boolean.TRUE.equals(request.get("asincrono"))) {
+                return respuestaTrabajoEnviado(trabajoRecalculoService.enviar(periodos, usuario, opciones));
+            }
+
+            ResultadoRecalculoPares recalculo = recalculoParesService.recalcular(periodos, usuario, opciones);
+            List<IndicadorCalculado> resultados = recalculo.getIndicadores();
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "Indicadores recalculados desde " + periodoInicial + " hasta " + periodoFinal);
-            response.put("totalRecalculados", resultados.size());
+            response.put("totalRecalculados", recalculo.getTotalRegistros());
             response.put("periodoInicial", periodoInicial);
             response.put("periodoFinal", periodoFinal);
             response.put("totalPeriodos", periodos.size());
             response.put("periodos", periodos);
             response.put("usuario", usuario);
+            response.put("pares", recalculo.getPares());
+            response.put("tiempoTotalMs", recalculo.getTiempoTotalMs());
+            response.put("hilos", recalculo.getHilos());
+            response.put("modo", opciones.getModo().toUpperCase());
+            response.put("materializado", opciones.isMaterializar());
+            response.put("paresSinCambios", recalculo.getParesSinCambios());
             response.put("datos", resultados);
 
             return ResponseEntity.ok(response);
@@ -655,14 +853,14 @@ public class CalculoIndicadorController {
             }
 
             if (periodoFinal == null || periodoFinal.trim().isEmpty()) {
-                periodoFinal = obtenerPeriodoActual(esPeriodoSemana(periodoInicial));
+                periodoFinal = generadorPeriodos.obtenerPeriodoActual(generadorPeriodos.esPeriodoSemana(periodoInicial));
             }
 
             logger.info("Recalculando indicadores desde período: {} hasta: {} por usuario: {}",
                     periodoInicial, periodoFinal, usuario);
 
             // Generar lista de períodos
-            List<String> periodos = generarListaPeriodos(periodoInicial, periodoFinal);
+            List<String> periodos = generadorPeriodos.generarListaPeriodos(periodoInicial, periodoFinal);
 
             if (periodos.isEmpty()) {
                 throw new IllegalArgumentException("No se generaron períodos válidos para el rango especificado");
@@ -670,18 +868,33 @@ public class CalculoIndicadorController {
 
             logger.info("Períodos generados: {}", periodos);
 
-            // Ejecutar cálculos
-            List<IndicadorCalculado> resultados = ejecutarCalculosPorPares(periodos, usuario);
+            // RANGO: una sola agregación para todo el rango; PARES (por defecto): pares en paralelo
+            // forzar: recalcula también los pares cuyos datos fuente no cambiaron
+            // materializar: escribe con $merge en Mongo y solo devuelve conteos
+            // asincrono: encola un trabajo y responde de inmediato con su id
+            OpcionesRecalculo opciones = obtenerOpcionesRecalculo(request);
+            if (Boolean.TRUE.equals(request.get("asincrono"))) {
+                return respuestaTrabajoEnviado(trabajoRecalculoService.enviar(periodos, usuario, opciones));
+            }
+
+            ResultadoRecalculoPares recalculo = recalculoParesService.recalcular(periodos, usuario, opciones);
+            List<IndicadorCalculado> resultados = recalculo.getIndicadores();
 
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("message", "Indicadores recalculados exitosamente para el rango de períodos");
-            response.put("totalRecalculados", resultados.size());
+            response.put("totalRecalculados", recalculo.getTotalRegistros());
             response.put("periodoInicial", periodoInicial);
             response.put("periodoFinal", periodoFinal);
             response.put("totalPeriodos", periodos.size());
             response.put("periodos", periodos);
             response.put("usuario", usuario);
+            response.put("pares", recalculo.getPares());
+            response.put("tiempoTotalMs", recalculo.getTiempoTotalMs());
+            response.put("hilos", recalculo.getHilos());
+            response.put("modo", opciones.getModo().toUpperCase());
+            response.put("materializado", opciones.isMaterializar());
+            response.put("paresSinCambios", recalculo.getParesSinCambios());
             response.put("datos", resultados);
 
             return ResponseEntity.ok(response);
@@ -703,170 +916,98 @@ public class CalculoIndicadorController {
         }
     }
 
-// =====================================================
-// MÉTODOS AUXILIARES OPTIMIZADOS
-// =====================================================
-
-    /**
-     * Ejecuta cálculos para pares de períodos consecutivos
-     * Optimizado para tu lógica de negocio
-     */
-    private List<IndicadorCalculado> ejecutarCalculosPorPares(List<String> periodos, String usuario) {
-        List<IndicadorCalculado> todosLosResultados = new ArrayList<>();
-        int paresEjecutados = 0;
-        int errores = 0;
-
-        logger.info("Iniciando cálculos para {} períodos (generará {} pares)",
-                periodos.size(), periodos.size() - 1);
-
-        // Procesar cada período con el anterior: del más reciente al más antiguo
-        for (int i = periodos.size() - 1; i > 0; i--) {
-            String periodoActual = periodos.get(i);      // Período más reciente
-            String periodoAnterior = periodos.get(i - 1); // Período anterior
-
-            List<String> parPeriodos = Arrays.asList(periodoAnterior, periodoActual);
-
-            logger.info("Procesando par {}/{}: {} vs {} (anterior vs actual)",
-                    paresEjecutados + 1, periodos.size() - 1, periodoAnterior, periodoActual);
-
-            try {
-                // Usar tu servicio existente que requiere exactamente 2 períodos
-                List<IndicadorCalculado> resultadoPar = calculoIndicadorService.recalcularIndicadores(parPeriodos, usuario);
-
-                if (resultadoPar != null && !resultadoPar.isEmpty()) {
-                    todosLosResultados.addAll(resultadoPar);
-                    paresEjecutados++;
-                    logger.info("✅ Par completado: {} registros calculados", resultadoPar.size());
-                } else {
-                    logger.warn("⚠️ Sin resultados para el par: {} vs {}", periodoAnterior, periodoActual);
-                }
-
-            } catch (Exception e) {
-                errores++;
-                logger.error("❌ Error calculando par {} vs {}: {}", periodoAnterior, periodoActual, e.getMessage());
-
-                // Decidir si continuar o abortar según tu lógica de negocio
-                if (errores > 3) {
-                    logger.error("Demasiados errores ({}), abortando proceso", errores);
-                    throw new RuntimeException("Proceso abortado por exceso de errores: " + e.getMessage());
-                }
-            }
-        }
-
-        logger.info("🎉 Proceso completado: {} pares ejecutados, {} resultados totales, {} errores",
-                paresEjecutados, todosLosResultados.size(), errores);
-
-        return todosLosResultados;
-    }
-
     /**
-     * Genera períodos con manejo correcto de semanas/meses y cambios de año
+     * POST /api/calculos/trabajos - Encola un recálculo por rango como trabajo asíncrono
+     * Acepta los mismos campos que /recalcular-rango y responde 202 con el id del trabajo
      */
-    private List<String> generarListaPeriodos(String periodoInicial, String periodoFinal) {
-        List<String> periodos = new ArrayList<>();
-
+    @PostMapping("/trabajos")
+    public ResponseEntity<Map<String, Object>> enviarTrabajoRecalculo(@RequestBody Map<String, Object> request) {
         try {
-            // Validar formato
-            if (!validarFormatoPeriodo(periodoInicial) || !validarFormatoPeriodo(periodoFinal)) {
-                throw new IllegalArgumentException("Formato de período inválido. Use YYYYSS para semanas o YYYYMM para meses");
-            }
-
-            int anoInicial = Integer.parseInt(periodoInicial.substring(0, 4));
-            int numInicial = Integer.parseInt(periodoInicial.substring(4, 6));
-            int anoFinal = Integer.parseInt(periodoFinal.substring(0, 4));
-            int numFinal = Integer.parseInt(periodoFinal.substring(4, 6));
-
-            // Validar orden lógico
-            if (anoInicial > anoFinal || (anoInicial == anoFinal && numInicial > numFinal)) {
-                throw new IllegalArgumentException("El período inicial debe ser menor o igual al período final");
-            }
-
-            // Detectar tipo (semana o mes)
-            boolean esSemana = esPeriodoSemana(periodoInicial) || esPeriodoSemana(periodoFinal);
-
-            int anoActual = anoInicial;
-            int numActual = numInicial;
-
-            while (anoActual < anoFinal || (anoActual == anoFinal && numActual <= numFinal)) {
-                periodos.add(String.format("%04d%02d", anoActual, numActual));
-
-                numActual++;
-
-                // Manejar cambio de año
-                int limite = esSemana ? obtenerUltimaSemanaDelAno(anoActual) : 12;
-                if (numActual > limite) {
-                    numActual = 1;
-                    anoActual++;
-                }
+            String usuario = request.get("usuario") instanceof String valor ? valor.trim() : null;
+            if (usuario == null || usuario.isEmpty()) {
+                throw new IllegalArgumentException("El usuario es requerido");
             }
+            List<String> periodos = generadorPeriodos.resolverRango(
+                    (String) request.get("periodoInicial"), (String) request.get("periodoFinal"));
 
-            logger.info("Generados {} períodos desde {} hasta {}", periodos.size(), periodoInicial, periodoFinal);
+            return respuestaTrabajoEnviado(
+                    trabajoRecalculoService.enviar(periodos, usuario, obtenerOpcionesRecalculo(request)));
 
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Error al parsear los períodos: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Error de validación al enviar trabajo: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "error", "Error de validación",
+                    "message", e.getMessage()
+            ));
+        } catch (Exception e) {
+            logger.error("Error enviando trabajo de recálculo: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of(
+                    "success", false,
+                    "error", "Error interno",
+                    "message", e.getMessage()
+            ));
         }
-
-        return periodos;
     }
 
     /**
-     * Detecta si un período representa semanas (>12) o meses (≤12)
+     * GET /api/calculos/trabajos/{id} - Estado y avance por par de un trabajo
      */
-    private boolean esPeriodoSemana(String periodo) {
-        if (periodo == null || periodo.length() != 6) return false;
-
-        try {
-            int num = Integer.parseInt(periodo.substring(4, 6));
-            return num > 12 && num <= 53;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    @GetMapping("/trabajos/{id}")
+    public ResponseEntity<?> obtenerTrabajoRecalculo(@PathVariable String id) {
+        return trabajoRecalculoService.obtener(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                        "success", false,
+                        "message", "Trabajo no encontrado: " + id
+                )));
     }
 
     /**
-     * Calcula las semanas del año (52 o 53 según ISO 8601)
+     * GET /api/calculos/trabajos - Lista los trabajos recientes
      */
-    private int obtenerUltimaSemanaDelAno(int ano) {
-        LocalDate primerEnero = LocalDate.of(ano, 1, 1);
-        LocalDate ultimoDiciembre = LocalDate.of(ano, 12, 31);
-
-        int diaSemanaEnero = primerEnero.getDayOfWeek().getValue();
-        int diaSemanaDiciembre = ultimoDiciembre.getDayOfWeek().getValue();
-        boolean esBisiesto = primerEnero.isLeapYear();
-
-        // ISO 8601: Año tiene 53 semanas si comienza en jueves o si es bisiesto y comienza en miércoles
-        return (diaSemanaEnero == 4 || diaSemanaDiciembre == 4 || (esBisiesto && diaSemanaEnero == 3)) ? 53 : 52;
+    @GetMapping("/trabajos")
+    public ResponseEntity<List<TrabajoRecalculo>> listarTrabajosRecalculo() {
+        return ResponseEntity.ok(trabajoRecalculoService.listar());
     }
 
     /**
-     * Validador robusto de períodos
+     * DELETE /api/calculos/trabajos/{id} - Cancela un trabajo pendiente o en proceso
      */
-    private boolean validarFormatoPeriodo(String periodo) {
-        if (periodo == null || periodo.length() != 6) return false;
+    @DeleteMapping("/trabajos/{id}")
+    public ResponseEntity<?> cancelarTrabajoRecalculo(@PathVariable String id) {
+        return trabajoRecalculoService.cancelar(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of(
+                        "success", false,
+                        "message", "Trabajo no encontrado: " + id
+                )));
+    }
 
-        try {
-            int ano = Integer.parseInt(periodo.substring(0, 4));
-            int num = Integer.parseInt(periodo.substring(4, 6));
+// =====================================================
+// MÉTODOS AUXILIARES OPTIMIZADOS
+// =====================================================
 
-            return ano >= 2020 && ano <= 2070 && num >= 1 &&
-                    ((num <= 12) || (num <= 53)); // Mes o semana
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    private ResponseEntity<Map<String, Object>> respuestaTrabajoEnviado(TrabajoRecalculo trabajo) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "Recálculo encolado como trabajo asíncrono");
+        response.put("trabajoId", trabajo.getId());
+        response.put("estado", trabajo.getEstado());
+        response.put("totalPares", trabajo.getTotalPares());
+        response.put("urlEstado", "/api/calculos/trabajos/" + trabajo.getId());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
     }
 
     /**
-     * Obtiene período actual con formato automático
+     * Opciones de recálculo enviadas en el request: modo, forzar, materializar e incluirDatos
      */
-    private String obtenerPeriodoActual(boolean esSemana) {
-        LocalDate now = LocalDate.now();
-
-        if (esSemana) {
-            int semana = now.get(java.time.temporal.IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-            int ano = now.get(java.time.temporal.IsoFields.WEEK_BASED_YEAR);
-            return String.format("%04d%02d", ano, semana);
-        } else {
-            return String.format("%04d%02d", now.getYear(), now.getMonthValue());
-        }
+    private OpcionesRecalculo obtenerOpcionesRecalculo(Map<String, Object> request) {
+        return OpcionesRecalculo.builder()
+                .modo((String) request.getOrDefault("modo", "PARES"))
+                .forzar(Boolean.TRUE.equals(request.get("forzar")))
+                .materializar(Boolean.TRUE.equals(request.get("materializar")))
+                .incluirDatos(!Boolean.FALSE.equals(request.get("incluirDatos")))
+                .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.resumen.nomina.alertas.arima.application.service;
+
+import com.resumen.nomina.alertas.arima.domain.model.ArimaConfig;
+import com.resumen.nomina.alertas.arima.domain.model.ArimaForecast;
+import com.resumen.nomina.alertas.arima.domain.model.ArimaModel;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ajuste AR por Yule-Walker (Levinson-Durbin), pronóstico sobre la serie diferenciada y centrada
+ * y búsqueda del orden. Con un modelo previo se fija el orden (p,d,q), así cada prueba del
+ * pronóstico evalúa exactamente ese AR.
+ */
+class ArimaModelServiceTests {
+
+	private static final double TOLERANCIA = 1e-9;
+
+	private final ArimaModelService service = new ArimaModelService();
+
+	@Test
+	void levinsonDurbinCoincideConLaSolucionDirectaDeToeplitz() {
+		for (long semilla = 1; semilla <= 5; semilla++) {
+			double[] serie = ar2(80, 0.5, -0.3, 100.0, semilla);
+			double[] acf = acf(serie, 3);
+
+			for (int p = 1; p <= 3; p++) {
+				ArimaModel modelo = ajustar(serie, p, 0).getModelo();
+
+				assertArrayEquals(resolverToeplitz(acf, p), modelo.getCoeficientesAR(), TOLERANCIA);
+			}
+		}
+	}
+
+	@Test
+	void pronosticoARPartiendoDeLaMediaDeLaSerie() {
+		double[] serie = ar2(60, 0.6, 0.0, 1000.0, 7);
+		ArimaForecast forecast = ajustar(serie, 1, 0);
+		double phi = forecast.getModelo().getCoeficientesAR()[0];
+		double media = Arrays.stream(serie).average().orElseThrow();
+
+		assertEquals(media + phi * (serie[serie.length - 1] - media), forecast.getPronostico(), TOLERANCIA);
+		// Aplicar φ al nivel (≈ 0.6 × 1000) dejaría el pronóstico lejos de la serie
+		assertTrue(Math.abs(forecast.getPronostico() - 1000.0) < 50, "pronóstico " + forecast.getPronostico());
+	}
+
+	@Test
+	void revierteLaDiferenciacionHastaDosVeces() {
+		Random random = new Random(11);
+		double[] serie = new double[70];
+		for (int t = 0; t < serie.length; t++) {
+			serie[t] = 500 + 3.0 * t + 0.05 * t * t + 4 * random.nextGaussian();
+		}
+		int m = serie.length;
+
+		for (int d = 1; d <= 2; d++) {
+			double[] diferenciada = serie.clone();
+			int n = m;
+			for (int i = 0; i < d; i++) {
+				for (int t = 0; t + 1 < n; t++) {
+					diferenciada[t] = diferenciada[t + 1] - diferenciada[t];
+				}
+				n--;
+			}
+			double media = Arrays.stream(diferenciada, 0, n).average().orElseThrow();
+
+			ArimaForecast forecast = ajustar(serie, 1, d);
+			double phi = forecast.getModelo().getCoeficientesAR()[0];
+			double siguiente = media + phi * (diferenciada[n - 1] - media);
+			double esperado = d == 1
+					? serie[m - 1] + siguiente
+					: serie[m - 1] + (serie[m - 1] - serie[m - 2]) + siguiente;
+
+			assertEquals(d, forecast.getModelo().getD());
+			assertEquals(esperado, forecast.getPronostico(), 1e-6, "d=" + d);
+		}
+	}
+
+	@Test
+	void busquedaEscalonadaNoSuperaALaExhaustivaNiRepiteModelos() {
+		for (long semilla = 1; semilla <= 8; semilla++) {
+			double[] serie = ar2(80, 0.5, -0.3, 100.0, semilla);
+
+			ArimaForecast exhaustiva = buscar(serie, "EXHAUSTIVA");
+			ArimaForecast escalonada = buscar(serie, "ESCALONADA");
+
+			// Serie estacionaria (d=0): la cuadrícula 4x4 se reduce a AR(1..3) y MA(1..3)
+			assertEquals(0, exhaustiva.getModelo().getD());
+			assertEquals(6, exhaustiva.getModelosEvaluados(), "semilla " + semilla);
+			assertTrue(escalonada.getModelosEvaluados() <= 6, "semilla " + semilla);
+			assertTrue(exhaustiva.getModelo().getAic() <= escalonada.getModelo().getAic() + TOLERANCIA, "semilla " + semilla);
+		}
+	}
+
+	@Test
+	void serieDePocaVariacionAjustaCadaModeloUnaVez() {
+		// Con desviación < 0.1 los órdenes se limitan a 1: solo quedan AR(1) y MA(1)
+		double[] serie = ar2(60, 0.4, 0.0, 0.05, 3);
+		for (int t = 0; t < serie.length; t++) {
+			serie[t] = 0.05 + (serie[t] - 0.05) / 1000;
+		}
+
+		assertEquals(2, buscar(serie, "EXHAUSTIVA").getModelosEvaluados());
+		assertEquals(2, buscar(serie, "ESCALONADA").getModelosEvaluados());
+	}
+
+	// Auxiliares
+
+	private ArimaForecast buscar(double[] serie, String busqueda) {
+		ArimaConfig config = ArimaConfig.porDefecto();
+		config.setBusquedaOrden(busqueda);
+		return service.ajustarYPronosticar(serie, config);
+	}
+
+	private ArimaForecast ajustar(double[] serie, int p, int d) {
+		ArimaModel previo = ArimaModel.builder().p(p).d(d).q(0).build();
+		return service.ajustarYPronosticar(serie, ArimaConfig.porDefecto(), previo);
+	}
+
+	private double[] ar2(int longitud, double phi1, double phi2, double nivel, long semilla) {
+		Random random = new Random(semilla);
+		double[] serie = new double[longitud];
+		double anterior = 0;
+		double anterior2 = 0;
+		for (int t = 0; t < longitud; t++) {
+			double valor = phi1 * anterior + phi2 * anterior2 + random.nextGaussian();
+			anterior2 = anterior;
+			anterior = valor;
+			serie[t] = nivel + 10 * valor;
+		}
+		return serie;
+	}
+
+	/**
+	 * ACF sesgada (covarianzas divididas entre la de retardo 0), como la usa Yule-Walker
+	 */
+	private double[] acf(double[] serie, int maxRetardo) {
+		double media = Arrays.stream(serie).average().orElseThrow();
+		double[] acf = new double[maxRetardo + 1];
+		for (int k = 0; k <= maxRetardo; k++) {
+			for (int t = k; t < serie.length; t++) {
+				acf[k] += (serie[t] - media) * (serie[t - k] - media);
+			}
+		}
+		for (int k = maxRetardo; k >= 0; k--) {
+			acf[k] /= acf[0];
+		}
+		return acf;
+	}
+
+	/**
+	 * Ecuaciones de Yule-Walker R φ = r con R[i][j] = acf[|i-j|], por eliminación gaussiana con pivoteo
+	 */
+	private double[] resolverToeplitz(double[] acf, int p) {
+		double[][] a = new double[p][p + 1];
+		for (int i = 0; i < p; i++) {
+			for (int j = 0; j < p; j++) {
+				a[i][j] = acf[Math.abs(i - j)];
+			}
+			a[i][p] = acf[i + 1];
+		}
+		for (int col = 0; col < p; col++) {
+			int pivote = col;
+			for (int fila = col + 1; fila < p; fila++) {
+				if (Math.abs(a[fila][col]) > Math.abs(a[pivote][col])) {
+					pivote = fila;
+				}
+			}
+			double[] temporal = a[col];
+			a[col] = a[pivote];
+			a[pivote] = temporal;
+			for (int fila = col + 1; fila < p; fila++) {
+				double factor = a[fila][col] / a[col][col];
+				for (int j = col; j <= p; j++) {
+					a[fila][j] -= factor * a[col][j];
+				}
+			}
+		}
+		double[] phi = new double[p];
+		for (int i = p - 1; i >= 0; i--) {
+			double suma = a[i][p];
+			for (int j = i + 1; j < p; j++) {
+				suma -= a[i][j] * phi[j];
+			}
+			phi[i] = suma / a[i][i];
+		}
+		return phi;
+	}
+}
@@ -0,0 +1,310 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Paginación por clave (periodoActual, _id): el filtro de consultaPorClave se evalúa en memoria
+ * sobre documentos ordenados como los devuelve MongoDB. Los pipelines de par y de rango se
+ * ejecutan etapa por etapa sobre filas de DatosInteligencia.
+ */
+class CalculoIndicadorRepositoryTests {
+
+	private final CalculoIndicadorRepository repository =
+			new CalculoIndicadorRepository(null, null, null, null, null, null, null, 5000);
+
+	@Test
+	void recorrePaginasSinRepetirNiSaltarDocumentos() {
+		// Periodos con 1, 3 y 4 documentos: con límites 1 a 9 los cortes caen dentro, al final
+		// y justo en el último documento de un periodo
+		List<Document> documentos = new ArrayList<>();
+		documentos.addAll(documentos("2024W01", 1));
+		documentos.addAll(documentos("2024W02", 3));
+		documentos.addAll(documentos("2024W03", 4));
+		List<Document> ordenados = ordenar(documentos);
+
+		for (int limite = 1; limite <= ordenados.size() + 1; limite++) {
+			assertEquals(ordenados, recorrer(documentos, null, limite), "límite " + limite);
+		}
+	}
+
+	@Test
+	void filtraPorPeriodoYAvanzaDentroDeEl() {
+		List<Document> documentos = new ArrayList<>();
+		documentos.addAll(documentos("2024W01", 2));
+		documentos.addAll(documentos("2024W02", 5));
+		documentos.addAll(documentos("2024W03", 2));
+
+		List<Document> esperados = ordenar(documentos.stream()
+				.filter(doc -> "2024W02".equals(doc.getString("periodoActual")))
+				.toList());
+
+		assertEquals(esperados, recorrer(documentos, "2024W02", 2));
+	}
+
+	@Test
+	void empiezaDespuesDeLaClaveIndicada() {
+		List<Document> ordenados = ordenar(documentos("2024W05", 3));
+		Document segundo = ordenados.get(1);
+
+		Document filtro = repository.consultaPorClave(null, null, segundo.getString("periodoActual"),
+				segundo.getObjectId("_id").toHexString(), null).getQueryObject();
+
+		assertFalse(cumple(ordenados.get(0), filtro));
+		assertFalse(cumple(segundo, filtro));
+		assertTrue(cumple(ordenados.get(2), filtro));
+	}
+
+	@Test
+	void omiteDocumentosSinPeriodo() {
+		Document sinPeriodo = new Document("_id", new ObjectId());
+		Document filtro = repository.consultaPorClave(null, null, null, null, null).getQueryObject();
+
+		assertFalse(cumple(sinPeriodo, filtro));
+		assertTrue(cumple(documentos("2024W01", 1).get(0), filtro));
+	}
+
+	@Test
+	void ordenaPorPeriodoYId() {
+		Query query = repository.consultaPorClave(null, null, null, null, List.of("valorActual"));
+
+		assertEquals(new Document("periodoActual", 1).append("_id", 1), query.getSortObject());
+		assertEquals(1, query.getFieldsObject().get("periodoActual"));
+	}
+
+	@Test
+	void parTomaCadaValorDeSuPeriodo() {
+		// A en ambos periodos, B solo en el actual, C solo en el anterior, D con dos filas por periodo
+		List<Document> datos = List.of(
+				dato("A", "2024W01", 100.0), dato("A", "2024W02", 150.0),
+				dato("B", "2024W02", 80.0),
+				dato("C", "2024W01", 40.0),
+				dato("D", "2024W01", 10.0), dato("D", "2024W01", 30.0), dato("D", "2024W02", 20.0), dato("D", "2024W02", 10.0));
+
+		Map<String, Document> filas = porLlave(ejecutar(repository.createAggregationPipeline(List.of("2024W02", "2024W01")), datos));
+
+		assertFila(filas.get("A"), "2024W01", 100.0, "2024W02", 150.0, 50.0, 50.0);
+		assertFila(filas.get("B"), "2024W01", 0, "2024W02", 80.0, 80.0, 0);
+		assertFila(filas.get("C"), "2024W01", 40.0, "2024W02", 0, -40.0, -100.0);
+		assertFila(filas.get("D"), "2024W01", 40.0, "2024W02", 30.0, -10.0, -25.0);
+	}
+
+	@Test
+	void parYRangoGuardanLasMismasFilas() {
+		List<String> periodos = List.of("2024W01", "2024W02", "2024W03");
+		List<Document> datos = List.of(
+				dato("A", "2024W01", 100.0), dato("A", "2024W02", 150.0), dato("A", "2024W03", 120.0),
+				dato("B", "2024W02", 80.0),
+				dato("C", "2024W01", 40.0), dato("C", "2024W03", 60.0),
+				dato("D", "2024W03", 5.0));
+
+		List<Document> rango = ejecutar(repository.createRangeAggregationPipeline(periodos), datos);
+
+		for (int i = 1; i < periodos.size(); i++) {
+			String actual = periodos.get(i);
+			List<Document> par = ejecutar(repository.createAggregationPipeline(List.of(periodos.get(i - 1), actual)), datos);
+			assertEquals(porLlave(par), porLlave(rango.stream()
+					.filter(fila -> actual.equals(fila.get("PeriodoActual")))
+					.toList()), "par " + actual);
+		}
+	}
+
+	// Auxiliares
+
+	private Document dato(String indicador, String periodo, double valor) {
+		return new Document("PkiPuesto", 1).append("FcDetalle4", "SUC").append("FcDetalle5", "PUESTO")
+				.append("FcDetalle6", indicador).append("PkiGrupoNegocio", 2).append("PkiConceptoDetalle", 3)
+				.append("PkiPeriodo", periodo).append("FnValor", valor);
+	}
+
+	private Map<String, Document> porLlave(List<Document> filas) {
+		Map<String, Document> porLlave = new LinkedHashMap<>();
+		filas.forEach(fila -> assertEquals(null, porLlave.put(fila.getString("FcDetalle6"), fila)));
+		return porLlave;
+	}
+
+	private void assertFila(Document fila, String periodoAnterior, double valorAnterior, String periodoActual,
+							double valorActual, double diferencia, double variacion) {
+		assertEquals(periodoAnterior, fila.get("PeriodoAnterior"));
+		assertEquals(valorAnterior, ((Number) fila.get("valorAnterior")).doubleValue());
+		assertEquals(periodoActual, fila.get("PeriodoActual"));
+		assertEquals(valorActual, ((Number) fila.get("valorActual")).doubleValue());
+		assertEquals(diferencia, ((Number) fila.get("diferencia")).doubleValue(), 1e-9);
+		assertEquals(variacion, ((Number) fila.get("variacion")).doubleValue(), 1e-9);
+	}
+
+	/**
+	 * Ejecuta en memoria las etapas que usan los pipelines de cálculo: $match, $group ($sum, $max),
+	 * $project, $densify por idx y $setWindowFields con $shift
+	 */
+	@SuppressWarnings("unchecked")
+	private List<Document> ejecutar(List<Document> pipeline, List<Document> entrada) {
+		List<Document> documentos = entrada;
+		for (Document etapa : pipeline) {
+			String nombre = etapa.keySet().iterator().next();
+			Document spec = etapa.get(nombre, Document.class);
+			List<Document> salida = new ArrayList<>();
+			switch (nombre) {
+				case "$match" -> documentos.stream().filter(doc -> cumple(doc, spec)).forEach(salida::add);
+				case "$group" -> {
+					Map<Object, List<Document>> grupos = new LinkedHashMap<>();
+					documentos.forEach(doc -> grupos.computeIfAbsent(evaluar(spec.get("_id"), doc), k -> new ArrayList<>()).add(doc));
+					grupos.forEach((id, docs) -> {
+						Document grupo = new Document("_id", id);
+						spec.forEach((campo, acumulador) -> {
+							if (!"_id".equals(campo)) {
+								grupo.append(campo, acumular((Document) acumulador, docs));
+							}
+						});
+						salida.add(grupo);
+					});
+				}
+				case "$project" -> documentos.forEach(doc -> {
+					Document proyectado = new Document();
+					spec.forEach((campo, valor) -> {
+						if (Objects.equals(valor, 1)) {
+							proyectado.append(campo, doc.get(campo));
+						} else if (!Objects.equals(valor, 0)) {
+							proyectado.append(campo, evaluar(valor, doc));
+						}
+					});
+					salida.add(proyectado);
+				});
+				case "$densify" -> {
+					List<String> particion = (List<String>) spec.get("partitionByFields");
+					List<Integer> limites = (List<Integer>) spec.get("range", Document.class).get("bounds");
+					Map<List<Object>, List<Document>> particiones = new LinkedHashMap<>();
+					documentos.forEach(doc -> particiones.computeIfAbsent(
+							particion.stream().map(doc::get).toList(), k -> new ArrayList<>()).add(doc));
+					particiones.forEach((clave, docs) -> {
+						salida.addAll(docs);
+						for (int idx = limites.get(0); idx < limites.get(1); idx++) {
+							int valor = idx;
+							if (docs.stream().noneMatch(doc -> Objects.equals(doc.get("idx"), valor))) {
+								Document relleno = new Document();
+								for (int i = 0; i < particion.size(); i++) {
+									relleno.append(particion.get(i), clave.get(i));
+								}
+								salida.add(relleno.append("idx", valor));
+							}
+						}
+					});
+				}
+				case "$setWindowFields" -> {
+					Map<Object, List<Document>> particiones = new LinkedHashMap<>();
+					documentos.forEach(doc -> particiones.computeIfAbsent(evaluar(spec.get("partitionBy"), doc), k -> new ArrayList<>()).add(doc));
+					particiones.values().forEach(docs -> {
+						List<Document> ordenados = docs.stream().sorted(Comparator.comparing(doc -> doc.getInteger("idx"))).toList();
+						for (int i = 0; i < ordenados.size(); i++) {
+							Document doc = new Document(ordenados.get(i));
+							Document previo = i > 0 ? ordenados.get(i - 1) : null;
+							spec.get("output", Document.class).forEach((campo, salidaCampo) -> {
+								Document shift = ((Document) salidaCampo).get("$shift", Document.class);
+								doc.append(campo, previo == null ? null : evaluar(shift.get("output"), previo));
+							});
+							salida.add(doc);
+						}
+					});
+				}
+				default -> throw new IllegalArgumentException("Etapa no soportada: " + nombre);
+			}
+			documentos = salida;
+		}
+		return documentos;
+	}
+
+	private Object acumular(Document acumulador, List<Document> docs) {
+		String operador = acumulador.keySet().iterator().next();
+		List<Number> valores = docs.stream()
+				.map(doc -> evaluar(acumulador.get(operador), doc))
+				.filter(valor -> valor instanceof Number)
+				.map(valor -> (Number) valor)
+				.toList();
+		return switch (operador) {
+			case "$sum" -> valores.stream().mapToDouble(Number::doubleValue).sum();
+			case "$max" -> valores.stream().map(Number::doubleValue).max(Double::compare).orElse(null);
+			default -> throw new IllegalArgumentException(operador);
+		};
+	}
+
+	private Object evaluar(Object expresion, Document doc) {
+		return EvaluadorExpresiones.evaluar(expresion, Map.of("CURRENT", doc));
+	}
+
+	private List<Document> recorrer(List<Document> documentos, String periodo, int limite) {
+		List<Document> vistos = new ArrayList<>();
+		String despuesPeriodo = null;
+		String despuesId = null;
+		while (true) {
+			Document filtro = repository.consultaPorClave(periodo, null, despuesPeriodo, despuesId, null).getQueryObject();
+			List<Document> pagina = ordenar(documentos.stream().filter(doc -> cumple(doc, filtro)).toList())
+					.stream().limit(limite).toList();
+			vistos.addAll(pagina);
+			if (pagina.size() < limite) {
+				return vistos;
+			}
+			Document ultimo = pagina.get(pagina.size() - 1);
+			despuesPeriodo = ultimo.getString("periodoActual");
+			despuesId = ultimo.getObjectId("_id").toHexString();
+		}
+	}
+
+	private List<Document> documentos(String periodo, int cantidad) {
+		List<Document> documentos = new ArrayList<>();
+		for (int i = 0; i < cantidad; i++) {
+			documentos.add(new Document("_id", new ObjectId()).append("periodoActual", periodo));
+		}
+		return documentos;
+	}
+
+	private List<Document> ordenar(List<Document> documentos) {
+		return documentos.stream()
+				.sorted(Comparator.comparing((Document doc) -> doc.getString("periodoActual"))
+						.thenComparing(doc -> doc.getObjectId("_id")))
+				.toList();
+	}
+
+	/**
+	 * Evalúa el subconjunto de operadores que producen consultaPorClave y los pipelines de cálculo:
+	 * $and, $or, $gt, $gte, $in, $ne e igualdad
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private boolean cumple(Document doc, Document filtro) {
+		for (Map.Entry<String, Object> condicion : filtro.entrySet()) {
+			boolean acepta = switch (condicion.getKey()) {
+				case "$and" -> ((List<Document>) condicion.getValue()).stream().allMatch(f -> cumple(doc, f));
+				case "$or" -> ((List<Document>) condicion.getValue()).stream().anyMatch(f -> cumple(doc, f));
+				default -> {
+					Object valor = doc.get(condicion.getKey());
+					if (condicion.getValue() instanceof Document operadores) {
+						yield operadores.entrySet().stream().allMatch(op -> switch (op.getKey()) {
+							case "$gt" -> valor != null && ((Comparable) valor).compareTo(op.getValue()) > 0;
+							case "$gte" -> valor != null && ((Comparable) valor).compareTo(op.getValue()) >= 0;
+							case "$in" -> ((List<?>) op.getValue()).contains(valor);
+							case "$ne" -> !Objects.equals(valor, op.getValue());
+							default -> throw new IllegalArgumentException(op.getKey());
+						});
+					}
+					yield Objects.equals(valor, condicion.getValue());
+				}
+			};
+			if (!acepta) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
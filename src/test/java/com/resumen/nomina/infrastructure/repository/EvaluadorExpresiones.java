@@ -0,0 +1,213 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Evalúa en memoria el subconjunto de expresiones de agregación que usan los acumulados de las
+ * series y los cálculos ($let, $reduce, $cond, aritmética, comparaciones, $min/$max, $slice,
+ * $arrayElemAt, $indexOfArray...), con la misma semántica de nulos que MongoDB. Solo para pruebas:
+ * las referencias a campos ($campo) se resuelven sobre la variable CURRENT, como en el servidor.
+ */
+class EvaluadorExpresiones {
+
+	private EvaluadorExpresiones() {
+	}
+
+	static Object evaluar(Object expresion, Map<String, Object> variables) {
+		if (expresion instanceof String texto && texto.startsWith("$$")) {
+			return variable(texto.substring(2), variables);
+		}
+		if (expresion instanceof String texto && texto.startsWith("$")) {
+			return variable("CURRENT." + texto.substring(1), variables);
+		}
+		if (expresion instanceof List<?> lista) {
+			List<Object> valores = new ArrayList<>();
+			lista.forEach(elemento -> valores.add(evaluar(elemento, variables)));
+			return valores;
+		}
+		if (expresion instanceof Document documento) {
+			String primera = documento.isEmpty() ? "" : documento.keySet().iterator().next();
+			if (primera.startsWith("$")) {
+				return operador(primera, documento.get(primera), variables);
+			}
+			Document objeto = new Document();
+			documento.forEach((campo, valor) -> objeto.append(campo, evaluar(valor, variables)));
+			return objeto;
+		}
+		return expresion;
+	}
+
+	private static Object operador(String nombre, Object argumento, Map<String, Object> variables) {
+		switch (nombre) {
+			case "$literal":
+				return argumento;
+			case "$let": {
+				Document let = (Document) argumento;
+				Map<String, Object> ambito = new HashMap<>(variables);
+				((Document) let.get("vars")).forEach((nombreVariable, valor) -> ambito.put(nombreVariable, evaluar(valor, variables)));
+				return evaluar(let.get("in"), ambito);
+			}
+			case "$reduce": {
+				Document reduce = (Document) argumento;
+				Object valor = evaluar(reduce.get("initialValue"), variables);
+				List<?> entrada = (List<?>) evaluar(reduce.get("input"), variables);
+				for (Object elemento : entrada) {
+					Map<String, Object> ambito = new HashMap<>(variables);
+					ambito.put("value", valor);
+					ambito.put("this", elemento);
+					valor = evaluar(reduce.get("in"), ambito);
+				}
+				return valor;
+			}
+			case "$cond": {
+				List<?> partes = argumento instanceof Document cond
+						? List.of(cond.get("if"), cond.get("then"), cond.get("else"))
+						: (List<?>) argumento;
+				return verdadero(evaluar(partes.get(0), variables))
+						? evaluar(partes.get(1), variables)
+						: evaluar(partes.get(2), variables);
+			}
+			default:
+				break;
+		}
+
+		List<Object> args = argumento instanceof List<?> lista
+				? new ArrayList<>((List<?>) evaluar(lista, variables))
+				: new ArrayList<>(Collections.singletonList(evaluar(argumento, variables)));
+
+		switch (nombre) {
+			case "$add":
+				return aritmetica(args, 0.0, Double::sum);
+			case "$multiply":
+				return aritmetica(args, 1.0, (a, b) -> a * b);
+			case "$subtract":
+				return args.contains(null) ? null : numero(args.get(0)) - numero(args.get(1));
+			case "$divide":
+				return args.contains(null) ? null : numero(args.get(0)) / numero(args.get(1));
+			case "$abs":
+				return args.get(0) == null ? null : Math.abs(numero(args.get(0)));
+			case "$min":
+				return args.stream().filter(Objects::nonNull).map(EvaluadorExpresiones::numero).min(Double::compare).orElse(null);
+			case "$max":
+				return args.stream().filter(Objects::nonNull).map(EvaluadorExpresiones::numero).max(Double::compare).orElse(null);
+			case "$eq":
+				return iguales(args.get(0), args.get(1));
+			case "$gt":
+				return comparar(args) > 0;
+			case "$gte":
+				return comparar(args) >= 0;
+			case "$lt":
+				return comparar(args) < 0;
+			case "$lte":
+				return comparar(args) <= 0;
+			case "$and":
+				return args.stream().allMatch(EvaluadorExpresiones::verdadero);
+			case "$not":
+				return !verdadero(args.get(0));
+			case "$isNumber":
+				return args.get(0) instanceof Number;
+			case "$in":
+				return ((List<?>) args.get(1)).stream().anyMatch(valor -> iguales(args.get(0), valor));
+			case "$ifNull":
+				return args.get(0) != null ? args.get(0) : args.get(1);
+			case "$slice": {
+				List<?> arreglo = (List<?>) args.get(0);
+				int inicio = ((Number) args.get(1)).intValue();
+				if (args.size() == 2) {
+					return inicio < 0
+							? arreglo.subList(Math.max(0, arreglo.size() + inicio), arreglo.size())
+							: arreglo.subList(0, Math.min(inicio, arreglo.size()));
+				}
+				if (inicio < 0) {
+					inicio = Math.max(0, arreglo.size() + inicio);
+				}
+				int desde = Math.min(inicio, arreglo.size());
+				return arreglo.subList(desde, Math.min(desde + ((Number) args.get(2)).intValue(), arreglo.size()));
+			}
+			case "$indexOfArray": {
+				List<?> arreglo = (List<?>) args.get(0);
+				for (int i = 0; i < arreglo.size(); i++) {
+					if (iguales(arreglo.get(i), args.get(1))) {
+						return i;
+					}
+				}
+				return -1;
+			}
+			case "$arrayElemAt": {
+				List<?> arreglo = (List<?>) args.get(0);
+				int indice = ((Number) args.get(1)).intValue();
+				if (indice < 0) {
+					indice += arreglo.size();
+				}
+				return indice >= 0 && indice < arreglo.size() ? arreglo.get(indice) : null;
+			}
+			default:
+				throw new IllegalArgumentException("Operador no soportado: " + nombre);
+		}
+	}
+
+	private static Object variable(String ruta, Map<String, Object> variables) {
+		String[] partes = ruta.split("\\.");
+		if (!variables.containsKey(partes[0])) {
+			throw new IllegalArgumentException("Variable no definida: $$" + partes[0]);
+		}
+		Object valor = variables.get(partes[0]);
+		for (int i = 1; i < partes.length && valor != null; i++) {
+			valor = ((Document) valor).get(partes[i]);
+		}
+		return valor;
+	}
+
+	private static Object aritmetica(List<Object> args, double inicial, DoubleBinaryOperator operacion) {
+		if (args.contains(null)) {
+			return null;
+		}
+		double resultado = inicial;
+		for (Object valor : args) {
+			resultado = operacion.applyAsDouble(resultado, numero(valor));
+		}
+		return resultado;
+	}
+
+	// Como en MongoDB: null es menor que cualquier número
+	private static int comparar(List<Object> args) {
+		Object a = args.get(0);
+		Object b = args.get(1);
+		if (a == null || b == null) {
+			return a == null ? (b == null ? 0 : -1) : 1;
+		}
+		if (a instanceof String textoA && b instanceof String textoB) {
+			return textoA.compareTo(textoB);
+		}
+		return Double.compare(numero(a), numero(b));
+	}
+
+	private static boolean iguales(Object a, Object b) {
+		if (a instanceof Number numeroA && b instanceof Number numeroB) {
+			return numeroA.doubleValue() == numeroB.doubleValue();
+		}
+		return Objects.equals(a, b);
+	}
+
+	private static boolean verdadero(Object valor) {
+		if (valor instanceof Boolean booleano) {
+			return booleano;
+		}
+		if (valor instanceof Number numero) {
+			return numero.doubleValue() != 0;
+		}
+		return valor != null;
+	}
+
+	private static double numero(Object valor) {
+		return ((Number) valor).doubleValue();
+	}
+}
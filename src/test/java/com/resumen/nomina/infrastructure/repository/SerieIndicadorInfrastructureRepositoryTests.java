@@ -0,0 +1,178 @@
+package com.resumen.nomina.infrastructure.repository;
+
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Acumulados de Welford de las series: las expresiones que se envían a MongoDB se evalúan en
+ * memoria y se comparan contra la media y M2 calculadas directamente sobre los puntos.
+ */
+class SerieIndicadorInfrastructureRepositoryTests {
+
+	private static final double TOLERANCIA = 1e-12;
+
+	private static final int RECALCULAR_CADA = 26;
+
+	private final SerieIndicadorInfrastructureRepository repository =
+			new SerieIndicadorInfrastructureRepository(null, null, RECALCULAR_CADA, false);
+
+	@Test
+	void agregarCoincideConElCalculoDirecto() {
+		// Mezcla decimales, porcentajes (|v| > 1), outliers (> ±1000%) y puntos sin variación
+		List<List<Object>> puntos = puntos(0.05, -0.02, 3.5, null, 0.4, 50.0, -12.0, 0.0, 0.11);
+
+		Document acumulado = agregar(vacio(), puntos);
+
+		assertAcumulado(directo(puntos), acumulado);
+		assertEquals(-0.02, ((Number) acumulado.get("min")).doubleValue(), TOLERANCIA);
+		assertEquals(0.4, ((Number) acumulado.get("max")).doubleValue(), TOLERANCIA);
+	}
+
+	@Test
+	void quitarDeshaceElAporteDeLosPuntos() {
+		List<List<Object>> conservados = puntos(0.12, -0.3, 0.07, 8.0, 0.01);
+		List<List<Object>> quitados = puntos(0.9, -0.45, 250.0, 0.33);
+		List<List<Object>> todos = new ArrayList<>(conservados);
+		todos.addAll(quitados);
+
+		Document acumulado = quitar(agregar(vacio(), todos), quitados);
+
+		assertAcumulado(directo(conservados), acumulado);
+	}
+
+	@Test
+	void quitarTodosLosPuntosDejaElAcumuladoEnCero() {
+		List<List<Object>> puntos = puntos(0.2, 0.4, -0.1);
+
+		Document acumulado = quitar(agregar(vacio(), puntos), puntos);
+
+		assertEquals(0.0, ((Number) acumulado.get("n")).doubleValue());
+		assertEquals(0.0, ((Number) acumulado.get("media")).doubleValue());
+		assertEquals(0.0, ((Number) acumulado.get("m2")).doubleValue());
+	}
+
+	@Test
+	void combinarEquivaleAAgregarTodosJuntos() {
+		List<List<Object>> primeros = puntos(0.05, 0.07, -0.02, 0.3);
+		List<List<Object>> segundos = puntos(-0.6, 0.25, 15.0, 0.0, 0.08);
+		List<List<Object>> todos = new ArrayList<>(primeros);
+		todos.addAll(segundos);
+
+		Document combinado = combinar(agregar(vacio(), primeros), agregar(vacio(), segundos));
+
+		assertAcumulado(directo(todos), combinado);
+		assertEquals(-0.6, ((Number) combinado.get("min")).doubleValue(), TOLERANCIA);
+		assertEquals(0.3, ((Number) combinado.get("max")).doubleValue(), TOLERANCIA);
+	}
+
+	@Test
+	void combinarConUnAcumuladoVacioConservaElOtro() {
+		Document acumulado = agregar(vacio(), puntos(0.4, -0.2, 0.1));
+
+		assertAcumulado(acumulado, combinar(vacio(), acumulado));
+		assertAcumulado(acumulado, combinar(acumulado, vacio()));
+	}
+
+	@Test
+	void serieSinPuntosValidosNoCambiaElAcumulado() {
+		Document acumulado = agregar(vacio(), puntos(null, 40.0, -11.0));
+
+		assertEquals(0.0, ((Number) acumulado.get("n")).doubleValue());
+		assertNull(acumulado.get("min"));
+		assertNull(acumulado.get("max"));
+	}
+
+	@Test
+	void alLlegarAlLimiteRecalculaDesdeLosPuntos() {
+		List<List<Object>> puntos = puntos(0.05, -0.02, 0.3, null, 0.12);
+		Document conDeriva = new Document("n", 4).append("media", 0.1).append("m2", 0.5).append("min", -0.02).append("max", 0.3);
+		Document serie = new Document("puntos", puntos).append("acumulado", conDeriva)
+				.append("ventana", new Document("tamanio", 52).append("n", 4).append("media", 0.1).append("m2", 0.5))
+				.append("actualizaciones", RECALCULAR_CADA);
+
+		Document recalculada = recalcular(serie);
+
+		assertAcumulado(directo(puntos), recalculada.get("acumulado", Document.class));
+		assertAcumulado(directo(puntos), recalculada.get("ventana", Document.class));
+		assertEquals(0, recalculada.get("actualizaciones"));
+	}
+
+	@Test
+	void antesDelLimiteConservaElAcumulado() {
+		Document acumulado = agregar(vacio(), puntos(0.4, -0.2, 0.1));
+		Document ventana = new Document("tamanio", 52).append("n", 3).append("media", 0.1).append("m2", 0.18);
+		Document serie = new Document("puntos", puntos(0.4, -0.2, 0.1)).append("acumulado", acumulado)
+				.append("ventana", ventana).append("actualizaciones", RECALCULAR_CADA - 1);
+
+		Document resultado = recalcular(serie);
+
+		assertSame(acumulado, resultado.get("acumulado"));
+		assertSame(ventana, resultado.get("ventana"));
+		assertEquals(RECALCULAR_CADA - 1, resultado.get("actualizaciones"));
+	}
+
+	// Auxiliares
+
+	private Document recalcular(Document serie) {
+		Document campos = repository.recalcularSiCorresponde("$puntos").get("$set", Document.class);
+		return (Document) EvaluadorExpresiones.evaluar(campos, Map.of("CURRENT", serie));
+	}
+
+	private Document agregar(Document acumulado, List<List<Object>> puntos) {
+		return (Document) EvaluadorExpresiones.evaluar(
+				repository.agregarPuntos(new Document("$literal", acumulado), new Document("$literal", puntos)), Map.of());
+	}
+
+	private Document quitar(Document acumulado, List<List<Object>> puntos) {
+		return (Document) EvaluadorExpresiones.evaluar(
+				repository.quitarPuntos(new Document("$literal", acumulado), new Document("$literal", puntos)), Map.of());
+	}
+
+	private Document combinar(Document acumulado, Document otro) {
+		return (Document) EvaluadorExpresiones.evaluar(
+				repository.combinar(new Document("$literal", acumulado), "$$otro"), Map.of("otro", otro));
+	}
+
+	private Document vacio() {
+		return new Document("n", 0).append("media", 0.0).append("m2", 0.0).append("min", null).append("max", null);
+	}
+
+	private List<List<Object>> puntos(Double... variaciones) {
+		List<List<Object>> puntos = new ArrayList<>();
+		for (int i = 0; i < variaciones.length; i++) {
+			puntos.add(Arrays.asList(String.format("2024W%02d", i + 1), 1000.0 + i, variaciones[i]));
+		}
+		return puntos;
+	}
+
+	/**
+	 * Media y M2 en dos pasadas sobre las variaciones válidas, normalizadas como en el almacén
+	 */
+	private Document directo(List<List<Object>> puntos) {
+		List<Double> valores = puntos.stream()
+				.map(punto -> (Double) punto.get(2))
+				.filter(Objects::nonNull)
+				.filter(v -> v >= -10.0 && v <= 10.0)
+				.map(v -> Math.abs(v) > 1 ? v / 100 : v)
+				.toList();
+		double media = valores.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
+		double m2 = valores.stream().mapToDouble(v -> (v - media) * (v - media)).sum();
+		return new Document("n", valores.size()).append("media", media).append("m2", m2);
+	}
+
+	private void assertAcumulado(Document esperado, Document obtenido) {
+		assertEquals(((Number) esperado.get("n")).doubleValue(), ((Number) obtenido.get("n")).doubleValue());
+		assertEquals(((Number) esperado.get("media")).doubleValue(), ((Number) obtenido.get("media")).doubleValue(), TOLERANCIA);
+		assertEquals(((Number) esperado.get("m2")).doubleValue(), ((Number) obtenido.get("m2")).doubleValue(), TOLERANCIA);
+	}
+}